@@ -0,0 +1,62 @@
+package domain;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for the Board methods used when importing, replaying and displaying games, from a middlegame
+ * position with castling, captures and checks available.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+	private Board board;
+	private Move move;
+	
+	@Setup
+	public void setup() throws IllegalMoveException {
+		board = new Board("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+		move = board.getPgnMove("Qxf6");
+	}
+	
+	@Benchmark
+	public Board makeMove() throws IllegalMoveException {
+		return board.makeMove(move);
+	}
+	
+	@Benchmark
+	public List<Move> getPossibleMoves() {
+		return board.getPossibleMoves();
+	}
+	
+	@Benchmark
+	public String getMoveAsPgn() throws IllegalMoveException {
+		return board.getMoveAsPgn(move);
+	}
+	
+	@Benchmark
+	public Move getPgnMove() throws IllegalMoveException {
+		return board.getPgnMove("Qxf6");
+	}
+	
+	@Benchmark
+	public long perft() {
+		return Perft.perft(board, 3);
+	}
+	
+	@Benchmark
+	public String getFen() {
+		return board.getFen();
+	}
+	
+	@Benchmark
+	public String getPositionDatabaseString() {
+		return board.getPositionDatabaseString();
+	}
+}
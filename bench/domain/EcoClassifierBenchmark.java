@@ -0,0 +1,34 @@
+package domain;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import pgn.PgnImporter;
+import util.FileUtil;
+
+/**
+ * Benchmarks classifying the opening of a full game.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EcoClassifierBenchmark {
+	private EcoClassifier classifier;
+	private List<Move> game;
+	
+	@Setup
+	public void setup() throws Exception {
+		classifier = new EcoClassifier();
+		game = new PgnImporter().importCollection(FileUtil.readResource("/resource/games.pgn")).get(0).getMainLine();
+	}
+	
+	@Benchmark
+	public String classify() {
+		return classifier.classify(game);
+	}
+}
@@ -0,0 +1,70 @@
+package domain;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import pgn.PgnGame;
+import pgn.PgnImporter;
+import util.FileUtil;
+
+/**
+ * Benchmarks importing the sample games in resource/games.pgn into an empty move database, from games already
+ * parsed and through the parallel import pipeline from the text, and looking up the moves at every position of
+ * the games once they are imported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveDatabaseBenchmark {
+	private String pgn;
+	private List<PgnGame> games;
+	private MoveDatabase database;
+	private List<Board> positions = new ArrayList<>();
+	
+	@Setup
+	public void setup() throws Exception {
+		pgn = FileUtil.readResource("/resource/games.pgn");
+		games = new PgnImporter().importCollection(pgn);
+		
+		database = new MoveDatabase();
+		database.importPgnGames(games);
+		for(PgnGame game:games) {
+			Board board = game.getInitialPosition();
+			for(Move move:game.getMainLine()) {
+				positions.add(board);
+				board = board.makeMove(move);
+			}
+		}
+	}
+	
+	@Benchmark
+	public MoveDatabase importPgnGames() {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games);
+		return database;
+	}
+	
+	@Benchmark
+	public int getMoves() {
+		int moves = 0;
+		for(Board board:positions) {
+			moves += database.getMoves(board).size();
+		}
+		return moves;
+	}
+	
+	@Benchmark
+	public MoveDatabase importPgnPipeline() throws IOException {
+		MoveDatabase database = new MoveDatabase();
+		new PgnImportPipeline(database, Runtime.getRuntime().availableProcessors()).importPgn(new StringReader(pgn));
+		return database;
+	}
+}
@@ -0,0 +1,55 @@
+package domain.bitboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import domain.Board;
+import domain.IllegalMoveException;
+import domain.Move;
+import pgn.PgnGame;
+import pgn.PgnImporter;
+import util.FileUtil;
+
+/**
+ * Benchmarks finding the move for every move of the main lines in a collection, as done for each move when
+ * importing games. The moves are written with Board.getMoveAsPgn() and looked up again with Board.getPgnMove().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgnMoveDecoderBenchmark {
+	@Param({ "/resource/games.pgn", "/resource/eco.pgn" })
+	private String collection;
+	
+	private List<Board> boards = new ArrayList<>();
+	private List<String> pgnMoves = new ArrayList<>();
+	
+	@Setup
+	public void setup() throws Exception {
+		for(PgnGame game:new PgnImporter().importCollection(FileUtil.readResource(collection))) {
+			Board board = game.getInitialPosition();
+			for(Move move:game.getMainLine()) {
+				boards.add(board);
+				pgnMoves.add(board.getMoveAsPgn(move));
+				board = board.makeMove(move);
+			}
+		}
+	}
+	
+	@Benchmark
+	public int getPgnMoves() throws IllegalMoveException {
+		int count = 0;
+		for(int i = 0; i < boards.size(); i++) {
+			if(boards.get(i).getPgnMove(pgnMoves.get(i)).getCastling()) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,60 @@
+package pgn;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import domain.Board;
+import domain.IllegalMoveException;
+import domain.MoveHistoryNode;
+import util.FileUtil;
+
+/**
+ * Benchmarks for importing the sample games in resource/games.pgn, as a whole collection and as the movetext
+ * of a single game, and for exporting the longest game.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgnBenchmark {
+	private String collection;
+	private String moveText;
+	private PgnGame longestGame;
+	
+	@Setup
+	public void setup() throws Exception {
+		collection = FileUtil.readResource("/resource/games.pgn");
+		
+		for(String section:collection.split("(\r?\n|\n){2}")) {
+			if(section.trim().startsWith("1")) {
+				moveText = section.trim();
+				break;
+			}
+		}
+		
+		for(PgnGame game:new PgnImporter().importCollection(collection)) {
+			if(longestGame == null || game.getMainLine().size() > longestGame.getMainLine().size()) {
+				longestGame = game;
+			}
+		}
+	}
+	
+	@Benchmark
+	public List<PgnGame> importCollection() throws ParseException {
+		return new PgnImporter().importCollection(collection);
+	}
+	
+	@Benchmark
+	public MoveHistoryNode parseMoveText() throws ParseException {
+		return new MoveTextParser().parseMoveText(new Board(), moveText);
+	}
+	
+	@Benchmark
+	public String exportPgn() throws IllegalMoveException {
+		return new PgnExporter().exportPgn(longestGame.getInitialPosition(), longestGame.getMoves());
+	}
+}
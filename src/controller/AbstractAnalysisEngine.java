@@ -0,0 +1,198 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.swt.widgets.Display;
+
+import domain.Board;
+import domain.EngineMove;
+import domain.Move;
+import domain.Square;
+import ui.BoardCanvas;
+import ui.BoardCanvas.BoardArrow;
+import ui.EngineMovesTable;
+
+/**
+ * The parts of an analysis engine shared by each implementation: keeping the current position and the moves found
+ * for it, and regularly showing those moves in the table and on the board.
+ */
+public abstract class AbstractAnalysisEngine implements AnalysisEngine {
+	protected static final int MULTI_PV = 10;
+	
+	public static final int DEFAULT_HASH_SIZE = 64;
+	
+	private final EngineMovesTable engineView;
+	private final BoardCanvas boardCanvas;
+	
+	private Board currentPosition = new Board();
+	private boolean enabled = true;
+	private int hashSize = DEFAULT_HASH_SIZE;
+	
+	private EngineMove[] engineMoves = new EngineMove[MULTI_PV];
+	private Thread updateViewThread;
+	
+	private boolean showArrows = false;
+	
+	protected AbstractAnalysisEngine(EngineMovesTable engineView, BoardCanvas boardCanvas) {
+		this.engineView = engineView;
+		this.boardCanvas = boardCanvas;
+		
+		engineView.addEnabledSelectedHandler(enabled -> setEnabled(enabled));
+	}
+	
+	/**
+	 * Starts or stops analysis of the current position, after it or the enabled state has changed.
+	 */
+	protected abstract void syncEngine();
+	
+	/**
+	 * Resizes the engine's hash table to getHashSize(), after it has changed.
+	 */
+	protected abstract void syncHashSize();
+	
+	public Move getBestMove() {
+		if(engineMoves[0] == null) return null;
+		
+		return engineMoves[0].getMove();
+	}
+	
+	public EngineMove[] getAllMoves() {
+		return engineMoves;
+	}
+	
+	protected Board getCurrentPosition() {
+		return currentPosition;
+	}
+	
+	/**
+	 * Sets the move at a rank (0 for the best move) found by the engine for a position. Moves for positions other
+	 * than the current one are ignored, as they can arrive after the position has changed.
+	 */
+	protected void setEngineMove(Board position, int rank, EngineMove move) {
+		if(position != currentPosition) return;
+		
+		engineMoves[rank] = move;
+	}
+	
+	public void setPosition(Board board) {
+		if(currentPosition == board) return;
+		
+		// Ignore invalid positions because the engine can't handle them.
+		if(!board.validPosition()) return;
+		
+		this.currentPosition = board;
+		
+		engineMoves = new EngineMove[MULTI_PV];
+		
+		syncEngine();
+	}
+	
+	public void setEnabled(boolean running) {
+		this.enabled = running;
+		syncEngine();
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	public int getHashSize() {
+		return hashSize;
+	}
+	
+	public void setHashSize(int megabytes) {
+		if(megabytes < 1) throw new IllegalArgumentException("Invalid hash size: " + megabytes);
+		if(megabytes == hashSize) return;
+		
+		this.hashSize = megabytes;
+		syncHashSize();
+	}
+	
+	private void displayEngineMoves() {
+		if(!currentPosition.validPosition()) {
+			// Don't display anything for invalid positions.
+			engineView.setEngineMoves(new ArrayList<EngineMove>());
+			boardCanvas.setEngineArrows(new ArrayList<BoardArrow>());
+			return;
+		}
+		
+		int maxScore = Integer.MIN_VALUE;
+		int minScore = Integer.MAX_VALUE;
+		for(EngineMove engineMove:engineMoves) {
+			if(engineMove == null) continue;
+			
+			maxScore = Math.max(maxScore, engineMove.getScoreNum());
+			minScore = Math.min(minScore, engineMove.getScoreNum());
+		}
+		
+		// Update table.
+		engineView.setEngineMoves(Arrays.asList(engineMoves));
+		
+		// Update board arrows.
+		List<BoardArrow> arrows = new ArrayList<BoardArrow>();
+		if(showArrows) {
+			for(EngineMove engineMove:engineMoves) {
+				if(engineMove == null) continue;
+				
+				Square start = engineMove.getMove().getFrom();
+				Square end = engineMove.getMove().getTo();
+				
+				double score = engineMove.getScoreNum();
+				if(score > 0) {
+					score = score / maxScore;
+				} else {
+					score = -(score / minScore);
+				}
+				arrows.add(new BoardArrow(start, end, (score/2) + 0.5));
+			}
+		}
+		boardCanvas.setEngineArrows(arrows);
+	}
+	
+	/**
+	 * Starts a thread to update the view with the engine moves every 300ms.
+	 */
+	protected void startUpdateView() {
+		this.updateViewThread = new Thread(new Runnable() {
+			public void run() {
+				while(true) {
+					Display.getDefault().asyncExec(new Runnable() {
+						public void run() {
+							displayEngineMoves();
+						}
+					});
+					
+					try {
+						Thread.sleep(300);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		});
+		
+		updateViewThread.setDaemon(true);
+		updateViewThread.start();
+	}
+	
+	protected void stopUpdateView() {
+		if(updateViewThread != null) {
+			updateViewThread.interrupt();
+			updateViewThread = null;
+		}
+	}
+	
+	public void showArrows() {
+		showArrows = true;
+	}
+	
+	public void hideArrows() {
+		showArrows = false;
+	}
+	
+	public boolean areArrowsShown() {
+		return showArrows;
+	}
+}
@@ -8,16 +8,21 @@ import java.util.List;
 import org.eclipse.swt.widgets.Display;
 
 import domain.Board;
+import domain.BookMove;
 import domain.EcoClassifier;
 import domain.EngineMove;
+import domain.GameFilter;
 import domain.IllegalMoveException;
 import domain.Move;
 import domain.MoveDatabase;
 import domain.MoveHistory;
 import domain.MoveHistoryNode;
+import domain.PgnImportPipeline;
+import domain.PolyglotBook;
 import domain.PromotionChoice;
 import domain.Side;
 import domain.Square;
+import pgn.MappedPgnFile;
 import pgn.ParseException;
 import pgn.PgnExporter;
 import pgn.PgnGame;
@@ -36,6 +41,13 @@ import util.FileUtil;
 
 public class MainController implements BoardDragHandler, HistoryItemSelectedHandler, DatabaseMoveSelectedHandler, DatabaseGameSelectedHandler, EngineItemSelectedHandler, BoardPositionChangedHandler {
 	private static final String ENGINE_CMD = "stockfish";
+	private static final int ENGINE_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	// Threads parsing games while importing a database, leaving a core for reading the file and writing the database.
+	private static final int IMPORT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	
+	// The number of moves from the starting position exported to a book, unless another is chosen.
+	private static final int DEFAULT_BOOK_PLIES = 30;
 	
 	private final BoardCanvas boardCanvas;
 	private final MoveHistoryTree moveHistoryTree;
@@ -44,6 +56,12 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 	private final EngineMovesTable engineMovesTable;
 	
 	private MoveDatabase moveDatabase = new MoveDatabase();
+	private GameFilter gameFilter = GameFilter.ALL;
+	private PolyglotBook book;
+	
+	// The options a book was last exported with.
+	private int bookPlies = DEFAULT_BOOK_PLIES;
+	private PolyglotBook.Weighting bookWeighting = PolyglotBook.Weighting.SCORE;
 	
 	private final EcoClassifier ecoClassifier = new EcoClassifier();
 
@@ -69,9 +87,10 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 		engineMovesTable.addHistoryItemSelectedHandler(this);
 		
 		try {
-			this.analysisEngine = new AnalysisEngine(ENGINE_CMD, engineMovesTable, boardCanvas);
+			this.analysisEngine = new UciAnalysisEngine(ENGINE_CMD, engineMovesTable, boardCanvas);
 		} catch (IOException e) {
-			System.err.println("Error creating engine: " + e.getMessage());
+			System.err.println("Error creating engine: " + e.getMessage() + ". Using built-in engine.");
+			this.analysisEngine = new SearchAnalysisEngine(engineMovesTable, boardCanvas, ENGINE_THREADS);
 		}
 		
 		this.enginePlayController = new EnginePlayController(this, analysisEngine);
@@ -83,6 +102,7 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 		if(analysisEngine != null) {
 			analysisEngine.dispose();
 		}
+		moveDatabase.close();
 	}
 	
 	private void updateView(boolean madeMove) {
@@ -94,8 +114,8 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 				
 				boardCanvas.setBoard(board);
 				boardCanvas.setEditPosition(editPosition);
-				databaseView.setMoves(board, moveDatabase.getMoves(board));
-				databaseView.setGames(moveDatabase.getGames(board));
+				databaseView.setMoves(board, moveDatabase.getMoves(board, gameFilter));
+				databaseView.setGames(moveDatabase.getGameList(board, gameFilter));
 				databaseView.setOpening(ecoClassifier.classify(history.getMoves()));
 			}
 		});
@@ -110,6 +130,9 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 				arrows.add(new BoardCanvas.BoardArrow(move.getFrom(), move.getTo(), 0));
 			}
 		}
+		if(book != null) {
+			addBookArrows(board, arrows);
+		}
 		boardCanvas.setMoveArrows(arrows);
 		
 		engineMovesTable.setPlayerMoves(history.getVarations());
@@ -189,9 +212,9 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 	}
 	
 	@Override
-	public void onDatabaseGameSelected(String pgn) {
+	public void onDatabaseGameSelected(int gameId) {
 		try {
-			setPgn(pgn);
+			setPgn(moveDatabase.getGame(gameId));
 		} catch(ControllerException e) {
 			throw new RuntimeException("Error loading database game", e);
 		}
@@ -201,6 +224,7 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 		try {
 			PgnGame game = new PgnImporter().importPgn(pgnText);
 			history.setMoves(game.getInitialPosition(), game.getMoves());
+			analysisEngine.newGame();
 			updateView(false);
 		} catch (ParseException e) {
 			throw new ControllerException("Error parsing pgn:\n" + e.getMessage(), e);
@@ -217,24 +241,65 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 		}
 	}
 
+	/**
+	 * Opens a database stored on disk, creating it if it doesn't exist, so that databases imported into it are
+	 * kept between runs.
+	 */
+	public void openDatabase(String path) {
+		// HSQLDB names its files by adding extensions to the path, so any of them can be selected.
+		String basePath = path.replaceAll("\\.(properties|script|data|log|backup)$", "");
+		
+		moveDatabase.close();
+		this.moveDatabase = new MoveDatabase(new File(basePath));
+		
+		updateView(false);
+	}
+	
+	/**
+	 * Replaces the database with the games in a file. A database on disk is cleared and the games are imported into
+	 * it, so the user should confirm this first.
+	 */
 	public void importDatabase(String path) throws ControllerException {
 		try {
-			this.moveDatabase = new MoveDatabase();
+			if(moveDatabase.isPersistent()) {
+				moveDatabase.clear();
+			} else {
+				this.moveDatabase = new MoveDatabase();
+			}
 			if(path.endsWith(".pgn")) {
-				String pgnText = FileUtil.readFile(path);
-				List<PgnGame> games = new PgnImporter().importCollection(pgnText);
-			
-				moveDatabase.importPgnGames(games);
-				System.out.printf("Imported %d games.", games.size());
+				try(MappedPgnFile file = new MappedPgnFile(new File(path))) {
+					new PgnImportPipeline(moveDatabase, IMPORT_THREADS).importPgn(file);
+				}
+			} else if(path.endsWith(".pgn.gz")) {
+				new PgnImportPipeline(moveDatabase, IMPORT_THREADS).importPgn(FileUtil.openReader(new File(path)));
 			} else {
 				moveDatabase.importDatabase(new File(path));
 			}
 			
 			updateView(false);
-		} catch(ParseException e) {
+		} catch (IOException e) {
 			throw new ControllerException("Error loading file:\n" + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Adds the games in a PGN file to the database without clearing it, skipping games that are already in it.
+	 */
+	public void appendDatabase(String path) throws ControllerException {
+		try {
+			if(path.endsWith(".pgn")) {
+				try(MappedPgnFile file = new MappedPgnFile(new File(path))) {
+					new PgnImportPipeline(moveDatabase, IMPORT_THREADS, true).importPgn(file);
+				}
+			} else if(path.endsWith(".pgn.gz")) {
+				new PgnImportPipeline(moveDatabase, IMPORT_THREADS, true).importPgn(FileUtil.openReader(new File(path)));
+			} else {
+				throw new ControllerException("Only PGN files can be appended:\n" + path);
+			}
+			
+			updateView(false);
 		} catch (IOException e) {
-			throw new ControllerException("Error parsing file:\n" + e.getMessage(), e);
+			throw new ControllerException("Error loading file:\n" + e.getMessage(), e);
 		}
 	}
 	
@@ -242,10 +307,77 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 		moveDatabase.saveDatabase(new File(selected));
 	}
 	
+	/**
+	 * Adds an arrow for each book move at a position, scored by its weight relative to the heaviest move.
+	 */
+	private void addBookArrows(Board board, List<BoardCanvas.BoardArrow> arrows) {
+		List<BookMove> moves = book.getMoves(board);
+		int maxWeight = 1;
+		for(BookMove move:moves) {
+			maxWeight = Math.max(maxWeight, move.getWeight());
+		}
+		for(BookMove move:moves) {
+			arrows.add(new BoardCanvas.BoardArrow(move.getMove().getFrom(), move.getMove().getTo(), move.getWeight() / (double)maxWeight));
+		}
+	}
+	
+	public void openBook(String path) throws ControllerException {
+		try {
+			PolyglotBook newBook = new PolyglotBook(new File(path));
+			if(book != null) {
+				book.close();
+			}
+			book = newBook;
+			
+			updateView(false);
+		} catch(IOException e) {
+			throw new ControllerException("Error loading book:\n" + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Exports the positions reached in up to a number of plies from the starting position to a book, with the moves
+	 * weighted by a weighting.
+	 */
+	public void exportBook(String selected, int plies, PolyglotBook.Weighting weighting) throws ControllerException {
+		if(plies < 1) throw new ControllerException("Invalid number of plies: " + plies);
+		
+		bookPlies = plies;
+		bookWeighting = weighting;
+		PolyglotBook.write(new File(selected), moveDatabase, weighting, plies);
+	}
+	
+	public int getBookPlies() {
+		return bookPlies;
+	}
+	
+	public PolyglotBook.Weighting getBookWeighting() {
+		return bookWeighting;
+	}
+	
+	public GameFilter getGameFilter() {
+		return gameFilter;
+	}
+	
+	/**
+	 * Sets the filter for the games used for the database moves and game list.
+	 */
+	public void setGameFilter(GameFilter gameFilter) {
+		this.gameFilter = gameFilter;
+		updateView(false);
+	}
+	
 	public boolean moveDatabaseLoaded() {
 		return (moveDatabase != null);
 	}
 	
+	/**
+	 * Returns whether the database is stored on disk, so that importing into it replaces what is saved there.
+	 */
+	public boolean isDatabasePersistent() {
+		return moveDatabase.isPersistent();
+	}
+	
 	public void prevMove() {
 		history.prev();
 		updateView(false);
@@ -279,11 +411,13 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 	public void setFen(String fen) {
 		Board board = new Board(fen);
 		history.setInitialPosition(board);
+		analysisEngine.newGame();
 		updateView(false);
 	}
 
 	public void newGame() {
 		history.setInitialPosition(new Board());
+		analysisEngine.newGame();
 		updateView(false);
 	}
 
@@ -379,6 +513,21 @@ public class MainController implements BoardDragHandler, HistoryItemSelectedHand
 		return analysisEngine.areArrowsShown();
 	}
 
+	/**
+	 * Sets the size of the analysis engine's hash table in MB.
+	 */
+	public void setEngineHashSize(int megabytes) {
+		if(analysisEngine == null) return;
+		
+		analysisEngine.setHashSize(megabytes);
+	}
+	
+	public int getEngineHashSize() {
+		if(analysisEngine == null) return 0;
+		
+		return analysisEngine.getHashSize();
+	}
+	
 	public boolean isEnginePlaying() {
 		return enginePlayController.isEnginePlaying();
 	}
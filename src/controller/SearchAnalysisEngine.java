@@ -0,0 +1,119 @@
+package controller;
+
+import java.util.List;
+
+import domain.Board;
+import domain.EngineMove;
+import domain.IllegalMoveException;
+import domain.Side;
+import domain.bitboard.PackedMove;
+import domain.search.ParallelSearch;
+import domain.search.Search;
+import domain.search.SearchLine;
+import domain.search.TranspositionTable;
+import ui.BoardCanvas;
+import ui.EngineMovesTable;
+
+/**
+ * Analyses positions with the built-in search, on a background thread, for when no external engine is available.
+ * Scores are shown in the same form as a UCI engine's. Like an engine analysing with "go infinite", a position is
+ * searched until the position changes or the engine is disabled.
+ */
+public class SearchAnalysisEngine extends AbstractAnalysisEngine {
+	private TranspositionTable transpositionTable = new TranspositionTable(getHashSize());
+	
+	private final int threads;
+	
+	private ParallelSearch search;
+	private Thread searchThread;
+	
+	/**
+	 * Create an engine that searches with a number of threads.
+	 */
+	public SearchAnalysisEngine(EngineMovesTable engineView, BoardCanvas boardCanvas, int threads) {
+		super(engineView, boardCanvas);
+		
+		this.threads = threads;
+		
+		startUpdateView();
+	}
+	
+	protected synchronized void syncEngine() {
+		stopSearch();
+		
+		if(!isEnabled()) return;
+		
+		final Board position = getCurrentPosition();
+		final ParallelSearch search = new ParallelSearch(transpositionTable, threads);
+		
+		this.search = search;
+		this.searchThread = new Thread(new Runnable() {
+			public void run() {
+				search.search(position, Search.MAX_PLY, Long.MAX_VALUE, MULTI_PV, new Search.SearchListener() {
+					public void depthCompleted(List<SearchLine> lines, long nodes) {
+						for(int i = 0; i < lines.size(); i++) {
+							setEngineMove(position, i, getEngineMove(position, lines.get(i)));
+						}
+					}
+				});
+			}
+		});
+		
+		searchThread.setDaemon(true);
+		searchThread.start();
+	}
+	
+	private synchronized void stopSearch() {
+		if(searchThread != null) {
+			search.stop();
+			try {
+				searchThread.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			search = null;
+			searchThread = null;
+		}
+	}
+	
+	/**
+	 * Converts a line to an EngineMove, with the score formatted as in UCI output.
+	 */
+	private static EngineMove getEngineMove(Board position, SearchLine line) {
+		String score;
+		int scoreNum;
+		if(line.isMate()) {
+			int mateMoves = line.getMateMoves();
+			score = "mate " + mateMoves;
+			scoreNum = (mateMoves > 0) ? mateMoves + 100000 : mateMoves - 100000;
+		} else {
+			score = "cp " + line.getScore();
+			scoreNum = line.getScore();
+		}
+		
+		score = ((position.getSideToPlay() == Side.WHITE) ? "White " : "Black ") + score;
+		
+		try {
+			return new EngineMove(position, PackedMove.toMove(line.getMove()), score, scoreNum);
+		} catch(IllegalMoveException e) {
+			throw new IllegalStateException("Illegal move from search: " + line, e);
+		}
+	}
+	
+	protected synchronized void syncHashSize() {
+		stopSearch();
+		transpositionTable = new TranspositionTable(getHashSize());
+		syncEngine();
+	}
+	
+	public synchronized void newGame() {
+		stopSearch();
+		transpositionTable.clear();
+		syncEngine();
+	}
+	
+	public void dispose() {
+		stopSearch();
+		stopUpdateView();
+	}
+}
@@ -0,0 +1,227 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import domain.Board;
+import domain.EngineMove;
+import domain.IllegalMoveException;
+import domain.Move;
+import domain.PromotionChoice;
+import domain.Side;
+import domain.Square;
+import domain.pieces.Piece;
+import domain.pieces.PieceType;
+import ui.BoardCanvas;
+import ui.EngineMovesTable;
+
+/**
+ * Analyses positions with an external engine process, such as Stockfish, using the UCI protocol.
+ */
+public class UciAnalysisEngine extends AbstractAnalysisEngine {
+	private Process process;
+	private BufferedReader reader;
+	private BufferedReader errReader;
+	private PrintWriter writer;
+
+	private String exePath;
+	
+	private Thread readThread;
+	private Thread readErrThread;
+	
+	// Whether the Hash option needs to be sent to the engine, which clears its hash table, so it isn't sent each time.
+	private boolean hashSizeChanged = true;
+	
+	public UciAnalysisEngine(String exePath, EngineMovesTable engineView, BoardCanvas boardCanvas) throws IOException {
+		super(engineView, boardCanvas);
+		
+		this.exePath = exePath;
+		
+		startEngine();
+	}
+	
+	private synchronized void startEngine() throws IOException {
+		if(process == null) {
+			ProcessBuilder processBuilder = new ProcessBuilder(exePath);
+			
+			this.process = processBuilder.start();
+			this.reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			this.errReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+			this.writer = new PrintWriter(new OutputStreamWriter(process.getOutputStream()));
+			this.hashSizeChanged = true;
+			
+			readLoop();
+			readErrLoop();
+			startUpdateView();
+		}
+	}
+	
+	private synchronized void exitEngine() {
+		if(process != null) {
+			readThread.interrupt();
+			readErrThread.interrupt();
+			stopUpdateView();
+			process.destroy();
+			process = null;
+		}
+	}
+	
+	protected void syncEngine() {
+		try {
+			if(process == null) {
+				startEngine();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		writer.println("stop");
+		writer.println("uci");
+		writer.println("setoption name MultiPV value " + MULTI_PV);
+		if(hashSizeChanged) {
+			writer.println("setoption name Hash value " + getHashSize());
+			hashSizeChanged = false;
+		}
+		writer.println("isready");
+		writer.println("ucinewgame");
+		writer.println("position fen " + getCurrentPosition().getFen());
+		writer.println(isEnabled() ? "go movetime 60000" : "stop");
+		writer.flush();
+	}
+	
+	protected void syncHashSize() {
+		hashSizeChanged = true;
+		syncEngine();
+	}
+	
+	private void handleEngineOutput(String line) {
+		if(line.startsWith("info") && line.contains("multipv")) {
+			// Example: info multipv 10 depth 10 seldepth 40 score cp -56 time 3956 nodes 3366368 pv a7a6 b1c3 b8c6 d2d4 d7d6 g1f3 g8f6 c1f4 b7b5 f1d3
+			// Example: info multipv 6 depth 1 seldepth 10 score mate -2 time 1 nodes 691 pv f1g2 d8h4 e1f1 h4f2
+			
+			String rank = extractGroup(line, "multipv (\\d*)");
+			String score = extractGroup(line, "score (\\S* \\S*)");
+			String move = extractGroup(line, " pv ([a-h0-9]{4}[rbnq]?)");
+			
+			if(rank == null || score == null || move == null) {
+				System.err.println("Can't extract move from engine. UCI line: " + line);
+				return;
+			}
+			
+			int rankInt = Integer.parseInt(rank) - 1;
+			Square fromSquare = new Square(move.substring(0, 2));
+			Square toSquare = new Square(move.substring(2, 4));
+			
+			PromotionChoice promote = null;
+			if(move.length() == 5) {
+				char p = move.charAt(4);
+				if(p == 'r') promote = PromotionChoice.ROOK;
+				if(p == 'b') promote = PromotionChoice.BISHOP;
+				if(p == 'n') promote = PromotionChoice.KNIGHT;
+				if(p == 'q') promote = PromotionChoice.QUEEN;
+			}
+			
+			Board currentPosition = getCurrentPosition();
+			try {
+				int scoreNum = Integer.parseInt(score.split(" ")[1]);
+				if(score.contains("mate")) {
+					if(scoreNum > 0) {
+						scoreNum += 100000;
+					} else {
+						scoreNum -= 100000;
+					}
+				}
+				
+				if(currentPosition.getSideToPlay() == Side.WHITE) {
+					score = "White " + score;
+				} else {
+					score = "Black " + score;
+				}
+				
+				Piece piece = currentPosition.getPiece(fromSquare);
+				boolean castling = (piece != null && piece.getPieceType() == PieceType.KING && Math.abs(fromSquare.getX() - toSquare.getX()) > 1);
+				
+				setEngineMove(currentPosition, rankInt, new EngineMove(currentPosition, new Move(fromSquare, toSquare, castling, promote), score, scoreNum));
+			} catch(IllegalMoveException e) {
+				System.err.println("IllegalMove from engine. UCI line: " + line);
+				System.err.println(fromSquare + "-" + toSquare + " -- " + currentPosition.getFen());
+			}
+		}
+	}
+	
+	private String extractGroup(String line, String pattern) {
+		Matcher matcher = Pattern.compile(pattern).matcher(line);
+		
+		if(!matcher.find()) {
+			return null;
+		}
+		
+		return matcher.group(1);
+	}
+
+	private void readLoop() {
+		this.readThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while(true) {
+						String line = reader.readLine();
+						
+						if(line == null) {
+							System.err.println("Engine input stream closed");
+							exitEngine();
+							return;
+						}
+						
+						handleEngineOutput(line);
+					}
+				} catch(IOException e) {
+					e.printStackTrace();
+					exitEngine();
+				}
+			}
+		});
+		
+		readThread.setDaemon(true);
+		readThread.start();
+	}
+	
+	private void readErrLoop() {
+		this.readErrThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while(true) {
+						String line = errReader.readLine();
+						
+						if(line == null) {
+							System.err.println("Engine error stream closed");
+							exitEngine();
+							return;
+						}
+						
+						System.err.println("Engine error: " + line);
+					}
+				} catch(IOException e) {
+					e.printStackTrace();
+					exitEngine();
+				}
+			}
+		});
+		
+		readErrThread.setDaemon(true);
+		readErrThread.start();
+	}
+	
+	public void newGame() {
+		// A ucinewgame command is already sent with each position.
+	}
+	
+	public void dispose() {
+		exitEngine();
+	}
+}
\ No newline at end of file
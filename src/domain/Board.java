@@ -3,40 +3,64 @@ package domain;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import util.GSubCallback;
+import domain.bitboard.Bitboard;
+import domain.bitboard.BitboardPosition;
+import domain.bitboard.MoveGenerator;
+import domain.bitboard.PackedMove;
+import domain.bitboard.PgnMoveDecoder;
+import domain.bitboard.PgnMoveEncoder;
 import domain.pieces.*;
 
+/**
+ * A chess position. This class is immutable, and the pieces and state are stored in a BitboardPosition
+ * that is copied on each change.
+ */
 public class Board {
-	private Piece[][] pieces = new Piece[8][8];
-	private Side toPlay = Side.WHITE;
-	private Castling castling = new Castling();
-	private Square enPassant = null;
-	private int halfMoves = 0;
-	private int fullMoves = 1;
+	// Shared piece instances indexed by getPieceIndex(), so that getPiece() doesn't allocate.
+	private static final Piece[] PIECES = new Piece[2 * 6 * 64];
+	
+	static {
+		for(Side side:Side.values()) {
+			for(PieceType type:PieceType.values()) {
+				for(int square = 0; square < 64; square++) {
+					PIECES[getPieceIndex(type, side, square)] = createPiece(type, side, Square.fromIndex(square));
+				}
+			}
+		}
+	}
+	
+	private final BitboardPosition position;
 	
 	/**
 	 * Create a new board in the initial position.
 	 */
 	public Board() {
-		this.pieces = parsePieces("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR");
+		this.position = new BitboardPosition();
+		parsePieces(position, "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR");
+		position.setCastling(new Castling().getBits());
 	}
 
 	/**
 	 * Create a new board as a copy of another one.
 	 */
 	public Board(Board board) {
-		for(int x = 0; x < 8; x++) {
-			for(int y = 0; y < 8; y++) {
-				this.pieces[x][y] = board.pieces[x][y];
-			}
-		}
-		this.toPlay = board.toPlay;
-		this.castling = board.castling;
-		this.enPassant = board.enPassant;
-		this.halfMoves = board.halfMoves;
-		this.fullMoves = board.fullMoves;
+		this.position = new BitboardPosition(board.position);
+	}
+	
+	/**
+	 * Create a new board as a copy of a bitboard position.
+	 */
+	Board(BitboardPosition position) {
+		this.position = new BitboardPosition(position);
+	}
+	
+	/**
+	 * Returns the underlying position, which shouldn't be modified.
+	 */
+	BitboardPosition getPosition() {
+		return position;
 	}
 	
 	/**
@@ -44,10 +68,10 @@ public class Board {
 	 */
 	public Board resetCounters() {
 		Board board = new Board(this);
-		board.castling = new Castling();
-		board.enPassant = null;
-		board.halfMoves = 0;
-		board.fullMoves = 1;
+		board.position.setCastling(new Castling().getBits());
+		board.position.setEnPassant(-1);
+		board.position.setHalfMoves(0);
+		board.position.setFullMoves(1);
 		
 		return board;
 	}
@@ -57,7 +81,7 @@ public class Board {
 	 */
 	public Board setCastling(String castling) {
 		Board board = new Board(this);
-		board.castling = new Castling(castling);
+		board.position.setCastling(new Castling(castling).getBits());
 		return board;
 	}
 	
@@ -67,20 +91,21 @@ public class Board {
 	 */
 	public Board makeMove(Move move) throws IllegalMoveException {
 		Board next = new Board(this);
+		Side toPlay = getSideToPlay();
 		
 		if(move.isNullMove()) {
-			next.toPlay = next.toPlay.otherSide();
-			if(next.toPlay == Side.WHITE) {
-				next.fullMoves++;
+			next.position.setSideToPlay(toPlay.otherSide());
+			if(toPlay == Side.BLACK) {
+				next.position.setFullMoves(getFullMoves() + 1);
 			}
-			next.enPassant = null;
-			if(next.isCheck(this.toPlay)) {
+			next.position.setEnPassant(-1);
+			if(next.isCheck(toPlay)) {
 				throw new IllegalMoveException("King is in check.");
 			}
 			return next;
 		}
 		
-		Piece piece = getMovingPiece(move);
+		PieceType pieceType = getMovingPieceType(move);
 		Square from = move.getFrom();
 		Square to = move.getTo();
 		
@@ -92,103 +117,82 @@ public class Board {
 			capture = false;
 		}
 
-		next.castling = next.castling.nextCastling(this, move);
-		next.toPlay = next.toPlay.otherSide();
-		next.enPassant = null;
+		next.position.setCastling(Castling.nextCastling(position, from.getIndex(), to.getIndex()));
+		next.position.setSideToPlay(toPlay.otherSide());
+		next.position.setEnPassant(-1);
 		
 		// Update half-move counter depending on pawn move or capture.
-		if(capture || piece.getPieceType() == PieceType.PAWN) {
-			next.halfMoves = 0;
+		if(capture || pieceType == PieceType.PAWN) {
+			next.position.setHalfMoves(0);
 		} else {
-			next.halfMoves = halfMoves + 1;
+			next.position.setHalfMoves(position.getHalfMoves() + 1);
 		}
 		
 		// Update full move counter.
-		if(next.toPlay == Side.WHITE) {
-			next.fullMoves++;
+		if(toPlay == Side.BLACK) {
+			next.position.setFullMoves(getFullMoves() + 1);
 		}
 		
 		// Update en-passant for next move.
-		if(piece.getPieceType() == PieceType.PAWN) {
+		if(pieceType == PieceType.PAWN) {
 			if(Math.abs(from.getY() - to.getY()) == 2) {
-				next.enPassant = new Square(from.getX(), (from.getY() + to.getY()) / 2);
-			} else {
-				next.enPassant = null;
+				next.position.setEnPassant(Bitboard.square(from.getX(), (from.getY() + to.getY()) / 2));
 			}
 		}
 		
 		// Promotions.
 		if(move.getPromote() != null) {
-			Piece promotedPiece = null;
-			if(move.getPromote() == PromotionChoice.QUEEN) promotedPiece = new Queen(move.getTo(), this.toPlay);
-			if(move.getPromote() == PromotionChoice.ROOK) promotedPiece = new Rook(move.getTo(), this.toPlay);
-			if(move.getPromote() == PromotionChoice.KNIGHT) promotedPiece = new Knight(move.getTo(), this.toPlay);
-			if(move.getPromote() == PromotionChoice.BISHOP) promotedPiece = new Bishop(move.getTo(), this.toPlay);
-			next.pieces[move.getTo().getX()][move.getTo().getY()] = promotedPiece;
+			next.position.setPiece(to.getIndex(), getPromotedPieceType(move.getPromote()), toPlay);
 		}
 		
-		if(next.isCheck(this.toPlay)) {
+		if(next.isCheck(toPlay)) {
 			throw new IllegalMoveException("King is in check.");
 		}
 		
 		return next;
 	}
 	
+	private static PieceType getPromotedPieceType(PromotionChoice promote) {
+		if(promote == PromotionChoice.ROOK) return PieceType.ROOK;
+		if(promote == PromotionChoice.KNIGHT) return PieceType.KNIGHT;
+		if(promote == PromotionChoice.BISHOP) return PieceType.BISHOP;
+		return PieceType.QUEEN;
+	}
+	
 	private void performCastling(Board next, Move move) throws IllegalMoveException {
 		Square from = move.getFrom();
 		Square to = move.getTo();
+		Side toPlay = getSideToPlay();
 		
 		int y = from.getY();
 		int d = (to.getX() == 6) ? 1 : -1;
 		
 		// Check castling rights.
-		if(!castling.allowedCastle(this, toPlay, move)) {
+		int rookSquare = Castling.getCastlingRook(position, toPlay, from.getIndex(), d);
+		if(rookSquare == -1) {
 			throw new IllegalMoveException("Can't castle. Piece already moved.");
 		}
 		
-		// Find rook.
-		Piece rook = null;
-		for(int a = from.getX(); a >= 0 && a <= 7; a += d) {
-			Piece piece = getPiece(new Square(a, y));
-			if(piece != null && piece.getPieceType() == PieceType.ROOK) {
-				rook = piece;
-				break;
-			}
-		}
+		int rookDestination = Bitboard.square(to.getX() - d, y);
 		
-		if(rook == null) {
-			throw new IllegalMoveException("No rook to castle with");
-		}
-		
-		// Check for king moving through check.
-		for(int a = Math.min(to.getX(), from.getX()); a <= Math.max(to.getX(), from.getX()); a++) {
-			if(this.isAttacked(new Square(a, y), toPlay.otherSide())) {
-				throw new IllegalMoveException("King starts, moves or ends in check.");
-			}
-		}
-
-		// Check for occupied destination square for king.
-		if(!rook.getSquare().equals(to) && !from.equals(to) && getPiece(to) != null) {
+		// Check for pieces between the king and rook and their destination squares.
+		if(MoveGenerator.isCastlingBlocked(position, from.getIndex(), rookSquare, to.getIndex(), rookDestination)) {
 			throw new IllegalMoveException("Blocked by occupied squares");
 		}
 		
-		// Check for occupied destination square for rook.
-		Square rookDestination = new Square(to.getX() - d, y);
-		Piece rookDestinationPiece = getPiece(rookDestination);
-		if(rookDestinationPiece != null) {
-			if(!rookDestinationPiece.getSquare().equals(to) && rookDestinationPiece.getPieceType() != PieceType.KING) {
-				throw new IllegalMoveException("Blocked by occupied squares");
-			}
+		// Check for king moving through check.
+		if(MoveGenerator.isCastlingThroughCheck(position, toPlay, from.getIndex(), rookSquare, to.getIndex())) {
+			throw new IllegalMoveException("King starts, moves or ends in check.");
 		}
 		
 		// Move pieces.
-		Piece king = getPiece(from);
-		next.pieces[king.getSquare().getX()][king.getSquare().getY()] = null;
-		next.pieces[rook.getSquare().getX()][rook.getSquare().getY()] = null;
-		king = king.setSquare(to);
-		rook = rook.setSquare(rookDestination);
-		next.pieces[king.getSquare().getX()][king.getSquare().getY()] = king;
-		next.pieces[rook.getSquare().getX()][rook.getSquare().getY()] = rook;
+		PieceType kingType = position.getPieceType(from.getIndex());
+		Side kingSide = position.getSide(from.getIndex());
+		Side rookSide = position.getSide(rookSquare);
+		next.position.clearPiece(from.getIndex());
+		next.position.clearPiece(rookSquare);
+		next.position.setPiece(to.getIndex(), kingType, kingSide);
+		next.position.setPiece(rookDestination, PieceType.ROOK, rookSide);
 	}
 
 	public Board makePgnMove(String pgnMove) throws IllegalMoveException {
@@ -196,203 +200,42 @@ public class Board {
 	}
 	
 	public Move getPgnMove(String pgnMove) throws IllegalMoveException {
-		if(pgnMove.matches("(?x) [oO0] - [oO0] (-[oO0])? [!?+\\#]*")) {
-			// Castling moves. Move the king to the destination square.
-			int fromX = -1;
-			int y = (toPlay == Side.WHITE) ? 7 : 0;
-			for(int a = 0; a < 8; a++) {
-				Piece piece = getPiece(new Square(a, y));
-				if(piece != null && piece.getPieceType() == PieceType.KING) {
-					fromX = a;
-				}
-			}
-			
-			if(fromX == -1) throw new IllegalMoveException("Invaid pgn move: " + pgnMove);
-
-			boolean kingside = !pgnMove.matches("[oO0]-[oO0]-[oO0].*");
-			
-			return new Move(new Square(fromX, y), new Square(kingside ? 6 : 2, y), true);
-		} else {
-			// Other moves.
-			Pattern pattern = Pattern.compile("(?x) ^ ([RNBQK]?) ([a-h]?[1-8]?) x? ([a-h][1-8]) ((?:=[QNBRqnbr])?) ([!?+\\#]*) $");
-			Matcher matcher = pattern.matcher(pgnMove);
-			
-			if(!matcher.find()) throw new IllegalMoveException("Invalid pgn move: " + pgnMove);
-			
-			String piece = matcher.group(1).toLowerCase();
-			String ambiguity = matcher.group(2).toLowerCase();
-			String to = matcher.group(3).toLowerCase();
-			String promotion = matcher.group(4).toLowerCase();
-			String annotation = matcher.group(5);
-			
-			if(piece.length() == 0) piece = "p";
-			
-			List<Move> moves = new ArrayList<Move>();
-			for(Move move:getPossibleMoves()) {
-				if(matchesPgnMove(move, piece, ambiguity, to, promotion, annotation)) {
-					try {
-						makeMove(move);
-						
-						moves.add(move);
-					} catch(IllegalMoveException e) {
-						// Don't add move.
-					}
-				}
-			}
-			
-			if(moves.size() != 1) throw new IllegalMoveException("Invalid pgn move: " + pgnMove + ". " + moves.size() + " matching moves.");
-			
-			return moves.get(0);
-		}
-	}
-	
-	/**
-	 * Returns whether a move matches the move text from a pgn file.
-	 */
-	private boolean matchesPgnMove(Move move, String piece, String ambiguity, String to, String promotion, String annotation) {
-		Piece p = getMovingPiece(move);
-		
-		if(!p.getAlgebraicName().equalsIgnoreCase(piece)) return false;
-		if(!move.getTo().equals(new Square(to))) return false;
-		
-		for(char c:ambiguity.toCharArray()) {
-			if(Character.isDigit(c)) {
-				int y = 8 - (c - '0');
-				if(move.getFrom().getY() != y) return false;
-			} else {
-				int x = c - 'a';
-				if(move.getFrom().getX() != x) return false;
-			}
-		}
-		
-		if(promotion.length() > 0) {
-			if(move.getPromote() == null) return false;;
-			if(!String.valueOf(move.getPromote().getAlgebraic()).equals(promotion.substring(1))) return false;
-		} else {
-			if(move.getPromote() != null) return false;
-		}
-		
-		return true;
+		return PackedMove.toMove(PgnMoveDecoder.decode(position, pgnMove));
 	}
 	
 	/**
 	 * Return a move from this position as a pgn move (algebraic notation). 
 	 */
 	public String getMoveAsPgn(Move move) throws IllegalMoveException {
-		if(move.isNullMove()) {
-			return "-";
-		}
-		
-		Square from = move.getFrom();
-		Square to = move.getTo();
-		Piece piece = getPiece(from);
-		
-		if(piece == null) throw new IllegalMoveException("Can't find piece.");
-		
-		// Get ambiguous ranks and files (check for moves with pieces of the same type, side and destination square).
-		String ambiguity = "";
-		if(piece.getPieceType() != PieceType.PAWN) {
-			for(Move otherMove:getPossibleMoves()) {
-				if(otherMove.equals(move)) continue;
-				
-				Square otherFrom = otherMove.getFrom();
-				Square otherTo = otherMove.getTo();
-				
-				if(getPiece(otherFrom).getSide() == piece.getSide() && getPiece(otherFrom).getPieceType() == piece.getPieceType()) {
-					if(otherTo.equals(to)) {
-						if(otherFrom.getX() != from.getX()) {
-							ambiguity += from.getFile();
-						} else if(otherFrom.getY() != from.getY()) {
-							ambiguity += from.getRank();
-						}
-					}
-				}
-			}
-			
-			if(ambiguity.length() > 1) {
-				ambiguity = String.valueOf(from.getFile()) + String.valueOf(from.getRank());
-			}
-		}
-		
-		// Check for capture.
-		String capture = "";
-		if(getPiece(to) != null) {
-			capture = "x";
-		}
-		// Check for pawn captures (including en-passant).
-		if(piece.getPieceType() == PieceType.PAWN && from.getX() != to.getX()) {
-			capture = "x";
-		}
-		
-		// Get piece name, and alter if it is a pawn.
-		String pieceName = piece.getAlgebraicName().toUpperCase();
-		if(piece.getPieceType() == PieceType.PAWN) {
-			if(capture.isEmpty()) {
-				// Pawn move with no capture - don't give piece name.
-				pieceName = "";
-			} else {
-				// Pawn move with capture - add from file name.
-				pieceName = String.valueOf(from.getFile());
-			}
-		}
-		
-		// Get promotion text.
-		String promotion = "";
-		if(move.getPromote() != null) {
-			promotion = "=" + Character.toUpperCase(move.getPromote().getAlgebraic());
-		}
-
-		// Check for check and checkmate.
-		Board board = new Board(this);
-		board = board.makeMove(move);
-		String annotation = "";
-		if(board.isCheckmate()) {
-			annotation = "#";
-		} else if(board.isCheck(board.toPlay)) {
-			annotation = "+";
-		}
-		
-		// Handle castling.
-		if(move.getCastling()) {
-			if(to.getX() == 6) {
-				return "O-O" + annotation;
-			} else {
-				return "O-O-O" + annotation;
-			}
-		}
-		
-		// Return combined pgn text.
-		return pieceName + ambiguity + capture + to + promotion + annotation;
+		return PgnMoveEncoder.encode(position, PackedMove.fromMove(position, move));
 	}
 	
 	/**
-	 * Return the piece that a move moves.
+	 * Return the type of the piece that a move moves, or null if there isn't one.
 	 */
-	private Piece getMovingPiece(Move move) {
-		Square from = move.getFrom();
-		
-		return pieces[from.getX()][from.getY()];
+	private PieceType getMovingPieceType(Move move) {
+		return position.getPieceType(move.getFrom().getIndex());
 	}
 	
 	/**
 	 * Moves a piece from 'from' to 'to'. Returns true if there's been a capture.
 	 */
 	private boolean movePiece(Square from, Square to) throws IllegalMoveException {
-		Piece piece = pieces[from.getX()][from.getY()];
-		if(piece == null) throw new IllegalMoveException("No piece on from square: " + from);
-		piece = piece.setSquare(to);
+		PieceType type = position.getPieceType(from.getIndex());
+		if(type == null) throw new IllegalMoveException("No piece on from square: " + from);
+		Side side = position.getSide(from.getIndex());
 		
-		boolean capture = (pieces[to.getX()][to.getY()] != null);
+		boolean capture = position.isOccupied(to.getIndex());
 		
-		if(piece.getPieceType() == PieceType.PAWN) {
+		if(type == PieceType.PAWN) {
 			// Remove piece from en-passant capture.
-			if(pieces[to.getX()][to.getY()] == null) {
-				pieces[to.getX()][from.getY()] = null;
+			if(!capture) {
+				position.clearPiece(Bitboard.square(to.getX(), from.getY()));
 			}
 		}
 		
-		pieces[to.getX()][to.getY()] = piece;
-		pieces[from.getX()][from.getY()] = null;
+		position.setPiece(to.getIndex(), type, side);
+		position.clearPiece(from.getIndex());
 		
 		return capture;
 	}
@@ -414,30 +257,32 @@ public class Board {
 		String[] split = fen.split(" ");
 		if(split.length != 4 && split.length != 6) throw new IllegalArgumentException("Invalid FEN: Expected 4 or 6 parts. Got " + split.length);
 		
-		this.pieces = parsePieces(split[0]);
+		this.position = new BitboardPosition();
 		
-		this.toPlay = split[1].equalsIgnoreCase("w") ? Side.WHITE : Side.BLACK;
+		parsePieces(position, split[0]);
 		
-		this.castling = new Castling(split[2]);
+		position.setSideToPlay(split[1].equalsIgnoreCase("w") ? Side.WHITE : Side.BLACK);
 		
-		this.enPassant = (split[3].equals("-")) ? null : new Square(split[3]);
+		position.setCastling(new Castling(split[2]).getBits());
+		
+		position.setEnPassant((split[3].equals("-")) ? -1 : new Square(split[3]).getIndex());
 		
 		if(split.length > 4) {
 			try {
-				this.halfMoves = Integer.parseInt(split[4]);
+				position.setHalfMoves(Integer.parseInt(split[4]));
 			} catch(NumberFormatException e) {
-				throw new IllegalArgumentException("Invalid FEN: halfMoves is not an integer: " + halfMoves);
+				throw new IllegalArgumentException("Invalid FEN: halfMoves is not an integer: " + split[4]);
 			}
 			
 			try {
-				this.fullMoves = Integer.parseInt(split[5]);
+				position.setFullMoves(Integer.parseInt(split[5]));
 			} catch(NumberFormatException e) {
-				throw new IllegalArgumentException("Invalid FEN: fullMoves is not an integer: " + halfMoves);
+				throw new IllegalArgumentException("Invalid FEN: fullMoves is not an integer: " + split[5]);
 			}
 		} else {
 			// Set default values for last two missing parameters.
-			this.halfMoves = 0;
-			this.fullMoves = 1;
+			position.setHalfMoves(0);
+			position.setFullMoves(1);
 		}
 		
 		if(!validPosition()) {
@@ -445,9 +290,7 @@ public class Board {
 		}
 	}
 
-	private Piece[][] parsePieces(String piecesFen) {
-		Piece[][] pieces = new Piece[8][8];
-		
+	private static void parsePieces(BitboardPosition position, String piecesFen) {
 		String[] ranks = piecesFen.split("/");
 		if(ranks.length != 8) throw new IllegalArgumentException("Invalid FEN: Expected 8 ranks. Got " + ranks.length);
 		
@@ -462,13 +305,14 @@ public class Board {
 					x += c - '0';
 				} else {
 					Side side = (Character.isLowerCase(c) ? Side.BLACK : Side.WHITE);
+					int square = Bitboard.square(x, y);
 					
-					if(Character.toLowerCase(c) == 'p') pieces[x][y] = new Pawn(new Square(x, y), side);
-					else if(Character.toLowerCase(c) == 'r') pieces[x][y] = new Rook(new Square(x, y), side);
-					else if(Character.toLowerCase(c) == 'n') pieces[x][y] = new Knight(new Square(x, y), side);
-					else if(Character.toLowerCase(c) == 'b') pieces[x][y] = new Bishop(new Square(x, y), side);
-					else if(Character.toLowerCase(c) == 'q') pieces[x][y] = new Queen(new Square(x, y), side);
-					else if(Character.toLowerCase(c) == 'k') pieces[x][y] = new King(new Square(x, y), side);
+					if(Character.toLowerCase(c) == 'p') position.setPiece(square, PieceType.PAWN, side);
+					else if(Character.toLowerCase(c) == 'r') position.setPiece(square, PieceType.ROOK, side);
+					else if(Character.toLowerCase(c) == 'n') position.setPiece(square, PieceType.KNIGHT, side);
+					else if(Character.toLowerCase(c) == 'b') position.setPiece(square, PieceType.BISHOP, side);
+					else if(Character.toLowerCase(c) == 'q') position.setPiece(square, PieceType.QUEEN, side);
+					else if(Character.toLowerCase(c) == 'k') position.setPiece(square, PieceType.KING, side);
 					else throw new IllegalArgumentException("Invalid FEN: Character is not a piece: " + c);
 					
 					
@@ -477,54 +321,61 @@ public class Board {
 				i += 1;
 			}
 		}
-		
-		return pieces;
 	}
 
 	/**
 	 * Returns the FEN string for the current position.
 	 */
 	public String getFen() {
-		String pieces = piecesToString(this.pieces, true);
+		String pieces = piecesToString(true);
 		
-		String toPlay = this.toPlay.toString();
+		String toPlay = getSideToPlay().toString();
 		
-		String castling = this.castling.toString();
+		String castling = getCastling().toString();
 		
-		String enPassant = (this.enPassant == null) ? "-" : this.enPassant.toString();
+		String enPassant = (getEnPassant() == null) ? "-" : getEnPassant().toString();
 		
-		String halfMoves = String.valueOf(this.halfMoves);
+		String halfMoves = String.valueOf(position.getHalfMoves());
 		
-		String fullMoves = String.valueOf(this.fullMoves);
+		String fullMoves = String.valueOf(position.getFullMoves());
 		
 		return pieces + " " + toPlay + " " + castling + " " + enPassant + " " + halfMoves + " " + fullMoves;
 	}
 	
 	public int getFullMoves() {
-		return fullMoves;
+		return position.getFullMoves();
 	}
 	
 	/**
-	 * Returns a string uniquely identifying a position, without the move count. This runs more quickly than
+	 * Returns a string uniquely identifying a position, including the move counters. This runs more quickly than
 	 * getFen().
 	 */
 	public String getPositionDatabaseString() {
-		String pieces = piecesToString(this.pieces, false);
+		String pieces = piecesToString(false);
 		
-		String toPlay = this.toPlay.toString();
+		String toPlay = getSideToPlay().toString();
 		
-		String castling = this.castling.toString();
+		String castling = getCastling().toString();
 		
-		String enPassant = (this.enPassant == null) ? "-" : this.enPassant.toString();
+		String enPassant = (getEnPassant() == null) ? "-" : getEnPassant().toString();
 		
-		return pieces + " " + toPlay + " " + castling + " " + enPassant + " " + halfMoves + " " + fullMoves;
+		return pieces + " " + toPlay + " " + castling + " " + enPassant + " " + position.getHalfMoves() + " " + position.getFullMoves();
 	}
 
+	/**
+	 * Returns a 64-bit Zobrist key for the position, which is the same for positions with the same pieces, side
+	 * to play, castling rights and en-passant square. Unlike getPositionDatabaseString(), it doesn't include the
+	 * move counters, so transpositions have the same key.
+	 */
+	public long getPositionKey() {
+		return position.getKey();
+	}
+	
 	/**
 	 * Return pieces part of an FEN string. If compressed is true, replaces consecutive blank squares with numbers,
 	 * otherwise uses '1' for every blank square.
 	 */
-	private String piecesToString(Piece[][] pieces, boolean compressed) {
+	private String piecesToString(boolean compressed) {
 		StringBuilder rows = new StringBuilder();
 		
 		for(int y = 0; y < 8; y++) {
@@ -533,12 +384,7 @@ public class Board {
 			StringBuilder row = new StringBuilder();
 			
 			for(int x = 0; x < 8; x++) {
-				Piece piece = pieces[x][y];
-				if(piece == null) {
-					row.append("1");
-				} else {
-					row.append(piece.getAlgebraicName());
-				}
+				row.append(getPieceCharacter(Bitboard.square(x, y), '1'));
 			}
 			
 			if(compressed) {
@@ -578,24 +424,42 @@ public class Board {
 		List<Move> moves = new ArrayList<Move>();
 		
 		// Other moves.
-		for(Piece piece:getActivePieces(toPlay)) {
+		for(Piece piece:getActivePieces(getSideToPlay())) {
 			moves.addAll(piece.getPossibleMoves(this));
 		}
 		
 		return moves;
 	}
 	
+	/**
+	 * Returns the legal moves from this position, including castling and en-passant.
+	 */
+	public List<Move> getLegalMoves() {
+		int[] legalMoves = new int[MoveGenerator.MAX_MOVES];
+		int count = MoveGenerator.generateLegalMoves(position, legalMoves);
+		
+		List<Move> moves = new ArrayList<Move>(count);
+		for(int i = 0; i < count; i++) {
+			moves.add(PackedMove.toMove(legalMoves[i]));
+		}
+		return moves;
+	}
+	
+	/**
+	 * Writes the legal moves from this position into a buffer as PackedMove values, and returns the number
+	 * of moves. The buffer needs room for MoveGenerator.MAX_MOVES.
+	 */
+	public int getLegalMoves(int[] moves) {
+		return MoveGenerator.generateLegalMoves(position, moves);
+	}
+	
 	private List<Piece> getActivePieces(Side side) {
 		List<Piece> list = new ArrayList<Piece>();
-		for(int y = 0; y < 8; y++) {
-			for(int x = 0; x < 8; x++) {
-				Piece p = pieces[x][y];
-				if(p != null) {
-					if(side == null || p.getSide() == side) {
-						list.add(p);
-					}
-				}
-			}
+		long pieces = (side == null) ? position.getOccupied() : position.getPieces(side);
+		while(pieces != 0) {
+			int square = Bitboard.first(pieces);
+			pieces &= pieces - 1;
+			list.add(getPiece(square));
 		}
 		return list;
 	}
@@ -604,17 +468,80 @@ public class Board {
 	 * Returns the piece on a square, or null if it is empty.
 	 */
 	public Piece getPiece(Square square) {
-		int x = square.getX();
-		int y = square.getY();
+		return getPiece(square.getIndex());
+	}
+	
+	private Piece getPiece(int square) {
+		PieceType type = position.getPieceType(square);
+		if(type == null) return null;
+		
+		return PIECES[getPieceIndex(type, position.getSide(square), square)];
+	}
+	
+	private static int getPieceIndex(PieceType type, Side side, int square) {
+		return (side.ordinal() * 6 + type.ordinal()) * 64 + square;
+	}
+	
+	private static Piece createPiece(PieceType type, Side side, Square square) {
+		if(type == PieceType.PAWN) return new Pawn(square, side);
+		if(type == PieceType.KNIGHT) return new Knight(square, side);
+		if(type == PieceType.ROOK) return new Rook(square, side);
+		if(type == PieceType.BISHOP) return new Bishop(square, side);
+		if(type == PieceType.QUEEN) return new Queen(square, side);
+		if(type == PieceType.KING) return new King(square, side);
 		
-		return pieces[x][y];
+		throw new IllegalArgumentException("Invalid piece type");
+	}
+	
+	/**
+	 * Returns the algebraic character for the piece on a square (uppercase for white), or blank if it is empty.
+	 */
+	private char getPieceCharacter(int square, char blank) {
+		PieceType type = position.getPieceType(square);
+		if(type == null) return blank;
+		
+		char c = type.getAlgebraic();
+		return (position.getSide(square) == Side.WHITE) ? Character.toUpperCase(c) : c;
 	}
 	
 	/**
 	 * Returns the square that can be the target square for an en-passant capture, or null.
 	 */
 	public Square getEnPassant() {
-		return enPassant;
+		int square = position.getEnPassant();
+		return (square == -1) ? null : Square.fromIndex(square);
+	}
+	
+	/**
+	 * Returns the squares occupied by a side as a bitboard, numbered as in Square.getIndex().
+	 */
+	public long getBitboard(Side side) {
+		return position.getPieces(side);
+	}
+	
+	/**
+	 * Returns the squares occupied by a piece type of one side as a bitboard, numbered as in Square.getIndex().
+	 */
+	public long getBitboard(PieceType type, Side side) {
+		return position.getPieces(type, side);
+	}
+	
+	/**
+	 * Returns the squares occupied by any piece as a bitboard, numbered as in Square.getIndex().
+	 */
+	public long getOccupiedBitboard() {
+		return position.getOccupied();
+	}
+	
+	private Castling getCastling() {
+		return new Castling(position.getCastling());
+	}
+	
+	/**
+	 * Returns the castling rights packed as in Castling.getBits().
+	 */
+	int getCastlingBits() {
+		return position.getCastling();
 	}
 
 	/**
@@ -624,16 +551,7 @@ public class Board {
 		System.out.println("FEN: " + getFen());
 		for(int y = 0; y < 8; y++) {
 			for(int x = 0; x < 8; x++) {
-				Piece p = pieces[x][y];
-				if(p == null) {
-					System.out.print(".");
-				} else {
-					if(p.getSide() == Side.WHITE) {
-						System.out.print(p.getAlgebraicName().toUpperCase());
-					} else {
-						System.out.print(p.getAlgebraicName());
-					}
-				}
+				System.out.print(getPieceCharacter(Bitboard.square(x, y), '.'));
 			}
 			System.out.println();
 		}
@@ -662,77 +580,33 @@ public class Board {
 	 * Return whether the side to move has been checkmated.
 	 */
 	public boolean isCheckmate() {
-		Piece king = getKing(toPlay);
-		
-		if(king == null) {
-			return false;
-		}
-		
-		if(!isAttacked(king.getSquare(), toPlay.otherSide())) {
+		if(!isCheck(getSideToPlay())) {
 			return false;
 		}
 		
-		for(Move move:getPossibleMoves()) {
-			Board next = new Board(this);
-			try {
-				next = next.makeMove(move);
-				king = next.getKing(toPlay);
-				if(!next.isAttacked(king.getSquare(), toPlay.otherSide())) {
-					return false;
-				}
-			} catch (IllegalMoveException e) {
-				// Try another move.
-			}
-		}
-		
-		return true;
+		return MoveGenerator.generateLegalMoves(position, new int[MoveGenerator.MAX_MOVES]) == 0;
 	}
 	
 	/**
 	 * Return whether a square is being attacked by a side.
 	 */
 	private boolean isAttacked(Square square, Side side) {
-		for(Piece piece:getActivePieces(side)) {
-			for(Move move:piece.getPossibleMoves(this)) {
-				// Skip pawn moves that are not captures.
-				if(piece.getPieceType() == PieceType.PAWN) {
-					if(move.getFrom().getFile() == (move.getTo().getFile())) {
-						continue;
-					}
-				}
-				
-				// Skip castling moves.
-				if(piece.getPieceType() == PieceType.KING) {
-					if(Math.abs(move.getFrom().getX() - move.getTo().getX()) == 2) {
-						continue;
-					}
-				}
-				
-				if(move.getTo().equals(square)) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return position.isAttacked(square.getIndex(), side);
 	}
 	
 	/**
 	 * Returns the king for a side.
 	 */
 	private Piece getKing(Side side) {
-		for(Piece piece:getActivePieces(side)) {
-			if(piece.getPieceType() == PieceType.KING) {
-				return piece;
-			}
-		}
-		return null;
+		int square = position.getKingSquare(side);
+		return (square == -1) ? null : getPiece(square);
 	}
 
 	/**
 	 * Returns the side to play in the current position. Either Side.WHITE, or Side.BLACK.
 	 */
 	public Side getSideToPlay() {
-		return toPlay;
+		return position.getSideToPlay();
 	}
 	
 	@Override
@@ -740,13 +614,18 @@ public class Board {
 		if(other == null || other.getClass() != Board.class) return false;
 		Board otherBoard = (Board)other;
 		
-		return otherBoard.getFen().equals(getFen());
+		return otherBoard.position.equals(position);
+	}
+	
+	@Override
+	public int hashCode() {
+		return position.hashCode();
 	}
 
 	public Board clearPiece(Square square) {
 		Board board = new Board(this);
 		
-		board.pieces[square.getX()][square.getY()] = null;
+		board.position.clearPiece(square.getIndex());
 		
 		return board;
 	}
@@ -754,19 +633,11 @@ public class Board {
 	public Board placePiece(Square square, PieceType type, Side side) {
 		Board board = new Board(this);
 		
-		Piece piece = null;
-		if(type == PieceType.PAWN) piece = new Pawn(square, side);
-		if(type == PieceType.KNIGHT) piece = new Knight(square, side);
-		if(type == PieceType.ROOK) piece = new Rook(square, side);
-		if(type == PieceType.BISHOP) piece = new Bishop(square, side);
-		if(type == PieceType.QUEEN) piece = new Queen(square, side);
-		if(type == PieceType.KING) piece = new King(square, side);
-		
-		if(piece == null) {
+		if(type == null) {
 			throw new IllegalArgumentException("Invalid piece type");
 		}
 		
-		board.pieces[square.getX()][square.getY()] = piece;
+		board.position.setPiece(square.getIndex(), type, side);
 		
 		return board;
 	}
@@ -774,7 +645,7 @@ public class Board {
 	public Board setSideToPlay(Side side) {
 		Board board = new Board(this);
 		
-		board.toPlay = side;
+		board.position.setSideToPlay(side);
 		
 		return board;
 	}
@@ -784,21 +655,14 @@ public class Board {
 	 */
 	public boolean validPosition() {
 		// Side not to move can't be in check.
-		if(isCheck(toPlay.otherSide())) return false;
+		if(isCheck(getSideToPlay().otherSide())) return false;
 		
 		for(Side side:Side.values()) {
-			List<Piece> pieces = getActivePieces(side);
-			
 			// No more than 16 pieces.
-			if(pieces.size() > 16) return false;
+			if(Long.bitCount(position.getPieces(side)) > 16) return false;
 			
 			for(PieceType type:PieceType.values()) {
-				int count = 0;
-				for(Piece piece:pieces) {
-					if(piece.getPieceType() == type) {
-						count++;
-					}
-				}
+				int count = Long.bitCount(position.getPieces(type, side));
 				
 				// No more than 10 Rooks, Knights, Bishops, or Queens.
 				if(count > 10) return false;
@@ -810,13 +674,8 @@ public class Board {
 				if(type == PieceType.KING && count != 1) return false;
 			}
 			
-			for(Piece piece:pieces) {
-				if(piece.getPieceType() == PieceType.PAWN) {
-					// No pawns on 1st or 8th rank.
-					int rank = piece.getSquare().getY();
-					if(rank == 0 || rank == 7) return false;
-				}
-			}
+			// No pawns on 1st or 8th rank.
+			if((position.getPieces(PieceType.PAWN, side) & (Bitboard.RANK_1 | Bitboard.RANK_8)) != 0) return false;
 		}
 		
 		return true;
@@ -0,0 +1,23 @@
+package domain;
+
+public class BookMove {
+	private Move move;
+	private int weight;
+	
+	public BookMove(Move move, int weight) {
+		this.move = move;
+		this.weight = weight;
+	}
+	
+	public Move getMove() {
+		return move;
+	}
+	
+	public int getWeight() {
+		return weight;
+	}
+	
+	public String toString() {
+		return move + " " + weight;
+	}
+}
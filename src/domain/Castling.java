@@ -1,255 +1,216 @@
 package domain;
 
-import java.util.Set;
-import java.util.TreeSet;
-
-import org.apache.commons.lang.StringUtils;
-
-import domain.pieces.Piece;
+import domain.bitboard.Bitboard;
+import domain.bitboard.BitboardPosition;
 import domain.pieces.PieceType;
 
 public class Castling {
-	private Set<Character> allowed = new TreeSet<>();
+	// Bits 0-7 are white rook files 'A'-'H', 8 and 9 are 'K' and 'Q', 10-17 are black rook files 'a'-'h',
+	// and 18 and 19 are 'k' and 'q'. This is also the order the characters are written in.
+	private static final int WHITE_BITS = 0x3ff;
+	private static final int BLACK_BITS = 0x3ff << 10;
+	
+	private int allowed = 0;
 	
 	public Castling() {
-		allowed.add('k');
-		allowed.add('q');
-		allowed.add('K');
-		allowed.add('Q');
+		add('k');
+		add('q');
+		add('K');
+		add('Q');
 	}
 	
 	public Castling(String castling) {
 		for(char c:castling.toCharArray()) {
-			allowed.add(c);
+			add(c);
 		}
 	}
 	
 	public Castling(Castling castling) {
-		this.allowed = new TreeSet<>(castling.allowed);
+		this.allowed = castling.allowed;
+	}
+	
+	/**
+	 * Create castling rights from bits returned by getBits().
+	 */
+	public Castling(int bits) {
+		this.allowed = bits;
+	}
+	
+	/**
+	 * Returns the castling rights packed into the low 20 bits of an int.
+	 */
+	public int getBits() {
+		return allowed;
 	}
 	
 	public String toString() {
-		return allowed.isEmpty() ? "-" : StringUtils.join(allowed, "");
+		if(allowed == 0) return "-";
+		
+		StringBuilder s = new StringBuilder();
+		for(int bit = 0; bit < 20; bit++) {
+			if((allowed & (1 << bit)) != 0) {
+				s.append(getCharacter(bit));
+			}
+		}
+		return s.toString();
+	}
+	
+	/**
+	 * Returns the bit for a castling character, or -1 if it isn't one.
+	 */
+	private static int getBit(char c) {
+		if(c >= 'A' && c <= 'H') return c - 'A';
+		if(c == 'K') return 8;
+		if(c == 'Q') return 9;
+		if(c >= 'a' && c <= 'h') return 10 + (c - 'a');
+		if(c == 'k') return 18;
+		if(c == 'q') return 19;
+		return -1;
+	}
+	
+	private static char getCharacter(int bit) {
+		if(bit < 8) return (char)('A' + bit);
+		if(bit == 8) return 'K';
+		if(bit == 9) return 'Q';
+		if(bit < 18) return (char)('a' + bit - 10);
+		if(bit == 18) return 'k';
+		return 'q';
 	}
 	
-	public Castling nextCastling(Board board, Move move) throws IllegalMoveException {
-		Castling next = new Castling(this);
-		Square from = move.getFrom();
-		Square to = move.getTo();
-		Square kingSquare = getPiece(board, PieceType.KING, board.getSideToPlay());
-		Piece piece = board.getPiece(move.getFrom());
+	private void add(char c) {
+		int bit = getBit(c);
+		if(bit >= 0) {
+			allowed |= (1 << bit);
+		}
+	}
+	
+	/**
+	 * Returns the castling bits after a move from one square to another in a position, before the move is made.
+	 */
+	public static int nextCastling(BitboardPosition position, int from, int to) {
+		int next = position.getCastling();
+		Side side = position.getSideToPlay();
+		PieceType piece = position.getPieceType(from);
 		
-		int backRank = (board.getSideToPlay() == Side.WHITE) ? 7 : 0;
+		int kingSquare = position.getKingSquare(side);
+		int kingX = (kingSquare == -1) ? -1 : Bitboard.getX(kingSquare);
 		
-		// Replace k, q, K, Q with a file name if a rook is moved to become the new outer rook on the back rank.
-		if(piece.getPieceType() == PieceType.ROOK && from.getY() != backRank && to.getY() == backRank) {
-			if(isOuterRook(board, to, board.getSideToPlay())) {
-				if(board.getSideToPlay() == Side.WHITE) {
-					if(from.getX() < kingSquare.getX() && allowed.contains('Q')) {
-						next.allowed.remove('Q');
-						next.allowed.add(Character.toUpperCase(getLeftmostRookFile(board, board.getSideToPlay(), backRank)));
-					}
-					if(from.getX() > kingSquare.getX() && allowed.contains('K')) {
-						next.allowed.remove('K');
-						next.allowed.add(Character.toUpperCase(getRightmostRookFile(board, board.getSideToPlay(), backRank)));
-					}
-				} else {
-					if(from.getX() < kingSquare.getX() && allowed.contains('q')) {
-						next.allowed.remove('q');
-						next.allowed.add(Character.toLowerCase(getLeftmostRookFile(board, board.getSideToPlay(), backRank)));
-					}
-					if(from.getX() > kingSquare.getX() && allowed.contains('k')) {
-						next.allowed.remove('k');
-						next.allowed.add(Character.toLowerCase(getRightmostRookFile(board, board.getSideToPlay(), backRank)));
-					}
+		int backRank = (side == Side.WHITE) ? 7 : 0;
+		int base = (side == Side.WHITE) ? 0 : 10;
+		int kingside = 1 << (base + 8);
+		int queenside = 1 << (base + 9);
+		
+		int fromX = Bitboard.getX(from);
+		int fromY = Bitboard.getY(from);
+		int toY = Bitboard.getY(to);
+		
+		long backRankRooks = position.getPieces(PieceType.ROOK, side) & (Bitboard.RANK_8 << (backRank * 8));
+		
+		// Replace k, q, K, Q with the file of the current outer rook if a rook is moved to become the new outer rook on the back rank.
+		if(piece == PieceType.ROOK && fromY != backRank && toY == backRank && isOuterRook(position, to, side)) {
+			if(fromX < kingX && (next & queenside) != 0) {
+				next &= ~queenside;
+				if(backRankRooks != 0) {
+					next |= 1 << (base + Bitboard.getX(Bitboard.first(backRankRooks)));
+				}
+			}
+			if(fromX > kingX && (next & kingside) != 0) {
+				next &= ~kingside;
+				if(backRankRooks != 0) {
+					next |= 1 << (base + Bitboard.getX(63 - Long.numberOfLeadingZeros(backRankRooks)));
 				}
 			}
 		}
 		
 		// Remove castling rights on one side if a rook has moved.
-		if(piece.getPieceType() == PieceType.ROOK && move.getFrom().getY() == backRank) {
-			if(board.getSideToPlay() == Side.WHITE) {
-				next.allowed.remove(Character.toUpperCase(piece.getSquare().getFile()));
-				if(isOuterRook(board, from, board.getSideToPlay())) {
-					if(from.getX() < kingSquare.getX()) next.allowed.remove('Q');
-					if(from.getX() > kingSquare.getX()) next.allowed.remove('K');
-				}
-			} else {
-				next.allowed.remove(Character.toLowerCase(piece.getSquare().getFile()));
-				if(isOuterRook(board, from, board.getSideToPlay())) {
-					if(from.getX() < kingSquare.getX()) next.allowed.remove('q');
-					if(from.getX() > kingSquare.getX()) next.allowed.remove('k');
-				}
+		if(piece == PieceType.ROOK && fromY == backRank) {
+			next &= ~(1 << (base + fromX));
+			if(isOuterRook(position, from, side)) {
+				if(fromX < kingX) next &= ~queenside;
+				if(fromX > kingX) next &= ~kingside;
 			}
 		}
-
+		
 		// Remove all castling rights for a side if the king has moved.
-		if(from.equals(kingSquare)) {
-			if(board.getSideToPlay() == Side.WHITE) {
-				next.allowed.removeIf(Character::isUpperCase);
-			} else {
-				next.allowed.removeIf(Character::isLowerCase);
-			}
+		if(from == kingSquare) {
+			next &= (side == Side.WHITE) ? ~WHITE_BITS : ~BLACK_BITS;
 		}
 		
 		// Replace file name with k, q, K, Q if a rook moves from the back rank leaving only one outside rook on a side.
-		if(piece.getPieceType() == PieceType.ROOK && from.getY() == backRank && to.getY() != backRank) {
-			String leftRooks = "";
-			String rightRooks = "";
-			for(int x = 0; x < 8; x++) {
-				if(x != move.getFrom().getX()) {
-					Piece foundPiece = board.getPiece(new Square(x, backRank));
-					if(foundPiece != null && foundPiece.getPieceType() == PieceType.ROOK && foundPiece.getSide() == board.getSideToPlay()) {
-						if(x < kingSquare.getX()) {
-							leftRooks += new Square(x, backRank).getFile();
-						} else {
-							rightRooks += new Square(x, backRank).getFile();
-						}
-					}
+		if(piece == PieceType.ROOK && fromY == backRank && toY != backRank) {
+			long rooks = backRankRooks & ~Bitboard.bit(from);
+			int leftRooks = 0;
+			int rightRooks = 0;
+			int leftX = -1;
+			int rightX = -1;
+			while(rooks != 0) {
+				int x = Bitboard.getX(Bitboard.first(rooks));
+				rooks &= rooks - 1;
+				if(x < kingX) {
+					leftRooks++;
+					leftX = x;
+				} else {
+					rightRooks++;
+					rightX = x;
 				}
 			}
 			
-			if(board.getSideToPlay() == Side.WHITE) {
-				if(leftRooks.length() == 1 && next.allowed.contains(Character.toUpperCase(leftRooks.charAt(0)))) {
-					next.allowed.add('Q');
-					next.allowed.remove(Character.toUpperCase(leftRooks.charAt(0)));
-				}
-				if(rightRooks.length() == 1 && next.allowed.contains(Character.toUpperCase(rightRooks.charAt(0)))) {
-					next.allowed.add('K');
-					next.allowed.remove(Character.toUpperCase(rightRooks.charAt(0)));
-				}
-			} else {
-				if(leftRooks.length() == 1 && next.allowed.contains(Character.toLowerCase(leftRooks.charAt(0)))) {
-					next.allowed.add('q');
-					next.allowed.remove(Character.toLowerCase(leftRooks.charAt(0)));
-				}
-				if(rightRooks.length() == 1 && next.allowed.contains(Character.toLowerCase(rightRooks.charAt(0)))) {
-					next.allowed.add('k');
-					next.allowed.remove(Character.toLowerCase(rightRooks.charAt(0)));
-				}
+			if(leftRooks == 1 && (next & (1 << (base + leftX))) != 0) {
+				next |= queenside;
+				next &= ~(1 << (base + leftX));
+			}
+			if(rightRooks == 1 && (next & (1 << (base + rightX))) != 0) {
+				next |= kingside;
+				next &= ~(1 << (base + rightX));
 			}
 		}
 		
 		return next;
 	}
-
-	/**
-	 * Returns the file of the leftmost rook at row y on side.
-	 */
-	private static char getLeftmostRookFile(Board board, Side side, int y) throws IllegalMoveException {
-		for(int x = 0; x < 8; x++) {
-			Piece piece = board.getPiece(new Square(x, y));
-			if(piece != null && piece.getPieceType() == PieceType.ROOK && piece.getSide() == side) {
-				return new Square(x, y).getFile();
-			}
-		}
-		throw new IllegalMoveException("No rook found");
-	}
 	
 	/**
-	 * Returns the file of the rightmost rook at row y on side.
+	 * Returns the square of the rook that the king of a side would castle with in a direction (1 towards the h-file,
+	 * -1 towards the a-file), or -1 if the castling rights don't allow it. The rook is the nearest one to the king on
+	 * its back rank. Doesn't check whether the squares between them are empty or attacked.
 	 */
-	private static char getRightmostRookFile(Board board, Side side, int y) throws IllegalMoveException {
-		for(int x = 7; x >= 0; x--) {
-			Piece piece = board.getPiece(new Square(x, y));
-			if(piece != null && piece.getPieceType() == PieceType.ROOK && piece.getSide() == side) {
-				return new Square(x, y).getFile();
-			}
+	public static int getCastlingRook(BitboardPosition position, Side side, int kingSquare, int direction) {
+		int y = Bitboard.getY(kingSquare);
+		if(y != ((side == Side.WHITE) ? 7 : 0)) {
+			return -1;
 		}
-		throw new IllegalMoveException("No rook found");
-	}
-
-	/**
-	 * Returns whether square contains outer rook, with no rook between it and the king, assuming it contains a rook
-	 * on the back rank, and the king is on the back rank.
-	 */
-	private static boolean isOuterRook(Board board, Square square, Side side) {
-		boolean foundOtherLeft = false;
-		boolean foundOtherRight = false;
-		int y = square.getY();
 		
-		for(int x = square.getX() + 1; x < 8; x++) {
-			Piece foundPiece = board.getPiece(new Square(x, y));
-			if(foundPiece != null) {
-				if(foundPiece.getSide() == side && (foundPiece.getPieceType() == PieceType.ROOK || foundPiece.getPieceType() == PieceType.KING)) {
-					foundOtherRight = true;
-				}
-			}
-		}
+		int castling = position.getCastling();
+		int base = (side == Side.WHITE) ? 0 : 10;
+		long rooks = position.getPieces(PieceType.ROOK, side);
 		
-		for(int x = square.getX() - 1; x >= 0; x--) {
-			Piece foundPiece = board.getPiece(new Square(x, y));
-			if(foundPiece != null) {
-				if(foundPiece.getSide() == side && (foundPiece.getPieceType() == PieceType.ROOK || foundPiece.getPieceType() == PieceType.KING)) {
-					foundOtherLeft = true;
+		for(int x = Bitboard.getX(kingSquare) + direction; x >= 0 && x <= 7; x += direction) {
+			int square = Bitboard.square(x, y);
+			if((rooks & Bitboard.bit(square)) != 0) {
+				int outerBit = base + ((direction > 0) ? 8 : 9);
+				if((castling & (1 << outerBit)) != 0 && isOuterRook(position, square, side)) {
+					return square;
 				}
-			}
-		}
-		
-		return !(foundOtherLeft && foundOtherRight);
-	}
-
-	private static Square getPiece(Board board, PieceType type, Side side) {
-		for(int x = 0; x < 8; x++) {
-			for(int y = 0; y < 8; y++) {
-				Square square = new Square(x, y);
-				Piece piece = board.getPiece(square);
-				if(piece != null && piece.getPieceType() == type && piece.getSide() == side) {
+				if((castling & (1 << (base + x))) != 0) {
 					return square;
 				}
+				return -1;
 			}
 		}
 		
-		return null;
+		return -1;
 	}
 	
 	/**
-	 * Returns whether a side is allowed to make a castling move.
+	 * Returns whether a square on the back rank has no rook or king of a side on at least one side of it.
 	 */
-	public boolean allowedCastle(Board board, Side side, Move move) throws IllegalMoveException {
-		int d = (move.getTo().getX() == 6) ? 1 : -1;
-		
-		Piece rook = null;
-		for(int x = move.getFrom().getX(); x >= 0 && x <= 7; x += d) {
-			Piece piece = board.getPiece(new Square(x, move.getFrom().getY()));
-			if(piece != null && piece.getPieceType() == PieceType.ROOK) {
-				rook = piece;
-				break;
-			}
-		}
-		
-		if(rook == null) {
-			return false;
-		}
+	private static boolean isOuterRook(BitboardPosition position, int square, Side side) {
+		long rank = Bitboard.RANK_8 << (Bitboard.getY(square) * 8);
+		long others = (position.getPieces(PieceType.ROOK, side) | position.getPieces(PieceType.KING, side)) & rank;
+		long bit = Bitboard.bit(square);
 		
-		boolean isOuterRook = isOuterRook(board, rook.getSquare(), side);
+		boolean foundOtherLeft = (others & (bit - 1)) != 0;
+		boolean foundOtherRight = (others & -(bit << 1)) != 0;
 		
-		if(side == Side.WHITE) {
-			if(isOuterRook) {
-				if(d > 0 && allowed.contains('K')) {
-					return true;
-				}
-				if(d < 0 && allowed.contains('Q')) {
-					return true;
-				}
-			}
-			if(allowed.contains(Character.toUpperCase(rook.getSquare().getFile()))) {
-				return true;
-			}
-		} else {
-			if(isOuterRook) {
-				if(d > 0 && allowed.contains('k')) {
-					return true;
-				}
-				if(d < 0 && allowed.contains('q')) {
-					return true;
-				}
-			}
-			if(allowed.contains(Character.toUpperCase(rook.getSquare().getFile()))) {
-				return true;
-			}
-		}
-		
-		return false;
+		return !(foundOtherLeft && foundOtherRight);
 	}
 }
@@ -10,13 +10,19 @@ import pgn.PgnImporter;
 import util.FileUtil;
 
 /**
- * Classifies openings by ECO code.
+ * Classifies openings by ECO code. Openings are looked up by the position reached at the end of their moves,
+ * so games that transpose into an opening are classified too.
  */
 public class EcoClassifier {
-	private Map<String, List<Move>> openings = new HashMap<>();
+	// Opening names keyed by the position key at the end of their moves.
+	private Map<Long, String> openings = new HashMap<>();
+	
+	// The most moves in any opening. Games aren't followed further than this.
+	private int maxLength = 0;
 
 	public EcoClassifier() {
 		try {
+			Map<Long, Integer> lengths = new HashMap<>();
 			String[] lines = FileUtil.readResource("/resource/eco.parsed").split("\n");
 			int line = 0;
 			while(line < lines.length) {
@@ -31,7 +37,18 @@ public class EcoClassifier {
 					PromotionChoice promote = (moveText[3].equals("null")) ? null : PromotionChoice.valueOf(moveText[3]);
 					moveList.add(new Move(from, to, castling, promote));
 				}
-				openings.put(openingName, moveList);
+				
+				// Where openings reach the same position, use the longest, or the first of equal length.
+				Board board = new Board();
+				for(Move move:moveList) {
+					board = board.makeMove(move);
+				}
+				Integer length = lengths.get(board.getPositionKey());
+				if(length == null || moveList.size() > length) {
+					openings.put(board.getPositionKey(), openingName);
+					lengths.put(board.getPositionKey(), moveList.size());
+				}
+				maxLength = Math.max(maxLength, moveList.size());
 			}
 		} catch(Exception e) {
 			System.err.println("Error loading eco database: " + e);
@@ -73,43 +90,26 @@ public class EcoClassifier {
 	}
 
 	/**
-	 * Returns the opening name that matches the game specified.
+	 * Returns the opening name that matches the game specified, which is the last position in the game that
+	 * is the end of a known opening.
 	 */
 	public String classify(List<Move> game) {
-		if(openings == null) return "Unknown opening";
-		
-		List<Move> found = null;
 		String openingName = "Unknown opening";
 		
-		for(String name:openings.keySet()) {
-			List<Move> moves = openings.get(name);
-			if(match(game, moves)) {
-				if(found == null || moves.size() > found.size()) {
-					found = moves;
-					openingName = name;
-				}
+		Board board = new Board();
+		for(int i = 0; i < game.size() && i < maxLength; i++) {
+			try {
+				board = board.makeMove(game.get(i));
+			} catch(IllegalMoveException e) {
+				break;
 			}
-		}
-		
-		return openingName;
-	}
-
-	/**
-	 * Returns whether the opening is playing in the game.
-	 */
-	private boolean match(List<Move> game, List<Move> openingMoves) {
-		if(openings == null) return false;
-		
-		if(openingMoves.size() > game.size()) {
-			return false;
-		}
-		
-		for(int i = 0; i < openingMoves.size(); i++) {
-			if(!game.get(i).equals(openingMoves.get(i))) {
-				return false;
+			
+			String name = openings.get(board.getPositionKey());
+			if(name != null) {
+				openingName = name;
 			}
 		}
 		
-		return true;
+		return openingName;
 	}
 }
@@ -0,0 +1,121 @@
+package domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The moves played at every position in a move database, held in memory so that the moves at a position are
+ * found with a single probe of a hash table, without a query.
+ *
+ * The moves are packed into one array of (move code, win, draw, loss) entries, with the moves for each position
+ * next to each other in order of their total count. A PositionKeyTable maps position keys to the position's slice
+ * of entries. Indexes are built with an ExplorerIndex.Builder and can't be changed afterwards.
+ */
+public class ExplorerIndex {
+	private static final int ENTRY_SIZE = 4;
+	
+	private final PositionKeyTable table;
+	
+	// The start of each position's entries, with the end of the last at the end.
+	private final int[] starts;
+	private final int[] entries;
+	
+	private ExplorerIndex(long[] positionKeys, int[] starts, int[] entries) {
+		this.table = new PositionKeyTable(positionKeys, starts.length - 1);
+		this.starts = starts;
+		this.entries = entries;
+	}
+	
+	/**
+	 * Returns the moves played at a position, in order of their total count from highest to lowest.
+	 */
+	public List<DatabaseMove> getMoves(long positionKey) {
+		int position = table.find(positionKey);
+		if(position == -1) return new ArrayList<>();
+		
+		List<DatabaseMove> moves = new ArrayList<>(starts[position + 1] - starts[position]);
+		for(int entry = starts[position]; entry < starts[position + 1]; entry += ENTRY_SIZE) {
+			moves.add(new DatabaseMove(MoveDatabaseFile.decodeMove(entries[entry]), entries[entry + 1], entries[entry + 2], entries[entry + 3]));
+		}
+		return moves;
+	}
+	
+	/**
+	 * Returns the number of positions with moves.
+	 */
+	public int getPositionCount() {
+		return starts.length - 1;
+	}
+	
+	/**
+	 * Builds an index from the moves at each position. The moves for a position must all be added together, with
+	 * each move added once.
+	 */
+	public static class Builder {
+		private long[] positionKeys = new long[1024];
+		private int[] starts = new int[1025];
+		private int positions = 0;
+		
+		private int[] entries = new int[4096];
+		private int size = 0;
+		
+		private long lastKey;
+		
+		/**
+		 * Adds a move played at a position, given its code from MoveDatabaseFile.encodeMove().
+		 */
+		public void add(long positionKey, int moveCode, int win, int draw, int loss) {
+			if(positions == 0 || positionKey != lastKey) {
+				endPosition();
+				if(positions == positionKeys.length) {
+					positionKeys = Arrays.copyOf(positionKeys, positions * 2);
+					starts = Arrays.copyOf(starts, positions * 2 + 1);
+				}
+				positionKeys[positions] = positionKey;
+				starts[positions] = size;
+				positions++;
+				lastKey = positionKey;
+			}
+			
+			if(size + ENTRY_SIZE > entries.length) {
+				entries = Arrays.copyOf(entries, entries.length * 2);
+			}
+			entries[size++] = moveCode;
+			entries[size++] = win;
+			entries[size++] = draw;
+			entries[size++] = loss;
+		}
+		
+		/**
+		 * Sorts the moves of the last position added by their total count, keeping moves with the same total in the
+		 * order they were added.
+		 */
+		private void endPosition() {
+			if(positions == 0) return;
+			
+			int start = starts[positions - 1];
+			for(int i = start + ENTRY_SIZE; i < size; i += ENTRY_SIZE) {
+				int j = i;
+				while(j > start && getTotal(j - ENTRY_SIZE) < getTotal(j)) {
+					for(int k = 0; k < ENTRY_SIZE; k++) {
+						int entry = entries[j + k];
+						entries[j + k] = entries[j - ENTRY_SIZE + k];
+						entries[j - ENTRY_SIZE + k] = entry;
+					}
+					j -= ENTRY_SIZE;
+				}
+			}
+		}
+		
+		private long getTotal(int entry) {
+			return (long)entries[entry + 1] + entries[entry + 2] + entries[entry + 3];
+		}
+		
+		public ExplorerIndex build() {
+			endPosition();
+			starts[positions] = size;
+			return new ExplorerIndex(positionKeys, Arrays.copyOf(starts, positions + 1), Arrays.copyOf(entries, size));
+		}
+	}
+}
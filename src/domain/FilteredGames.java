@@ -0,0 +1,90 @@
+package domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The games in a database that match a GameFilter, with the result of each, stored as a byte for each game id so
+ * that checking a game while counting the moves at a position is an array lookup.
+ */
+class FilteredGames {
+	// The values stored for each game id.
+	static final byte NO_MATCH = 0;
+	static final byte WHITE_WIN = 1;
+	static final byte DRAW = 2;
+	static final byte BLACK_WIN = 3;
+	static final byte OTHER = 4;
+	
+	private byte[] results = new byte[1024];
+	
+	/**
+	 * Adds a game that matches the filter, with its result from the Result tag.
+	 */
+	public void add(int gameId, String result) {
+		if(gameId >= results.length) {
+			results = Arrays.copyOf(results, Math.max(results.length * 2, gameId + 1));
+		}
+		results[gameId] = getResultCode(result);
+	}
+	
+	private static byte getResultCode(String result) {
+		if(result.equals(GameResult.WHITE_WIN.toString())) return WHITE_WIN;
+		if(result.equals(GameResult.DRAW.toString())) return DRAW;
+		if(result.equals(GameResult.BLACK_WIN.toString())) return BLACK_WIN;
+		return OTHER;
+	}
+	
+	/**
+	 * Returns the result of a game as one of the values above, or NO_MATCH if it doesn't match the filter.
+	 */
+	public byte getResult(int gameId) {
+		return (gameId >= 0 && gameId < results.length) ? results[gameId] : NO_MATCH;
+	}
+	
+	public boolean matches(int gameId) {
+		return getResult(gameId) != NO_MATCH;
+	}
+	
+	/**
+	 * Counts the results of the moves played at a position. Positions have few moves, so they are kept in arrays
+	 * and found by a linear search.
+	 */
+	static class MoveCounts {
+		private int[] moveCodes = new int[16];
+		private int[] counts = new int[16 * 3];
+		private int size = 0;
+		
+		/**
+		 * Adds a move played by a game with a result, ignoring moves that aren't known and games that don't match.
+		 */
+		public void add(int moveCode, byte result) {
+			if(moveCode < 0 || result == NO_MATCH || result == OTHER) return;
+			
+			int index = 0;
+			while(index < size && moveCodes[index] != moveCode) {
+				index++;
+			}
+			if(index == size) {
+				if(size == moveCodes.length) {
+					moveCodes = Arrays.copyOf(moveCodes, size * 2);
+					counts = Arrays.copyOf(counts, size * 2 * 3);
+				}
+				moveCodes[size++] = moveCode;
+			}
+			counts[index * 3 + result - 1]++;
+		}
+		
+		/**
+		 * Returns the moves counted, in order of their total count from highest to lowest.
+		 */
+		public List<DatabaseMove> getMoves() {
+			List<DatabaseMove> moves = new ArrayList<>(size);
+			for(int i = 0; i < size; i++) {
+				moves.add(new DatabaseMove(MoveDatabaseFile.decodeMove(moveCodes[i]), counts[i * 3], counts[i * 3 + 1], counts[i * 3 + 2]));
+			}
+			moves.sort((a, b) -> Integer.compare(b.getTotal(), a.getTotal()));
+			return moves;
+		}
+	}
+}
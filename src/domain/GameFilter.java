@@ -0,0 +1,165 @@
+package domain;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Criteria for the games used for move statistics and game lists: a player, a rating range, a date range, and a
+ * result, each of which can be left out. Filters can't be changed, and are made from ALL by adding criteria:
+ *
+ *  GameFilter.ALL.withPlayer("Carlsen, Magnus").withRatings(2600, 2900)
+ *
+ * A rating range matches games where both players have a rating in the range, so unrated games don't match. Dates
+ * are in the pgn format of YYYY.MM.DD, and compared as text, so parts of dates that aren't known, written as ??,
+ * come after every known date with the same start.
+ */
+public class GameFilter {
+	public static final GameFilter ALL = new GameFilter(null, 0, Integer.MAX_VALUE, null, null, null);
+	
+	private final String player;
+	private final int minRating;
+	private final int maxRating;
+	private final String fromDate;
+	private final String toDate;
+	private final GameResult result;
+	
+	private GameFilter(String player, int minRating, int maxRating, String fromDate, String toDate, GameResult result) {
+		this.player = player;
+		this.minRating = minRating;
+		this.maxRating = maxRating;
+		this.fromDate = fromDate;
+		this.toDate = toDate;
+		this.result = result;
+	}
+	
+	/**
+	 * Returns a filter for games where a player, given by the name in their tag, played either side.
+	 */
+	public GameFilter withPlayer(String player) {
+		return new GameFilter(player, minRating, maxRating, fromDate, toDate, result);
+	}
+	
+	/**
+	 * Returns a filter for games where both players were rated from minRating to maxRating inclusive.
+	 */
+	public GameFilter withRatings(int minRating, int maxRating) {
+		return new GameFilter(player, minRating, maxRating, fromDate, toDate, result);
+	}
+	
+	/**
+	 * Returns a filter for games played from fromDate to toDate inclusive. Either date can be null to leave the
+	 * range open at that end.
+	 */
+	public GameFilter withDates(String fromDate, String toDate) {
+		return new GameFilter(player, minRating, maxRating, fromDate, toDate, result);
+	}
+	
+	/**
+	 * Returns a filter for games with a result.
+	 */
+	public GameFilter withResult(GameResult result) {
+		return new GameFilter(player, minRating, maxRating, fromDate, toDate, result);
+	}
+	
+	public String getPlayer() {
+		return player;
+	}
+	
+	public int getMinRating() {
+		return minRating;
+	}
+	
+	public int getMaxRating() {
+		return maxRating;
+	}
+	
+	public String getFromDate() {
+		return fromDate;
+	}
+	
+	public String getToDate() {
+		return toDate;
+	}
+	
+	public GameResult getResult() {
+		return result;
+	}
+	
+	/**
+	 * Returns whether the filter matches every game.
+	 */
+	public boolean isEmpty() {
+		return equals(ALL);
+	}
+	
+	private boolean hasRatings() {
+		return minRating > 0 || maxRating < Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Returns whether a game matches the filter.
+	 */
+	public boolean matches(GameHeader header) {
+		if(player != null && !player.equals(header.getWhite()) && !player.equals(header.getBlack())) return false;
+		if(hasRatings() && !(isInRange(header.getWhiteElo()) && isInRange(header.getBlackElo()))) return false;
+		if(fromDate != null && header.getDate().compareTo(fromDate) < 0) return false;
+		if(toDate != null && header.getDate().compareTo(toDate) > 0) return false;
+		if(result != null && !result.toString().equals(header.getResult())) return false;
+		return true;
+	}
+	
+	private boolean isInRange(int rating) {
+		return rating > 0 && rating >= minRating && rating <= maxRating;
+	}
+	
+	/**
+	 * Returns the condition on the header columns of the Game table for a where clause, with parameters to be set
+	 * by setParameters().
+	 */
+	String getCondition() {
+		StringBuilder condition = new StringBuilder("1=1");
+		if(player != null) condition.append(" and (white=? or black=?)");
+		if(hasRatings()) condition.append(" and whiteElo>0 and blackElo>0 and whiteElo between ? and ? and blackElo between ? and ?");
+		if(fromDate != null) condition.append(" and date>=?");
+		if(toDate != null) condition.append(" and date<=?");
+		if(result != null) condition.append(" and result=?");
+		return condition.toString();
+	}
+	
+	/**
+	 * Sets the parameters of the condition from getCondition(), starting from a parameter index, and returns the
+	 * index after the last one set.
+	 */
+	int setParameters(PreparedStatement statement, int index) throws SQLException {
+		if(player != null) {
+			statement.setString(index++, player);
+			statement.setString(index++, player);
+		}
+		if(hasRatings()) {
+			statement.setInt(index++, minRating);
+			statement.setInt(index++, maxRating);
+			statement.setInt(index++, minRating);
+			statement.setInt(index++, maxRating);
+		}
+		if(fromDate != null) statement.setString(index++, fromDate);
+		if(toDate != null) statement.setString(index++, toDate);
+		if(result != null) statement.setString(index++, result.toString());
+		return index;
+	}
+	
+	public boolean equals(Object o) {
+		if(!(o instanceof GameFilter)) return false;
+		GameFilter other = (GameFilter)o;
+		return Objects.equals(player, other.player) && minRating == other.minRating && maxRating == other.maxRating
+			&& Objects.equals(fromDate, other.fromDate) && Objects.equals(toDate, other.toDate) && result == other.result;
+	}
+	
+	public int hashCode() {
+		return Objects.hash(player, minRating, maxRating, fromDate, toDate, result);
+	}
+	
+	public String toString() {
+		return String.format("[Player: %s, Ratings: %d-%d, Dates: %s-%s, Result: %s]", player, minRating, maxRating, fromDate, toDate, result);
+	}
+}
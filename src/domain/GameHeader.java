@@ -0,0 +1,133 @@
+package domain;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The id and the standard tags of a game, without the moves, so that games can be listed and filtered without
+ * reading or parsing their pgn. Missing tags are empty, and missing or invalid numbers are 0.
+ */
+public class GameHeader {
+	private int id;
+	private String white;
+	private String black;
+	private int whiteElo;
+	private int blackElo;
+	private String date;
+	private String event;
+	private String result;
+	private String eco;
+	private String timeControl;
+	private int plyCount;
+	
+	public GameHeader(int id, String white, String black, int whiteElo, int blackElo, String date, String event, String result, String eco, String timeControl, int plyCount) {
+		this.id = id;
+		this.white = white;
+		this.black = black;
+		this.whiteElo = whiteElo;
+		this.blackElo = blackElo;
+		this.date = date;
+		this.event = event;
+		this.result = result;
+		this.eco = eco;
+		this.timeControl = timeControl;
+		this.plyCount = plyCount;
+	}
+	
+	/**
+	 * Creates the header for a game from its tags.
+	 */
+	public GameHeader(int id, Map<String, String> tags) {
+		this(id, tags, getNumber(tags, "PlyCount"));
+	}
+	
+	/**
+	 * Creates the header for a game from its tags, with a ply count found from its moves rather than its tags.
+	 */
+	public GameHeader(int id, Map<String, String> tags, int plyCount) {
+		this(id, getTag(tags, "White"), getTag(tags, "Black"), getNumber(tags, "WhiteElo"), getNumber(tags, "BlackElo"), getTag(tags, "Date"),
+			getTag(tags, "Event"), getTag(tags, "Result"), getTag(tags, "ECO"), getTag(tags, "TimeControl"), plyCount);
+	}
+	
+	/**
+	 * Returns the header for a game from the tag pairs at the start of its pgn. Only the lines before the first line
+	 * that isn't a tag pair are read, and they aren't checked as strictly as by PgnImporter.
+	 */
+	public static GameHeader fromPgn(int id, String pgn) {
+		Map<String, String> tags = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		int start = 0;
+		while(start < pgn.length()) {
+			int end = pgn.indexOf('\n', start);
+			if(end == -1) end = pgn.length();
+			
+			String line = pgn.substring(start, end).trim();
+			int space = line.indexOf(' ');
+			if(!line.startsWith("[") || !line.endsWith("]") || space == -1) break;
+			
+			tags.put(line.substring(1, space), line.substring(space + 1, line.length() - 1).replace("\"", ""));
+			start = end + 1;
+		}
+		return new GameHeader(id, tags);
+	}
+	
+	private static String getTag(Map<String, String> tags, String name) {
+		String value = tags.get(name);
+		return (value == null) ? "" : value;
+	}
+	
+	private static int getNumber(Map<String, String> tags, String name) {
+		try {
+			return Integer.parseInt(getTag(tags, name).trim());
+		} catch(NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public String getWhite() {
+		return white;
+	}
+	
+	public String getBlack() {
+		return black;
+	}
+	
+	public int getWhiteElo() {
+		return whiteElo;
+	}
+	
+	public int getBlackElo() {
+		return blackElo;
+	}
+	
+	public String getDate() {
+		return date;
+	}
+	
+	public String getEvent() {
+		return event;
+	}
+	
+	public String getResult() {
+		return result;
+	}
+	
+	public String getEco() {
+		return eco;
+	}
+	
+	public String getTimeControl() {
+		return timeControl;
+	}
+	
+	public int getPlyCount() {
+		return plyCount;
+	}
+	
+	public String toString() {
+		return String.format("%d: %s - %s %s (%s)", id, white, black, result, date);
+	}
+}
@@ -0,0 +1,155 @@
+package domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The games that reached a position in a move database, read a page at a time. Only the ids of the games up to the
+ * last page read are kept, and headers are loaded for each page as it is read, so showing the first page of a
+ * position reached by millions of games doesn't read the rest of them.
+ *
+ * Lists start in order of game id. A list sorted by a column reads each page from the Game table in order of that
+ * column and then id, using the index on the column. Games in a saved file have no header columns, so while a
+ * database has any, a sorted list holds every id instead, sorted by reading the headers of every game. A list of
+ * the games matching a filter also holds every id.
+ */
+public class GameList {
+	/**
+	 * The columns that a list can be sorted by. Text is sorted by character code, as it is in the tables.
+	 */
+	public enum Sort {
+		ID("id", Comparator.comparingInt(GameHeader::getId)),
+		DATE("date", Comparator.comparing(GameHeader::getDate)),
+		WHITE("white", Comparator.comparing(GameHeader::getWhite)),
+		BLACK("black", Comparator.comparing(GameHeader::getBlack)),
+		RESULT("result", Comparator.comparing(GameHeader::getResult)),
+		TIME_CONTROL("timeControl", Comparator.comparing(GameHeader::getTimeControl));
+		
+		private final String column;
+		private final Comparator<GameHeader> comparator;
+		
+		Sort(String column, Comparator<GameHeader> comparator) {
+			this.column = column;
+			this.comparator = comparator;
+		}
+		
+		/**
+		 * Returns the column of the Game table to sort by.
+		 */
+		String getColumn() {
+			return column;
+		}
+		
+		public Comparator<GameHeader> getComparator() {
+			return comparator;
+		}
+	}
+	
+	private final MoveDatabase database;
+	private final Board board;
+	private final GameFilter filter;
+	private final int size;
+	
+	// The column the list is read from the Game table in order of, or null if it is read by id.
+	private final Sort sort;
+	private final boolean descending;
+	
+	// The ids of the first games in the list, or of every game for a filtered list or one sorted in memory.
+	private int[] gameIds;
+	
+	/**
+	 * Creates a list of the games in a database that reached a position, in order of id.
+	 */
+	GameList(MoveDatabase database, Board board) {
+		this(database, board, GameFilter.ALL, database.getGameCount(board), new int[0], null, false);
+	}
+	
+	/**
+	 * Creates a list of the games that reached a position and match a filter given their ids, in order.
+	 */
+	GameList(MoveDatabase database, Board board, GameFilter filter, int[] gameIds) {
+		this(database, board, filter, gameIds.length, gameIds, null, false);
+	}
+	
+	private GameList(MoveDatabase database, Board board, GameFilter filter, int size, int[] gameIds, Sort sort, boolean descending) {
+		this.database = database;
+		this.board = board;
+		this.filter = filter;
+		this.size = size;
+		this.gameIds = gameIds;
+		this.sort = sort;
+		this.descending = descending;
+	}
+	
+	/**
+	 * Returns the number of games in the list.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the headers of the games from an offset in the list, up to a limit.
+	 */
+	public List<GameHeader> getHeaders(int offset, int limit) {
+		int end = (int)Math.min((long)offset + limit, size);
+		if(offset >= end) return new ArrayList<>();
+		
+		if(sort != null) {
+			return database.getSortedGameHeaders(board, filter, sort, descending, offset, end - offset);
+		}
+		
+		readGameIds(end);
+		end = Math.min(end, gameIds.length);
+		if(offset >= end) return new ArrayList<>();
+		
+		return database.getGameHeaders(Arrays.copyOfRange(gameIds, offset, end));
+	}
+	
+	/**
+	 * Reads the ids up to an index in the list, doubling the number read so that reading the list a page at a time
+	 * only reads each id a few times.
+	 */
+	private void readGameIds(int end) {
+		if(end <= gameIds.length) return;
+		
+		gameIds = database.getGameIds(Math.max(end, gameIds.length * 2), board);
+	}
+	
+	/**
+	 * Returns a list of the same games sorted by a column, with games that are equal in that column kept in order of
+	 * id, or in reverse order when descending.
+	 */
+	public GameList sortedBy(Sort sort, boolean descending) {
+		if(!database.hasSavedGames()) {
+			return new GameList(database, board, filter, size, gameIds, sort, descending);
+		}
+		
+		readGameIds(size);
+		
+		int[] sortedIds = Arrays.copyOf(gameIds, Math.min(size, gameIds.length));
+		Arrays.sort(sortedIds);
+		
+		if(sort != Sort.ID) {
+			// Games that can't be found are left out of the headers, so only the games found are kept.
+			List<GameHeader> headers = new ArrayList<>(database.getGameHeaders(sortedIds));
+			headers.sort(sort.getComparator());
+			sortedIds = new int[headers.size()];
+			for(int i = 0; i < sortedIds.length; i++) {
+				sortedIds[i] = headers.get(i).getId();
+			}
+		}
+		
+		if(descending) {
+			for(int i = 0, j = sortedIds.length - 1; i < j; i++, j--) {
+				int gameId = sortedIds[i];
+				sortedIds[i] = sortedIds[j];
+				sortedIds[j] = gameId;
+			}
+		}
+		
+		return new GameList(database, board, filter, sortedIds);
+	}
+}
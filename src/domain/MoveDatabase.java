@@ -4,10 +4,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -15,31 +15,301 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import pgn.PgnGame;
 import util.FileUtil;
 
 /**
  * A move database storing the win/draw/loss counts for the moves played at each position.
+ *
+ * A database is saved as a MoveDatabaseFile. Importing one into a database in memory maps it read-only instead of
+ * loading it into the tables, and anything added afterwards goes into the tables, so queries combine the saved file
+ * with the tables. A database on disk copies the file into its tables instead, so that it keeps the games. Databases
+ * saved as gzipped SQL inserts by earlier versions are still imported by running the inserts.
+ *
+ * A database is either in memory, and lost when the program exits, or stored in files on disk with cached tables,
+ * where only a bounded cache of rows is held in memory. A database on disk doesn't build the in-memory indexes,
+ * and moves and games are found with the indexes on its tables instead, so it can be larger than memory and is
+ * opened without reading its rows. It should be closed with close() so that it opens quickly next time.
  */
 public class MoveDatabase {
+	// Matches inserts saved before positions were stored as keys, where the second value is the position text.
+	private static final Pattern LEGACY_POSITION_PATTERN = Pattern.compile("(insert into Position(?:Game|Move) values \\( \\S+, )'([^']*)'(.*)");
+	
+	// The start of inserts saved before tables had more columns, and what to replace it with to name the columns.
+	private static final String[][] LEGACY_INSERTS = {
+		{ "insert into Game values", "insert into Game ( id, pgn ) values" },
+		{ "insert into PositionGame values", "insert into PositionGame ( id, positionKey, gameId ) values" }
+	};
+	
+	static final String MOVE_POSITION_KEY_INDEX = "create index MovePositionKeyIndex on PositionMove ( positionKey )";
+	static final String GAME_POSITION_KEY_INDEX = "create index GamePositionKeyIndex on PositionGame ( positionKey )";
+	static final String GAME_HASH_INDEX = "create index GameHashIndex on Game ( hash )";
+	
+	// The columns of the Game table holding the tags of a GameHeader, in the order set by setHeaderColumns().
+	static final String HEADER_COLUMNS = "white, black, whiteElo, blackElo, date, event, result, eco, timeControl, plyCount";
+	private static final String[] HEADER_COLUMN_DEFINITIONS = {
+		"white varchar(255)", "black varchar(255)", "whiteElo int", "blackElo int", "date varchar(255)",
+		"event varchar(255)", "result varchar(255)", "eco varchar(255)", "timeControl varchar(255)", "plyCount int"
+	};
+	
+	// The header columns that games are filtered or sorted by, which each have an index.
+	private static final String[] INDEXED_HEADER_COLUMNS = { "white", "black", "whiteElo", "blackElo", "date", "event", "result", "eco", "timeControl" };
+	
+	// The length of the text header columns, which longer tags are cut to.
+	private static final int HEADER_COLUMN_SIZE = 255;
+	
+	// The most games to look up headers for one at a time, rather than reading every game in the Game table.
+	private static final int MAX_HEADER_LOOKUPS = 1000;
+	
+	// The offset basis and prime of the 64 bit FNV-1a hash used for game hashes.
+	private static final long HASH_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long HASH_PRIME = 0x100000001b3L;
+	
+	// The default size of the cache of rows for a database on disk, in KB.
+	public static final int DEFAULT_CACHE_SIZE = 64 * 1024;
+	
+	// The number of rows to send to the database at once when copying a saved file into the tables.
+	private static final int COPY_BATCH_SIZE = 10000;
+	
+	private final String url;
+	private final boolean persistent;
+	
+	/**
+	 * Receives the moves of a database in order of position key.
+	 */
+	interface MoveVisitor {
+		void visit(long positionKey, int moveCode, int win, int draw, int loss) throws IOException;
+	}
+	
+	/**
+	 * Receives the games at each position of a database in order of position key, then game id.
+	 */
+	interface PositionGameVisitor {
+		void visit(long positionKey, int gameId, int moveCode) throws IOException;
+	}
+	
+	// The database last imported from a MoveDatabaseFile, or null.
+	private MoveDatabaseFile savedFile;
+	
+	// The sorted hashes of the games in the saved file, found the first time games are appended, or null.
+	private long[] savedGameHashes;
+	
+	// The moves at each position, built after an import and dropped when moves are added another way, or null.
+	private volatile ExplorerIndex explorerIndex;
+	
+	// The games at each position, built and dropped along with the explorer index, or null.
+	private volatile PositionGameIndex gameIndex;
+	
+	// The filter last used for moves or games, and the games that matched it, dropped when games are added.
+	private GameFilter filter;
+	private FilteredGames filteredGames;
+	
+	/**
+	 * Creates an empty database in memory, replacing any other database in memory.
+	 */
 	public MoveDatabase() {
+		this.url = "jdbc:hsqldb:mem:movedb";
+		this.persistent = false;
+		
 		clearDatabase();
 		createTables();
 	}
 	
+	/**
+	 * Opens a database stored on disk, creating it if it doesn't exist, with the default cache size.
+	 */
+	public MoveDatabase(File file) {
+		this(file, DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Opens a database stored on disk, creating it if it doesn't exist. The database is kept in files starting with
+	 * the path of a file, and at most about cacheSize KB of its rows are held in memory.
+	 */
+	public MoveDatabase(File file, int cacheSize) {
+		this.url = "jdbc:hsqldb:file:" + file.getAbsolutePath() + ";hsqldb.default_table_type=cached";
+		this.persistent = true;
+		
+		boolean exists;
+		try(Connection connection = getConnection()) {
+			connection.createStatement().execute("set files cache size " + cacheSize);
+			// Limit rows too, as the default limit would be reached before the size for small rows.
+			connection.createStatement().execute("set files cache rows " + Math.max(cacheSize * 8, 100000));
+			
+			try(ResultSet resultSet = connection.createStatement().executeQuery("select count(*) from information_schema.tables where table_schema='PUBLIC' and table_name='GAME'")) {
+				resultSet.next();
+				exists = resultSet.getInt(1) > 0;
+			}
+		} catch(SQLException e) {
+			throw new RuntimeException("Error opening database", e);
+		}
+		
+		if(!exists) {
+			createTables();
+		}
+	}
+	
 	public Connection getConnection() {
 		try {
 			Class.forName("org.hsqldb.jdbcDriver");
-			return DriverManager.getConnection("jdbc:hsqldb:mem:movedb");
+			return DriverManager.getConnection(url);
 		} catch(Exception e) {
 			throw new RuntimeException("Error getting connection", e);
 		}
 	}
 	
+	/**
+	 * Returns whether the database is stored on disk rather than in memory.
+	 */
+	public boolean isPersistent() {
+		return persistent;
+	}
+	
+	/**
+	 * Removes everything from the database.
+	 */
+	public void clear() {
+		explorerIndex = null;
+		gameIndex = null;
+		clearFilteredGames();
+		closeSavedFile();
+		clearDatabase();
+		createTables();
+	}
+	
+	/**
+	 * Writes the changes to a database on disk into its data file, so that opening it doesn't replay them from the
+	 * log. This does nothing for a database in memory.
+	 */
+	void checkpoint() {
+		if(!persistent) return;
+		
+		try(Connection connection = getConnection()) {
+			connection.createStatement().execute("checkpoint");
+		} catch(SQLException e) {
+			throw new RuntimeException("Error writing database", e);
+		}
+	}
+	
+	/**
+	 * Closes the database and any file imported into it. A database on disk is shut down, writing every change to
+	 * its data file. A database in memory is left as it is.
+	 */
+	public void close() {
+		closeSavedFile();
+		if(!persistent) return;
+		
+		try(Connection connection = getConnection()) {
+			connection.createStatement().execute("shutdown");
+		} catch(SQLException e) {
+			throw new RuntimeException("Error closing database", e);
+		}
+	}
+	
+	/**
+	 * Fills in the header columns of games added without them from their pgn.
+	 */
+	private static void updateHeaderColumns(Connection connection) throws SQLException {
+		try(PreparedStatement statement = connection.prepareStatement("update Game set " + HEADER_COLUMNS.replace(", ", "=?, ") + "=? where id=?")) {
+			try(ResultSet resultSet = connection.createStatement().executeQuery("select id, pgn from Game where plyCount is null")) {
+				while(resultSet.next()) {
+					setHeaderColumns(statement, 1, GameHeader.fromPgn(resultSet.getInt(1), resultSet.getString(2)));
+					statement.setInt(HEADER_COLUMN_DEFINITIONS.length + 1, resultSet.getInt(1));
+					statement.execute();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Fills in the hashes of games added without them from their pgn.
+	 */
+	private static void updateGameHashes(Connection connection) throws SQLException {
+		try(PreparedStatement statement = connection.prepareStatement("update Game set hash=? where id=?")) {
+			try(ResultSet resultSet = connection.createStatement().executeQuery("select id, pgn from Game where hash is null")) {
+				while(resultSet.next()) {
+					statement.setLong(1, getGameHash(resultSet.getString(2)));
+					statement.setInt(2, resultSet.getInt(1));
+					statement.execute();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns a hash of the tags and moves of a game, used to find games that are already in the database. Runs of
+	 * whitespace are hashed as a single space, and whitespace at the start and end is left out, so the same game
+	 * with different line breaks has the same hash.
+	 */
+	static long getGameHash(String pgn) {
+		long hash = HASH_OFFSET_BASIS;
+		boolean started = false;
+		boolean whitespace = false;
+		for(int i = 0; i < pgn.length(); i++) {
+			char c = pgn.charAt(i);
+			if(Character.isWhitespace(c)) {
+				whitespace = started;
+				continue;
+			}
+			
+			if(whitespace) {
+				hash = (hash ^ ' ') * HASH_PRIME;
+				whitespace = false;
+			}
+			hash = (hash ^ c) * HASH_PRIME;
+			started = true;
+		}
+		return hash;
+	}
+	
+	static void createHeaderIndexes(Connection connection) throws SQLException {
+		for(String column:INDEXED_HEADER_COLUMNS) {
+			connection.createStatement().execute("create index Game" + column + "Index on Game ( " + column + " )");
+		}
+	}
+	
+	static void dropHeaderIndexes(Connection connection) throws SQLException {
+		for(String column:INDEXED_HEADER_COLUMNS) {
+			connection.createStatement().execute("drop index Game" + column + "Index if exists");
+		}
+	}
+	
+	/**
+	 * Sets the parameters for the header columns of a statement from a header, starting from a parameter index.
+	 */
+	static void setHeaderColumns(PreparedStatement statement, int index, GameHeader header) throws SQLException {
+		statement.setString(index++, truncate(header.getWhite()));
+		statement.setString(index++, truncate(header.getBlack()));
+		statement.setInt(index++, header.getWhiteElo());
+		statement.setInt(index++, header.getBlackElo());
+		statement.setString(index++, truncate(header.getDate()));
+		statement.setString(index++, truncate(header.getEvent()));
+		statement.setString(index++, truncate(header.getResult()));
+		statement.setString(index++, truncate(header.getEco()));
+		statement.setString(index++, truncate(header.getTimeControl()));
+		statement.setInt(index++, header.getPlyCount());
+	}
+	
+	private static String truncate(String value) {
+		return (value.length() > HEADER_COLUMN_SIZE) ? value.substring(0, HEADER_COLUMN_SIZE) : value;
+	}
+	
+	/**
+	 * Returns a header from a row of the id and then the header columns.
+	 */
+	private static GameHeader getHeader(ResultSet resultSet) throws SQLException {
+		return new GameHeader(resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3), resultSet.getInt(4), resultSet.getInt(5), resultSet.getString(6),
+			resultSet.getString(7), resultSet.getString(8), resultSet.getString(9), resultSet.getString(10), resultSet.getInt(11));
+	}
+	
 	private void clearDatabase() {
 		try(Connection connection = getConnection()) {
 			connection.createStatement().execute("drop schema public cascade");
@@ -48,73 +318,351 @@ public class MoveDatabase {
 		}
 	}
 
+	/**
+	 * Saves the database as a MoveDatabaseFile, including any file it was imported from. The file is written beside
+	 * the one it replaces and then moved over it, so that a file being read is never overwritten.
+	 */
 	public void saveDatabase(File file) {
-		try(Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
-			try(Connection connection = getConnection()) {
-				try(ResultSet resultSet = connection.createStatement().executeQuery("select * from Game")) {
-					while(resultSet.next()) {
-						writer.append(String.format("insert into Game values ( %s, '%s' );\n",
-							resultSet.getObject(1),
-							resultSet.getString(2).replace("'", "''").replace("\n", "\\u000a")
-						));
-					}
+		File tempFile = null;
+		try {
+			tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			try(Connection connection = getConnection(); MoveDatabaseFile.Writer writer = new MoveDatabaseFile.Writer(tempFile)) {
+				readMoves(connection, writer::addMove);
+				readPositionGames(connection, writer::addPositionGame);
+				saveGames(connection, writer);
+				writer.finish();
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch(Exception e) {
+			if(tempFile != null) {
+				tempFile.delete();
+			}
+			throw new RuntimeException("Error saving database", e);
+		}
+	}
+	
+	/**
+	 * Reads the moves from the saved file and the tables in order of position key, adding together the counts of
+	 * moves that are in both.
+	 */
+	private void readMoves(Connection connection, MoveVisitor visitor) throws SQLException, IOException {
+		long savedCount = (savedFile == null) ? 0 : savedFile.getMoveCount();
+		long saved = 0;
+		
+		try(ResultSet resultSet = connection.createStatement().executeQuery("select positionKey, moveFrom, moveTo, castling, promote, win, draw, loss from PositionMove order by positionKey")) {
+			boolean hasRow = resultSet.next();
+			Map<Integer, int[]> counts = new TreeMap<>();
+			while(hasRow || saved < savedCount) {
+				long positionKey;
+				if(!hasRow) {
+					positionKey = savedFile.getMoveKey(saved);
+				} else if(saved == savedCount) {
+					positionKey = resultSet.getLong(1);
+				} else {
+					positionKey = Math.min(resultSet.getLong(1), savedFile.getMoveKey(saved));
 				}
 				
-				try(ResultSet resultSet = connection.createStatement().executeQuery("select * from PositionGame")) {
-					while(resultSet.next()) {
-						writer.append(String.format("insert into PositionGame values ( %s, '%s', %s );\n",
-							resultSet.getObject(1),
-							resultSet.getString(2).replace("'", "''"),
-							resultSet.getObject(3)
-						));
-					}
+				for(; saved < savedCount && savedFile.getMoveKey(saved) == positionKey; saved++) {
+					addCounts(counts, savedFile.getMoveCode(saved), savedFile.getMoveCounts(saved));
+				}
+				for(; hasRow && resultSet.getLong(1) == positionKey; hasRow = resultSet.next()) {
+					Move move = getMove(resultSet.getString(2), resultSet.getString(3), resultSet.getBoolean(4), resultSet.getString(5));
+					addCounts(counts, MoveDatabaseFile.encodeMove(move), new int[] { resultSet.getInt(6), resultSet.getInt(7), resultSet.getInt(8) });
 				}
 				
-				try(ResultSet resultSet = connection.createStatement().executeQuery("select * from PositionMove")) {
-					while(resultSet.next()) {
-						writer.append(String.format("insert into PositionMove values ( %s, '%s', '%s', '%s', %s, '%s', %s, %s, %s );\n",
-							resultSet.getObject(1),
-							resultSet.getString(2).replace("'", "''").replace("\n", "\\u000a"),
-							resultSet.getString(3).replace("'", "''").replace("\n", "\\u000a"),
-							resultSet.getString(4).replace("'", "''").replace("\n", "\\u000a"),
-							resultSet.getObject(5),
-							resultSet.getString(6).replace("'", "''").replace("\n", "\\u000a"),
-							resultSet.getObject(7),
-							resultSet.getObject(8),
-							resultSet.getObject(9)
-						));
-					}
+				for(Map.Entry<Integer, int[]> entry:counts.entrySet()) {
+					int[] winDrawLoss = entry.getValue();
+					visitor.visit(positionKey, entry.getKey(), winDrawLoss[0], winDrawLoss[1], winDrawLoss[2]);
 				}
+				counts.clear();
 			}
-		} catch(Exception e) {
-			throw new RuntimeException("Error saving database", e);
 		}
 	}
 	
+	private static void addCounts(Map<Integer, int[]> counts, int moveCode, int[] winDrawLoss) {
+		int[] total = counts.get(moveCode);
+		if(total == null) {
+			counts.put(moveCode, winDrawLoss);
+		} else {
+			total[0] += winDrawLoss[0];
+			total[1] += winDrawLoss[1];
+			total[2] += winDrawLoss[2];
+		}
+	}
+	
+	/**
+	 * Reads the position games from the saved file and the tables, merging the two in order.
+	 */
+	private void readPositionGames(Connection connection, PositionGameVisitor visitor) throws SQLException, IOException {
+		long savedCount = (savedFile == null) ? 0 : savedFile.getPositionGameCount();
+		long saved = 0;
+		
+		try(ResultSet resultSet = connection.createStatement().executeQuery("select positionKey, gameId, coalesce(move, -1) from PositionGame order by positionKey, gameId, move")) {
+			boolean hasRow = resultSet.next();
+			while(hasRow || saved < savedCount) {
+				boolean useSaved;
+				if(!hasRow) {
+					useSaved = true;
+				} else if(saved == savedCount) {
+					useSaved = false;
+				} else {
+					long savedKey = savedFile.getPositionGameKey(saved);
+					long rowKey = resultSet.getLong(1);
+					useSaved = (savedKey < rowKey || (savedKey == rowKey && savedFile.getPositionGameId(saved) < resultSet.getInt(2)));
+				}
+				
+				if(useSaved) {
+					visitor.visit(savedFile.getPositionGameKey(saved), savedFile.getPositionGameId(saved), savedFile.getPositionGameMove(saved));
+					saved++;
+				} else {
+					visitor.visit(resultSet.getLong(1), resultSet.getInt(2), resultSet.getInt(3));
+					hasRow = resultSet.next();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes the games from the saved file and then the tables. Games added after importing a file have larger ids
+	 * than the games in it, so this keeps them in order of id.
+	 */
+	private void saveGames(Connection connection, MoveDatabaseFile.Writer writer) throws SQLException, IOException {
+		long savedCount = (savedFile == null) ? 0 : savedFile.getGameCount();
+		for(long index = 0; index < savedCount; index++) {
+			writer.addGame(savedFile.getGameId(index), savedFile.getGameAt(index));
+		}
+		
+		try(ResultSet resultSet = connection.createStatement().executeQuery("select id, pgn from Game order by id")) {
+			while(resultSet.next()) {
+				writer.addGame(resultSet.getInt(1), resultSet.getString(2));
+			}
+		}
+	}
+	
+	/**
+	 * Imports a database saved with saveDatabase(), or as gzipped SQL inserts by an earlier version, replacing
+	 * everything in this database. A file saved with saveDatabase() is mapped rather than copied into the tables
+	 * for a database in memory. A database on disk copies it into the tables, so that it still has the games once
+	 * it is opened again.
+	 */
 	public void importDatabase(File file) {
-		clearDatabase();
-		createTables();
+		clear();
+		try {
+			if(MoveDatabaseFile.isMoveDatabaseFile(file)) {
+				savedFile = new MoveDatabaseFile(file);
+				int nextGameId = savedFile.getNextGameId();
+				if(persistent) {
+					copySavedFile();
+				}
+				
+				// Start the ids of games added to the tables after the ids in the file.
+				try(Connection connection = getConnection()) {
+					connection.createStatement().execute("alter table Game alter column id restart with " + nextGameId);
+				}
+			} else {
+				importSqlDatabase(file);
+			}
+			buildIndexes();
+		} catch(Exception e) {
+			throw new RuntimeException("Error importing database", e);
+		}
+	}
+	
+	/**
+	 * Copies the moves, position games and games of the saved file into the tables in one transaction, then closes
+	 * the file.
+	 */
+	private void copySavedFile() throws SQLException {
+		try(Connection connection = getConnection()) {
+			connection.setAutoCommit(false);
+			try(PreparedStatement gameStatement = connection.prepareStatement("insert into Game values ( ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? )");
+					PreparedStatement positionGameStatement = connection.prepareStatement("insert into PositionGame values ( NULL, ?, ?, ? )");
+					PreparedStatement moveStatement = connection.prepareStatement("insert into PositionMove values ( NULL, ?, ?, ?, ?, ?, ?, ?, ? )")) {
+				int batchSize = 0;
+				for(long index = 0; index < savedFile.getGameCount(); index++) {
+					int gameId = savedFile.getGameId(index);
+					String pgn = savedFile.getGameAt(index);
+					gameStatement.setInt(1, gameId);
+					gameStatement.setString(2, pgn);
+					setHeaderColumns(gameStatement, 3, GameHeader.fromPgn(gameId, pgn));
+					gameStatement.setLong(HEADER_COLUMN_DEFINITIONS.length + 3, getGameHash(pgn));
+					batchSize = addBatch(gameStatement, batchSize);
+				}
+				executeBatch(gameStatement, batchSize);
+				
+				batchSize = 0;
+				for(long record = 0; record < savedFile.getPositionGameCount(); record++) {
+					positionGameStatement.setLong(1, savedFile.getPositionGameKey(record));
+					positionGameStatement.setInt(2, savedFile.getPositionGameId(record));
+					positionGameStatement.setInt(3, savedFile.getPositionGameMove(record));
+					batchSize = addBatch(positionGameStatement, batchSize);
+				}
+				executeBatch(positionGameStatement, batchSize);
+				
+				batchSize = 0;
+				for(long record = 0; record < savedFile.getMoveCount(); record++) {
+					Move move = MoveDatabaseFile.decodeMove(savedFile.getMoveCode(record));
+					int[] winDrawLoss = savedFile.getMoveCounts(record);
+					moveStatement.setLong(1, savedFile.getMoveKey(record));
+					moveStatement.setString(2, move.getFrom().toString());
+					moveStatement.setString(3, move.getTo().toString());
+					moveStatement.setBoolean(4, move.getCastling());
+					moveStatement.setString(5, (move.getPromote() == null) ? "" : String.valueOf(move.getPromote().getAlgebraic()));
+					moveStatement.setInt(6, winDrawLoss[0]);
+					moveStatement.setInt(7, winDrawLoss[1]);
+					moveStatement.setInt(8, winDrawLoss[2]);
+					batchSize = addBatch(moveStatement, batchSize);
+				}
+				executeBatch(moveStatement, batchSize);
+			}
+			connection.commit();
+		}
+		closeSavedFile();
+		checkpoint();
+	}
+	
+	/**
+	 * Adds the parameters set on a statement to its batch, sending the batch once it is full, and returns the new
+	 * size of the batch.
+	 */
+	private static int addBatch(PreparedStatement statement, int batchSize) throws SQLException {
+		statement.addBatch();
+		if(batchSize + 1 < COPY_BATCH_SIZE) return batchSize + 1;
+		
+		statement.executeBatch();
+		return 0;
+	}
+	
+	/**
+	 * Sends what is left in a batch. HSQLDB fails to execute an empty batch, so empty batches are skipped.
+	 */
+	private static void executeBatch(PreparedStatement statement, int batchSize) throws SQLException {
+		if(batchSize > 0) {
+			statement.executeBatch();
+		}
+	}
+	
+	private void importSqlDatabase(File file) throws IOException, SQLException {
 		try(Connection connection = getConnection()) {
 			try(BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file))))) {
 				String line;
 				while((line = reader.readLine()) != null) {
-					connection.createStatement().execute(line.replace("\\u000a", "\n"));
+					connection.createStatement().execute(convertLegacyInsert(convertLegacyPosition(line)).replace("\\u000a", "\n"));
 				}
 			}
-		} catch(Exception e) {
-			throw new RuntimeException("Error importing database", e);
+			updateHeaderColumns(connection);
+			updateGameHashes(connection);
+		}
+	}
+	
+	private void closeSavedFile() {
+		if(savedFile == null) return;
+		
+		try {
+			savedFile.close();
+		} catch(IOException e) {
+			throw new RuntimeException("Error closing database file", e);
+		} finally {
+			savedFile = null;
+			savedGameHashes = null;
+		}
+	}
+	
+	/**
+	 * Builds the indexes used by getMoves() and the game queries from the saved file and the tables. This is done
+	 * after each import, so that moving between positions doesn't query the database. A database on disk keeps no
+	 * indexes in memory, as they take memory in proportion to its size, and is queried through its tables.
+	 */
+	void buildIndexes() {
+		if(persistent) {
+			explorerIndex = null;
+			gameIndex = null;
+			clearFilteredGames();
+			return;
+		}
+		
+		ExplorerIndex.Builder explorerBuilder = new ExplorerIndex.Builder();
+		PositionGameIndex.Builder gameBuilder = new PositionGameIndex.Builder();
+		try(Connection connection = getConnection()) {
+			readMoves(connection, explorerBuilder::add);
+			readPositionGames(connection, gameBuilder::add);
+		} catch(SQLException | IOException e) {
+			throw new RuntimeException("Error building indexes", e);
+		}
+		explorerIndex = explorerBuilder.build();
+		gameIndex = gameBuilder.build();
+		clearFilteredGames();
+	}
+	
+	/**
+	 * Returns whether the saved file has a game with a hash from getGameHash(). The file doesn't store hashes, so
+	 * they are found from its games the first time this is called.
+	 */
+	synchronized boolean hasSavedGame(long hash) {
+		if(savedFile == null) return false;
+		
+		if(savedGameHashes == null) {
+			long[] hashes = new long[(int)savedFile.getGameCount()];
+			for(int index = 0; index < hashes.length; index++) {
+				hashes[index] = getGameHash(savedFile.getGameAt(index));
+			}
+			Arrays.sort(hashes);
+			savedGameHashes = hashes;
 		}
+		return Arrays.binarySearch(savedGameHashes, hash) >= 0;
+	}
+	
+	/**
+	 * Returns the id that games added to the tables should start from, so that they don't share ids with the games
+	 * in the saved file.
+	 */
+	int getNextSavedGameId() {
+		return (savedFile == null) ? 0 : savedFile.getNextGameId();
+	}
+	
+	/**
+	 * Returns whether any games are in the saved file rather than the tables.
+	 */
+	boolean hasSavedGames() {
+		return savedFile != null && savedFile.getGameCount() > 0;
+	}
+	
+	/**
+	 * Converts an insert statement from a database saved with position text instead of position keys, replacing
+	 * the text with the key for the position it describes. Other statements are returned unchanged.
+	 */
+	private static String convertLegacyPosition(String line) {
+		Matcher matcher = LEGACY_POSITION_PATTERN.matcher(line);
+		if(!matcher.matches()) return line;
+		
+		long positionKey = new Board(matcher.group(2)).getPositionKey();
+		return matcher.group(1) + positionKey + matcher.group(3);
+	}
+	
+	/**
+	 * Converts an insert statement saved before a table had more columns to name the columns it has values for.
+	 * Other statements are returned unchanged.
+	 */
+	private static String convertLegacyInsert(String line) {
+		for(String[] legacyInsert:LEGACY_INSERTS) {
+			if(line.startsWith(legacyInsert[0])) {
+				return legacyInsert[1] + line.substring(legacyInsert[0].length());
+			}
+		}
+		return line;
 	}
 	
 	private void createTables() {
 		try(Connection connection = getConnection()) {
 			connection.createStatement().execute("drop schema public cascade");
-			connection.createStatement().execute("create table Game ( id int identity primary key, pgn varchar(10000) )");
-			connection.createStatement().execute("create table PositionGame ( id int identity primary key, positionText varchar(100), gameId int )");
+			connection.createStatement().execute("create table Game ( id int identity primary key, pgn varchar(10000), " + String.join(", ", HEADER_COLUMN_DEFINITIONS) + ", hash bigint )");
+			connection.createStatement().execute("create table PositionGame ( id int identity primary key, positionKey bigint, gameId int, move int )");
 			connection.createStatement().execute("create table PositionMove ( id int identity primary key," +
-					"positionText varchar(100), moveFrom char(2), moveTo char(2), castling boolean, promote char(1), win int, draw int, loss int )");
-			connection.createStatement().execute("create index GamePositionTextIndex on PositionMove ( positionText )");
-			connection.createStatement().execute("create index MovePositionTextIndex on PositionGame ( positionText )");
+					"positionKey bigint, moveFrom char(2), moveTo char(2), castling boolean, promote char(1), win int, draw int, loss int )");
+			connection.createStatement().execute(MOVE_POSITION_KEY_INDEX);
+			connection.createStatement().execute(GAME_POSITION_KEY_INDEX);
+			connection.createStatement().execute(GAME_HASH_INDEX);
+			createHeaderIndexes(connection);
 		} catch(SQLException e) {
 			throw new RuntimeException("Error creating tables", e);
 		}
@@ -125,9 +673,12 @@ public class MoveDatabase {
 	 */
 	public int addGame(String pgn) {
 		try(Connection connection = getConnection()) {
-			PreparedStatement statement = connection.prepareStatement("insert into Game values ( NULL, ? )",  Statement.RETURN_GENERATED_KEYS);
+			PreparedStatement statement = connection.prepareStatement("insert into Game values ( NULL, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? )",  Statement.RETURN_GENERATED_KEYS);
 			statement.setString(1, pgn);
+			setHeaderColumns(statement, 2, GameHeader.fromPgn(0, pgn));
+			statement.setLong(HEADER_COLUMN_DEFINITIONS.length + 2, getGameHash(pgn));
 			statement.executeUpdate();
+			clearFilteredGames();
 			
 			try(ResultSet resultSet = statement.getGeneratedKeys()) {
 				resultSet.next();
@@ -142,6 +693,10 @@ public class MoveDatabase {
 	 * Returns the pgn for a game given its id.
 	 */
 	public String getGame(int gameId) {
+		if(gameId < getNextSavedGameId()) {
+			return savedFile.getGame(gameId);
+		}
+		
 		try(Connection connection = getConnection()) {
 			PreparedStatement statement = connection.prepareStatement("select pgn from Game where id = ?");
 			statement.setInt(1, gameId);
@@ -166,18 +721,23 @@ public class MoveDatabase {
 	}
 	
 	public void addMove(Connection connection, int gameId, Board board, DatabaseMove move) throws SQLException {
+		// The indexes aren't updated for single moves, so moves and games are looked up in the tables again.
+		explorerIndex = null;
+		gameIndex = null;
+		
 		int[] winDrawLoss = getWinDrawLoss(connection, board, move);
 		
-		try(PreparedStatement statement = connection.prepareStatement("insert into PositionGame values ( NULL, ?, ? )")) {
-			statement.setString(1, board.getPositionDatabaseString());
+		try(PreparedStatement statement = connection.prepareStatement("insert into PositionGame values ( NULL, ?, ?, ? )")) {
+			statement.setLong(1, board.getPositionKey());
 			statement.setInt(2, gameId);
+			statement.setInt(3, MoveDatabaseFile.encodeMove(move.getMove()));
 			
 			statement.execute();
 		}
 		
 		if(winDrawLoss == null) {
 			try(PreparedStatement statement = connection.prepareStatement("insert into PositionMove values ( NULL, ?, ?, ?, ?, ?, ?, ?, ?)")) {
-				statement.setString(1, board.getPositionDatabaseString());
+				statement.setLong(1, board.getPositionKey());
 				statement.setString(2, move.getMove().getFrom().toString());
 				statement.setString(3, move.getMove().getTo().toString());
 				statement.setBoolean(4, move.getMove().getCastling());
@@ -194,12 +754,12 @@ public class MoveDatabase {
 				statement.execute();
 			}
 		} else {
-			try(PreparedStatement statement = connection.prepareStatement("update PositionMove set win=?, draw=?, loss=? where positionText=? and moveFrom=? and moveTo=? and promote=?")) {
+			try(PreparedStatement statement = connection.prepareStatement("update PositionMove set win=?, draw=?, loss=? where positionKey=? and moveFrom=? and moveTo=? and promote=?")) {
 				statement.setInt(1, move.getWin() + winDrawLoss[0]);
 				statement.setInt(2, move.getDraw() + winDrawLoss[1]);
 				statement.setInt(3, move.getLoss() + winDrawLoss[2]);
 				
-				statement.setString(4, board.getPositionDatabaseString());
+				statement.setLong(4, board.getPositionKey());
 				statement.setString(5, move.getMove().getFrom().toString());
 				statement.setString(6, move.getMove().getTo().toString());
 				if(move.getMove().getPromote() == null) {
@@ -214,8 +774,8 @@ public class MoveDatabase {
 	}
 	
 	private int[] getWinDrawLoss(Connection connection, Board board, DatabaseMove move) throws SQLException {
-		try(PreparedStatement statement = connection.prepareStatement("select win,draw,loss from PositionMove where positionText=? and moveFrom=? and moveTo=? and castling=? and promote=?")) {
-			statement.setString(1, board.getPositionDatabaseString());
+		try(PreparedStatement statement = connection.prepareStatement("select win,draw,loss from PositionMove where positionKey=? and moveFrom=? and moveTo=? and castling=? and promote=?")) {
+			statement.setLong(1, board.getPositionKey());
 			statement.setString(2, move.getMove().getFrom().toString());
 			statement.setString(3, move.getMove().getTo().toString());
 			statement.setBoolean(4, move.getMove().getCastling());
@@ -244,16 +804,35 @@ public class MoveDatabase {
 	 * Returns a list of games that reached the given position.
 	 */
 	public List<String> getGames(Board board) {
-		List<String> games = new ArrayList<>();
+		return getGames(board, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Returns a list of the first games to reach the given position, up to a limit, in order of id.
+	 */
+	public List<String> getGames(Board board, int limit) {
+		return getGames(getGameIds(limit, board));
+	}
+	
+	/**
+	 * Returns the pgn of some games given their ids.
+	 */
+	public List<String> getGames(int[] gameIds) {
+		List<String> games = new ArrayList<>(gameIds.length);
 		
 		try(Connection connection = getConnection()) {
-			try(PreparedStatement statement = connection.prepareStatement("select pgn from PositionGame inner join Game on Game.id = PositionGame.gameId where positionText=?")) {
-				statement.setString(1, board.getPositionDatabaseString());
-				statement.execute();
-				
-				try(ResultSet resultSet = statement.getResultSet()) {
-					while(resultSet.next()) {
-						games.add(resultSet.getString(1));
+			try(PreparedStatement statement = connection.prepareStatement("select pgn from Game where id = ?")) {
+				for(int gameId:gameIds) {
+					if(gameId < getNextSavedGameId()) {
+						games.add(savedFile.getGame(gameId));
+						continue;
+					}
+					
+					statement.setInt(1, gameId);
+					try(ResultSet resultSet = statement.executeQuery()) {
+						if(resultSet.next()) {
+							games.add(resultSet.getString(1));
+						}
 					}
 				}
 			}
@@ -264,10 +843,272 @@ public class MoveDatabase {
 		return games;
 	}
 	
+	/**
+	 * Returns a list of the games that reached the given position, in order of id, to be read a page at a time.
+	 */
+	public GameList getGameList(Board board) {
+		return new GameList(this, board);
+	}
+	
+	/**
+	 * Returns a list of the games that reached the given position and match a filter, in order of id.
+	 */
+	public GameList getGameList(Board board, GameFilter filter) {
+		if(filter.isEmpty()) return getGameList(board);
+		
+		FilteredGames games = getFilteredGames(filter);
+		int[] gameIds = getGameIds(Integer.MAX_VALUE, board);
+		int size = 0;
+		for(int gameId:gameIds) {
+			if(games.matches(gameId)) {
+				gameIds[size++] = gameId;
+			}
+		}
+		return new GameList(this, board, filter, Arrays.copyOf(gameIds, size));
+	}
+	
+	/**
+	 * Returns the games matching a filter. The games for the last filter are kept until games are added, so that
+	 * moving between positions with the same filter only finds them once.
+	 */
+	synchronized FilteredGames getFilteredGames(GameFilter filter) {
+		if(filter.equals(this.filter)) return filteredGames;
+		
+		FilteredGames games = new FilteredGames();
+		
+		// Games in the saved file don't have header columns, so their tags are read instead.
+		long savedCount = (savedFile == null) ? 0 : savedFile.getGameCount();
+		for(long index = 0; index < savedCount; index++) {
+			GameHeader header = GameHeader.fromPgn(savedFile.getGameId(index), savedFile.getGameTagsAt(index));
+			if(filter.matches(header)) {
+				games.add(header.getId(), header.getResult());
+			}
+		}
+		
+		try(Connection connection = getConnection()) {
+			try(PreparedStatement statement = connection.prepareStatement("select id, result from Game where " + filter.getCondition())) {
+				filter.setParameters(statement, 1);
+				try(ResultSet resultSet = statement.executeQuery()) {
+					while(resultSet.next()) {
+						games.add(resultSet.getInt(1), resultSet.getString(2));
+					}
+				}
+			}
+		} catch(SQLException e) {
+			throw new RuntimeException("Error filtering games", e);
+		}
+		
+		this.filter = filter;
+		this.filteredGames = games;
+		return games;
+	}
+	
+	private synchronized void clearFilteredGames() {
+		filter = null;
+		filteredGames = null;
+	}
+	
+	/**
+	 * Returns the headers of some games given their ids, in the same order, without reading their moves. Games that
+	 * don't exist are left out.
+	 */
+	public List<GameHeader> getGameHeaders(int[] gameIds) {
+		GameHeader[] headers = new GameHeader[gameIds.length];
+		
+		try(Connection connection = getConnection()) {
+			if(gameIds.length <= MAX_HEADER_LOOKUPS) {
+				try(PreparedStatement statement = connection.prepareStatement("select id, " + HEADER_COLUMNS + " from Game where id = ?")) {
+					for(int i = 0; i < gameIds.length; i++) {
+						if(gameIds[i] < getNextSavedGameId()) {
+							headers[i] = getSavedHeader(gameIds[i]);
+							continue;
+						}
+						
+						statement.setInt(1, gameIds[i]);
+						try(ResultSet resultSet = statement.executeQuery()) {
+							if(resultSet.next()) {
+								headers[i] = getHeader(resultSet);
+							}
+						}
+					}
+				}
+			} else {
+				getGameHeaders(connection, gameIds, headers);
+			}
+		} catch(SQLException e) {
+			throw new RuntimeException("Error getting game headers", e);
+		}
+		
+		List<GameHeader> headerList = new ArrayList<>(headers.length);
+		for(GameHeader header:headers) {
+			if(header != null) {
+				headerList.add(header);
+			}
+		}
+		return headerList;
+	}
+	
+	/**
+	 * Finds the headers of many games by reading every game in the Game table once, which is faster than looking up
+	 * each game.
+	 */
+	private void getGameHeaders(Connection connection, int[] gameIds, GameHeader[] headers) throws SQLException {
+		int[] sortedIds = gameIds.clone();
+		Arrays.sort(sortedIds);
+		GameHeader[] sortedHeaders = new GameHeader[sortedIds.length];
+		
+		try(ResultSet resultSet = connection.createStatement().executeQuery("select id, " + HEADER_COLUMNS + " from Game")) {
+			while(resultSet.next()) {
+				int index = Arrays.binarySearch(sortedIds, resultSet.getInt(1));
+				if(index >= 0) {
+					sortedHeaders[index] = getHeader(resultSet);
+				}
+			}
+		}
+		
+		for(int i = 0; i < gameIds.length; i++) {
+			if(gameIds[i] < getNextSavedGameId()) {
+				headers[i] = getSavedHeader(gameIds[i]);
+			} else {
+				headers[i] = sortedHeaders[Arrays.binarySearch(sortedIds, gameIds[i])];
+			}
+		}
+	}
+	
+	/**
+	 * Returns the headers of the games that reached a position and match a filter, sorted by a column and then by
+	 * id, from an offset up to a limit. Only the games in the tables are read, so it is used when there are no saved
+	 * games.
+	 */
+	List<GameHeader> getSortedGameHeaders(Board board, GameFilter filter, GameList.Sort sort, boolean descending, int offset, int limit) {
+		String order = descending ? " desc" : "";
+		List<GameHeader> headers = new ArrayList<>();
+		
+		try(Connection connection = getConnection()) {
+			try(PreparedStatement statement = connection.prepareStatement("select id, " + HEADER_COLUMNS + " from Game"
+					+ " where id in (select gameId from PositionGame where positionKey=?) and " + filter.getCondition()
+					+ " order by " + sort.getColumn() + order + ", id" + order + " limit ? offset ?")) {
+				statement.setLong(1, board.getPositionKey());
+				int index = filter.setParameters(statement, 2);
+				statement.setInt(index++, limit);
+				statement.setInt(index, offset);
+				try(ResultSet resultSet = statement.executeQuery()) {
+					while(resultSet.next()) {
+						headers.add(getHeader(resultSet));
+					}
+				}
+			}
+		} catch(SQLException e) {
+			throw new RuntimeException("Error getting game headers", e);
+		}
+		
+		return headers;
+	}
+	
+	private GameHeader getSavedHeader(int gameId) {
+		String tags = savedFile.getGameTags(gameId);
+		return (tags == null) ? null : GameHeader.fromPgn(gameId, tags);
+	}
+	
+	/**
+	 * Returns the number of games that reached the given position.
+	 */
+	public int getGameCount(Board board) {
+		PositionGameIndex index = gameIndex;
+		if(index != null) {
+			return index.getGameCount(board.getPositionKey());
+		}
+		
+		return getGameIds(board.getPositionKey()).length;
+	}
+	
+	/**
+	 * Returns the ids of the first games to reach every one of the given positions, up to a limit, in order of id.
+	 */
+	public int[] getGameIds(int limit, Board... boards) {
+		long[] positionKeys = new long[boards.length];
+		for(int i = 0; i < boards.length; i++) {
+			positionKeys[i] = boards[i].getPositionKey();
+		}
+		
+		PositionGameIndex index = gameIndex;
+		if(index != null) {
+			return index.getCommonGameIds(positionKeys, limit);
+		}
+		
+		if(positionKeys.length == 0) return new int[0];
+		
+		int[] gameIds = getGameIds(positionKeys[0]);
+		for(int i = 1; i < positionKeys.length; i++) {
+			gameIds = intersect(gameIds, getGameIds(positionKeys[i]));
+		}
+		return Arrays.copyOf(gameIds, Math.min(limit, gameIds.length));
+	}
+	
+	/**
+	 * Returns the distinct ids of the games that reached a position from the saved file and the tables, in order.
+	 */
+	private int[] getGameIds(long positionKey) {
+		int[] savedIds = (savedFile == null) ? new int[0] : savedFile.getGameIds(positionKey);
+		int[] gameIds = new int[savedIds.length];
+		int size = 0;
+		for(int gameId:savedIds) {
+			if(size == 0 || gameIds[size - 1] != gameId) {
+				gameIds[size++] = gameId;
+			}
+		}
+		
+		// Games in the tables have larger ids than the games in the saved file, so they come after them.
+		try(Connection connection = getConnection()) {
+			try(PreparedStatement statement = connection.prepareStatement("select distinct gameId from PositionGame where positionKey=? order by gameId")) {
+				statement.setLong(1, positionKey);
+				try(ResultSet resultSet = statement.executeQuery()) {
+					while(resultSet.next()) {
+						if(size == gameIds.length) {
+							gameIds = Arrays.copyOf(gameIds, size * 2 + 16);
+						}
+						gameIds[size++] = resultSet.getInt(1);
+					}
+				}
+			}
+		} catch(SQLException e) {
+			throw new RuntimeException("Error getting games", e);
+		}
+		
+		return Arrays.copyOf(gameIds, size);
+	}
+	
+	/**
+	 * Returns the ids in both of two sorted arrays of distinct ids.
+	 */
+	private static int[] intersect(int[] a, int[] b) {
+		int[] common = new int[Math.min(a.length, b.length)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.length) {
+			if(a[i] < b[j]) {
+				i++;
+			} else if(a[i] > b[j]) {
+				j++;
+			} else {
+				common[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(common, size);
+	}
+	
 	/**
 	 * Returns a list of moves played at the given position.
 	 */
 	public List<DatabaseMove> getMoves(Board board) {
+		ExplorerIndex index = explorerIndex;
+		if(index != null) {
+			return index.getMoves(board.getPositionKey());
+		}
+		
 		try(Connection connection = getConnection()) {
 			return getMoves(connection, board);
 		} catch(SQLException e) {
@@ -275,11 +1116,57 @@ public class MoveDatabase {
 		}
 	}
 	
+	/**
+	 * Returns a list of moves played at the given position by the games matching a filter. Each game is counted once
+	 * for each move it played from the position, and moves imported before moves were stored for each game are left
+	 * out.
+	 */
+	public List<DatabaseMove> getMoves(Board board, GameFilter filter) {
+		if(filter.isEmpty()) return getMoves(board);
+		
+		FilteredGames games = getFilteredGames(filter);
+		long positionKey = board.getPositionKey();
+		
+		PositionGameIndex index = gameIndex;
+		if(index != null) {
+			return index.getMoves(positionKey, games);
+		}
+		
+		FilteredGames.MoveCounts moveCounts = new FilteredGames.MoveCounts();
+		if(savedFile != null) {
+			long first = savedFile.findPositionGames(positionKey);
+			for(long record = first; record < savedFile.getPositionGameCount() && savedFile.getPositionGameKey(record) == positionKey; record++) {
+				int gameId = savedFile.getPositionGameId(record);
+				int moveCode = savedFile.getPositionGameMove(record);
+				
+				// Skip the records of a game repeating the position and playing the same move.
+				if(record > first && gameId == savedFile.getPositionGameId(record - 1) && moveCode == savedFile.getPositionGameMove(record - 1)) continue;
+				
+				moveCounts.add(moveCode, games.getResult(gameId));
+			}
+		}
+		
+		try(Connection connection = getConnection()) {
+			try(PreparedStatement statement = connection.prepareStatement("select distinct gameId, coalesce(move, -1) from PositionGame where positionKey=?")) {
+				statement.setLong(1, positionKey);
+				try(ResultSet resultSet = statement.executeQuery()) {
+					while(resultSet.next()) {
+						moveCounts.add(resultSet.getInt(2), games.getResult(resultSet.getInt(1)));
+					}
+				}
+			}
+		} catch(SQLException e) {
+			throw new RuntimeException("Error getting moves", e);
+		}
+		
+		return moveCounts.getMoves();
+	}
+	
 	public List<DatabaseMove> getMoves(Connection connection, Board board) throws SQLException {
 		List<DatabaseMove> moves = new ArrayList<DatabaseMove>();
 	
-		try(PreparedStatement statement = connection.prepareStatement("select * from PositionMove where positionText=? order by (win+draw+loss) desc")) {
-			statement.setString(1, board.getPositionDatabaseString());
+		try(PreparedStatement statement = connection.prepareStatement("select * from PositionMove where positionKey=? order by (win+draw+loss) desc")) {
+			statement.setLong(1, board.getPositionKey());
 			statement.execute();
 			
 			try(ResultSet resultSet = statement.getResultSet()) {
@@ -292,64 +1179,100 @@ public class MoveDatabase {
 					int draw = resultSet.getInt(8);
 					int loss = resultSet.getInt(9);
 					
-					Square fromSquare = new Square(moveFrom);
-					Square toSquare = new Square(moveTo);
-					PromotionChoice promotePiece = null;
-					if(promote.equals("r")) promotePiece = PromotionChoice.ROOK;
-					if(promote.equals("q")) promotePiece = PromotionChoice.QUEEN;
-					if(promote.equals("n")) promotePiece = PromotionChoice.KNIGHT;
-					if(promote.equals("b")) promotePiece = PromotionChoice.BISHOP;
-					moves.add(new DatabaseMove(new Move(fromSquare, toSquare, castling, promotePiece), win, draw, loss));
+					moves.add(new DatabaseMove(getMove(moveFrom, moveTo, castling, promote), win, draw, loss));
 				}
-				
-				return moves;
 			}
 		}
+		
+		if(savedFile != null) {
+			addSavedMoves(moves, savedFile.getMoves(board.getPositionKey()));
+		}
+		
+		return moves;
 	}
 	
+	/**
+	 * Adds the moves for a position from the saved file to the moves from the tables, adding together the counts of
+	 * moves that are in both, and keeping the moves in order of their total count.
+	 */
+	private static void addSavedMoves(List<DatabaseMove> moves, List<DatabaseMove> savedMoves) {
+		if(savedMoves.isEmpty()) return;
+		
+		for(DatabaseMove savedMove:savedMoves) {
+			int index = 0;
+			while(index < moves.size() && !moves.get(index).getMove().equals(savedMove.getMove())) {
+				index++;
+			}
+			
+			if(index == moves.size()) {
+				moves.add(savedMove);
+			} else {
+				DatabaseMove move = moves.get(index);
+				moves.set(index, new DatabaseMove(move.getMove(), move.getWin() + savedMove.getWin(), move.getDraw() + savedMove.getDraw(), move.getLoss() + savedMove.getLoss()));
+			}
+		}
+		
+		moves.sort((a, b) -> Integer.compare(b.getTotal(), a.getTotal()));
+	}
+	
+	/**
+	 * Returns a move from the columns of a PositionMove row.
+	 */
+	private static Move getMove(String moveFrom, String moveTo, boolean castling, String promote) {
+		Square fromSquare = new Square(moveFrom);
+		Square toSquare = new Square(moveTo);
+		PromotionChoice promotePiece = null;
+		if(promote.equals("r")) promotePiece = PromotionChoice.ROOK;
+		if(promote.equals("q")) promotePiece = PromotionChoice.QUEEN;
+		if(promote.equals("n")) promotePiece = PromotionChoice.KNIGHT;
+		if(promote.equals("b")) promotePiece = PromotionChoice.BISHOP;
+		return new Move(fromSquare, toSquare, castling, promotePiece);
+	}
+	
+	/**
+	 * Adds the main lines of some games to the database in a single bulk import, skipping games with an unknown
+	 * result or an illegal move.
+	 */
 	public void importPgnGames(List<PgnGame> games) {
+		importPgnGames(games, false);
+	}
+	
+	/**
+	 * Adds the main lines of some games to the database as in importPgnGames(List), appending them to the games
+	 * already in the database if append is set, so that games already in the database are skipped.
+	 */
+	public void importPgnGames(List<PgnGame> games, boolean append) {
 		long startTime = System.currentTimeMillis();
 		System.out.println("Starting...");
 		int moves = 0;
+		int importedGames = 0;
 		
-		try(Connection connection = getConnection()) {
+		try(MoveDatabaseImporter importer = new MoveDatabaseImporter(this, append)) {
 			for(PgnGame game:games) {
-				System.out.println("Importing: " + game);
+				if(game.getResult().equals(GameResult.OTHER)) {
+					System.out.println("Skipping game with unknown result: " + game.toString());
+					continue;
+				}
 				
 				try {
-					int win = 0;
-					int draw = 0;
-					int loss = 0;
-					if(game.getResult().equals(GameResult.BLACK_WIN)) loss++;
-					if(game.getResult().equals(GameResult.WHITE_WIN)) win++;
-					if(game.getResult().equals(GameResult.DRAW)) draw++;
-					if(game.getResult().equals(GameResult.OTHER)) {
-						System.out.println("Skipping game with unknown result: " + game.toString());
-						continue;
-					}
-					
-					int gameId = addGame(game.getPgn());
-					
-					Board board = game.getInitialPosition();
-					for(Move move:game.getMainLine()) {
-						moves++;
-						
-						addMove(connection, gameId, board, new DatabaseMove(move, win, draw, loss));
-						
-						board = board.makeMove(move);
-					}
+					moves += importer.addGame(game);
+					importedGames++;
 				} catch(IllegalMoveException e) {
 					System.out.println("Skipping game with illegal move: " + game + " - " + e.getMessage());
 				}
 			}
-		} catch(SQLException e) {
-			throw new RuntimeException("Error importing pgn games");
+			
+			importer.finish();
+			importedGames -= importer.getDuplicateCount();
+			if(append) {
+				System.out.println("Skipped duplicate games: " + importer.getDuplicateCount());
+			}
 		}
 		
 		long time = System.currentTimeMillis() - startTime;
 		double perSecond = moves * 1000 / (double)time;
-		double gamesPerSecond = perSecond / (35 * 2);
+		double gamesPerSecond = importedGames * 1000 / (double)time;
 		
-		System.out.printf("Done in: %dms (%.2f moves/sec) (%.2f games/sec)\n", time, perSecond, gamesPerSecond);
+		System.out.printf("Done in: %dms (%d games, %d moves) (%.2f moves/sec) (%.2f games/sec)\n", time, importedGames, moves, perSecond, gamesPerSecond);
 	}
 }
@@ -0,0 +1,588 @@
+package domain;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A move database saved as a binary file, which is read by mapping it into memory, so that opening even a large
+ * database reads nothing more than the header. Files are written with a MoveDatabaseFile.Writer.
+ *
+ * After the header, the file has these sections:
+ *  - Moves: records of (position key, move code, win, draw, loss), sorted by position key then move code.
+ *  - Move index: the position key of every indexInterval-th move record, to find the records for a position with
+ *    a binary search over the index and a short scan of the records.
+ *  - Position games: records of (position key, game id, move code), sorted by position key then game id, with an
+ *    index like the one for moves. The move code is the move the game played from the position, or -1 if it isn't
+ *    known. A game that reaches a position more than once has a record for each time.
+ *  - Game data: the pgn of each game, as its length in bytes followed by its UTF-8 text.
+ *  - Game table: records of (game id, position of pgn), sorted by game id.
+ *
+ * Numbers are big-endian. The version is increased whenever the layout changes, and files with another version
+ * are rejected. A file can be read from several threads at once.
+ */
+public class MoveDatabaseFile implements Closeable {
+	private static final byte[] MAGIC = "CHESSMDB".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	
+	private static final int DEFAULT_WINDOW_BITS = 30;
+	private static final int INDEX_INTERVAL = 64;
+	
+	// Magic, version, index interval, and eight counts and positions of sections.
+	private static final int HEADER_SIZE = 8 + 4 + 4 + 8 * 8;
+	
+	private static final int MOVE_RECORD_SIZE = 8 + 4 + 4 + 4 + 4;
+	private static final int POSITION_GAME_RECORD_SIZE = 8 + 4 + 4;
+	private static final int GAME_TABLE_RECORD_SIZE = 4 + 8;
+	
+	private final FileChannel channel;
+	private final MappedByteBuffer[] windows;
+	private final int windowBits;
+	
+	private final int indexInterval;
+	private final long moveCount;
+	private final long movesPosition;
+	private final long moveIndexPosition;
+	private final long positionGameCount;
+	private final long positionGamesPosition;
+	private final long positionGameIndexPosition;
+	private final long gameCount;
+	private final long gameTablePosition;
+	
+	/**
+	 * Returns whether a file starts like a move database file, of any version.
+	 */
+	public static boolean isMoveDatabaseFile(File file) throws IOException {
+		try(DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+			byte[] magic = new byte[MAGIC.length];
+			input.readFully(magic);
+			return Arrays.equals(magic, MAGIC);
+		} catch(EOFException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the code for a move stored in a file: the from and to square indexes in the low 12 bits, then a bit
+	 * for castling, then the promotion choice plus one, or zero for no promotion.
+	 */
+	public static int encodeMove(Move move) {
+		int code = move.getFrom().getIndex() | (move.getTo().getIndex() << 6) | (move.getCastling() ? 1 << 12 : 0);
+		if(move.getPromote() != null) {
+			code |= (move.getPromote().ordinal() + 1) << 13;
+		}
+		return code;
+	}
+	
+	/**
+	 * Returns the move for a code from encodeMove().
+	 */
+	public static Move decodeMove(int code) {
+		int promote = code >>> 13;
+		PromotionChoice promotionChoice = (promote == 0) ? null : PromotionChoice.values()[promote - 1];
+		return new Move(Square.fromIndex(code & 63), Square.fromIndex((code >>> 6) & 63), (code & (1 << 12)) != 0, promotionChoice);
+	}
+	
+	/**
+	 * Maps a file in windows of 1GB.
+	 */
+	public MoveDatabaseFile(File file) throws IOException {
+		this(file, DEFAULT_WINDOW_BITS);
+	}
+	
+	/**
+	 * Maps a file in windows of 2^windowBits bytes.
+	 */
+	MoveDatabaseFile(File file, int windowBits) throws IOException {
+		this.windowBits = windowBits;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if(size < HEADER_SIZE) throw new IOException("Not a move database file: " + file);
+			
+			long windowSize = 1L << windowBits;
+			this.windows = new MappedByteBuffer[(int)((size + windowSize - 1) >>> windowBits)];
+			for(int i = 0; i < windows.length; i++) {
+				long position = (long)i << windowBits;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+			}
+			
+			for(int i = 0; i < MAGIC.length; i++) {
+				if(getByte(i) != MAGIC[i]) throw new IOException("Not a move database file: " + file);
+			}
+			int version = getInt(8);
+			if(version != VERSION) throw new IOException("Unsupported move database version: " + version);
+			
+			this.indexInterval = getInt(12);
+			this.moveCount = getLong(16);
+			this.movesPosition = getLong(24);
+			this.moveIndexPosition = getLong(32);
+			this.positionGameCount = getLong(40);
+			this.positionGamesPosition = getLong(48);
+			this.positionGameIndexPosition = getLong(56);
+			this.gameCount = getLong(64);
+			this.gameTablePosition = getLong(72);
+		} catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	private byte getByte(long position) {
+		return windows[(int)(position >>> windowBits)].get((int)(position & ((1L << windowBits) - 1)));
+	}
+	
+	private int getInt(long position) {
+		MappedByteBuffer window = windows[(int)(position >>> windowBits)];
+		int offset = (int)(position & ((1L << windowBits) - 1));
+		if(offset + 4 <= window.limit()) return window.getInt(offset);
+		
+		int value = 0;
+		for(int i = 0; i < 4; i++) {
+			value = (value << 8) | (getByte(position + i) & 0xff);
+		}
+		return value;
+	}
+	
+	private long getLong(long position) {
+		MappedByteBuffer window = windows[(int)(position >>> windowBits)];
+		int offset = (int)(position & ((1L << windowBits) - 1));
+		if(offset + 8 <= window.limit()) return window.getLong(offset);
+		
+		long value = 0;
+		for(int i = 0; i < 8; i++) {
+			value = (value << 8) | (getByte(position + i) & 0xff);
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns the first record with a position key at least as large as a key, or the record count if there isn't
+	 * one. Each index entry is the key of the first record in a block, so the first block starting at or after the
+	 * key is found, and the records are scanned from the start of the block before it.
+	 */
+	private long findFirst(long positionKey, long recordsPosition, int recordSize, long recordCount, long indexPosition) {
+		long low = 0;
+		long high = (recordCount + indexInterval - 1) / indexInterval;
+		while(low < high) {
+			long middle = (low + high) >>> 1;
+			if(getLong(indexPosition + middle * 8) < positionKey) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		
+		long record = Math.max(low - 1, 0) * indexInterval;
+		while(record < recordCount && getLong(recordsPosition + record * recordSize) < positionKey) {
+			record++;
+		}
+		return record;
+	}
+	
+	/**
+	 * Returns the moves played at a position, in order of their codes.
+	 */
+	public List<DatabaseMove> getMoves(long positionKey) {
+		List<DatabaseMove> moves = new ArrayList<>();
+		for(long record = findFirst(positionKey, movesPosition, MOVE_RECORD_SIZE, moveCount, moveIndexPosition); record < moveCount; record++) {
+			long position = movesPosition + record * MOVE_RECORD_SIZE;
+			if(getLong(position) != positionKey) break;
+			moves.add(new DatabaseMove(decodeMove(getInt(position + 8)), getInt(position + 12), getInt(position + 16), getInt(position + 20)));
+		}
+		return moves;
+	}
+	
+	/**
+	 * Returns the ids of the games that reached a position, in order.
+	 */
+	public int[] getGameIds(long positionKey) {
+		long first = findPositionGames(positionKey);
+		long last = first;
+		while(last < positionGameCount && getPositionGameKey(last) == positionKey) {
+			last++;
+		}
+		
+		int[] gameIds = new int[(int)(last - first)];
+		for(int i = 0; i < gameIds.length; i++) {
+			gameIds[i] = getPositionGameId(first + i);
+		}
+		return gameIds;
+	}
+	
+	/**
+	 * Returns the pgn of a game given its id, or null if there is no game with that id.
+	 */
+	public String getGame(int gameId) {
+		long index = findGame(gameId);
+		return (index == -1) ? null : getGameAt(index);
+	}
+	
+	/**
+	 * Returns the tag pairs at the start of the pgn of a game, up to the first blank line, or null if there is no
+	 * game with that id. This doesn't read the moves of the game.
+	 */
+	public String getGameTags(int gameId) {
+		long index = findGame(gameId);
+		return (index == -1) ? null : getGameTagsAt(index);
+	}
+	
+	/**
+	 * Returns the tag pairs of the game at an index in the game table.
+	 */
+	String getGameTagsAt(long index) {
+		long position = getLong(gameTablePosition + index * GAME_TABLE_RECORD_SIZE + 4);
+		int length = getInt(position);
+		
+		// Find the end of the first line with nothing but a line break.
+		int end = 0;
+		boolean lineStart = true;
+		while(end < length) {
+			byte b = getByte(position + 4 + end);
+			end++;
+			if(b == '\n') {
+				if(lineStart) break;
+				lineStart = true;
+			} else if(b != '\r') {
+				lineStart = false;
+			}
+		}
+		
+		byte[] bytes = new byte[end];
+		copy(position + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Returns the index in the game table of the game with an id, or -1 if there isn't one.
+	 */
+	private long findGame(int gameId) {
+		long low = 0;
+		long high = gameCount;
+		while(low < high) {
+			long middle = (low + high) >>> 1;
+			int middleId = getGameId(middle);
+			if(middleId < gameId) {
+				low = middle + 1;
+			} else if(middleId > gameId) {
+				high = middle;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns one more than the largest game id in the file, or 0 if it has no games.
+	 */
+	public int getNextGameId() {
+		return (gameCount == 0) ? 0 : getGameId(gameCount - 1) + 1;
+	}
+	
+	/**
+	 * Returns the number of move records.
+	 */
+	long getMoveCount() {
+		return moveCount;
+	}
+	
+	long getMoveKey(long record) {
+		return getLong(movesPosition + record * MOVE_RECORD_SIZE);
+	}
+	
+	int getMoveCode(long record) {
+		return getInt(movesPosition + record * MOVE_RECORD_SIZE + 8);
+	}
+	
+	/**
+	 * Returns the win, draw, and loss counts of a move record.
+	 */
+	int[] getMoveCounts(long record) {
+		long position = movesPosition + record * MOVE_RECORD_SIZE;
+		return new int[] { getInt(position + 12), getInt(position + 16), getInt(position + 20) };
+	}
+	
+	/**
+	 * Returns the number of position game records.
+	 */
+	long getPositionGameCount() {
+		return positionGameCount;
+	}
+	
+	long getPositionGameKey(long record) {
+		return getLong(positionGamesPosition + record * POSITION_GAME_RECORD_SIZE);
+	}
+	
+	int getPositionGameId(long record) {
+		return getInt(positionGamesPosition + record * POSITION_GAME_RECORD_SIZE + 8);
+	}
+	
+	/**
+	 * Returns the code of the move played from the position of a position game record, or -1 if it isn't known.
+	 */
+	int getPositionGameMove(long record) {
+		return getInt(positionGamesPosition + record * POSITION_GAME_RECORD_SIZE + 12);
+	}
+	
+	/**
+	 * Returns the first position game record for a position, or the record count if there isn't one.
+	 */
+	long findPositionGames(long positionKey) {
+		return findFirst(positionKey, positionGamesPosition, POSITION_GAME_RECORD_SIZE, positionGameCount, positionGameIndexPosition);
+	}
+	
+	/**
+	 * Returns the number of games.
+	 */
+	long getGameCount() {
+		return gameCount;
+	}
+	
+	/**
+	 * Returns the id of the game at an index in the game table.
+	 */
+	int getGameId(long index) {
+		return getInt(gameTablePosition + index * GAME_TABLE_RECORD_SIZE);
+	}
+	
+	/**
+	 * Returns the pgn of the game at an index in the game table.
+	 */
+	String getGameAt(long index) {
+		long position = getLong(gameTablePosition + index * GAME_TABLE_RECORD_SIZE + 4);
+		byte[] bytes = new byte[getInt(position)];
+		copy(position + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private void copy(long position, byte[] bytes) {
+		int offset = 0;
+		while(offset < bytes.length) {
+			// Use a duplicate to read without moving the position of the shared buffer.
+			ByteBuffer buffer = windows[(int)(position >>> windowBits)].duplicate();
+			buffer.position((int)(position & ((1L << windowBits) - 1)));
+			int count = Math.min(bytes.length - offset, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			
+			position += count;
+			offset += count;
+		}
+	}
+	
+	/**
+	 * Closes the file. The mapped memory is released when the buffers are garbage collected.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	/**
+	 * Writes a move database file. Moves must be added first, then position games, then games, each in the order
+	 * they are sorted in the file, and the file is complete once finish() is called.
+	 */
+	public static class Writer implements Closeable {
+		private static final int MOVES = 0;
+		private static final int POSITION_GAMES = 1;
+		private static final int GAMES = 2;
+		private static final int FINISHED = 3;
+		
+		private final File file;
+		private final DataOutputStream output;
+		private long position = 0;
+		private int section = MOVES;
+		
+		private long moveCount = 0;
+		private long movesPosition = HEADER_SIZE;
+		private long moveIndexPosition;
+		private long positionGameCount = 0;
+		private long positionGamesPosition;
+		private long positionGameIndexPosition;
+		private long gameTablePosition;
+		
+		// The keys of the first record in each block of the section being written.
+		private long[] index = new long[1024];
+		private int indexSize = 0;
+		
+		private long lastKey;
+		private int lastValue;
+		
+		private int[] gameIds = new int[1024];
+		private long[] gamePositions = new long[1024];
+		private int gameCount = 0;
+		
+		public Writer(File file) throws IOException {
+			this.file = file;
+			this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			
+			// The header is written by finish(), once the positions of the sections are known.
+			output.write(new byte[HEADER_SIZE]);
+			position = HEADER_SIZE;
+		}
+		
+		/**
+		 * Adds a record for a move played at a position.
+		 */
+		public void addMove(long positionKey, Move move, int win, int draw, int loss) throws IOException {
+			addMove(positionKey, encodeMove(move), win, draw, loss);
+		}
+		
+		/**
+		 * Adds a record for a move played at a position, given its code from encodeMove().
+		 */
+		public void addMove(long positionKey, int moveCode, int win, int draw, int loss) throws IOException {
+			if(section != MOVES) throw new IllegalStateException("Moves must be added before position games and games");
+			checkOrder(moveCount, positionKey, moveCode, false);
+			
+			addIndex(moveCount, positionKey);
+			output.writeLong(positionKey);
+			output.writeInt(moveCode);
+			output.writeInt(win);
+			output.writeInt(draw);
+			output.writeInt(loss);
+			position += MOVE_RECORD_SIZE;
+			moveCount++;
+		}
+		
+		/**
+		 * Adds a record for a game reaching a position and playing a move from it, given its code from encodeMove(),
+		 * or -1 if the move isn't known.
+		 */
+		public void addPositionGame(long positionKey, int gameId, int moveCode) throws IOException {
+			endMoves();
+			if(section != POSITION_GAMES) throw new IllegalStateException("Position games must be added before games");
+			checkOrder(positionGameCount, positionKey, gameId, true);
+			
+			addIndex(positionGameCount, positionKey);
+			output.writeLong(positionKey);
+			output.writeInt(gameId);
+			output.writeInt(moveCode);
+			position += POSITION_GAME_RECORD_SIZE;
+			positionGameCount++;
+		}
+		
+		/**
+		 * Adds the pgn of a game.
+		 */
+		public void addGame(int gameId, String pgn) throws IOException {
+			endPositionGames();
+			if(section != GAMES) throw new IllegalStateException("File already finished");
+			if(gameCount > 0 && gameId <= gameIds[gameCount - 1]) throw new IllegalArgumentException("Games not in order of id: " + gameId);
+			
+			if(gameCount == gameIds.length) {
+				gameIds = Arrays.copyOf(gameIds, gameCount * 2);
+				gamePositions = Arrays.copyOf(gamePositions, gameCount * 2);
+			}
+			gameIds[gameCount] = gameId;
+			gamePositions[gameCount] = position;
+			gameCount++;
+			
+			byte[] bytes = pgn.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+			position += 4 + bytes.length;
+		}
+		
+		private void endMoves() throws IOException {
+			if(section == MOVES) {
+				moveIndexPosition = writeIndex();
+				positionGamesPosition = position;
+				section = POSITION_GAMES;
+			}
+		}
+		
+		private void endPositionGames() throws IOException {
+			endMoves();
+			if(section == POSITION_GAMES) {
+				positionGameIndexPosition = writeIndex();
+				section = GAMES;
+			}
+		}
+		
+		/**
+		 * Checks that a record comes after the last one, or is the same as it if repeats are allowed.
+		 */
+		private void checkOrder(long count, long positionKey, int value, boolean allowRepeats) {
+			if(count > 0 && (positionKey < lastKey || (positionKey == lastKey && (value < lastValue || (value == lastValue && !allowRepeats))))) {
+				throw new IllegalArgumentException("Records not in order: " + positionKey + ", " + value);
+			}
+			lastKey = positionKey;
+			lastValue = value;
+		}
+		
+		private void addIndex(long record, long positionKey) {
+			if(record % INDEX_INTERVAL != 0) return;
+			
+			if(indexSize == index.length) {
+				index = Arrays.copyOf(index, indexSize * 2);
+			}
+			index[indexSize++] = positionKey;
+		}
+		
+		/**
+		 * Writes the index of the section just written, returning its position.
+		 */
+		private long writeIndex() throws IOException {
+			long indexPosition = position;
+			for(int i = 0; i < indexSize; i++) {
+				output.writeLong(index[i]);
+			}
+			position += indexSize * 8L;
+			indexSize = 0;
+			return indexPosition;
+		}
+		
+		/**
+		 * Writes the game table and the header, and closes the file.
+		 */
+		public void finish() throws IOException {
+			endPositionGames();
+			if(section == FINISHED) return;
+			
+			gameTablePosition = position;
+			for(int i = 0; i < gameCount; i++) {
+				output.writeInt(gameIds[i]);
+				output.writeLong(gamePositions[i]);
+			}
+			position += (long)gameCount * GAME_TABLE_RECORD_SIZE;
+			output.close();
+			section = FINISHED;
+			
+			try(RandomAccessFile header = new RandomAccessFile(file, "rw")) {
+				header.write(MAGIC);
+				header.writeInt(VERSION);
+				header.writeInt(INDEX_INTERVAL);
+				header.writeLong(moveCount);
+				header.writeLong(movesPosition);
+				header.writeLong(moveIndexPosition);
+				header.writeLong(positionGameCount);
+				header.writeLong(positionGamesPosition);
+				header.writeLong(positionGameIndexPosition);
+				header.writeLong(gameCount);
+				header.writeLong(gameTablePosition);
+			}
+		}
+		
+		/**
+		 * Closes the file. A file closed without being finished has no header, and can't be read.
+		 */
+		public void close() throws IOException {
+			output.close();
+		}
+	}
+}
@@ -0,0 +1,411 @@
+package domain;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pgn.PgnGame;
+
+/**
+ * Adds many games to a MoveDatabase at once. The win/draw/loss counts for each move are added up in memory and
+ * written once each when the import is finished, rather than being read and updated for every move of every game.
+ * Everything is written in batches on one connection in a single transaction, and the position and game header
+ * indexes are dropped during the import and built again at the end.
+ *
+ * An import can instead append games to a large database, skipping games that are already in it by their hash
+ * from MoveDatabase.getGameHash(). Appending keeps the indexes on the tables, which are needed to find existing
+ * games and moves, so writing the games takes time in the number of games appended rather than the size of the
+ * database. The database's in-memory indexes are built again at the end, as they are after any import.
+ *
+ * The import must be finished with finish(). Closing an import that wasn't finished rolls back every game added.
+ */
+public class MoveDatabaseImporter implements AutoCloseable {
+	// The number of rows to send to the database at once.
+	private static final int BATCH_SIZE = 10000;
+	
+	/**
+	 * A move played at a position, used as the key for the counts of that move.
+	 */
+	private static final class PositionMove {
+		private final long positionKey;
+		private final Move move;
+		private final int moveCode;
+		private final int hashCode;
+		
+		public PositionMove(long positionKey, Move move) {
+			this.positionKey = positionKey;
+			this.move = move;
+			this.moveCode = MoveDatabaseFile.encodeMove(move);
+			
+			this.hashCode = (int)(positionKey ^ (positionKey >>> 32)) * 31 + moveCode;
+		}
+		
+		public boolean equals(Object o) {
+			if(!(o instanceof PositionMove)) return false;
+			PositionMove other = (PositionMove)o;
+			return positionKey == other.positionKey && move.equals(other.move);
+		}
+		
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+	
+	/**
+	 * A game that has been played through, ready to be added. Games can be played through on other threads than
+	 * the one adding them to the database.
+	 */
+	public static final class ReplayedGame {
+		private final String pgn;
+		private final long hash;
+		private final Map<String, String> tags;
+		private final int win;
+		private final int draw;
+		private final int loss;
+		private final List<PositionMove> moves;
+		
+		private ReplayedGame(String pgn, Map<String, String> tags, int win, int draw, int loss, List<PositionMove> moves) {
+			this.pgn = pgn;
+			this.hash = MoveDatabase.getGameHash(pgn);
+			this.tags = tags;
+			this.win = win;
+			this.draw = draw;
+			this.loss = loss;
+			this.moves = moves;
+		}
+		
+		public int getMoveCount() {
+			return moves.size();
+		}
+	}
+	
+	private final MoveDatabase database;
+	private final Connection connection;
+	private final PreparedStatement gameStatement;
+	private final PreparedStatement positionGameStatement;
+	
+	// Whether games are appended, skipping games already in the database, with the statement to find them by hash.
+	private final boolean append;
+	private final PreparedStatement hashStatement;
+	
+	// The hashes of the games appended, which aren't found by the statement until their batch is sent.
+	private final Set<Long> appendedHashes = new HashSet<>();
+	private int duplicateCount = 0;
+	
+	private final Map<PositionMove, int[]> moveCounts = new HashMap<>();
+	
+	// Whether PositionMove had rows before the import, so that counts have to be merged into existing rows.
+	private final boolean mergeMoves;
+	
+	private int nextGameId;
+	private int batchedGames = 0;
+	private int batchedPositionGames = 0;
+	private boolean finished = false;
+	
+	/**
+	 * Starts an import into a database.
+	 */
+	public MoveDatabaseImporter(MoveDatabase database) {
+		this(database, false);
+	}
+	
+	/**
+	 * Starts an import into a database, appending to the games in it if append is set.
+	 */
+	public MoveDatabaseImporter(MoveDatabase database, boolean append) {
+		this.database = database;
+		this.append = append;
+		this.connection = database.getConnection();
+		try {
+			try(ResultSet resultSet = connection.createStatement().executeQuery("select count(*) from PositionMove")) {
+				resultSet.next();
+				mergeMoves = (resultSet.getInt(1) > 0);
+			}
+			
+			try(ResultSet resultSet = connection.createStatement().executeQuery("select max(id) from Game")) {
+				resultSet.next();
+				int maxId = resultSet.getInt(1);
+				nextGameId = resultSet.wasNull() ? 0 : maxId + 1;
+			}
+			nextGameId = Math.max(nextGameId, database.getNextSavedGameId());
+			
+			if(!append) {
+				connection.createStatement().execute("drop index GamePositionKeyIndex if exists");
+				connection.createStatement().execute("drop index GameHashIndex if exists");
+				MoveDatabase.dropHeaderIndexes(connection);
+			}
+			
+			// Merging counts looks up existing moves by position, so the move index is kept for that.
+			if(!mergeMoves) {
+				connection.createStatement().execute("drop index MovePositionKeyIndex if exists");
+			}
+			
+			connection.setAutoCommit(false);
+			
+			gameStatement = connection.prepareStatement("insert into Game values ( ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? )");
+			positionGameStatement = connection.prepareStatement("insert into PositionGame values ( NULL, ?, ?, ? )");
+			hashStatement = append ? connection.prepareStatement("select count(*) from Game where hash=?") : null;
+		} catch(SQLException e) {
+			closeConnection();
+			throw new RuntimeException("Error starting import", e);
+		}
+	}
+	
+	/**
+	 * Plays through the main line of a game to be added. Games with an unknown result can't be counted, and should
+	 * be skipped instead.
+	 */
+	public static ReplayedGame replay(PgnGame game) throws IllegalMoveException {
+		int win = game.getResult().equals(GameResult.WHITE_WIN) ? 1 : 0;
+		int draw = game.getResult().equals(GameResult.DRAW) ? 1 : 0;
+		int loss = game.getResult().equals(GameResult.BLACK_WIN) ? 1 : 0;
+		
+		List<Move> moves = game.getMainLine();
+		List<PositionMove> positionMoves = new ArrayList<>(moves.size());
+		Board board = game.getInitialPosition();
+		for(Move move:moves) {
+			positionMoves.add(new PositionMove(board.getPositionKey(), move));
+			board = board.makeMove(move);
+		}
+		
+		return new ReplayedGame(game.getPgn(), game.getTags(), win, draw, loss, positionMoves);
+	}
+	
+	/**
+	 * Adds the main line of a game, returning the number of moves added. The whole game is played through first,
+	 * so that nothing is added from a game with an illegal move.
+	 */
+	public int addGame(PgnGame game) throws IllegalMoveException {
+		return addGame(replay(game));
+	}
+	
+	/**
+	 * Adds a game that has been played through, returning the number of moves added. When appending, a game already
+	 * in the database isn't added, and no moves are returned for it.
+	 */
+	public int addGame(ReplayedGame game) {
+		int win = game.win;
+		int draw = game.draw;
+		int loss = game.loss;
+		List<PositionMove> positionMoves = game.moves;
+		
+		try {
+			if(append && isDuplicate(game.hash)) {
+				duplicateCount++;
+				return 0;
+			}
+			
+			int gameId = nextGameId++;
+			gameStatement.setInt(1, gameId);
+			gameStatement.setString(2, game.pgn);
+			MoveDatabase.setHeaderColumns(gameStatement, 3, new GameHeader(gameId, game.tags, positionMoves.size()));
+			gameStatement.setLong(13, game.hash);
+			gameStatement.addBatch();
+			batchedGames++;
+			
+			for(PositionMove positionMove:positionMoves) {
+				positionGameStatement.setLong(1, positionMove.positionKey);
+				positionGameStatement.setInt(2, gameId);
+				positionGameStatement.setInt(3, positionMove.moveCode);
+				positionGameStatement.addBatch();
+				batchedPositionGames++;
+				
+				int[] counts = moveCounts.get(positionMove);
+				if(counts == null) {
+					counts = new int[3];
+					moveCounts.put(positionMove, counts);
+				}
+				counts[0] += win;
+				counts[1] += draw;
+				counts[2] += loss;
+			}
+			
+			if(batchedGames + batchedPositionGames >= BATCH_SIZE) {
+				executeBatches();
+			}
+		} catch(SQLException e) {
+			throw new RuntimeException("Error adding game", e);
+		}
+		
+		return positionMoves.size();
+	}
+	
+	/**
+	 * Returns whether a game with a hash is in the database or has already been appended, and remembers it as
+	 * appended if not.
+	 */
+	private boolean isDuplicate(long hash) throws SQLException {
+		if(!appendedHashes.add(hash)) return true;
+		if(database.hasSavedGame(hash)) return true;
+		
+		hashStatement.setLong(1, hash);
+		try(ResultSet resultSet = hashStatement.executeQuery()) {
+			resultSet.next();
+			return resultSet.getInt(1) > 0;
+		}
+	}
+	
+	/**
+	 * Returns the number of games that weren't appended because they were already in the database.
+	 */
+	public int getDuplicateCount() {
+		return duplicateCount;
+	}
+	
+	/**
+	 * Sends the batched games to the database. HSQLDB fails to execute an empty batch, so empty batches are skipped.
+	 */
+	private void executeBatches() throws SQLException {
+		if(batchedGames > 0) {
+			gameStatement.executeBatch();
+			batchedGames = 0;
+		}
+		if(batchedPositionGames > 0) {
+			positionGameStatement.executeBatch();
+			batchedPositionGames = 0;
+		}
+	}
+	
+	/**
+	 * Writes the move counts, builds the indexes, and commits the import.
+	 */
+	public void finish() {
+		try {
+			executeBatches();
+			
+			List<Map.Entry<PositionMove, int[]>> newMoves = new ArrayList<>();
+			if(mergeMoves) {
+				mergeMoveCounts(newMoves);
+			} else {
+				newMoves.addAll(moveCounts.entrySet());
+			}
+			insertMoveCounts(newMoves);
+			moveCounts.clear();
+			
+			connection.commit();
+			
+			createIndexes();
+			database.checkpoint();
+			database.buildIndexes();
+			finished = true;
+		} catch(SQLException e) {
+			throw new RuntimeException("Error finishing import", e);
+		}
+	}
+	
+	/**
+	 * Adds the counts to moves already in the database, adding the moves that weren't to a list.
+	 */
+	private void mergeMoveCounts(List<Map.Entry<PositionMove, int[]>> newMoves) throws SQLException {
+		try(PreparedStatement statement = connection.prepareStatement("update PositionMove set win=win+?, draw=draw+?, loss=loss+? where positionKey=? and moveFrom=? and moveTo=? and castling=? and promote=?")) {
+			List<Map.Entry<PositionMove, int[]>> batch = new ArrayList<>(BATCH_SIZE);
+			for(Map.Entry<PositionMove, int[]> entry:moveCounts.entrySet()) {
+				int[] counts = entry.getValue();
+				statement.setInt(1, counts[0]);
+				statement.setInt(2, counts[1]);
+				statement.setInt(3, counts[2]);
+				setMove(statement, 4, entry.getKey());
+				statement.addBatch();
+				
+				batch.add(entry);
+				if(batch.size() >= BATCH_SIZE) {
+					executeMerge(statement, batch, newMoves);
+				}
+			}
+			executeMerge(statement, batch, newMoves);
+		}
+	}
+	
+	private static void executeMerge(PreparedStatement statement, List<Map.Entry<PositionMove, int[]>> batch, List<Map.Entry<PositionMove, int[]>> newMoves) throws SQLException {
+		if(batch.isEmpty()) return;
+		
+		int[] updateCounts = statement.executeBatch();
+		for(int i = 0; i < updateCounts.length; i++) {
+			if(updateCounts[i] == 0) {
+				newMoves.add(batch.get(i));
+			}
+		}
+		batch.clear();
+	}
+	
+	private void insertMoveCounts(List<Map.Entry<PositionMove, int[]>> moves) throws SQLException {
+		try(PreparedStatement statement = connection.prepareStatement("insert into PositionMove values ( NULL, ?, ?, ?, ?, ?, ?, ?, ? )")) {
+			int batchSize = 0;
+			for(Map.Entry<PositionMove, int[]> entry:moves) {
+				int[] counts = entry.getValue();
+				setMove(statement, 1, entry.getKey());
+				statement.setInt(6, counts[0]);
+				statement.setInt(7, counts[1]);
+				statement.setInt(8, counts[2]);
+				statement.addBatch();
+				
+				if(++batchSize >= BATCH_SIZE) {
+					statement.executeBatch();
+					batchSize = 0;
+				}
+			}
+			if(batchSize > 0) {
+				statement.executeBatch();
+			}
+		}
+	}
+	
+	/**
+	 * Sets the position key, from and to squares, castling, and promotion of a move as five parameters starting at
+	 * an index.
+	 */
+	private static void setMove(PreparedStatement statement, int index, PositionMove positionMove) throws SQLException {
+		Move move = positionMove.move;
+		statement.setLong(index, positionMove.positionKey);
+		statement.setString(index + 1, move.getFrom().toString());
+		statement.setString(index + 2, move.getTo().toString());
+		statement.setBoolean(index + 3, move.getCastling());
+		if(move.getPromote() == null) {
+			statement.setString(index + 4, "");
+		} else {
+			statement.setString(index + 4, String.valueOf(move.getPromote().getAlgebraic()));
+		}
+	}
+	
+	private void createIndexes() throws SQLException {
+		if(!append) {
+			connection.createStatement().execute(MoveDatabase.GAME_POSITION_KEY_INDEX);
+			connection.createStatement().execute(MoveDatabase.GAME_HASH_INDEX);
+			MoveDatabase.createHeaderIndexes(connection);
+		}
+		if(!mergeMoves) {
+			connection.createStatement().execute(MoveDatabase.MOVE_POSITION_KEY_INDEX);
+		}
+	}
+	
+	/**
+	 * Ends the import, rolling back any games added if it wasn't finished.
+	 */
+	public void close() {
+		try {
+			if(!finished) {
+				connection.rollback();
+				createIndexes();
+			}
+		} catch(SQLException e) {
+			throw new RuntimeException("Error closing import", e);
+		} finally {
+			closeConnection();
+		}
+	}
+	
+	private void closeConnection() {
+		try {
+			connection.close();
+		} catch(SQLException e) {
+			throw new RuntimeException("Error closing connection", e);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import domain.bitboard.MoveGenerator;
+import domain.bitboard.PackedMove;
+import domain.search.TranspositionTable;
+
+/**
+ * Counts the leaf nodes of the legal move tree from a position to a fixed depth ("perft"), to check move
+ * generation and SearchBoard.doMove() against published counts and to measure their speed.
+ *
+ * Usage: Perft [depth fen [hashMB]]
+ * With a depth and FEN, prints the count below each root move ("divide") and the total, caching subtree counts
+ * in a transposition table of the given size if there is one. With no arguments, runs every reference position
+ * and compares it with the expected counts.
+ */
+public class Perft {
+	/**
+	 * A position with its published perft counts, starting at depth 1.
+	 */
+	public static class ReferencePosition {
+		private final String name;
+		private final String fen;
+		private final long[] counts;
+		
+		public ReferencePosition(String name, String fen, long... counts) {
+			this.name = name;
+			this.fen = fen;
+			this.counts = counts;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public String getFen() {
+			return fen;
+		}
+		
+		public int getMaxDepth() {
+			return counts.length;
+		}
+		
+		public long getCount(int depth) {
+			return counts[depth - 1];
+		}
+	}
+	
+	public static final ReferencePosition[] REFERENCE_POSITIONS = {
+		new ReferencePosition("Start position", "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 20, 400, 8902, 197281, 4865609),
+		new ReferencePosition("Kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 48, 2039, 97862, 4085603),
+		new ReferencePosition("Position 3", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 14, 191, 2812, 43238, 674624),
+		new ReferencePosition("Position 4", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 6, 264, 9467, 422333),
+		new ReferencePosition("Position 5", "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 44, 1486, 62379, 2103487),
+		new ReferencePosition("Position 6", "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 46, 2079, 89890, 3894594),
+		
+		// En-passant, castling and promotion edge cases.
+		new ReferencePosition("Illegal en-passant 1", "3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1", 18, 92, 1670, 10138, 185429, 1134888),
+		new ReferencePosition("Illegal en-passant 2", "8/8/4k3/8/2p5/8/B2P2K1/8 w - - 0 1", 13, 102, 1266, 10276, 135655, 1015133),
+		new ReferencePosition("En-passant gives check", "8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1", 15, 126, 1928, 13931, 206379, 1440467),
+		new ReferencePosition("Short castling gives check", "5k2/8/8/8/8/8/8/4K2R w K - 0 1", 15, 66, 1198, 6399, 120330, 661072),
+		new ReferencePosition("Long castling gives check", "3k4/8/8/8/8/8/8/R3K3 w Q - 0 1", 16, 71, 1286, 7418, 141077, 803711),
+		new ReferencePosition("Castling rights", "r3k2r/1b4bq/8/8/8/8/7B/R3K2R w KQkq - 0 1", 26, 1141, 27826, 1274206),
+		new ReferencePosition("Castling prevented", "r3k2r/8/3Q4/8/8/5q2/8/R3K2R b KQkq - 0 1", 44, 1494, 50509, 1720476),
+		new ReferencePosition("Promote out of check", "2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1", 11, 133, 1442, 19174, 266199, 3821001),
+		new ReferencePosition("Discovered check", "8/8/1P2K3/8/2n5/1q6/8/5k2 b - - 0 1", 29, 165, 5160, 31961, 1004658),
+		new ReferencePosition("Promote to give check", "4k3/1P6/8/8/8/8/K7/8 w - - 0 1", 9, 40, 472, 2661, 38983, 217342),
+		new ReferencePosition("Underpromote to give check", "8/P1k5/K7/8/8/8/8/8 w - - 0 1", 6, 27, 273, 1329, 18135, 92683),
+		new ReferencePosition("Self stalemate", "K1k5/8/P7/8/8/8/8/8 w - - 0 1", 2, 6, 13, 63, 382, 2217),
+		new ReferencePosition("Stalemate and checkmate", "8/k1P5/8/1K6/8/8/8/8 w - - 0 1", 10, 25, 268, 926, 10857, 43261, 567584),
+		
+		// Chess960 positions with file letter castling rights.
+		new ReferencePosition("Chess960 1", "bqnb1rkr/pp3ppp/3ppn2/2p5/5P2/P2P4/NPP1P1PP/BQ1BNRKR w HFhf - 2 9", 21, 528, 12189, 326672),
+		new ReferencePosition("Chess960 2", "2nnrbkr/p1qppppp/8/1ppb4/6PP/3PP3/PPP2P2/BQNNRBKR w HEhe - 1 9", 21, 807, 18002, 667366),
+		new ReferencePosition("Chess960 3", "b1q1rrkb/pppppppp/3nn3/8/P7/1PPP4/4PPPP/BQNNRKRB w GE - 1 9", 20, 479, 10471, 273318),
+		new ReferencePosition("Chess960 4", "qbbnnrkr/2pp2pp/p7/1p2pp2/8/P3PP2/1PPP1KPP/QBBNNR1R w hf - 0 9", 22, 593, 13440, 382958),
+		new ReferencePosition("Chess960 5", "1nbbnrkr/p1p1ppp1/3p4/1p3P1p/3Pq2P/8/PPP1P1P1/QNBBNRKR w HFhf - 0 9", 28, 1120, 31058, 1171749)
+	};
+	
+	// Mixed into position keys to key subtree counts on their depth too.
+	private static final long DEPTH_KEY = 0x9E3779B97F4A7C15L;
+	
+	/**
+	 * Returns the number of leaf nodes at a depth below a position.
+	 */
+	public static long perft(Board board, int depth) {
+		return perft(board, depth, null);
+	}
+	
+	/**
+	 * Returns the number of leaf nodes at a depth below a position, caching the counts of transposed subtrees in a
+	 * table if it isn't null.
+	 */
+	public static long perft(Board board, int depth, TranspositionTable transpositionTable) {
+		return perft(new SearchBoard(board), depth, new int[depth + 1][MoveGenerator.MAX_MOVES], transpositionTable);
+	}
+	
+	/**
+	 * Returns the number of leaf nodes at a depth below a position for each legal move, keyed by the move in
+	 * coordinate notation.
+	 */
+	public static Map<String, Long> divide(Board board, int depth) {
+		return divide(board, depth, null);
+	}
+	
+	/**
+	 * Returns the counts for each legal move as in divide(), caching the counts of transposed subtrees in a table if
+	 * it isn't null.
+	 */
+	public static Map<String, Long> divide(Board board, int depth, TranspositionTable transpositionTable) {
+		SearchBoard searchBoard = new SearchBoard(board);
+		int[][] buffers = new int[depth + 1][MoveGenerator.MAX_MOVES];
+		int[] moves = buffers[depth];
+		int count = searchBoard.getLegalMoves(moves, 0);
+		
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for(int i = 0; i < count; i++) {
+			searchBoard.doMove(moves[i]);
+			counts.put(PackedMove.toString(moves[i]), perft(searchBoard, depth - 1, buffers, transpositionTable));
+			searchBoard.undoMove();
+		}
+		return counts;
+	}
+	
+	private static long perft(SearchBoard board, int depth, int[][] buffers, TranspositionTable transpositionTable) {
+		if(depth == 0) return 1;
+		
+		long key = board.getKey() ^ (depth * DEPTH_KEY);
+		if(transpositionTable != null && depth > 1) {
+			long entry = transpositionTable.probe(key);
+			if(entry != 0) {
+				return TranspositionTable.getScore(entry);
+			}
+		}
+		
+		int[] moves = buffers[depth];
+		int count = board.getLegalMoves(moves, 0);
+		
+		// The moves are all legal, so the leaves can be counted without making them.
+		if(depth == 1) return count;
+		
+		long nodes = 0;
+		for(int i = 0; i < count; i++) {
+			board.doMove(moves[i]);
+			nodes += perft(board, depth - 1, buffers, transpositionTable);
+			board.undoMove();
+		}
+		
+		// Counts are stored in the score, so larger counts can't be cached.
+		if(transpositionTable != null && nodes <= Integer.MAX_VALUE) {
+			transpositionTable.store(key, 0, (int)nodes, depth, TranspositionTable.EXACT);
+		}
+		
+		return nodes;
+	}
+	
+	public static void main(String[] args) {
+		if(args.length == 0) {
+			runReferencePositions();
+		} else if(args.length == 2) {
+			printDivide(new Board(args[1]), Integer.parseInt(args[0]), null);
+		} else if(args.length == 3) {
+			printDivide(new Board(args[1]), Integer.parseInt(args[0]), new TranspositionTable(Integer.parseInt(args[2])));
+		} else {
+			System.err.println("Usage: Perft [depth fen [hashMB]]");
+			System.exit(1);
+		}
+	}
+	
+	private static void printDivide(Board board, int depth, TranspositionTable transpositionTable) {
+		long start = System.nanoTime();
+		Map<String, Long> counts = divide(board, depth, transpositionTable);
+		long time = System.nanoTime() - start;
+		
+		long total = 0;
+		for(Map.Entry<String, Long> entry:counts.entrySet()) {
+			System.out.println(entry.getKey() + ": " + entry.getValue());
+			total += entry.getValue();
+		}
+		
+		System.out.println();
+		System.out.println("Moves: " + counts.size());
+		System.out.println("Nodes: " + total);
+		printSpeed(total, time);
+	}
+	
+	private static void runReferencePositions() {
+		long totalNodes = 0;
+		long totalTime = 0;
+		int failures = 0;
+		
+		for(ReferencePosition position:REFERENCE_POSITIONS) {
+			int depth = position.getMaxDepth();
+			
+			long start = System.nanoTime();
+			long nodes = perft(new Board(position.getFen()), depth);
+			long time = System.nanoTime() - start;
+			
+			boolean passed = (nodes == position.getCount(depth));
+			if(!passed) failures++;
+			
+			System.out.printf("%-30s depth %d: %10d %s%n", position.getName(), depth, nodes, passed ? "ok" : "FAILED (expected " + position.getCount(depth) + ")");
+			
+			totalNodes += nodes;
+			totalTime += time;
+		}
+		
+		System.out.println();
+		System.out.println("Failures: " + failures);
+		System.out.println("Nodes: " + totalNodes);
+		printSpeed(totalNodes, totalTime);
+	}
+	
+	private static void printSpeed(long nodes, long nanos) {
+		double seconds = nanos / 1e9;
+		System.out.printf("Time: %.2fs%n", seconds);
+		System.out.printf("Nodes/second: %.0f%n", nodes / Math.max(seconds, 1e-9));
+	}
+}
@@ -0,0 +1,382 @@
+package domain;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import domain.MoveDatabaseImporter.ReplayedGame;
+import pgn.MappedPgnFile;
+import pgn.ParseException;
+import pgn.PgnGame;
+import pgn.PgnImporter;
+import pgn.PgnSplitter;
+
+/**
+ * Imports a PGN collection into a MoveDatabase in three stages connected by bounded queues: a reader thread that
+ * splits the collection into the text of each game, worker threads that parse the games and play them through,
+ * and a writer on the calling thread that adds them to the database. A stage that gets ahead of the next one
+ * blocks on the queue between them, so memory use stays bounded however large the collection is.
+ *
+ * A mapped file doesn't need a reader thread. It is divided into ranges of bytes starting at games, and each
+ * worker reads the games in the ranges it takes itself.
+ *
+ * When the import is done, the time each stage spent working rather than waiting is printed, to show which stage
+ * limits the import.
+ */
+public class PgnImportPipeline {
+	// Games are passed between stages in chunks, to cut the cost of the queues.
+	private static final int CHUNK_SIZE = 100;
+	
+	// The number of chunks that can wait in each queue for each worker.
+	private static final int QUEUE_CHUNKS = 4;
+	
+	// The number of ranges a mapped file is divided into for each worker, so that workers finishing their ranges
+	// early can take more.
+	private static final int RANGES_PER_WORKER = 16;
+	
+	// Sent by the reader to each worker, and by each worker to the writer, after the last chunk.
+	private static final List<String> END_OF_TEXTS = new ArrayList<>();
+	private static final List<ReplayedGame> END_OF_GAMES = new ArrayList<>();
+	
+	/**
+	 * The number of games a stage has handled, and the time its threads spent working on them.
+	 */
+	private static final class Stage {
+		private final String name;
+		private final AtomicLong games = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		
+		public Stage(String name) {
+			this.name = name;
+		}
+		
+		public void add(int games, long nanos) {
+			this.games.addAndGet(games);
+			this.nanos.addAndGet(nanos);
+		}
+		
+		public void print() {
+			long millis = nanos.get() / 1000000;
+			System.out.printf("%-8s %10d games %10dms working %12.2f games/sec/thread\n", name, games.get(), millis, games.get() * 1e9 / Math.max(nanos.get(), 1));
+		}
+	}
+	
+	private final MoveDatabase database;
+	private final int workers;
+	private final boolean append;
+	
+	private final Stage readStage = new Stage("Read");
+	private final Stage parseStage = new Stage("Parse");
+	private final Stage writeStage = new Stage("Write");
+	
+	private final AtomicLong skippedGames = new AtomicLong();
+	private final AtomicReference<Throwable> readError = new AtomicReference<>();
+	
+	private final BlockingQueue<List<ReplayedGame>> games;
+	
+	/**
+	 * Create a pipeline that imports into a database, parsing games on a number of worker threads. Each pipeline
+	 * is used for a single import.
+	 */
+	public PgnImportPipeline(MoveDatabase database, int workers) {
+		this(database, workers, false);
+	}
+	
+	/**
+	 * Create a pipeline as above that appends to the games in the database if append is set, skipping games that
+	 * are already in it.
+	 */
+	public PgnImportPipeline(MoveDatabase database, int workers, boolean append) {
+		this.database = database;
+		this.workers = Math.max(workers, 1);
+		this.append = append;
+		this.games = new ArrayBlockingQueue<>(this.workers * QUEUE_CHUNKS);
+	}
+	
+	/**
+	 * Imports the main lines of every game in a PGN collection into the database in a single bulk import, skipping
+	 * games that can't be parsed, have an illegal move or an unknown result, or are variants. The reader is closed
+	 * when the import is done.
+	 */
+	public void importPgn(final Reader reader) throws IOException {
+		final BlockingQueue<List<String>> texts = new ArrayBlockingQueue<>(workers * QUEUE_CHUNKS);
+		
+		List<Thread> threads = new ArrayList<>();
+		threads.add(new Thread(new Runnable() {
+			public void run() {
+				read(reader, texts);
+			}
+		}, "PGN reader"));
+		for(int i = 0; i < workers; i++) {
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					parse(texts);
+				}
+			}, "PGN worker " + (i + 1)));
+		}
+		
+		run(threads);
+	}
+	
+	/**
+	 * Imports every game in a mapped PGN file as in importPgn(Reader), with each worker reading games from its own
+	 * ranges of the file.
+	 */
+	public void importPgn(final MappedPgnFile file) throws IOException {
+		final long[] splitPoints = file.getSplitPoints(workers * RANGES_PER_WORKER);
+		final AtomicInteger nextRange = new AtomicInteger();
+		
+		List<Thread> threads = new ArrayList<>();
+		for(int i = 0; i < workers; i++) {
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					parseRanges(file, splitPoints, nextRange);
+				}
+			}, "PGN worker " + (i + 1)));
+		}
+		
+		run(threads);
+	}
+	
+	/**
+	 * Runs the reader and worker threads, adding the games from the workers to the database on this thread.
+	 */
+	private void run(List<Thread> threads) throws IOException {
+		long startTime = System.currentTimeMillis();
+		System.out.println("Starting...");
+		
+		int importedGames = 0;
+		int moves = 0;
+		try {
+			for(Thread thread:threads) {
+				thread.setDaemon(true);
+				thread.start();
+			}
+			
+			try(MoveDatabaseImporter importer = new MoveDatabaseImporter(database, append)) {
+				int finishedWorkers = 0;
+				while(finishedWorkers < workers) {
+					List<ReplayedGame> chunk = games.take();
+					if(chunk == END_OF_GAMES) {
+						finishedWorkers++;
+						continue;
+					}
+					
+					long start = System.nanoTime();
+					for(ReplayedGame game:chunk) {
+						moves += importer.addGame(game);
+					}
+					importedGames += chunk.size();
+					writeStage.add(chunk.size(), System.nanoTime() - start);
+				}
+				
+				Throwable error = readError.get();
+				if(error instanceof IOException) throw (IOException)error;
+				if(error instanceof Error) throw (Error)error;
+				if(error != null) throw new RuntimeException("Error reading pgn", error);
+				
+				long start = System.nanoTime();
+				importer.finish();
+				writeStage.add(0, System.nanoTime() - start);
+				
+				importedGames -= importer.getDuplicateCount();
+				if(append) {
+					System.out.println("Skipped duplicate games: " + importer.getDuplicateCount());
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Import interrupted", e);
+		} finally {
+			// Stop the other stages if the writer failed, so they don't wait on the queues forever.
+			for(Thread thread:threads) {
+				thread.interrupt();
+			}
+			for(Thread thread:threads) {
+				try {
+					thread.join();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		
+		long time = System.currentTimeMillis() - startTime;
+		double perSecond = moves * 1000 / (double)time;
+		double gamesPerSecond = importedGames * 1000 / (double)time;
+		
+		System.out.printf("Done in: %dms (%d games, %d moves, %d skipped) (%.2f moves/sec) (%.2f games/sec)\n", time, importedGames, moves, skippedGames.get(), perSecond, gamesPerSecond);
+		readStage.print();
+		parseStage.print();
+		writeStage.print();
+	}
+	
+	/**
+	 * Splits the collection into chunks of game text, then tells each worker that there are no more.
+	 */
+	private void read(Reader reader, BlockingQueue<List<String>> texts) {
+		try {
+			try(PgnSplitter splitter = new PgnSplitter(reader)) {
+				List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+				long start = System.nanoTime();
+				String text;
+				while((text = splitter.nextGame()) != null) {
+					chunk.add(text);
+					if(chunk.size() == CHUNK_SIZE) {
+						readStage.add(chunk.size(), System.nanoTime() - start);
+						texts.put(chunk);
+						chunk = new ArrayList<>(CHUNK_SIZE);
+						start = System.nanoTime();
+					}
+				}
+				
+				if(!chunk.isEmpty()) {
+					readStage.add(chunk.size(), System.nanoTime() - start);
+					texts.put(chunk);
+				}
+			} catch(IOException | RuntimeException | Error e) {
+				// The workers still finish, so that the writer sees the error and rolls back the import.
+				readError.compareAndSet(null, e);
+			}
+			
+			for(int i = 0; i < workers; i++) {
+				texts.put(END_OF_TEXTS);
+			}
+		} catch(InterruptedException e) {
+			return;
+		}
+	}
+	
+	/**
+	 * Parses and plays through chunks of game text until the reader is done, then tells the writer. The writer is
+	 * told even if the worker fails, including with an Error such as a StackOverflowError on a deeply nested game,
+	 * so that it doesn't wait forever. It isn't told if the worker is interrupted, as the writer has stopped then.
+	 */
+	private void parse(BlockingQueue<List<String>> texts) {
+		try {
+			try {
+				parseChunks(texts);
+			} catch(RuntimeException | Error e) {
+				// Let the writer see the error and roll back the import.
+				readError.compareAndSet(null, e);
+			}
+			
+			games.put(END_OF_GAMES);
+		} catch(InterruptedException e) {
+			return;
+		}
+	}
+	
+	private void parseChunks(BlockingQueue<List<String>> texts) throws InterruptedException {
+		PgnImporter pgnImporter = new PgnImporter();
+		List<String> chunk;
+		while((chunk = texts.take()) != END_OF_TEXTS) {
+			long start = System.nanoTime();
+			List<ReplayedGame> replayedGames = new ArrayList<>(chunk.size());
+			for(String text:chunk) {
+				ReplayedGame game = parseGame(pgnImporter, text);
+				if(game == null) {
+					skippedGames.incrementAndGet();
+				} else {
+					replayedGames.add(game);
+				}
+			}
+			parseStage.add(chunk.size(), System.nanoTime() - start);
+			
+			if(!replayedGames.isEmpty()) {
+				games.put(replayedGames);
+			}
+		}
+	}
+	
+	/**
+	 * Reads, parses and plays through the games in ranges of a mapped file until there are no ranges left, then
+	 * tells the writer, even if the worker fails as in parse().
+	 */
+	private void parseRanges(MappedPgnFile file, long[] splitPoints, AtomicInteger nextRange) {
+		PgnImporter pgnImporter = new PgnImporter();
+		try {
+			try {
+				int range;
+				while((range = nextRange.getAndIncrement()) < splitPoints.length - 1) {
+					if(splitPoints[range] == splitPoints[range + 1]) continue;
+					
+					try(PgnSplitter splitter = new PgnSplitter(file.openReader(splitPoints[range], splitPoints[range + 1]))) {
+						parseRange(splitter, pgnImporter);
+					}
+				}
+			} catch(IOException | RuntimeException | Error e) {
+				// Stop every worker, and let the writer see the error and roll back the import.
+				readError.compareAndSet(null, e);
+				nextRange.set(splitPoints.length);
+			}
+			
+			games.put(END_OF_GAMES);
+		} catch(InterruptedException e) {
+			return;
+		}
+	}
+	
+	private void parseRange(PgnSplitter splitter, PgnImporter pgnImporter) throws IOException, InterruptedException {
+		List<ReplayedGame> replayedGames = new ArrayList<>(CHUNK_SIZE);
+		while(true) {
+			long start = System.nanoTime();
+			String text = splitter.nextGame();
+			if(text == null) break;
+			readStage.add(1, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			ReplayedGame game = parseGame(pgnImporter, text);
+			if(game == null) {
+				skippedGames.incrementAndGet();
+			} else {
+				replayedGames.add(game);
+			}
+			parseStage.add(1, System.nanoTime() - start);
+			
+			if(replayedGames.size() == CHUNK_SIZE) {
+				games.put(replayedGames);
+				replayedGames = new ArrayList<>(CHUNK_SIZE);
+			}
+		}
+		
+		if(!replayedGames.isEmpty()) {
+			games.put(replayedGames);
+		}
+	}
+	
+	/**
+	 * Parses and plays through a game, or returns null if it should be skipped.
+	 */
+	private static ReplayedGame parseGame(PgnImporter pgnImporter, String text) {
+		try {
+			// Variants are skipped by their tags, as their movetext may not parse as standard chess.
+			String variant = pgnImporter.importTags(text).get("Variant");
+			if(variant != null && !variant.equals("Standard")) {
+				System.out.println("Skipping variant: " + variant);
+				return null;
+			}
+			
+			PgnGame game = pgnImporter.importPgn(text);
+			
+			if(game.getResult().equals(GameResult.OTHER)) {
+				System.out.println("Skipping game with unknown result: " + game.toString());
+				return null;
+			}
+			
+			return MoveDatabaseImporter.replay(game);
+		} catch(IllegalMoveException e) {
+			System.out.println("Skipping game with illegal move: " + e.getMessage());
+			return null;
+		} catch(ParseException | RuntimeException e) {
+			System.out.println("Skipping game that can't be parsed: " + e.getMessage());
+			return null;
+		}
+	}
+}
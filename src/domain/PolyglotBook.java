@@ -0,0 +1,321 @@
+package domain;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import domain.pieces.Piece;
+import domain.pieces.PieceType;
+
+/**
+ * An opening book in the Polyglot .bin format, mapped into memory. The file is a list of 16 byte entries of a
+ * position key, a move, a weight, and learning data, sorted by key as an unsigned number, so the moves for a
+ * position are found with a binary search. Looking up entries with findFirst() and the entry getters doesn't
+ * allocate, so books can be probed on every move.
+ *
+ * Moves are encoded as in Polyglot, with the from and to squares numbered from a1 and castling written as the
+ * king taking its own rook. Positions are keyed by Polyglot's keys from PolyglotKeys rather than this program's
+ * Zobrist keys, so books written by write() can be read by other programs and the other way around.
+ */
+public class PolyglotBook implements Closeable {
+	private static final int ENTRY_SIZE = 16;
+	
+	// Windows are a multiple of the entry size, so entries never cross windows.
+	private static final int WINDOW_BITS = 30;
+	
+	private static final int MAX_WEIGHT = 0xffff;
+	
+	/**
+	 * How the weight of each move in a written book is found from its win/draw/loss counts.
+	 */
+	public enum Weighting {
+		// The number of games the move was played in.
+		GAMES {
+			public long getWeight(DatabaseMove move, Side side) {
+				return move.getTotal();
+			}
+		},
+		
+		// Two points for each win and one for each draw for the side playing the move, as Polyglot weights books.
+		SCORE {
+			public long getWeight(DatabaseMove move, Side side) {
+				return 2L * getWins(move, side) + move.getDraw();
+			}
+		},
+		
+		// The number of wins for the side playing the move.
+		WINS {
+			public long getWeight(DatabaseMove move, Side side) {
+				return getWins(move, side);
+			}
+		};
+		
+		public abstract long getWeight(DatabaseMove move, Side side);
+		
+		private static int getWins(DatabaseMove move, Side side) {
+			return (side == Side.WHITE) ? move.getWin() : move.getLoss();
+		}
+	}
+	
+	private final FileChannel channel;
+	private final MappedByteBuffer[] windows;
+	private final long entryCount;
+	
+	public PolyglotBook(File file) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if(size % ENTRY_SIZE != 0) throw new IOException("Invalid book size: " + size);
+			this.entryCount = size / ENTRY_SIZE;
+			
+			long windowSize = 1L << WINDOW_BITS;
+			this.windows = new MappedByteBuffer[(int)((size + windowSize - 1) >>> WINDOW_BITS)];
+			for(int i = 0; i < windows.length; i++) {
+				long position = (long)i << WINDOW_BITS;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+			}
+		} catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the Polyglot key used for a position in books.
+	 */
+	public static long getKey(Board board) {
+		return PolyglotKeys.getKey(board);
+	}
+	
+	public long getEntryCount() {
+		return entryCount;
+	}
+	
+	/**
+	 * Returns the first entry with a key at least as large as a key, compared as unsigned numbers, or the entry
+	 * count if there isn't one.
+	 */
+	public long findFirst(long key) {
+		long low = 0;
+		long high = entryCount;
+		while(low < high) {
+			long middle = (low + high) >>> 1;
+			if(Long.compareUnsigned(getKey(middle), key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	public long getKey(long entry) {
+		long position = entry * ENTRY_SIZE;
+		return windows[(int)(position >>> WINDOW_BITS)].getLong((int)(position & ((1L << WINDOW_BITS) - 1)));
+	}
+	
+	/**
+	 * Returns the move of an entry in Polyglot's encoding.
+	 */
+	public int getMove(long entry) {
+		long position = entry * ENTRY_SIZE + 8;
+		return windows[(int)(position >>> WINDOW_BITS)].getShort((int)(position & ((1L << WINDOW_BITS) - 1))) & 0xffff;
+	}
+	
+	public int getWeight(long entry) {
+		long position = entry * ENTRY_SIZE + 10;
+		return windows[(int)(position >>> WINDOW_BITS)].getShort((int)(position & ((1L << WINDOW_BITS) - 1))) & 0xffff;
+	}
+	
+	/**
+	 * Returns the moves in the book for a position, in the order they are in the book, which is usually by weight.
+	 */
+	public List<BookMove> getMoves(Board board) {
+		List<BookMove> moves = new ArrayList<>();
+		long key = getKey(board);
+		for(long entry = findFirst(key); entry < entryCount && getKey(entry) == key; entry++) {
+			moves.add(new BookMove(decodeMove(board, getMove(entry)), getWeight(entry)));
+		}
+		return moves;
+	}
+	
+	/**
+	 * Returns the Polyglot encoding of a move: the to square in bits 0-5 and the from square in bits 6-11, each as
+	 * file + 8 * rank from a1, and the promotion in bits 12-14 as 1-4 for a knight, bishop, rook, or queen.
+	 */
+	public static int encodeMove(Move move) {
+		Square to = move.getTo();
+		if(move.getCastling()) {
+			// Castling is written as the king moving to its rook's square.
+			to = new Square((to.getX() == 6) ? 7 : 0, to.getY());
+		}
+		
+		int code = getSquare(to) | (getSquare(move.getFrom()) << 6);
+		if(move.getPromote() != null) {
+			switch(move.getPromote()) {
+				case KNIGHT: code |= 1 << 12; break;
+				case BISHOP: code |= 2 << 12; break;
+				case ROOK: code |= 3 << 12; break;
+				case QUEEN: code |= 4 << 12; break;
+			}
+		}
+		return code;
+	}
+	
+	/**
+	 * Returns the move for a Polyglot encoded move in a position, which is needed to tell castling from a king
+	 * taking a rook. A king on its back rank moving onto a rook of its own side is castling, with the king ending
+	 * on the g-file or c-file.
+	 */
+	public static Move decodeMove(Board board, int code) {
+		Square to = getSquare(code & 63);
+		Square from = getSquare((code >>> 6) & 63);
+		
+		Piece piece = board.getPiece(from);
+		if(piece != null && piece.getPieceType() == PieceType.KING && from.getY() == ((piece.getSide() == Side.WHITE) ? 7 : 0) && to.getY() == from.getY()) {
+			Piece target = board.getPiece(to);
+			if(target != null && target.getPieceType() == PieceType.ROOK && target.getSide() == piece.getSide()) {
+				return new Move(from, new Square((to.getX() > from.getX()) ? 6 : 2, to.getY()), true, null);
+			}
+		}
+		
+		PromotionChoice promote = null;
+		switch((code >>> 12) & 7) {
+			case 1: promote = PromotionChoice.KNIGHT; break;
+			case 2: promote = PromotionChoice.BISHOP; break;
+			case 3: promote = PromotionChoice.ROOK; break;
+			case 4: promote = PromotionChoice.QUEEN; break;
+		}
+		return new Move(from, to, false, promote);
+	}
+	
+	private static int getSquare(Square square) {
+		return square.getX() + 8 * (7 - square.getY());
+	}
+	
+	private static Square getSquare(int polyglotSquare) {
+		return new Square(polyglotSquare & 7, 7 - (polyglotSquare >>> 3));
+	}
+	
+	/**
+	 * Writes a book of the moves in a database, for the positions reached from the starting position by playing
+	 * moves in the database for up to maxPly moves. The moves for each position are weighted by a weighting,
+	 * and scaled down if needed to fit Polyglot's 16 bit weights. Moves with no weight are left out.
+	 */
+	public static void write(File file, MoveDatabase database, Weighting weighting, int maxPly) {
+		try {
+			BookEntries entries = new BookEntries();
+			addPosition(entries, new HashMap<Long, Integer>(), database, weighting, new Board(), maxPly);
+			
+			try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+				for(int index:entries.getSortedIndexes()) {
+					output.writeLong(entries.keys[index]);
+					output.writeShort(entries.moves[index]);
+					output.writeShort(entries.weights[index]);
+					output.writeInt(0);
+				}
+			}
+		} catch(IOException | IllegalMoveException e) {
+			throw new RuntimeException("Error writing book", e);
+		}
+	}
+	
+	private static void addPosition(BookEntries entries, Map<Long, Integer> visited, MoveDatabase database, Weighting weighting, Board board, int plies) throws IllegalMoveException {
+		long key = getKey(board);
+		Integer visitedPlies = visited.get(key);
+		if(plies <= 0 || (visitedPlies != null && visitedPlies >= plies)) return;
+		visited.put(key, plies);
+		
+		List<DatabaseMove> moves = database.getMoves(board);
+		
+		// A transposition reached again with more plies left already has its entries, and only its children are
+		// added to again.
+		if(visitedPlies == null) {
+			addEntries(entries, moves, weighting, board, key);
+		}
+		
+		for(DatabaseMove move:moves) {
+			addPosition(entries, visited, database, weighting, board.makeMove(move.getMove()), plies - 1);
+		}
+	}
+	
+	private static void addEntries(BookEntries entries, List<DatabaseMove> moves, Weighting weighting, Board board, long key) {
+		long[] weights = new long[moves.size()];
+		long maxWeight = 0;
+		for(int i = 0; i < moves.size(); i++) {
+			weights[i] = weighting.getWeight(moves.get(i), board.getSideToPlay());
+			maxWeight = Math.max(maxWeight, weights[i]);
+		}
+		
+		for(int i = 0; i < moves.size(); i++) {
+			long weight = weights[i];
+			if(maxWeight > MAX_WEIGHT) {
+				weight = Math.max(1, weight * MAX_WEIGHT / maxWeight);
+			}
+			if(weight > 0) {
+				entries.add(key, encodeMove(moves.get(i).getMove()), (int)weight);
+			}
+		}
+	}
+	
+	/**
+	 * The entries of a book being written, in the order they were added.
+	 */
+	private static class BookEntries {
+		private long[] keys = new long[1024];
+		private int[] moves = new int[1024];
+		private int[] weights = new int[1024];
+		private int size = 0;
+		
+		public void add(long key, int move, int weight) {
+			if(size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				moves = Arrays.copyOf(moves, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			keys[size] = key;
+			moves[size] = move;
+			weights[size] = weight;
+			size++;
+		}
+		
+		/**
+		 * Returns the indexes of the entries sorted by unsigned key, then by weight from highest to lowest.
+		 */
+		public int[] getSortedIndexes() {
+			Integer[] indexes = new Integer[size];
+			for(int i = 0; i < size; i++) {
+				indexes[i] = i;
+			}
+			
+			Arrays.sort(indexes, (a, b) -> {
+				int compare = Long.compareUnsigned(keys[a], keys[b]);
+				return (compare != 0) ? compare : Integer.compare(weights[b], weights[a]);
+			});
+			
+			int[] sorted = new int[size];
+			for(int i = 0; i < size; i++) {
+				sorted[i] = indexes[i];
+			}
+			return sorted;
+		}
+	}
+	
+	/**
+	 * Closes the file. The mapped memory is released when the buffers are garbage collected.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,302 @@
+package domain;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The games that reached each position in a move database, held in memory as a posting list of game ids for each
+ * position, along with the move each game played from the position. Each list is sorted by game id, and stored as
+ * the differences between ids written as varints, so that the long runs of nearby ids at common positions take
+ * about a byte each, each followed by the move code plus one as a varint. The number of games at a position is
+ * stored separately, so counting them doesn't read the list.
+ *
+ * Lists are stored in pages of bytes rather than one array, so that the index isn't limited to 2GB. A
+ * PositionKeyTable maps position keys to their lists. Indexes are built with a PositionGameIndex.Builder and
+ * can't be changed afterwards.
+ */
+public class PositionGameIndex {
+	private static final int PAGE_SIZE = 1 << 20;
+	
+	private final PositionKeyTable table;
+	
+	// The number of different games, and the number of postings, in each position's list.
+	private final int[] gameCounts;
+	private final int[] postingCounts;
+	
+	// The page of each position's list in the high 32 bits, and its offset in the page in the low 32 bits.
+	private final long[] starts;
+	private final byte[][] pages;
+	
+	private PositionGameIndex(long[] positionKeys, int[] gameCounts, int[] postingCounts, long[] starts, byte[][] pages, int positions) {
+		this.table = new PositionKeyTable(positionKeys, positions);
+		this.gameCounts = Arrays.copyOf(gameCounts, positions);
+		this.postingCounts = Arrays.copyOf(postingCounts, positions);
+		this.starts = Arrays.copyOf(starts, positions);
+		this.pages = pages;
+	}
+	
+	/**
+	 * Reads the postings in a position's list in order. A game that played more than one move from the position has
+	 * a posting for each move, where the later ones have an id difference of 0.
+	 */
+	private final class Cursor {
+		private final byte[] page;
+		private int offset;
+		private int remainingGames;
+		private int remainingPostings;
+		private int gameId = -1;
+		private int moveCode;
+		
+		public Cursor(int position) {
+			this.page = pages[(int)(starts[position] >>> 32)];
+			this.offset = (int)starts[position];
+			this.remainingGames = gameCounts[position];
+			this.remainingPostings = postingCounts[position];
+		}
+		
+		public boolean hasNext() {
+			return remainingGames > 0;
+		}
+		
+		/**
+		 * Returns the id of the next game, skipping any other postings for the last game.
+		 */
+		public int next() {
+			while(!nextPosting()) {
+				// Skip the other postings of the last game.
+			}
+			return gameId;
+		}
+		
+		public boolean hasNextPosting() {
+			return remainingPostings > 0;
+		}
+		
+		/**
+		 * Reads the next posting, returning whether it is for a different game than the last.
+		 */
+		public boolean nextPosting() {
+			int delta = readVarint();
+			moveCode = readVarint() - 1;
+			remainingPostings--;
+			
+			if(delta == 0) return false;
+			
+			remainingGames--;
+			gameId += delta;
+			return true;
+		}
+		
+		private int readVarint() {
+			int value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = page[offset++];
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while(b < 0);
+			return value;
+		}
+	}
+	
+	/**
+	 * Returns the number of games that reached a position.
+	 */
+	public int getGameCount(long positionKey) {
+		int position = table.find(positionKey);
+		return (position == -1) ? 0 : gameCounts[position];
+	}
+	
+	/**
+	 * Returns the ids of the first games to reach a position, up to a limit, in order.
+	 */
+	public int[] getGameIds(long positionKey, int limit) {
+		int position = table.find(positionKey);
+		if(position == -1) return new int[0];
+		
+		int[] gameIds = new int[Math.min(limit, gameCounts[position])];
+		Cursor cursor = new Cursor(position);
+		for(int i = 0; i < gameIds.length; i++) {
+			gameIds[i] = cursor.next();
+		}
+		return gameIds;
+	}
+	
+	/**
+	 * Returns the ids of the first games to reach every one of some positions, up to a limit, in order. The
+	 * shortest list is read in order, and the other lists are read along with it.
+	 */
+	public int[] getCommonGameIds(long[] positionKeys, int limit) {
+		if(positionKeys.length == 0) return new int[0];
+		
+		Cursor[] cursors = new Cursor[positionKeys.length];
+		for(int i = 0; i < positionKeys.length; i++) {
+			int position = table.find(positionKeys[i]);
+			if(position == -1) return new int[0];
+			cursors[i] = new Cursor(position);
+		}
+		Arrays.sort(cursors, (a, b) -> Integer.compare(a.remainingGames, b.remainingGames));
+		
+		int[] gameIds = new int[Math.min(limit, cursors[0].remainingGames)];
+		int size = 0;
+		
+		// The last id read from each cursor other than the first.
+		int[] current = new int[cursors.length];
+		Arrays.fill(current, -1);
+		
+		search:
+		while(size < gameIds.length && cursors[0].hasNext()) {
+			int gameId = cursors[0].next();
+			for(int i = 1; i < cursors.length; i++) {
+				while(current[i] < gameId) {
+					if(!cursors[i].hasNext()) break search;
+					current[i] = cursors[i].next();
+				}
+				if(current[i] != gameId) continue search;
+			}
+			gameIds[size++] = gameId;
+		}
+		
+		return Arrays.copyOf(gameIds, size);
+	}
+	
+	/**
+	 * Returns the moves played at a position by the games in a filtered set, in order of their total count from
+	 * highest to lowest. Moves that aren't known are left out.
+	 */
+	public List<DatabaseMove> getMoves(long positionKey, FilteredGames games) {
+		FilteredGames.MoveCounts moveCounts = new FilteredGames.MoveCounts();
+		
+		int position = table.find(positionKey);
+		if(position != -1) {
+			Cursor cursor = new Cursor(position);
+			while(cursor.hasNextPosting()) {
+				cursor.nextPosting();
+				moveCounts.add(cursor.moveCode, games.getResult(cursor.gameId));
+			}
+		}
+		
+		return moveCounts.getMoves();
+	}
+	
+	/**
+	 * Returns the number of bytes used by the lists.
+	 */
+	public long getListSize() {
+		long size = 0;
+		for(byte[] page:pages) {
+			size += page.length;
+		}
+		return size;
+	}
+	
+	/**
+	 * Builds an index from the games at each position. The games for a position must all be added together, in
+	 * order of id. A game added more than once for a position with the same move, for a game repeating the position,
+	 * is kept once.
+	 */
+	public static class Builder {
+		private long[] positionKeys = new long[1024];
+		private int[] gameCounts = new int[1024];
+		private int[] postingCounts = new int[1024];
+		private long[] starts = new long[1024];
+		private int positions = 0;
+		
+		private byte[][] pages = new byte[0][];
+		private int pageSize = 0;
+		
+		// The list of the position being added.
+		private byte[] list = new byte[1024];
+		private int listSize = 0;
+		private int gameCount = 0;
+		private int postingCount = 0;
+		
+		private long lastKey;
+		private int lastGameId;
+		private int lastMoveCode;
+		
+		/**
+		 * Adds a game reaching a position and playing a move from it, given its code from
+		 * MoveDatabaseFile.encodeMove(), or -1 if the move isn't known.
+		 */
+		public void add(long positionKey, int gameId, int moveCode) {
+			if(postingCount > 0 && positionKey == lastKey) {
+				if(gameId < lastGameId) throw new IllegalArgumentException("Games not in order: " + gameId);
+				if(gameId == lastGameId && moveCode == lastMoveCode) return;
+			} else {
+				endPosition();
+				lastKey = positionKey;
+				lastGameId = -1;
+			}
+			
+			if(listSize + 10 > list.length) {
+				list = Arrays.copyOf(list, list.length * 2);
+			}
+			writeVarint(gameId - lastGameId);
+			writeVarint(moveCode + 1);
+			
+			if(gameId != lastGameId) {
+				gameCount++;
+			}
+			postingCount++;
+			lastGameId = gameId;
+			lastMoveCode = moveCode;
+		}
+		
+		private void writeVarint(int value) {
+			while((value & ~0x7f) != 0) {
+				list[listSize++] = (byte)((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			list[listSize++] = (byte)value;
+		}
+		
+		/**
+		 * Copies the list of the position being added into a page.
+		 */
+		private void endPosition() {
+			if(postingCount == 0) return;
+			
+			if(pages.length == 0 || pageSize + listSize > pages[pages.length - 1].length) {
+				trimPage();
+				pages = Arrays.copyOf(pages, pages.length + 1);
+				pages[pages.length - 1] = new byte[Math.max(PAGE_SIZE, listSize)];
+				pageSize = 0;
+			}
+			
+			if(positions == positionKeys.length) {
+				positionKeys = Arrays.copyOf(positionKeys, positions * 2);
+				gameCounts = Arrays.copyOf(gameCounts, positions * 2);
+				postingCounts = Arrays.copyOf(postingCounts, positions * 2);
+				starts = Arrays.copyOf(starts, positions * 2);
+			}
+			positionKeys[positions] = lastKey;
+			gameCounts[positions] = gameCount;
+			postingCounts[positions] = postingCount;
+			starts[positions] = ((long)(pages.length - 1) << 32) | pageSize;
+			positions++;
+			
+			System.arraycopy(list, 0, pages[pages.length - 1], pageSize, listSize);
+			pageSize += listSize;
+			listSize = 0;
+			gameCount = 0;
+			postingCount = 0;
+		}
+		
+		/**
+		 * Trims the last page to the bytes used.
+		 */
+		private void trimPage() {
+			if(pages.length > 0) {
+				pages[pages.length - 1] = Arrays.copyOf(pages[pages.length - 1], pageSize);
+			}
+		}
+		
+		public PositionGameIndex build() {
+			endPosition();
+			trimPage();
+			return new PositionGameIndex(positionKeys, gameCounts, postingCounts, starts, pages, positions);
+		}
+	}
+}
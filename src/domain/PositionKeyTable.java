@@ -0,0 +1,53 @@
+package domain;
+
+/**
+ * An open-addressing hash table with linear probing from position keys to their index in a list of positions,
+ * used by the in-memory indexes of a move database. Tables are filled when created, and can't be changed.
+ */
+class PositionKeyTable {
+	// The position key in each slot.
+	private final long[] keys;
+	
+	// The index of the position in each slot plus one, or 0 for an empty slot.
+	private final int[] slots;
+	private final int mask;
+	
+	/**
+	 * Creates a table for the first count keys in an array, which must all be different.
+	 */
+	public PositionKeyTable(long[] positionKeys, int count) {
+		// At least twice as many slots as positions, so that probes stay short.
+		int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) * 2;
+		
+		this.keys = new long[capacity];
+		this.slots = new int[capacity];
+		this.mask = capacity - 1;
+		
+		for(int position = 0; position < count; position++) {
+			long positionKey = positionKeys[position];
+			int slot = hash(positionKey) & mask;
+			while(slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = positionKey;
+			slots[slot] = position + 1;
+		}
+	}
+	
+	private static int hash(long positionKey) {
+		// Keys are Zobrist keys, whose bits are already random.
+		return (int)(positionKey ^ (positionKey >>> 32));
+	}
+	
+	/**
+	 * Returns the index of a position, or -1 if it isn't in the table.
+	 */
+	public int find(long positionKey) {
+		int slot = hash(positionKey) & mask;
+		while(slots[slot] != 0) {
+			if(keys[slot] == positionKey) return slots[slot] - 1;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,249 @@
+package domain;
+
+import java.util.Arrays;
+
+import domain.bitboard.Bitboard;
+import domain.bitboard.BitboardPosition;
+import domain.bitboard.MoveGenerator;
+import domain.bitboard.PackedMove;
+import domain.bitboard.PgnMoveEncoder;
+import domain.pieces.PieceType;
+
+/**
+ * A mutable position for walking move trees without allocating a new position for each move. Moves are
+ * PackedMove values made with doMove() and taken back in reverse order with undoMove(). The state that can't
+ * be recovered from the move is kept on an undo stack, which only grows when a walk goes deeper than before.
+ * Use Board for positions that are kept or shared, and convert with SearchBoard(Board) and toBoard().
+ */
+public class SearchBoard {
+	private final BitboardPosition position;
+	
+	// Undo stack, indexed by ply. Captured pieces are stored as the piece type ordinal + 1, or 0 for none.
+	private int ply = 0;
+	private int[] moves = new int[64];
+	private int[] captured = new int[64];
+	private int[] rookSquares = new int[64];
+	private int[] castling = new int[64];
+	private int[] enPassant = new int[64];
+	private int[] halfMoves = new int[64];
+	private long[] keys = new long[64];
+	
+	private static final PieceType[] PIECE_TYPES = PieceType.values();
+	
+	/**
+	 * Create a search board starting from a position.
+	 */
+	public SearchBoard(Board board) {
+		this.position = new BitboardPosition(board.getPosition());
+	}
+	
+	/**
+	 * Returns the current position as an immutable Board.
+	 */
+	public Board toBoard() {
+		return new Board(position);
+	}
+	
+	/**
+	 * Returns the current position. This changes as moves are made, and shouldn't be modified directly.
+	 */
+	public BitboardPosition getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Returns the number of moves made that haven't been undone.
+	 */
+	public int getPly() {
+		return ply;
+	}
+	
+	public Side getSideToPlay() {
+		return position.getSideToPlay();
+	}
+	
+	public int getFullMoves() {
+		return position.getFullMoves();
+	}
+	
+	/**
+	 * Returns the Zobrist key for the current position.
+	 */
+	public long getKey() {
+		return position.getKey();
+	}
+	
+	/**
+	 * Returns whether the current position has occurred before since the last capture or pawn move, with the
+	 * same side to play.
+	 */
+	public boolean isRepetition() {
+		long key = position.getKey();
+		int first = Math.max(0, ply - position.getHalfMoves());
+		for(int i = ply - 2; i >= first; i -= 2) {
+			if(keys[i] == key) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns whether the side to play is in check.
+	 */
+	public boolean isCheck() {
+		Side side = position.getSideToPlay();
+		int king = position.getKingSquare(side);
+		return king != -1 && position.isAttacked(king, side.otherSide());
+	}
+	
+	/**
+	 * Writes the legal moves from the current position into a buffer starting at an offset, and returns the number
+	 * of moves written.
+	 */
+	public int getLegalMoves(int[] moves, int offset) {
+		return MoveGenerator.generateLegalMoves(position, moves, offset);
+	}
+	
+	/**
+	 * Makes a move, which should be legal in the current position.
+	 */
+	public void doMove(int move) {
+		push(move);
+		
+		int from = PackedMove.getFrom(move);
+		int to = PackedMove.getTo(move);
+		Side side = position.getSideToPlay();
+		PieceType type = position.getPieceType(from);
+		
+		int nextCastling = Castling.nextCastling(position, from, to);
+		boolean resetHalfMoves = (type == PieceType.PAWN);
+		
+		if(PackedMove.isCastling(move)) {
+			int direction = (Bitboard.getX(to) == 6) ? 1 : -1;
+			int rook = Castling.getCastlingRook(position, side, from, direction);
+			rookSquares[ply - 1] = rook;
+			
+			position.clearPiece(from);
+			position.clearPiece(rook);
+			position.setPiece(to, PieceType.KING, side);
+			position.setPiece(to - direction, PieceType.ROOK, side);
+		} else {
+			int capturedSquare = PackedMove.isEnPassant(move) ? Bitboard.square(Bitboard.getX(to), Bitboard.getY(from)) : to;
+			PieceType capturedType = position.getPieceType(capturedSquare);
+			if(capturedType != null) {
+				captured[ply - 1] = capturedType.ordinal() + 1;
+				resetHalfMoves = true;
+				position.clearPiece(capturedSquare);
+			}
+			
+			PieceType promotion = PackedMove.getPromotion(move);
+			position.clearPiece(from);
+			position.setPiece(to, (promotion == null) ? type : promotion, side);
+		}
+		
+		position.setCastling(nextCastling);
+		position.setEnPassant(-1);
+		if(type == PieceType.PAWN && Math.abs(to - from) == 16) {
+			position.setEnPassant((from + to) / 2);
+		}
+		
+		position.setHalfMoves(resetHalfMoves ? 0 : position.getHalfMoves() + 1);
+		if(side == Side.BLACK) {
+			position.setFullMoves(position.getFullMoves() + 1);
+		}
+		position.setSideToPlay(side.otherSide());
+	}
+	
+	/**
+	 * Passes the move to the other side without moving a piece.
+	 */
+	public void doNullMove() {
+		push(PackedMove.NONE);
+		
+		Side side = position.getSideToPlay();
+		position.setEnPassant(-1);
+		position.setHalfMoves(position.getHalfMoves() + 1);
+		if(side == Side.BLACK) {
+			position.setFullMoves(position.getFullMoves() + 1);
+		}
+		position.setSideToPlay(side.otherSide());
+	}
+	
+	/**
+	 * Takes back the last move made with doMove() or doNullMove().
+	 */
+	public void undoMove() {
+		ply--;
+		int move = moves[ply];
+		Side side = position.getSideToPlay().otherSide();
+		
+		if(move != PackedMove.NONE) {
+			int from = PackedMove.getFrom(move);
+			int to = PackedMove.getTo(move);
+			
+			if(PackedMove.isCastling(move)) {
+				int direction = (Bitboard.getX(to) == 6) ? 1 : -1;
+				position.clearPiece(to);
+				position.clearPiece(to - direction);
+				position.setPiece(from, PieceType.KING, side);
+				position.setPiece(rookSquares[ply], PieceType.ROOK, side);
+			} else {
+				PieceType type = (PackedMove.getPromotion(move) == null) ? position.getPieceType(to) : PieceType.PAWN;
+				position.clearPiece(to);
+				position.setPiece(from, type, side);
+				
+				if(captured[ply] != 0) {
+					int capturedSquare = PackedMove.isEnPassant(move) ? Bitboard.square(Bitboard.getX(to), Bitboard.getY(from)) : to;
+					position.setPiece(capturedSquare, PIECE_TYPES[captured[ply] - 1], side.otherSide());
+				}
+			}
+		}
+		
+		position.setCastling(castling[ply]);
+		position.setEnPassant(enPassant[ply]);
+		position.setHalfMoves(halfMoves[ply]);
+		if(side == Side.BLACK) {
+			position.setFullMoves(position.getFullMoves() - 1);
+		}
+		position.setSideToPlay(side);
+	}
+	
+	/**
+	 * Saves the state for undoing a move, growing the stack if needed.
+	 */
+	private void push(int move) {
+		if(ply == moves.length) {
+			int length = moves.length * 2;
+			moves = Arrays.copyOf(moves, length);
+			captured = Arrays.copyOf(captured, length);
+			rookSquares = Arrays.copyOf(rookSquares, length);
+			castling = Arrays.copyOf(castling, length);
+			enPassant = Arrays.copyOf(enPassant, length);
+			halfMoves = Arrays.copyOf(halfMoves, length);
+			keys = Arrays.copyOf(keys, length);
+		}
+		
+		moves[ply] = move;
+		captured[ply] = 0;
+		rookSquares[ply] = -1;
+		castling[ply] = position.getCastling();
+		enPassant[ply] = position.getEnPassant();
+		halfMoves[ply] = position.getHalfMoves();
+		keys[ply] = position.getKey();
+		ply++;
+	}
+	
+	/**
+	 * Returns the packed move for a Move in the current position, setting the en-passant flag for a pawn capturing
+	 * onto the en-passant square. Returns PackedMove.NONE for a null move.
+	 */
+	public int getPackedMove(Move move) {
+		return PackedMove.fromMove(position, move);
+	}
+	
+	/**
+	 * Returns a legal move in the current position as a pgn move (algebraic notation), or "-" for a null move.
+	 */
+	public String getMoveAsPgn(int move) throws IllegalMoveException {
+		return PgnMoveEncoder.encode(position, move);
+	}
+}
@@ -4,9 +4,24 @@ package domain;
  * Represents a square on a chess board. This class is immutable.
  */
 public final class Square {
+	private static final Square[] SQUARES = new Square[64];
+	
+	static {
+		for(int index = 0; index < 64; index++) {
+			SQUARES[index] = new Square(index % 8, index / 8);
+		}
+	}
+	
 	private int x;
 	private int y;
 	
+	/**
+	 * Returns the square for an index 0-63 as given by getIndex(). Squares are shared, so this doesn't allocate.
+	 */
+	public static Square fromIndex(int index) {
+		return SQUARES[index];
+	}
+	
 	public static boolean inBounds(int x, int y) {
 		return (x >= 0 && x < 8 && y >= 0 && y < 8);
 	}
@@ -32,6 +47,13 @@ public final class Square {
 	}
 	
 	public int hashCode() {
+		return getIndex();
+	}
+	
+	/**
+	 * Returns the square as an index 0-63, counting along each rank from a8 to h1.
+	 */
+	public int getIndex() {
 		return y*8 + x;
 	}
 	
@@ -0,0 +1,126 @@
+package domain.attacks;
+
+import domain.Side;
+import domain.bitboard.Bitboard;
+
+/**
+ * Precomputed attack tables. Knight, king and pawn attacks are looked up per square, and rook and bishop
+ * attacks are looked up per square and occupancy using magic bitboards. All squares and results use the
+ * numbering in Bitboard.
+ */
+public class Attacks {
+	private static final int[] ROOK_DX = {-1, 1, 0, 0};
+	private static final int[] ROOK_DY = {0, 0, -1, 1};
+	private static final int[] BISHOP_DX = {-1, 1, 1, -1};
+	private static final int[] BISHOP_DY = {-1, 1, -1, 1};
+	private static final int[] KNIGHT_DX = {-2, -2, -1, -1, 1, 1, 2, 2};
+	private static final int[] KNIGHT_DY = {-1, 1, -2, 2, -2, 2, -1, 1};
+	private static final int[] KING_DX = {-1, -1, -1, 0, 0, 1, 1, 1};
+	private static final int[] KING_DY = {-1, 0, 1, -1, 1, -1, 0, 1};
+	
+	private static final long[] KNIGHT = new long[64];
+	private static final long[] KING = new long[64];
+	private static final long[][] PAWN = new long[2][64];
+	private static final long[][] BETWEEN = new long[64][64];
+	private static final long[][] LINE = new long[64][64];
+	
+	private static final MagicTable ROOK = new MagicTable(ROOK_DX, ROOK_DY, 0x5ca1ab1eL);
+	private static final MagicTable BISHOP = new MagicTable(BISHOP_DX, BISHOP_DY, 0xb15b0bL);
+	
+	static {
+		for(int square = 0; square < 64; square++) {
+			KNIGHT[square] = getLeaperAttacks(square, KNIGHT_DX, KNIGHT_DY);
+			KING[square] = getLeaperAttacks(square, KING_DX, KING_DY);
+			
+			// White pawns move towards rank 8, which is y = 0.
+			PAWN[Side.WHITE.ordinal()][square] = getLeaperAttacks(square, new int[] {-1, 1}, new int[] {-1, -1});
+			PAWN[Side.BLACK.ordinal()][square] = getLeaperAttacks(square, new int[] {-1, 1}, new int[] {1, 1});
+			
+			// Walk each of the 8 directions, filling in the squares between and the line through each pair of squares.
+			for(int d = 0; d < 8; d++) {
+				int dx = (d < 4) ? ROOK_DX[d] : BISHOP_DX[d - 4];
+				int dy = (d < 4) ? ROOK_DY[d] : BISHOP_DY[d - 4];
+				long line = MagicTable.getSlowAttacks(square, 0, new int[] {dx, -dx}, new int[] {dy, -dy}) | Bitboard.bit(square);
+				long between = 0;
+				int x = Bitboard.getX(square) + dx;
+				int y = Bitboard.getY(square) + dy;
+				while(x >= 0 && x < 8 && y >= 0 && y < 8) {
+					int other = Bitboard.square(x, y);
+					BETWEEN[square][other] = between;
+					LINE[square][other] = line;
+					between |= Bitboard.bit(other);
+					x += dx;
+					y += dy;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the squares strictly between two squares on the same rank, file or diagonal, or 0 if they aren't on one.
+	 */
+	public static long between(int square1, int square2) {
+		return BETWEEN[square1][square2];
+	}
+	
+	/**
+	 * Returns the whole rank, file or diagonal through two squares, from edge to edge, or 0 if they aren't on one.
+	 */
+	public static long line(int square1, int square2) {
+		return LINE[square1][square2];
+	}
+	
+	/**
+	 * Returns the squares attacked by a knight on a square.
+	 */
+	public static long knight(int square) {
+		return KNIGHT[square];
+	}
+	
+	/**
+	 * Returns the squares attacked by a king on a square, not including castling.
+	 */
+	public static long king(int square) {
+		return KING[square];
+	}
+	
+	/**
+	 * Returns the squares attacked diagonally by a pawn of a side on a square.
+	 */
+	public static long pawn(Side side, int square) {
+		return PAWN[side.ordinal()][square];
+	}
+	
+	/**
+	 * Returns the squares attacked by a rook on a square, up to and including the first occupied square in each direction.
+	 */
+	public static long rook(int square, long occupied) {
+		return ROOK.getAttacks(square, occupied);
+	}
+	
+	/**
+	 * Returns the squares attacked by a bishop on a square, up to and including the first occupied square in each direction.
+	 */
+	public static long bishop(int square, long occupied) {
+		return BISHOP.getAttacks(square, occupied);
+	}
+	
+	/**
+	 * Returns the squares attacked by a queen on a square, up to and including the first occupied square in each direction.
+	 */
+	public static long queen(int square, long occupied) {
+		return ROOK.getAttacks(square, occupied) | BISHOP.getAttacks(square, occupied);
+	}
+	
+	private static long getLeaperAttacks(int square, int[] dx, int[] dy) {
+		long attacks = 0;
+		for(int d = 0; d < dx.length; d++) {
+			int x = Bitboard.getX(square) + dx[d];
+			int y = Bitboard.getY(square) + dy[d];
+			if(x >= 0 && x < 8 && y >= 0 && y < 8) {
+				attacks |= Bitboard.bit(Bitboard.square(x, y));
+			}
+		}
+		return attacks;
+	}
+}
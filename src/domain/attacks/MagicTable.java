@@ -0,0 +1,130 @@
+package domain.attacks;
+
+import java.util.Random;
+
+import domain.bitboard.Bitboard;
+
+/**
+ * Attack lookup for one type of sliding piece using "fancy" magic bitboards. For each square the relevant
+ * blockers are multiplied by a magic number, and the top bits of the product index into a shared table of
+ * precomputed attacks. The magic numbers are found when the table is built, using a fixed seed so the tables
+ * are the same on every run.
+ */
+class MagicTable {
+	private final long[] masks = new long[64];
+	private final long[] magics = new long[64];
+	private final int[] shifts = new int[64];
+	private final int[] offsets = new int[64];
+	private final long[] attacks;
+	
+	/**
+	 * Builds the table for a piece moving in the given directions.
+	 */
+	MagicTable(int[] dx, int[] dy, long seed) {
+		Random random = new Random(seed);
+		
+		int size = 0;
+		for(int square = 0; square < 64; square++) {
+			masks[square] = getMask(square, dx, dy);
+			shifts[square] = 64 - Long.bitCount(masks[square]);
+			offsets[square] = size;
+			size += 1 << Long.bitCount(masks[square]);
+		}
+		
+		this.attacks = new long[size];
+		
+		for(int square = 0; square < 64; square++) {
+			findMagic(square, dx, dy, random);
+		}
+	}
+	
+	/**
+	 * Returns the squares attacked from a square with the given occupied squares. The result includes the first
+	 * blocking piece in each direction, whichever side it is on.
+	 */
+	long getAttacks(int square, long occupied) {
+		int index = (int)(((occupied & masks[square]) * magics[square]) >>> shifts[square]);
+		return attacks[offsets[square] + index];
+	}
+	
+	private void findMagic(int square, int[] dx, int[] dy, Random random) {
+		long mask = masks[square];
+		int count = 1 << Long.bitCount(mask);
+		
+		// Enumerate every subset of the mask with its reference attacks.
+		long[] occupancies = new long[count];
+		long[] references = new long[count];
+		long subset = 0;
+		for(int i = 0; i < count; i++) {
+			occupancies[i] = subset;
+			references[i] = getSlowAttacks(square, subset, dx, dy);
+			subset = (subset - mask) & mask;
+		}
+		
+		// Try sparse random numbers until one maps every subset without a destructive collision.
+		int[] used = new int[count];
+		int attempt = 0;
+		while(true) {
+			long magic = random.nextLong() & random.nextLong() & random.nextLong();
+			if(Long.bitCount((mask * magic) & 0xff00000000000000L) < 6) continue;
+			
+			attempt++;
+			boolean failed = false;
+			for(int i = 0; i < count && !failed; i++) {
+				int index = (int)((occupancies[i] * magic) >>> shifts[square]);
+				if(used[index] != attempt) {
+					used[index] = attempt;
+					attacks[offsets[square] + index] = references[i];
+				} else if(attacks[offsets[square] + index] != references[i]) {
+					failed = true;
+				}
+			}
+			
+			if(!failed) {
+				magics[square] = magic;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the squares that can block a slider on a square. Edge squares are left out because a piece
+	 * on them never blocks anything further along the ray.
+	 */
+	private static long getMask(int square, int[] dx, int[] dy) {
+		long mask = 0;
+		for(int d = 0; d < dx.length; d++) {
+			int x = Bitboard.getX(square) + dx[d];
+			int y = Bitboard.getY(square) + dy[d];
+			while(inBounds(x + dx[d], y + dy[d])) {
+				mask |= Bitboard.bit(Bitboard.square(x, y));
+				x += dx[d];
+				y += dy[d];
+			}
+		}
+		return mask;
+	}
+	
+	/**
+	 * Returns the attacks from a square by walking each ray until it reaches a piece or the edge of the board.
+	 */
+	static long getSlowAttacks(int square, long occupied, int[] dx, int[] dy) {
+		long attacks = 0;
+		for(int d = 0; d < dx.length; d++) {
+			int x = Bitboard.getX(square) + dx[d];
+			int y = Bitboard.getY(square) + dy[d];
+			while(inBounds(x, y)) {
+				long bit = Bitboard.bit(Bitboard.square(x, y));
+				attacks |= bit;
+				if((occupied & bit) != 0) break;
+				x += dx[d];
+				y += dy[d];
+			}
+		}
+		return attacks;
+	}
+	
+	private static boolean inBounds(int x, int y) {
+		return (x >= 0 && x < 8 && y >= 0 && y < 8);
+	}
+}
@@ -0,0 +1,59 @@
+package domain.bitboard;
+
+/**
+ * Helpers for 64-bit bitboards. Squares are numbered 0-63 as y * 8 + x, matching Square.getIndex(), so
+ * bit 0 is a8 and bit 63 is h1.
+ */
+public class Bitboard {
+	public static final long RANK_8 = 0xffL;
+	public static final long RANK_1 = 0xffL << 56;
+	
+	/**
+	 * Returns the square index for x and y coordinates.
+	 */
+	public static int square(int x, int y) {
+		return y * 8 + x;
+	}
+	
+	/**
+	 * Returns the file of a square index as an integer 0-7 where 0 is the leftmost file (from white's perspective).
+	 */
+	public static int getX(int square) {
+		return square & 7;
+	}
+	
+	/**
+	 * Returns the rank of a square index as an integer 0-7 where 0 is the back rank (from white's perspective).
+	 */
+	public static int getY(int square) {
+		return square >>> 3;
+	}
+	
+	/**
+	 * Returns a bitboard with only the given square set.
+	 */
+	public static long bit(int square) {
+		return 1L << square;
+	}
+	
+	/**
+	 * Returns the lowest set square in a bitboard, or 64 if it is empty.
+	 */
+	public static int first(long bitboard) {
+		return Long.numberOfTrailingZeros(bitboard);
+	}
+	
+	/**
+	 * Returns a bitboard as an 8x8 grid of '1' and '.' characters, with rank 8 at the top.
+	 */
+	public static String toString(long bitboard) {
+		StringBuilder s = new StringBuilder();
+		for(int y = 0; y < 8; y++) {
+			for(int x = 0; x < 8; x++) {
+				s.append((bitboard & bit(square(x, y))) != 0 ? '1' : '.');
+			}
+			s.append('\n');
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,249 @@
+package domain.bitboard;
+
+import java.util.Arrays;
+
+import domain.Side;
+import domain.attacks.Attacks;
+import domain.pieces.PieceType;
+
+/**
+ * A position stored as one bitboard per piece type and per side, with castling rights, the en-passant
+ * square and the side to play packed into a single int. Copying a position copies 9 longs and 3 ints.
+ * The position's Zobrist key is updated by each setter, so it is always current without being recalculated.
+ */
+public final class BitboardPosition {
+	private static final PieceType[] PIECE_TYPES = PieceType.values();
+	
+	private static final int CASTLING_MASK = 0xfffff;
+	private static final int EN_PASSANT_SHIFT = 20;
+	private static final int EN_PASSANT_MASK = 0x7f << EN_PASSANT_SHIFT;
+	private static final int SIDE_SHIFT = 27;
+	
+	private final long[] pieces = new long[PIECE_TYPES.length];
+	private final long[] sides = new long[2];
+	
+	// Castling bits 0-19 (see Castling.getBits()), en-passant square + 1 in bits 20-26 (0 if none), side to play in bit 27.
+	private int state = 0;
+	private int halfMoves = 0;
+	private int fullMoves = 1;
+	private long key = 0;
+	
+	/**
+	 * Create an empty position with white to play.
+	 */
+	public BitboardPosition() {
+	}
+	
+	/**
+	 * Create a new position as a copy of another one.
+	 */
+	public BitboardPosition(BitboardPosition position) {
+		copyFrom(position);
+	}
+	
+	/**
+	 * Replaces this position with a copy of another one.
+	 */
+	public void copyFrom(BitboardPosition position) {
+		System.arraycopy(position.pieces, 0, pieces, 0, pieces.length);
+		sides[0] = position.sides[0];
+		sides[1] = position.sides[1];
+		state = position.state;
+		halfMoves = position.halfMoves;
+		fullMoves = position.fullMoves;
+		key = position.key;
+	}
+	
+	/**
+	 * Returns the squares occupied by a piece type of either side.
+	 */
+	public long getPieces(PieceType type) {
+		return pieces[type.ordinal()];
+	}
+	
+	/**
+	 * Returns the squares occupied by a side.
+	 */
+	public long getPieces(Side side) {
+		return sides[side.ordinal()];
+	}
+	
+	/**
+	 * Returns the squares occupied by a piece type of one side.
+	 */
+	public long getPieces(PieceType type, Side side) {
+		return pieces[type.ordinal()] & sides[side.ordinal()];
+	}
+	
+	/**
+	 * Returns the squares occupied by any piece.
+	 */
+	public long getOccupied() {
+		return sides[0] | sides[1];
+	}
+	
+	public boolean isOccupied(int square) {
+		return ((sides[0] | sides[1]) & Bitboard.bit(square)) != 0;
+	}
+	
+	/**
+	 * Returns the type of the piece on a square, or null if it is empty.
+	 */
+	public PieceType getPieceType(int square) {
+		long bit = Bitboard.bit(square);
+		if(((sides[0] | sides[1]) & bit) == 0) return null;
+		
+		for(int type = 0; type < pieces.length; type++) {
+			if((pieces[type] & bit) != 0) {
+				return PIECE_TYPES[type];
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the side of the piece on a square, or null if it is empty.
+	 */
+	public Side getSide(int square) {
+		long bit = Bitboard.bit(square);
+		if((sides[0] & bit) != 0) return Side.WHITE;
+		if((sides[1] & bit) != 0) return Side.BLACK;
+		return null;
+	}
+	
+	/**
+	 * Places a piece on a square, replacing any piece already there.
+	 */
+	public void setPiece(int square, PieceType type, Side side) {
+		clearPiece(square);
+		
+		long bit = Bitboard.bit(square);
+		pieces[type.ordinal()] |= bit;
+		sides[side.ordinal()] |= bit;
+		key ^= Zobrist.getPieceKey(type, side, square);
+	}
+	
+	/**
+	 * Removes any piece from a square.
+	 */
+	public void clearPiece(int square) {
+		PieceType type = getPieceType(square);
+		if(type == null) return;
+		
+		Side side = getSide(square);
+		long mask = ~Bitboard.bit(square);
+		pieces[type.ordinal()] &= mask;
+		sides[side.ordinal()] &= mask;
+		key ^= Zobrist.getPieceKey(type, side, square);
+	}
+	
+	/**
+	 * Returns the pieces of a side that attack a square, treating the given squares as occupied.
+	 */
+	public long getAttackers(int square, Side side, long occupied) {
+		long own = sides[side.ordinal()];
+		long queens = pieces[PieceType.QUEEN.ordinal()];
+		
+		long attackers = Attacks.knight(square) & pieces[PieceType.KNIGHT.ordinal()];
+		attackers |= Attacks.king(square) & pieces[PieceType.KING.ordinal()];
+		attackers |= Attacks.pawn(side.otherSide(), square) & pieces[PieceType.PAWN.ordinal()];
+		attackers |= Attacks.rook(square, occupied) & (pieces[PieceType.ROOK.ordinal()] | queens);
+		attackers |= Attacks.bishop(square, occupied) & (pieces[PieceType.BISHOP.ordinal()] | queens);
+		
+		return attackers & own & occupied;
+	}
+	
+	/**
+	 * Returns whether a square is attacked by any piece of a side.
+	 */
+	public boolean isAttacked(int square, Side side) {
+		return getAttackers(square, side, getOccupied()) != 0;
+	}
+	
+	/**
+	 * Returns the square of the king for a side, or -1 if there isn't one.
+	 */
+	public int getKingSquare(Side side) {
+		long king = getPieces(PieceType.KING, side);
+		return (king == 0) ? -1 : Bitboard.first(king);
+	}
+	
+	public Side getSideToPlay() {
+		return ((state >>> SIDE_SHIFT) & 1) == 0 ? Side.WHITE : Side.BLACK;
+	}
+	
+	public void setSideToPlay(Side side) {
+		key ^= Zobrist.getSideKey(getSideToPlay()) ^ Zobrist.getSideKey(side);
+		state = (state & ~(1 << SIDE_SHIFT)) | (side.ordinal() << SIDE_SHIFT);
+	}
+	
+	/**
+	 * Returns the castling rights as packed by Castling.getBits().
+	 */
+	public int getCastling() {
+		return state & CASTLING_MASK;
+	}
+	
+	public void setCastling(int castling) {
+		key ^= Zobrist.getCastlingKey(getCastling()) ^ Zobrist.getCastlingKey(castling & CASTLING_MASK);
+		state = (state & ~CASTLING_MASK) | (castling & CASTLING_MASK);
+	}
+	
+	/**
+	 * Returns the square that can be the target square for an en-passant capture, or -1.
+	 */
+	public int getEnPassant() {
+		return ((state & EN_PASSANT_MASK) >>> EN_PASSANT_SHIFT) - 1;
+	}
+	
+	public void setEnPassant(int square) {
+		key ^= Zobrist.getEnPassantKey(getEnPassant()) ^ Zobrist.getEnPassantKey(square);
+		state = (state & ~EN_PASSANT_MASK) | ((square + 1) << EN_PASSANT_SHIFT);
+	}
+	
+	public int getHalfMoves() {
+		return halfMoves;
+	}
+	
+	public void setHalfMoves(int halfMoves) {
+		this.halfMoves = halfMoves;
+	}
+	
+	public int getFullMoves() {
+		return fullMoves;
+	}
+	
+	public void setFullMoves(int fullMoves) {
+		this.fullMoves = fullMoves;
+	}
+	
+	/**
+	 * Returns the Zobrist key for the pieces, side to play, castling rights and en-passant square. See Zobrist.
+	 */
+	public long getKey() {
+		return key;
+	}
+	
+	/**
+	 * Returns whether two positions are the same, including move counters. The keys are compared first, so
+	 * different positions are usually rejected without comparing the bitboards.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if(other == null || other.getClass() != BitboardPosition.class) return false;
+		BitboardPosition position = (BitboardPosition)other;
+		
+		return key == position.key
+			&& state == position.state
+			&& halfMoves == position.halfMoves
+			&& fullMoves == position.fullMoves
+			&& sides[0] == position.sides[0]
+			&& sides[1] == position.sides[1]
+			&& Arrays.equals(pieces, position.pieces);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Long.hashCode(key);
+	}
+}
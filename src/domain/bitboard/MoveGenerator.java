@@ -0,0 +1,444 @@
+package domain.bitboard;
+
+import domain.Castling;
+import domain.Side;
+import domain.attacks.Attacks;
+import domain.pieces.PieceType;
+
+/**
+ * Generates the legal moves from a position as PackedMove values, written into a buffer supplied by the caller.
+ * Moves are checked for legality as they are generated rather than by making them: pinned pieces only move along
+ * the line to their king, in check only moves that capture the checking piece or block it are generated, and king
+ * moves are checked against attacks with the king removed from the board.
+ */
+public final class MoveGenerator {
+	/**
+	 * The size of buffer needed for the moves from any position.
+	 */
+	public static final int MAX_MOVES = 256;
+	
+	/**
+	 * Writes the legal moves for the side to play into a buffer from index 0, and returns the number of moves.
+	 */
+	public static int generateLegalMoves(BitboardPosition position, int[] moves) {
+		return generateLegalMoves(position, moves, 0);
+	}
+	
+	/**
+	 * Writes the legal moves for the side to play into a buffer starting at an offset, and returns the number of
+	 * moves written. The buffer needs room for MAX_MOVES after the offset.
+	 */
+	public static int generateLegalMoves(BitboardPosition position, int[] moves, int offset) {
+		Side side = position.getSideToPlay();
+		Side other = side.otherSide();
+		
+		long own = position.getPieces(side);
+		long occupied = position.getOccupied();
+		int king = position.getKingSquare(side);
+		
+		int count = offset;
+		long checkMask = -1L;
+		long pinned = 0;
+		
+		// A position without a king can be set up in the editor. Every move is legal there.
+		if(king != -1) {
+			long checkers = position.getAttackers(king, other, occupied);
+			
+			count = addKingMoves(position, side, king, moves, count);
+			
+			if(checkers == 0) {
+				count = addCastlingMoves(position, side, king, moves, count);
+			} else if((checkers & (checkers - 1)) != 0) {
+				// Only the king can move out of double check.
+				return count - offset;
+			} else {
+				// Capture the checking piece, or block it if it's a slider.
+				checkMask = checkers | Attacks.between(king, Bitboard.first(checkers));
+			}
+			
+			pinned = getPinned(position, side, king);
+		}
+		
+		long targets = ~own & checkMask;
+		
+		count = addPawnMoves(position, side, king, pinned, targets, moves, count);
+		
+		// Pinned knights can never move along the pin.
+		long knights = position.getPieces(PieceType.KNIGHT, side) & ~pinned;
+		while(knights != 0) {
+			int from = Bitboard.first(knights);
+			knights &= knights - 1;
+			count = addMoves(from, Attacks.knight(from) & targets, moves, count);
+		}
+		
+		// Queens are included in both the diagonal and straight moves.
+		long queens = position.getPieces(PieceType.QUEEN, side);
+		
+		long diagonals = position.getPieces(PieceType.BISHOP, side) | queens;
+		while(diagonals != 0) {
+			int from = Bitboard.first(diagonals);
+			diagonals &= diagonals - 1;
+			long attacks = Attacks.bishop(from, occupied) & targets;
+			if((pinned & Bitboard.bit(from)) != 0) {
+				attacks &= Attacks.line(king, from);
+			}
+			count = addMoves(from, attacks, moves, count);
+		}
+		
+		long straights = position.getPieces(PieceType.ROOK, side) | queens;
+		while(straights != 0) {
+			int from = Bitboard.first(straights);
+			straights &= straights - 1;
+			long attacks = Attacks.rook(from, occupied) & targets;
+			if((pinned & Bitboard.bit(from)) != 0) {
+				attacks &= Attacks.line(king, from);
+			}
+			count = addMoves(from, attacks, moves, count);
+		}
+		
+		return count - offset;
+	}
+	
+	/**
+	 * Returns whether the side to play has any legal move, stopping at the first one found. King moves are tried
+	 * first, as they are the only moves out of double check, then the other pieces' moves are tested as whole sets
+	 * of target squares.
+	 */
+	public static boolean hasLegalMove(BitboardPosition position) {
+		Side side = position.getSideToPlay();
+		Side other = side.otherSide();
+		
+		long own = position.getPieces(side);
+		long occupied = position.getOccupied();
+		int king = position.getKingSquare(side);
+		
+		if(king == -1) {
+			return generateLegalMoves(position, new int[MAX_MOVES]) != 0;
+		}
+		
+		long kingOccupied = occupied ^ Bitboard.bit(king);
+		long kingTargets = Attacks.king(king) & ~own;
+		while(kingTargets != 0) {
+			int to = Bitboard.first(kingTargets);
+			kingTargets &= kingTargets - 1;
+			if(position.getAttackers(to, other, kingOccupied) == 0) return true;
+		}
+		
+		long checkers = position.getAttackers(king, other, occupied);
+		long checkMask = -1L;
+		if(checkers != 0) {
+			if((checkers & (checkers - 1)) != 0) return false;
+			checkMask = checkers | Attacks.between(king, Bitboard.first(checkers));
+		}
+		
+		long pinned = getPinned(position, side, king);
+		long targets = ~own & checkMask;
+		
+		long knights = position.getPieces(PieceType.KNIGHT, side) & ~pinned;
+		while(knights != 0) {
+			int from = Bitboard.first(knights);
+			knights &= knights - 1;
+			if((Attacks.knight(from) & targets) != 0) return true;
+		}
+		
+		long queens = position.getPieces(PieceType.QUEEN, side);
+		
+		long diagonals = position.getPieces(PieceType.BISHOP, side) | queens;
+		while(diagonals != 0) {
+			int from = Bitboard.first(diagonals);
+			diagonals &= diagonals - 1;
+			long attacks = Attacks.bishop(from, occupied) & targets;
+			if((pinned & Bitboard.bit(from)) != 0) {
+				attacks &= Attacks.line(king, from);
+			}
+			if(attacks != 0) return true;
+		}
+		
+		long straights = position.getPieces(PieceType.ROOK, side) | queens;
+		while(straights != 0) {
+			int from = Bitboard.first(straights);
+			straights &= straights - 1;
+			long attacks = Attacks.rook(from, occupied) & targets;
+			if((pinned & Bitboard.bit(from)) != 0) {
+				attacks &= Attacks.line(king, from);
+			}
+			if(attacks != 0) return true;
+		}
+		
+		// Pawns and castling are rarely the only moves left, so their moves are generated in full.
+		int[] moves = new int[MAX_MOVES];
+		if(addPawnMoves(position, side, king, pinned, targets, moves, 0) != 0) return true;
+		return checkers == 0 && addCastlingMoves(position, side, king, moves, 0) != 0;
+	}
+	
+	/**
+	 * Returns the squares of the pieces of a type for the side to play that have a legal move to a square, not
+	 * counting castling. This tests only the pieces that could reach the square, each by checking that the king
+	 * isn't attacked after the move. As in generateLegalMoves(), only the first king of a side moves, and in a
+	 * position without a king every move is legal.
+	 */
+	public static long getLegalMovesTo(BitboardPosition position, PieceType type, int to) {
+		Side side = position.getSideToPlay();
+		Side other = side.otherSide();
+		
+		long toBit = Bitboard.bit(to);
+		if((position.getPieces(side) & toBit) != 0) return 0;
+		
+		long occupied = position.getOccupied();
+		int king = position.getKingSquare(side);
+		
+		if(type == PieceType.KING) {
+			if(king == -1 || (Attacks.king(king) & toBit) == 0) return 0;
+			return (position.getAttackers(to, other, occupied ^ Bitboard.bit(king)) == 0) ? Bitboard.bit(king) : 0;
+		}
+		
+		long pieces = position.getPieces(type, side);
+		long candidates;
+		switch(type) {
+			case PAWN:
+				candidates = Attacks.pawn(other, to) & pieces;
+				if((occupied & toBit) == 0) {
+					// Pushes, or en-passant captures onto an empty square.
+					if(to != position.getEnPassant()) {
+						candidates = 0;
+					}
+					
+					int forward = (side == Side.WHITE) ? -8 : 8;
+					int startRank = (side == Side.WHITE) ? 6 : 1;
+					int from = to - forward;
+					if(from >= 0 && from < 64) {
+						candidates |= pieces & Bitboard.bit(from);
+						int twoSquares = from - forward;
+						if((occupied & Bitboard.bit(from)) == 0 && twoSquares >= 0 && twoSquares < 64 && Bitboard.getY(twoSquares) == startRank) {
+							candidates |= pieces & Bitboard.bit(twoSquares);
+						}
+					}
+				}
+				break;
+			case KNIGHT:
+				candidates = Attacks.knight(to) & pieces;
+				break;
+			case BISHOP:
+				candidates = Attacks.bishop(to, occupied) & pieces;
+				break;
+			case ROOK:
+				candidates = Attacks.rook(to, occupied) & pieces;
+				break;
+			default:
+				candidates = Attacks.queen(to, occupied) & pieces;
+				break;
+		}
+		
+		if(king == -1) return candidates;
+		
+		long legal = 0;
+		while(candidates != 0) {
+			int from = Bitboard.first(candidates);
+			candidates &= candidates - 1;
+			
+			long captured = toBit;
+			if(type == PieceType.PAWN && (occupied & toBit) == 0 && Bitboard.getX(from) != Bitboard.getX(to)) {
+				captured = Bitboard.bit(Bitboard.square(Bitboard.getX(to), Bitboard.getY(from)));
+			}
+			
+			long after = (occupied & ~Bitboard.bit(from) & ~captured) | toBit;
+			if((position.getAttackers(king, other, after) & ~captured) == 0) {
+				legal |= Bitboard.bit(from);
+			}
+		}
+		return legal;
+	}
+	
+	/**
+	 * Returns whether a packed move is one of the legal moves in a position.
+	 */
+	public static boolean isLegal(BitboardPosition position, int move) {
+		if(move == PackedMove.NONE) return false;
+		
+		if(PackedMove.isCastling(move)) {
+			int[] moves = new int[MAX_MOVES];
+			int count = generateLegalMoves(position, moves);
+			for(int i = 0; i < count; i++) {
+				if(moves[i] == move) return true;
+			}
+			return false;
+		}
+		
+		int from = PackedMove.getFrom(move);
+		int to = PackedMove.getTo(move);
+		PieceType type = position.getPieceType(from);
+		if(type == null || position.getSide(from) != position.getSideToPlay()) return false;
+		
+		// Pawns reaching the last rank must promote, to one of the pieces they can promote to.
+		PieceType promote = PackedMove.getPromotion(move);
+		if(promote == PieceType.PAWN || promote == PieceType.KING) return false;
+		int y = Bitboard.getY(to);
+		if((type == PieceType.PAWN && (y == 0 || y == 7)) != (promote != null)) return false;
+		
+		if((getLegalMovesTo(position, type, to) & Bitboard.bit(from)) == 0) return false;
+		
+		return move == PackedMove.create(position, from, to, promote);
+	}
+	
+	/**
+	 * Returns the pieces of a side that are the only piece between their king and an enemy slider.
+	 */
+	private static long getPinned(BitboardPosition position, Side side, int king) {
+		Side other = side.otherSide();
+		long own = position.getPieces(side);
+		long enemy = position.getPieces(other);
+		long queens = position.getPieces(PieceType.QUEEN, other);
+		
+		// Sliders that would attack the king if none of our pieces were in the way.
+		long snipers = Attacks.rook(king, enemy) & (position.getPieces(PieceType.ROOK, other) | queens);
+		snipers |= Attacks.bishop(king, enemy) & (position.getPieces(PieceType.BISHOP, other) | queens);
+		
+		long pinned = 0;
+		while(snipers != 0) {
+			int sniper = Bitboard.first(snipers);
+			snipers &= snipers - 1;
+			long between = Attacks.between(king, sniper) & (own | enemy);
+			if(between != 0 && (between & (between - 1)) == 0 && (between & own) != 0) {
+				pinned |= between;
+			}
+		}
+		return pinned;
+	}
+	
+	private static int addKingMoves(BitboardPosition position, Side side, int king, int[] moves, int count) {
+		Side other = side.otherSide();
+		
+		// Remove the king so that squares behind it on the line of a checking slider count as attacked.
+		long occupied = position.getOccupied() ^ Bitboard.bit(king);
+		
+		long targets = Attacks.king(king) & ~position.getPieces(side);
+		while(targets != 0) {
+			int to = Bitboard.first(targets);
+			targets &= targets - 1;
+			if(position.getAttackers(to, other, occupied) == 0) {
+				moves[count++] = PackedMove.create(king, to);
+			}
+		}
+		return count;
+	}
+	
+	private static int addCastlingMoves(BitboardPosition position, Side side, int king, int[] moves, int count) {
+		for(int direction = -1; direction <= 1; direction += 2) {
+			int rook = Castling.getCastlingRook(position, side, king, direction);
+			if(rook == -1) continue;
+			
+			int kingDestination = Bitboard.square((direction > 0) ? 6 : 2, Bitboard.getY(king));
+			int rookDestination = kingDestination - direction;
+			
+			if(isCastlingBlocked(position, king, rook, kingDestination, rookDestination)) continue;
+			if(isCastlingThroughCheck(position, side, king, rook, kingDestination)) continue;
+			
+			moves[count++] = PackedMove.create(king, kingDestination, PackedMove.CASTLING);
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns whether any square that the king or rook passes over or lands on is occupied by a piece other than
+	 * the castling king and rook.
+	 */
+	public static boolean isCastlingBlocked(BitboardPosition position, int king, int rook, int kingDestination, int rookDestination) {
+		int min = Math.min(Math.min(king, rook), Math.min(kingDestination, rookDestination));
+		int max = Math.max(Math.max(king, rook), Math.max(kingDestination, rookDestination));
+		
+		long path = -Bitboard.bit(min) & ~(-(Bitboard.bit(max) << 1));
+		long others = position.getOccupied() & ~Bitboard.bit(king) & ~Bitboard.bit(rook);
+		
+		return (path & others) != 0;
+	}
+	
+	/**
+	 * Returns whether the king starts on, passes over or lands on an attacked square when castling. The castling
+	 * rook is removed first, as in Chess960 it can be shielding one of these squares along the back rank.
+	 */
+	public static boolean isCastlingThroughCheck(BitboardPosition position, Side side, int king, int rook, int kingDestination) {
+		long occupied = position.getOccupied() & ~Bitboard.bit(king) & ~Bitboard.bit(rook);
+		
+		for(int square = Math.min(king, kingDestination); square <= Math.max(king, kingDestination); square++) {
+			if(position.getAttackers(square, side.otherSide(), occupied) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static int addPawnMoves(BitboardPosition position, Side side, int king, long pinned, long targets, int[] moves, int count) {
+		Side other = side.otherSide();
+		long occupied = position.getOccupied();
+		long enemy = position.getPieces(other);
+		int enPassant = position.getEnPassant();
+		
+		// White pawns move towards y = 0.
+		int forward = (side == Side.WHITE) ? -8 : 8;
+		int startRank = (side == Side.WHITE) ? 6 : 1;
+		
+		long pawns = position.getPieces(PieceType.PAWN, side);
+		while(pawns != 0) {
+			int from = Bitboard.first(pawns);
+			pawns &= pawns - 1;
+			
+			long allowed = targets;
+			if((pinned & Bitboard.bit(from)) != 0) {
+				allowed &= Attacks.line(king, from);
+			}
+			
+			// Pushes.
+			int to = from + forward;
+			if(to >= 0 && to < 64 && (occupied & Bitboard.bit(to)) == 0) {
+				if((allowed & Bitboard.bit(to)) != 0) {
+					count = addPawnMove(from, to, moves, count);
+				}
+				
+				int twoSquares = to + forward;
+				if(Bitboard.getY(from) == startRank && (occupied & Bitboard.bit(twoSquares)) == 0 && (allowed & Bitboard.bit(twoSquares)) != 0) {
+					moves[count++] = PackedMove.create(from, twoSquares);
+				}
+			}
+			
+			// Captures.
+			long captures = Attacks.pawn(side, from) & enemy & allowed;
+			while(captures != 0) {
+				int capture = Bitboard.first(captures);
+				captures &= captures - 1;
+				count = addPawnMove(from, capture, moves, count);
+			}
+			
+			// En-passant. Removing two pieces from a rank can uncover a check that isn't in the pin or check masks,
+			// so test the king directly with the position after the capture.
+			if(enPassant != -1 && (Attacks.pawn(side, from) & Bitboard.bit(enPassant)) != 0 && (occupied & Bitboard.bit(enPassant)) == 0) {
+				int captured = Bitboard.square(Bitboard.getX(enPassant), Bitboard.getY(from));
+				long after = (occupied & ~Bitboard.bit(from) & ~Bitboard.bit(captured)) | Bitboard.bit(enPassant);
+				if(king == -1 || position.getAttackers(king, other, after) == 0) {
+					moves[count++] = PackedMove.create(from, enPassant, PackedMove.EN_PASSANT);
+				}
+			}
+		}
+		return count;
+	}
+	
+	private static int addPawnMove(int from, int to, int[] moves, int count) {
+		int y = Bitboard.getY(to);
+		if(y == 0 || y == 7) {
+			moves[count++] = PackedMove.createPromotion(from, to, PieceType.QUEEN);
+			moves[count++] = PackedMove.createPromotion(from, to, PieceType.ROOK);
+			moves[count++] = PackedMove.createPromotion(from, to, PieceType.BISHOP);
+			moves[count++] = PackedMove.createPromotion(from, to, PieceType.KNIGHT);
+		} else {
+			moves[count++] = PackedMove.create(from, to);
+		}
+		return count;
+	}
+	
+	private static int addMoves(int from, long targets, int[] moves, int count) {
+		while(targets != 0) {
+			moves[count++] = PackedMove.create(from, Bitboard.first(targets));
+			targets &= targets - 1;
+		}
+		return count;
+	}
+}
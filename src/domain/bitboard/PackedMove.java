@@ -0,0 +1,132 @@
+package domain.bitboard;
+
+import domain.Move;
+import domain.PromotionChoice;
+import domain.Square;
+import domain.pieces.PieceType;
+
+/**
+ * Moves packed into an int, so they can be generated into an int[] without allocating. Bits 0-5 are the from
+ * square and bits 6-11 the to square (numbered as in Bitboard), bits 12-14 are the promoted piece type's ordinal
+ * plus one (0 if there is no promotion), bit 15 is set for castling and bit 16 for en-passant captures.
+ * A castling move goes from the king's square to the king's destination square.
+ */
+public final class PackedMove {
+	/**
+	 * No move. This would be a move from a8 to a8 with no flags, which is never generated.
+	 */
+	public static final int NONE = 0;
+	
+	public static final int CASTLING = 1 << 15;
+	public static final int EN_PASSANT = 1 << 16;
+	
+	private static final int TO_SHIFT = 6;
+	private static final int PROMOTION_SHIFT = 12;
+	
+	private static final PieceType[] PIECE_TYPES = PieceType.values();
+	
+	public static int create(int from, int to) {
+		return from | (to << TO_SHIFT);
+	}
+	
+	/**
+	 * Creates a move with the CASTLING or EN_PASSANT flag.
+	 */
+	public static int create(int from, int to, int flags) {
+		return from | (to << TO_SHIFT) | flags;
+	}
+	
+	public static int createPromotion(int from, int to, PieceType promote) {
+		return from | (to << TO_SHIFT) | ((promote.ordinal() + 1) << PROMOTION_SHIFT);
+	}
+	
+	public static int getFrom(int move) {
+		return move & 0x3f;
+	}
+	
+	public static int getTo(int move) {
+		return (move >>> TO_SHIFT) & 0x3f;
+	}
+	
+	/**
+	 * Returns the piece type that a pawn is promoted to, or null if the move isn't a promotion.
+	 */
+	public static PieceType getPromotion(int move) {
+		int promotion = (move >>> PROMOTION_SHIFT) & 7;
+		return (promotion == 0) ? null : PIECE_TYPES[promotion - 1];
+	}
+	
+	public static boolean isCastling(int move) {
+		return (move & CASTLING) != 0;
+	}
+	
+	public static boolean isEnPassant(int move) {
+		return (move & EN_PASSANT) != 0;
+	}
+	
+	/**
+	 * Creates a move that isn't castling in a position, setting the en-passant flag for a pawn capturing onto the
+	 * en-passant square.
+	 */
+	public static int create(BitboardPosition position, int from, int to, PieceType promote) {
+		if(promote != null) {
+			return createPromotion(from, to, promote);
+		}
+		
+		if(to == position.getEnPassant() && position.getPieceType(from) == PieceType.PAWN && Bitboard.getX(from) != Bitboard.getX(to)) {
+			return create(from, to, EN_PASSANT);
+		}
+		
+		return create(from, to);
+	}
+	
+	/**
+	 * Converts a Move in a position to a packed move. Returns NONE for a null move.
+	 */
+	public static int fromMove(BitboardPosition position, Move move) {
+		if(move.isNullMove()) return NONE;
+		
+		int from = move.getFrom().getIndex();
+		int to = move.getTo().getIndex();
+		
+		if(move.getCastling()) {
+			return create(from, to, CASTLING);
+		}
+		
+		return create(position, from, to, getPieceType(move.getPromote()));
+	}
+	
+	private static PieceType getPieceType(PromotionChoice promote) {
+		if(promote == null) return null;
+		if(promote == PromotionChoice.ROOK) return PieceType.ROOK;
+		if(promote == PromotionChoice.KNIGHT) return PieceType.KNIGHT;
+		if(promote == PromotionChoice.BISHOP) return PieceType.BISHOP;
+		return PieceType.QUEEN;
+	}
+	
+	/**
+	 * Converts a packed move to a Move, as used by Board.
+	 */
+	public static Move toMove(int move) {
+		Square from = Square.fromIndex(getFrom(move));
+		Square to = Square.fromIndex(getTo(move));
+		return new Move(from, to, isCastling(move), getPromotionChoice(getPromotion(move)));
+	}
+	
+	private static PromotionChoice getPromotionChoice(PieceType type) {
+		if(type == null) return null;
+		if(type == PieceType.ROOK) return PromotionChoice.ROOK;
+		if(type == PieceType.KNIGHT) return PromotionChoice.KNIGHT;
+		if(type == PieceType.BISHOP) return PromotionChoice.BISHOP;
+		return PromotionChoice.QUEEN;
+	}
+	
+	/**
+	 * Returns a move in coordinate notation, such as "e2e4" or "e7e8q".
+	 */
+	public static String toString(int move) {
+		String s = Square.fromIndex(getFrom(move)).toString() + Square.fromIndex(getTo(move)).toString();
+		PieceType promotion = getPromotion(move);
+		return (promotion == null) ? s : s + promotion.getAlgebraic();
+	}
+}
@@ -0,0 +1,137 @@
+package domain.bitboard;
+
+import domain.IllegalMoveException;
+import domain.Side;
+import domain.pieces.PieceType;
+
+/**
+ * Finds the legal move written in algebraic notation in a pgn file, such as "Nbd7", "exd5", "e8=Q+" or "O-O".
+ * The move text is read by hand without allocating, and only the pieces of the type named that could reach the
+ * destination square are tested, with MoveGenerator.getLegalMovesTo(). Castling, which can also be written as a
+ * king move, is matched against every legal move.
+ */
+public final class PgnMoveDecoder {
+	private static final long FILE_A = 0x0101010101010101L;
+	
+	private static final String PIECES = "RNBQK";
+	private static final PieceType[] PIECE_TYPES = { PieceType.ROOK, PieceType.KNIGHT, PieceType.BISHOP, PieceType.QUEEN, PieceType.KING };
+	
+	private static final String PROMOTIONS = "QNBRqnbr";
+	private static final PieceType[] PROMOTION_TYPES = { PieceType.QUEEN, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK };
+	
+	/**
+	 * Returns the legal move for the side to play that matches a pgn move, as a PackedMove.
+	 */
+	public static int decode(BitboardPosition position, String pgnMove) throws IllegalMoveException {
+		int end = pgnMove.length();
+		while(end > 0 && "!?+#".indexOf(pgnMove.charAt(end - 1)) >= 0) {
+			end--;
+		}
+		
+		if(isCastling(pgnMove, end)) {
+			return decodeCastling(position, pgnMove, end == 5);
+		}
+		
+		PieceType promote = null;
+		if(end >= 2 && pgnMove.charAt(end - 2) == '=') {
+			int index = PROMOTIONS.indexOf(pgnMove.charAt(end - 1));
+			if(index < 0) throw new IllegalMoveException("Invalid pgn move: " + pgnMove);
+			promote = PROMOTION_TYPES[index % 4];
+			end -= 2;
+		}
+		
+		if(end < 2 || !isFile(pgnMove.charAt(end - 2)) || !isRank(pgnMove.charAt(end - 1))) {
+			throw new IllegalMoveException("Invalid pgn move: " + pgnMove);
+		}
+		int to = Bitboard.square(pgnMove.charAt(end - 2) - 'a', '8' - pgnMove.charAt(end - 1));
+		end -= 2;
+		
+		// The piece, then the file and rank of the piece when it's ambiguous, then an optional 'x'.
+		int index = 0;
+		PieceType piece = PieceType.PAWN;
+		if(index < end && PIECES.indexOf(pgnMove.charAt(index)) >= 0) {
+			piece = PIECE_TYPES[PIECES.indexOf(pgnMove.charAt(index++))];
+		}
+		long fromMask = -1L;
+		if(index < end && isFile(pgnMove.charAt(index))) {
+			fromMask &= FILE_A << (pgnMove.charAt(index++) - 'a');
+		}
+		if(index < end && isRank(pgnMove.charAt(index))) {
+			fromMask &= Bitboard.RANK_8 << (8 * ('8' - pgnMove.charAt(index++)));
+		}
+		if(index < end && pgnMove.charAt(index) == 'x') {
+			index++;
+		}
+		if(index != end) throw new IllegalMoveException("Invalid pgn move: " + pgnMove);
+		
+		// Pawns reaching the last rank must promote, and other pieces can't.
+		long fromSquares = MoveGenerator.getLegalMovesTo(position, piece, to) & fromMask;
+		int y = Bitboard.getY(to);
+		if((piece == PieceType.PAWN && (y == 0 || y == 7)) != (promote != null)) {
+			fromSquares = 0;
+		}
+		
+		int matches = Long.bitCount(fromSquares);
+		if(matches == 1) {
+			return PackedMove.create(position, Bitboard.first(fromSquares), to, promote);
+		}
+		
+		// Castling moves only match moves written as king moves if no ordinary king move does.
+		if(piece == PieceType.KING && matches == 0 && promote == null) {
+			int[] legalMoves = new int[MoveGenerator.MAX_MOVES];
+			int count = MoveGenerator.generateLegalMoves(position, legalMoves);
+			int castlingMatches = 0;
+			int foundCastling = PackedMove.NONE;
+			for(int i = 0; i < count; i++) {
+				int move = legalMoves[i];
+				if(PackedMove.isCastling(move) && PackedMove.getTo(move) == to && (fromMask & Bitboard.bit(PackedMove.getFrom(move))) != 0) {
+					castlingMatches++;
+					foundCastling = move;
+				}
+			}
+			
+			if(castlingMatches == 1) return foundCastling;
+		}
+		
+		throw new IllegalMoveException("Invalid pgn move: " + pgnMove + ". " + matches + " matching moves.");
+	}
+	
+	/**
+	 * Returns whether the text up to an index is a castling move, such as "O-O" or "0-0-0".
+	 */
+	private static boolean isCastling(String pgnMove, int end) {
+		if(end != 3 && end != 5) return false;
+		for(int i = 0; i < end; i++) {
+			char c = pgnMove.charAt(i);
+			if((i % 2 == 0) ? (c != 'O' && c != 'o' && c != '0') : (c != '-')) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns a castling move, moving the king on the back rank of the side to play to its destination square.
+	 * Whether castling is legal is checked when the move is made.
+	 */
+	private static int decodeCastling(BitboardPosition position, String pgnMove, boolean queenside) throws IllegalMoveException {
+		int y = (position.getSideToPlay() == Side.WHITE) ? 7 : 0;
+		
+		int fromX = -1;
+		for(int x = 0; x < 8; x++) {
+			if(position.getPieceType(Bitboard.square(x, y)) == PieceType.KING) {
+				fromX = x;
+			}
+		}
+		
+		if(fromX == -1) throw new IllegalMoveException("Invalid pgn move: " + pgnMove);
+		
+		return PackedMove.create(Bitboard.square(fromX, y), Bitboard.square(queenside ? 2 : 6, y), PackedMove.CASTLING);
+	}
+	
+	private static boolean isFile(char c) {
+		return c >= 'a' && c <= 'h';
+	}
+	
+	private static boolean isRank(char c) {
+		return c >= '1' && c <= '8';
+	}
+}
@@ -0,0 +1,122 @@
+package domain.bitboard;
+
+import domain.Castling;
+import domain.IllegalMoveException;
+import domain.Side;
+import domain.pieces.PieceType;
+
+/**
+ * Writes legal moves in algebraic notation for pgn files and for display, such as "Nbd7", "exd5", "e8=Q+" or
+ * "O-O". Other pieces that could move to the same square are found with MoveGenerator.getLegalMovesTo() rather
+ * than by generating every move, and a check is only tested for mate with MoveGenerator.hasLegalMove(), so
+ * writing a move doesn't generate the replies to it.
+ */
+public final class PgnMoveEncoder {
+	/**
+	 * Returns a legal move as a pgn move, or "-" for a null move.
+	 */
+	public static String encode(BitboardPosition position, int move) throws IllegalMoveException {
+		if(move == PackedMove.NONE) {
+			return "-";
+		}
+		
+		int from = PackedMove.getFrom(move);
+		int to = PackedMove.getTo(move);
+		PieceType type = position.getPieceType(from);
+		
+		if(type == null) throw new IllegalMoveException("Can't find piece.");
+		if(!MoveGenerator.isLegal(position, move)) throw new IllegalMoveException("Illegal move: " + PackedMove.toString(move));
+		
+		StringBuilder pgnMove = new StringBuilder(8);
+		if(PackedMove.isCastling(move)) {
+			pgnMove.append((Bitboard.getX(to) == 6) ? "O-O" : "O-O-O");
+		} else {
+			// Check for capture, including en-passant.
+			boolean capture = position.isOccupied(to) || (type == PieceType.PAWN && Bitboard.getX(from) != Bitboard.getX(to));
+			
+			if(type == PieceType.PAWN) {
+				// A pawn capture is written with the file it captures from.
+				if(capture) {
+					pgnMove.append(getFile(from));
+				}
+			} else {
+				pgnMove.append(Character.toUpperCase(type.getAlgebraic()));
+				
+				// Add the file or rank of the piece moving if another piece of the same type can move to the same
+				// square, or both if more than one other piece can.
+				long others = MoveGenerator.getLegalMovesTo(position, type, to) & ~Bitboard.bit(from);
+				if(Long.bitCount(others) > 1) {
+					pgnMove.append(getFile(from)).append(getRank(from));
+				} else if(others != 0) {
+					if(Bitboard.getX(Bitboard.first(others)) != Bitboard.getX(from)) {
+						pgnMove.append(getFile(from));
+					} else {
+						pgnMove.append(getRank(from));
+					}
+				}
+			}
+			
+			if(capture) {
+				pgnMove.append('x');
+			}
+			pgnMove.append(getFile(to)).append(getRank(to));
+			
+			PieceType promote = PackedMove.getPromotion(move);
+			if(promote != null) {
+				pgnMove.append('=').append(Character.toUpperCase(promote.getAlgebraic()));
+			}
+		}
+		
+		// Check for check and checkmate.
+		BitboardPosition next = new BitboardPosition(position);
+		makeMove(next, move);
+		Side side = next.getSideToPlay();
+		int king = next.getKingSquare(side);
+		if(king != -1 && next.isAttacked(king, side.otherSide())) {
+			pgnMove.append(MoveGenerator.hasLegalMove(next) ? '+' : '#');
+		}
+		
+		return pgnMove.toString();
+	}
+	
+	/**
+	 * Makes a legal move in a position. Only the pieces, the side to play and the en-passant square are updated,
+	 * as these are all that's needed to find the replies to a check.
+	 */
+	private static void makeMove(BitboardPosition position, int move) {
+		int from = PackedMove.getFrom(move);
+		int to = PackedMove.getTo(move);
+		Side side = position.getSideToPlay();
+		PieceType type = position.getPieceType(from);
+		
+		if(PackedMove.isCastling(move)) {
+			int direction = (Bitboard.getX(to) == 6) ? 1 : -1;
+			int rook = Castling.getCastlingRook(position, side, from, direction);
+			position.clearPiece(from);
+			position.clearPiece(rook);
+			position.setPiece(to, PieceType.KING, side);
+			position.setPiece(to - direction, PieceType.ROOK, side);
+		} else {
+			if(PackedMove.isEnPassant(move)) {
+				position.clearPiece(Bitboard.square(Bitboard.getX(to), Bitboard.getY(from)));
+			}
+			PieceType promote = PackedMove.getPromotion(move);
+			position.clearPiece(from);
+			position.setPiece(to, (promote == null) ? type : promote, side);
+		}
+		
+		position.setEnPassant(-1);
+		if(type == PieceType.PAWN && Math.abs(to - from) == 16) {
+			position.setEnPassant((from + to) / 2);
+		}
+		position.setSideToPlay(side.otherSide());
+	}
+	
+	private static char getFile(int square) {
+		return (char)('a' + Bitboard.getX(square));
+	}
+	
+	private static char getRank(int square) {
+		return (char)('8' - Bitboard.getY(square));
+	}
+}
@@ -0,0 +1,100 @@
+package domain.bitboard;
+
+import java.util.Random;
+
+import domain.Side;
+import domain.pieces.PieceType;
+
+/**
+ * Random keys for Zobrist hashing. A position's key is the XOR of a key for each piece on its square, for each
+ * castling right, for the en-passant square, and for black to play. Each of these can be XORed in or out as a
+ * position changes, so BitboardPosition keeps its key up to date as it is modified. Move counters aren't
+ * included, so positions reached by different move orders have the same key.
+ */
+public final class Zobrist {
+	private static final long[] PIECES = new long[2 * 6 * 64];
+	private static final long[] EN_PASSANT = new long[64];
+	
+	// Keys for the castling bits (see Castling.getBits()), combined for every value of the low and high 10 bits.
+	private static final long[] CASTLING_LOW = new long[1 << 10];
+	private static final long[] CASTLING_HIGH = new long[1 << 10];
+	
+	private static final long BLACK_TO_PLAY;
+	
+	static {
+		// Use a fixed seed so that keys are the same on every run.
+		Random random = new Random(0x2b992ddfa23249d6L);
+		
+		for(int i = 0; i < PIECES.length; i++) {
+			PIECES[i] = random.nextLong();
+		}
+		
+		for(int i = 0; i < EN_PASSANT.length; i++) {
+			EN_PASSANT[i] = random.nextLong();
+		}
+		
+		long[] castling = new long[20];
+		for(int i = 0; i < castling.length; i++) {
+			castling[i] = random.nextLong();
+		}
+		
+		for(int bits = 0; bits < (1 << 10); bits++) {
+			for(int i = 0; i < 10; i++) {
+				if((bits & (1 << i)) != 0) {
+					CASTLING_LOW[bits] ^= castling[i];
+					CASTLING_HIGH[bits] ^= castling[i + 10];
+				}
+			}
+		}
+		
+		BLACK_TO_PLAY = random.nextLong();
+	}
+	
+	/**
+	 * Returns the key for a piece on a square.
+	 */
+	public static long getPieceKey(PieceType type, Side side, int square) {
+		return PIECES[(side.ordinal() * 6 + type.ordinal()) * 64 + square];
+	}
+	
+	/**
+	 * Returns the combined key for a set of castling bits, as packed by Castling.getBits().
+	 */
+	public static long getCastlingKey(int castling) {
+		return CASTLING_LOW[castling & 0x3ff] ^ CASTLING_HIGH[(castling >>> 10) & 0x3ff];
+	}
+	
+	/**
+	 * Returns the key for an en-passant square, or 0 for -1.
+	 */
+	public static long getEnPassantKey(int square) {
+		return (square == -1) ? 0 : EN_PASSANT[square];
+	}
+	
+	/**
+	 * Returns the key for a side to play, which is 0 for white.
+	 */
+	public static long getSideKey(Side side) {
+		return (side == Side.BLACK) ? BLACK_TO_PLAY : 0;
+	}
+	
+	/**
+	 * Calculates the key for a position from scratch.
+	 */
+	public static long getKey(BitboardPosition position) {
+		long key = 0;
+		
+		long occupied = position.getOccupied();
+		while(occupied != 0) {
+			int square = Bitboard.first(occupied);
+			occupied &= occupied - 1;
+			key ^= getPieceKey(position.getPieceType(square), position.getSide(square), square);
+		}
+		
+		key ^= getCastlingKey(position.getCastling());
+		key ^= getEnPassantKey(position.getEnPassant());
+		key ^= getSideKey(position.getSideToPlay());
+		
+		return key;
+	}
+}
@@ -7,6 +7,7 @@ import domain.Move;
 import domain.Side;
 import domain.Square;
 import domain.Board;
+import domain.attacks.Attacks;
 
 public class Bishop extends Piece {
 	public Bishop(Square square, Side side) {
@@ -21,7 +22,7 @@ public class Bishop extends Piece {
 	@Override
 	public List<Move> getPossibleMoves(Board board) {
 		List<Move> moves = new ArrayList<Move>();
-		tryDiagonals(moves, board);
+		addMoves(moves, board, Attacks.bishop(square.getIndex(), board.getOccupiedBitboard()));
 		return moves;
 	}
 }
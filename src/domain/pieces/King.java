@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import domain.*;
+import domain.attacks.Attacks;
 
 public class King extends Piece {
 	public King(Square square, Side side) {
@@ -19,16 +20,7 @@ public class King extends Piece {
 	public List<Move> getPossibleMoves(Board board) {
 		List<Move> moves = new ArrayList<Move>();
 		
-		for(int dx = -1; dx <= 1; dx++) {
-			for(int dy = -1; dy <= 1; dy++) {
-				if(dx != 0 || dy != 0) {
-					int nx = square.getX() + dx;
-					int ny = square.getY() + dy;
-					
-					trySquare(moves, board, nx, ny);
-				}
-			}
-		}
+		addMoves(moves, board, Attacks.king(square.getIndex()));
 		
 		if(square.getX() == 4) {
 			// Add castling moves. They will be checked when making a move.
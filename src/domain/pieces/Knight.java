@@ -7,6 +7,7 @@ import domain.Move;
 import domain.Side;
 import domain.Square;
 import domain.Board;
+import domain.attacks.Attacks;
 
 public class Knight extends Piece {
 	public Knight(Square square, Side side) {
@@ -21,17 +22,7 @@ public class Knight extends Piece {
 	@Override
 	public List<Move> getPossibleMoves(Board board) {
 		List<Move> moves = new ArrayList<Move>();
-		
-		int[] dx = {-2, -2, -1, -1, 1, 1, 2, 2};
-		int[] dy = {-1, 1, -2, 2, -2, 2, -1, 1};
-		
-		for(int d = 0; d < dx.length; d++) {
-			int nx = square.getX() + dx[d];
-			int ny = square.getY() + dy[d];
-			
-			trySquare(moves, board, nx, ny);
-		}
-		
+		addMoves(moves, board, Attacks.knight(square.getIndex()));
 		return moves;
 	}
 }
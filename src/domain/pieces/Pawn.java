@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import domain.*;
+import domain.attacks.Attacks;
+import domain.bitboard.Bitboard;
 
 public class Pawn extends Piece {
 	public Pawn(Square square, Side side) {
@@ -40,7 +42,7 @@ public class Pawn extends Piece {
 		} else {
 			// One square forward.
 			if(trySquare(nonCapturingMoves, board, x, y + direction)) {
-				if(y == startRank) {
+				if(y == startRank && board.getPiece(new Square(x, y + direction)) == null) {
 					// Two squares forward.
 					trySquare(nonCapturingMoves, board, x, y + direction * 2);
 				}
@@ -63,22 +65,19 @@ public class Pawn extends Piece {
 		}
 		
 		// Capture.
-		for(int dx = -1; dx <= 1; dx+=2) {
-			if(Square.inBounds(x + dx, y + direction)) {
-				Square to = new Square(x + dx, y + direction);
-				Piece piece = board.getPiece(to);
-				if(piece != null && piece.getSide() == side.otherSide()) {
-					if(y + direction == 0 || y + direction == 7) {
-						// Capture and promote.
-						moves.add(new Move(square, to, PromotionChoice.QUEEN));
-						moves.add(new Move(square, to, PromotionChoice.BISHOP));
-						moves.add(new Move(square, to, PromotionChoice.KNIGHT));
-						moves.add(new Move(square, to, PromotionChoice.ROOK));
-					} else {
-						// Capture only.
-						moves.add(new Move(square, to));
-					}
-				}
+		long captures = Attacks.pawn(side, square.getIndex()) & board.getBitboard(side.otherSide());
+		while(captures != 0) {
+			Square to = Square.fromIndex(Bitboard.first(captures));
+			captures &= captures - 1;
+			if(y + direction == 0 || y + direction == 7) {
+				// Capture and promote.
+				moves.add(new Move(square, to, PromotionChoice.QUEEN));
+				moves.add(new Move(square, to, PromotionChoice.BISHOP));
+				moves.add(new Move(square, to, PromotionChoice.KNIGHT));
+				moves.add(new Move(square, to, PromotionChoice.ROOK));
+			} else {
+				// Capture only.
+				moves.add(new Move(square, to));
 			}
 		}
 		
@@ -6,6 +6,7 @@ import domain.Board;
 import domain.Move;
 import domain.Side;
 import domain.Square;
+import domain.bitboard.Bitboard;
 
 public abstract class Piece implements Cloneable {
 	protected Square square;
@@ -28,47 +29,15 @@ public abstract class Piece implements Cloneable {
 	
 	public abstract List<Move> getPossibleMoves(Board board);
 	
-	protected void tryDirection(List<Move> moves, Board board, int dx, int dy) {
-		int x = square.getX();
-		int y = square.getY();
-		
-		while(true) {
-			x += dx;
-			y += dy;
-			
-			if(x < 0 || x >= 8 || y < 0 || y >= 8) return;
-			
-			Square to = new Square(x, y);
-			
-			Piece piece = board.getPiece(new Square(x, y));
-			
-			if(piece == null) {
-				// Blank square. Carry on.
-				moves.add(new Move(this.square, to, null));
-			} else if(piece.getSide() != this.side) {
-				// Enemy piece. Capture and return.
-				moves.add(new Move(this.square, to, null));
-				return;
-			} else {
-				// Friendly piece. Return.
-				return;
-			}
-		}
-	}
-	
-	protected void tryDiagonals(List<Move> moves, Board board) {
-		int[] dx = {-1, 1, 1, -1};
-		int[] dy = {-1, 1, -1, 1};
-		for(int d = 0; d < 4; d++) {
-			tryDirection(moves, board, dx[d], dy[d]);
-		}
-	}
-	
-	protected void tryRanksFiles(List<Move> moves, Board board) {
-		int[] dx = {-1, 1, 0, 0};
-		int[] dy = {0, 0, -1, 1};
-		for(int d = 0; d < 4; d++) {
-			tryDirection(moves, board, dx[d], dy[d]);
+	/**
+	 * Adds a move to each square in a bitboard of attacked squares, leaving out squares with friendly pieces.
+	 */
+	protected void addMoves(List<Move> moves, Board board, long attacks) {
+		long targets = attacks & ~board.getBitboard(side);
+		while(targets != 0) {
+			int to = Bitboard.first(targets);
+			targets &= targets - 1;
+			moves.add(new Move(this.square, Square.fromIndex(to), null));
 		}
 	}
 	
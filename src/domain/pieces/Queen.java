@@ -7,6 +7,7 @@ import domain.Move;
 import domain.Side;
 import domain.Square;
 import domain.Board;
+import domain.attacks.Attacks;
 
 public class Queen extends Piece {
 	public Queen(Square square, Side side) {
@@ -21,8 +22,7 @@ public class Queen extends Piece {
 	@Override
 	public List<Move> getPossibleMoves(Board board) {
 		List<Move> moves = new ArrayList<Move>();
-		tryDiagonals(moves, board);
-		tryRanksFiles(moves, board);
+		addMoves(moves, board, Attacks.queen(square.getIndex(), board.getOccupiedBitboard()));
 		return moves;
 	}
 }
@@ -7,7 +7,7 @@ import domain.Move;
 import domain.Side;
 import domain.Square;
 import domain.Board;
-import domain.Board;
+import domain.attacks.Attacks;
 
 public class Rook extends Piece {
 	public Rook(Square square, Side side) {
@@ -22,7 +22,7 @@ public class Rook extends Piece {
 	@Override
 	public List<Move> getPossibleMoves(Board board) {
 		List<Move> moves = new ArrayList<Move>();
-		tryRanksFiles(moves, board);
+		addMoves(moves, board, Attacks.rook(square.getIndex(), board.getOccupiedBitboard()));
 		return moves;
 	}
 }
@@ -0,0 +1,142 @@
+package domain.search;
+
+import java.util.List;
+
+import domain.Board;
+import domain.Perft;
+import domain.search.Search.SearchListener;
+
+/**
+ * Searches a position on several threads using Lazy SMP: every thread searches the same position, sharing only
+ * the transposition table, so that helper threads fill the table with results the main thread can use. Each thread
+ * has its own killer and history tables, and helpers skip some depths so they spread across the tree. The lines
+ * found by the main thread are returned.
+ *
+ * Usage: ParallelSearch [depth [threads]]
+ * Searches some reference positions to a depth with 1, 2, 4... threads up to a maximum, and prints the time to
+ * reach the depth, the nodes searched per second, and how full the transposition table was left for each thread
+ * count.
+ */
+public class ParallelSearch {
+	private static final int HASH_SIZE_MB = 64;
+	
+	private final Search[] searches;
+	
+	/**
+	 * Create a search with a number of threads, including the calling thread, sharing a transposition table.
+	 */
+	public ParallelSearch(TranspositionTable transpositionTable, int threads) {
+		this.searches = new Search[Math.max(threads, 1)];
+		for(int i = 0; i < searches.length; i++) {
+			searches[i] = new Search(transpositionTable, i);
+		}
+	}
+	
+	/**
+	 * Stops the search on every thread.
+	 */
+	public void stop() {
+		for(Search search:searches) {
+			search.stop();
+		}
+	}
+	
+	/**
+	 * Returns the number of nodes searched on every thread. This is approximate while the search is running.
+	 */
+	public long getNodes() {
+		long nodes = 0;
+		for(Search search:searches) {
+			nodes += search.getNodes();
+		}
+		return nodes;
+	}
+	
+	/**
+	 * Searches a position as in Search.search(), running helper searches on other threads until the main search on
+	 * this thread finishes. The listener is given the total nodes searched by every thread.
+	 */
+	public List<SearchLine> search(final Board position, final int maxDepth, final long maxMillis, final int multiPv, final SearchListener listener) {
+		Thread[] helpers = new Thread[searches.length - 1];
+		for(int i = 0; i < helpers.length; i++) {
+			final Search helper = searches[i + 1];
+			helpers[i] = new Thread(new Runnable() {
+				public void run() {
+					helper.search(position, maxDepth, maxMillis, multiPv, null);
+				}
+			}, "Search helper " + (i + 1));
+			helpers[i].setDaemon(true);
+			helpers[i].start();
+		}
+		
+		List<SearchLine> lines;
+		try {
+			lines = searches[0].search(position, maxDepth, maxMillis, multiPv, new SearchListener() {
+				public void depthCompleted(List<SearchLine> lines, long nodes) {
+					if(listener != null) {
+						listener.depthCompleted(lines, getNodes());
+					}
+				}
+			});
+		} finally {
+			stop();
+			for(Thread helper:helpers) {
+				try {
+					helper.join();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		
+		return lines;
+	}
+	
+	public static void main(String[] args) {
+		int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+		int maxThreads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		
+		String[] positions = {
+			Perft.REFERENCE_POSITIONS[0].getFen(),
+			Perft.REFERENCE_POSITIONS[1].getFen(),
+			Perft.REFERENCE_POSITIONS[3].getFen(),
+			Perft.REFERENCE_POSITIONS[5].getFen()
+		};
+		
+		// Warm up the JIT before timing anything.
+		new Search(new TranspositionTable(1)).search(new Board(), 8, Long.MAX_VALUE, 1, null);
+		
+		System.out.printf("%-8s %12s %14s %14s %8s %9s%n", "Threads", "Time (ms)", "Nodes", "Nodes/second", "Speedup", "Hashfull");
+		
+		long singleThreadTime = 0;
+		for(int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+			long time = 0;
+			long nodes = 0;
+			int hashfull = 0;
+			for(String fen:positions) {
+				TranspositionTable transpositionTable = new TranspositionTable(HASH_SIZE_MB);
+				ParallelSearch search = new ParallelSearch(transpositionTable, threads);
+				
+				long start = System.nanoTime();
+				search.search(new Board(fen), depth, Long.MAX_VALUE, 1, null);
+				time += System.nanoTime() - start;
+				nodes += search.getNodes();
+				hashfull += transpositionTable.getHashfull();
+			}
+			
+			if(threads == 1) {
+				singleThreadTime = time;
+			}
+			
+			long millis = time / 1000000;
+			System.out.printf("%-8d %12d %14d %14.0f %8.2f %9d%n", threads, millis, nodes, nodes / (time / 1e9), singleThreadTime / (double)time, hashfull / positions.length);
+		}
+	}
+	
+	/**
+	 * Returns the next thread count to measure after 1, 2, 4..., ending with the maximum.
+	 */
+	private static int nextThreadCount(int threads, int maxThreads) {
+		return (threads < maxThreads && threads * 2 > maxThreads) ? maxThreads : threads * 2;
+	}
+}
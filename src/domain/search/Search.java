@@ -0,0 +1,480 @@
+package domain.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import domain.Board;
+import domain.SearchBoard;
+import domain.Side;
+import domain.bitboard.BitboardPosition;
+import domain.bitboard.MoveGenerator;
+import domain.bitboard.PackedMove;
+import domain.pieces.PieceType;
+
+/**
+ * An alpha-beta search for the best moves from a position. Each depth is searched in turn (iterative deepening),
+ * using principal variation search with a quiescence search of captures at the leaves. Moves are ordered by the
+ * transposition table move, then captures by most valuable victim and least valuable attacker, then killer moves
+ * and the history of quiet moves that caused cutoffs. With a MultiPV count above one, each line is found by
+ * searching the root again without the moves of the lines already found.
+ *
+ * A Search is run once, from a single thread, and can be stopped from any thread. The transposition table can be
+ * shared between searches of later positions, and between searches of the same position on several threads (see
+ * ParallelSearch). Helper threads, with a thread index above 0, skip some depths so that they don't all search the
+ * same tree at the same time.
+ */
+public class Search {
+	public static final int MAX_PLY = 64;
+	public static final int MATE = 32000;
+	public static final int INFINITY = 32001;
+	
+	/**
+	 * Receives the lines found by a search after each depth is completed.
+	 */
+	public interface SearchListener {
+		void depthCompleted(List<SearchLine> lines, long nodes);
+	}
+	
+	// Depths skipped by helper threads, as in Stockfish's Lazy SMP: helper i skips depths where
+	// ((depth + SKIP_PHASE[i]) / SKIP_SIZE[i]) is odd, cycling through the tables for more helpers.
+	private static final int[] SKIP_SIZE = { 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4 };
+	private static final int[] SKIP_PHASE = { 0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7 };
+
+	// Check the time every this many nodes.
+	private static final int TIME_CHECK_NODES = 2048;
+	
+	private static final int TT_MOVE_SCORE = 1 << 30;
+	private static final int CAPTURE_SCORE = 1 << 20;
+	private static final int KILLER_SCORE = 1 << 19;
+	private static final int MAX_HISTORY = 1 << 18;
+	
+	// Piece values for ordering captures, indexed by PieceType ordinal.
+	private static final int[] ORDER_VALUES = { 1, 4, 2, 3, 5, 6 };
+	
+	private final TranspositionTable transpositionTable;
+	private final int threadIndex;
+	
+	private SearchBoard board;
+	private final int[][] moves = new int[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+	private final int[][] moveScores = new int[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+	private final int[][] killers = new int[MAX_PLY + 1][2];
+	private final int[] history = new int[2 * 64 * 64];
+	private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+	private final int[] pvLength = new int[MAX_PLY + 1];
+	
+	private long nodes;
+	private long deadline;
+	private boolean canStop;
+	private boolean stopped;
+	private volatile boolean stopRequested;
+	
+	public Search(TranspositionTable transpositionTable) {
+		this(transpositionTable, 0);
+	}
+
+	/**
+	 * Create a search for one thread of a parallel search, where thread 0 is the main thread.
+	 */
+	public Search(TranspositionTable transpositionTable, int threadIndex) {
+		this.transpositionTable = transpositionTable;
+		this.threadIndex = threadIndex;
+	}
+	
+	/**
+	 * Stops the search. The lines from the last completed depth are returned by search().
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+	
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Searches a position until maxDepth is completed, maxMillis have passed, or stop() is called, and returns up
+	 * to multiPv lines ordered from best to worst. At least the first depth is always completed by the main thread,
+	 * while helper threads can stop at any time. Returns an empty list if there are no legal moves.
+	 */
+	public List<SearchLine> search(Board position, int maxDepth, long maxMillis, int multiPv, SearchListener listener) {
+		this.board = new SearchBoard(position);
+		long now = System.currentTimeMillis();
+		this.deadline = (maxMillis > Long.MAX_VALUE - now) ? Long.MAX_VALUE : now + maxMillis;
+		this.canStop = (threadIndex > 0);
+		this.nodes = 0;
+		if(threadIndex == 0) {
+			// Helpers share the table with the main search, so only the main search ages it.
+			transpositionTable.newSearch();
+		}
+		
+		int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+		int rootCount = board.getLegalMoves(rootMoves, 0);
+		multiPv = Math.min(multiPv, rootCount);
+		
+		List<SearchLine> lines = Collections.emptyList();
+		for(int depth = 1; depth <= Math.min(maxDepth, MAX_PLY) && rootCount > 0; depth++) {
+			if(isSkippedDepth(depth)) continue;
+
+			List<SearchLine> depthLines = new ArrayList<SearchLine>();
+			
+			for(int line = 0; line < multiPv; line++) {
+				int score = searchRoot(depth, rootMoves, line, rootCount);
+				if(stopped) break;
+				
+				// Move the best of the remaining moves into place, so it's excluded from later lines and searched
+				// in this order at the next depth.
+				int best = indexOf(rootMoves, pv[0][0], line, rootCount);
+				int move = rootMoves[best];
+				System.arraycopy(rootMoves, line, rootMoves, line + 1, best - line);
+				rootMoves[line] = move;
+				
+				int[] moves = new int[pvLength[0]];
+				System.arraycopy(pv[0], 0, moves, 0, moves.length);
+				depthLines.add(new SearchLine(moves, score, depth));
+			}
+			
+			if(stopped) break;
+			
+			lines = depthLines;
+			canStop = true;
+			if(listener != null) {
+				listener.depthCompleted(lines, nodes);
+			}
+			
+			if(stopRequested || System.currentTimeMillis() > deadline) break;
+			
+			// Stop early when the only lines left to find are forced mates.
+			if(lines.get(0).isMate() && Search.MATE - Math.abs(lines.get(0).getScore()) < depth) break;
+		}
+		
+		return lines;
+	}
+	
+	private boolean isSkippedDepth(int depth) {
+		if(threadIndex == 0) return false;
+
+		int i = (threadIndex - 1) % SKIP_SIZE.length;
+		return ((depth + SKIP_PHASE[i]) / SKIP_SIZE[i]) % 2 != 0;
+	}
+
+	private static int indexOf(int[] moves, int move, int start, int count) {
+		for(int i = start; i < count; i++) {
+			if(moves[i] == move) return i;
+		}
+		return start;
+	}
+	
+	/**
+	 * Searches the root moves from index first onwards, and returns the best score with the principal variation in
+	 * pv[0].
+	 */
+	private int searchRoot(int depth, int[] rootMoves, int first, int count) {
+		int alpha = -INFINITY;
+		int beta = INFINITY;
+		pvLength[0] = 0;
+		
+		for(int i = first; i < count; i++) {
+			int move = rootMoves[i];
+			
+			board.doMove(move);
+			int score;
+			if(i == first) {
+				score = -search(depth - 1, 1, -beta, -alpha, true);
+			} else {
+				score = -search(depth - 1, 1, -alpha - 1, -alpha, true);
+				if(score > alpha) {
+					score = -search(depth - 1, 1, -beta, -alpha, true);
+				}
+			}
+			board.undoMove();
+			
+			if(stopped) return 0;
+			
+			if(score > alpha) {
+				alpha = score;
+				updatePv(0, move);
+			}
+		}
+		
+		return alpha;
+	}
+	
+	private int search(int depth, int ply, int alpha, int beta, boolean allowNullMove) {
+		pvLength[ply] = ply;
+		
+		if(depth <= 0) {
+			return quiesce(ply, alpha, beta);
+		}
+		
+		countNode();
+		if(stopped) return 0;
+		
+		BitboardPosition position = board.getPosition();
+		if(board.isRepetition() || position.getHalfMoves() >= 100) return 0;
+		if(ply >= MAX_PLY) return Evaluation.evaluate(position);
+		
+		boolean pvNode = (beta - alpha > 1);
+		long key = board.getKey();
+		
+		int ttMove = PackedMove.NONE;
+		long entry = transpositionTable.probe(key);
+		int flag = TranspositionTable.getFlag(entry);
+		if(flag != 0) {
+			ttMove = TranspositionTable.getMove(entry);
+			if(!pvNode && TranspositionTable.getDepth(entry) >= depth) {
+				int score = fromTranspositionScore(TranspositionTable.getScore(entry), ply);
+				if(flag == TranspositionTable.EXACT) return score;
+				if(flag == TranspositionTable.LOWER_BOUND && score >= beta) return score;
+				if(flag == TranspositionTable.UPPER_BOUND && score <= alpha) return score;
+			}
+		}
+		
+		boolean inCheck = board.isCheck();
+		if(inCheck) {
+			depth++;
+		}
+		
+		// Null move pruning: if passing still fails high, a real move almost certainly will. Zugzwang makes this
+		// unsafe, so only try it with pieces other than pawns on the board.
+		if(allowNullMove && !pvNode && !inCheck && depth >= 3 && hasPieces(position, position.getSideToPlay()) && Evaluation.evaluate(position) >= beta) {
+			board.doNullMove();
+			int score = -search(depth - 3, ply + 1, -beta, -beta + 1, false);
+			board.undoMove();
+			
+			if(stopped) return 0;
+			if(score >= beta) {
+				return (score >= MATE - MAX_PLY) ? beta : score;
+			}
+		}
+		
+		int[] moves = this.moves[ply];
+		int[] scores = moveScores[ply];
+		int count = board.getLegalMoves(moves, 0);
+		
+		if(count == 0) {
+			return inCheck ? -MATE + ply : 0;
+		}
+		
+		scoreMoves(ply, moves, scores, count, ttMove);
+		
+		int originalAlpha = alpha;
+		int bestScore = -INFINITY;
+		int bestMove = PackedMove.NONE;
+		
+		for(int i = 0; i < count; i++) {
+			int move = nextMove(moves, scores, i, count);
+			boolean quiet = isQuiet(position, move);
+			
+			board.doMove(move);
+			int score;
+			if(i == 0) {
+				score = -search(depth - 1, ply + 1, -beta, -alpha, true);
+			} else {
+				// Late move reduction: search later quiet moves less deeply, unless they turn out better.
+				int reduction = (depth >= 3 && i >= 4 && quiet && !inCheck && !board.isCheck()) ? 1 : 0;
+				score = -search(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha, true);
+				if(score > alpha && (reduction > 0 || score < beta)) {
+					score = -search(depth - 1, ply + 1, -beta, -alpha, true);
+				}
+			}
+			board.undoMove();
+			
+			if(stopped) return 0;
+			
+			if(score > bestScore) {
+				bestScore = score;
+				bestMove = move;
+				
+				if(score > alpha) {
+					alpha = score;
+					updatePv(ply, move);
+					
+					if(score >= beta) {
+						if(quiet) {
+							updateQuietMove(ply, move, depth);
+						}
+						break;
+					}
+				}
+			}
+		}
+		
+		int storeFlag = TranspositionTable.EXACT;
+		if(bestScore >= beta) {
+			storeFlag = TranspositionTable.LOWER_BOUND;
+		} else if(bestScore <= originalAlpha) {
+			storeFlag = TranspositionTable.UPPER_BOUND;
+		}
+		transpositionTable.store(key, bestMove, toTranspositionScore(bestScore, ply), depth, storeFlag);
+		
+		return bestScore;
+	}
+	
+	/**
+	 * Searches captures and promotions until the position is quiet, so that the static evaluation isn't used in the
+	 * middle of an exchange. The side to play can also stand pat on the static evaluation, except in check, where
+	 * every evasion is searched.
+	 */
+	private int quiesce(int ply, int alpha, int beta) {
+		pvLength[ply] = ply;
+		
+		countNode();
+		if(stopped) return 0;
+		
+		BitboardPosition position = board.getPosition();
+		if(ply >= MAX_PLY) return Evaluation.evaluate(position);
+		
+		boolean inCheck = board.isCheck();
+		int bestScore = -INFINITY;
+		if(!inCheck) {
+			bestScore = Evaluation.evaluate(position);
+			if(bestScore >= beta) return bestScore;
+			alpha = Math.max(alpha, bestScore);
+		}
+		
+		int[] moves = this.moves[ply];
+		int[] scores = moveScores[ply];
+		int count = board.getLegalMoves(moves, 0);
+		
+		if(count == 0) {
+			return inCheck ? -MATE + ply : 0;
+		}
+		
+		scoreMoves(ply, moves, scores, count, PackedMove.NONE);
+		
+		for(int i = 0; i < count; i++) {
+			int move = nextMove(moves, scores, i, count);
+			if(!inCheck && isQuiet(position, move)) continue;
+			
+			board.doMove(move);
+			int score = -quiesce(ply + 1, -beta, -alpha);
+			board.undoMove();
+			
+			if(stopped) return 0;
+			
+			if(score > bestScore) {
+				bestScore = score;
+				if(score > alpha) {
+					alpha = score;
+					if(score >= beta) break;
+				}
+			}
+		}
+		
+		return bestScore;
+	}
+	
+	/**
+	 * Counts a node, and checks whether the search should stop. The first depth always completes, so that there is a
+	 * move to return.
+	 */
+	private void countNode() {
+		nodes++;
+		if(canStop && (nodes % TIME_CHECK_NODES) == 0 && (stopRequested || System.currentTimeMillis() > deadline)) {
+			stopped = true;
+		}
+	}
+	
+	private void updatePv(int ply, int move) {
+		pv[ply][ply] = move;
+		System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - (ply + 1));
+		pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+	}
+	
+	private void updateQuietMove(int ply, int move, int depth) {
+		if(killers[ply][0] != move) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		
+		int index = getHistoryIndex(board.getSideToPlay(), move);
+		history[index] += depth * depth;
+		if(history[index] >= MAX_HISTORY) {
+			for(int i = 0; i < history.length; i++) {
+				history[i] /= 2;
+			}
+		}
+	}
+	
+	private static int getHistoryIndex(Side side, int move) {
+		return (side.ordinal() * 64 + PackedMove.getFrom(move)) * 64 + PackedMove.getTo(move);
+	}
+	
+	/**
+	 * Returns whether a move is neither a capture nor a promotion. In Chess960 the king can castle onto its own rook,
+	 * so castling is checked first.
+	 */
+	private static boolean isQuiet(BitboardPosition position, int move) {
+		if(PackedMove.isCastling(move)) return true;
+		return !position.isOccupied(PackedMove.getTo(move)) && !PackedMove.isEnPassant(move) && PackedMove.getPromotion(move) == null;
+	}
+	
+	private void scoreMoves(int ply, int[] moves, int[] scores, int count, int ttMove) {
+		BitboardPosition position = board.getPosition();
+		Side side = position.getSideToPlay();
+		
+		for(int i = 0; i < count; i++) {
+			int move = moves[i];
+			int to = PackedMove.getTo(move);
+			
+			if(move == ttMove) {
+				scores[i] = TT_MOVE_SCORE;
+			} else if(!isQuiet(position, move)) {
+				PieceType victim = PackedMove.isEnPassant(move) ? PieceType.PAWN : position.getPieceType(to);
+				PieceType attacker = position.getPieceType(PackedMove.getFrom(move));
+				PieceType promotion = PackedMove.getPromotion(move);
+				int score = CAPTURE_SCORE - ORDER_VALUES[attacker.ordinal()];
+				if(victim != null) score += ORDER_VALUES[victim.ordinal()] * 8;
+				if(promotion != null) score += ORDER_VALUES[promotion.ordinal()] * 8;
+				scores[i] = score;
+			} else if(move == killers[ply][0]) {
+				scores[i] = KILLER_SCORE;
+			} else if(move == killers[ply][1]) {
+				scores[i] = KILLER_SCORE - 1;
+			} else {
+				scores[i] = history[getHistoryIndex(side, move)];
+			}
+		}
+	}
+	
+	/**
+	 * Swaps the highest scoring move from index onwards into index, and returns it.
+	 */
+	private static int nextMove(int[] moves, int[] scores, int index, int count) {
+		int best = index;
+		for(int i = index + 1; i < count; i++) {
+			if(scores[i] > scores[best]) {
+				best = i;
+			}
+		}
+		
+		int move = moves[best];
+		int score = scores[best];
+		moves[best] = moves[index];
+		scores[best] = scores[index];
+		moves[index] = move;
+		scores[index] = score;
+		return move;
+	}
+	
+	private static boolean hasPieces(BitboardPosition position, Side side) {
+		long pawnsAndKing = position.getPieces(PieceType.PAWN, side) | position.getPieces(PieceType.KING, side);
+		return (position.getPieces(side) & ~pawnsAndKing) != 0;
+	}
+	
+	/**
+	 * Converts mate scores from distance to the root to distance to this position, so they can be used at any ply.
+	 */
+	private static int toTranspositionScore(int score, int ply) {
+		if(score >= MATE - MAX_PLY) return score + ply;
+		if(score <= -MATE + MAX_PLY) return score - ply;
+		return score;
+	}
+	
+	private static int fromTranspositionScore(int score, int ply) {
+		if(score >= MATE - MAX_PLY) return score - ply;
+		if(score <= -MATE + MAX_PLY) return score + ply;
+		return score;
+	}
+}
@@ -0,0 +1,59 @@
+package domain.search;
+
+import domain.bitboard.PackedMove;
+
+/**
+ * A line found by a search: the principal variation from the root position as PackedMove values, and its score
+ * from the point of view of the side to play at the root. This class is immutable.
+ */
+public final class SearchLine {
+	private final int[] moves;
+	private final int score;
+	private final int depth;
+	
+	public SearchLine(int[] moves, int score, int depth) {
+		this.moves = moves.clone();
+		this.score = score;
+		this.depth = depth;
+	}
+	
+	public int getMove() {
+		return moves[0];
+	}
+	
+	public int[] getMoves() {
+		return moves.clone();
+	}
+	
+	public int getScore() {
+		return score;
+	}
+	
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * Returns whether the score is a forced mate for either side.
+	 */
+	public boolean isMate() {
+		return Math.abs(score) >= Search.MATE - Search.MAX_PLY;
+	}
+	
+	/**
+	 * Returns the number of moves until mate, negative if the side to play is being mated, as given in a UCI
+	 * "score mate" line.
+	 */
+	public int getMateMoves() {
+		return (score > 0) ? (Search.MATE - score + 1) / 2 : -(Search.MATE + score) / 2;
+	}
+	
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(isMate() ? "mate " + getMateMoves() : "cp " + score);
+		for(int move:moves) {
+			s.append(' ').append(PackedMove.toString(move));
+		}
+		return s.toString();
+	}
+}
@@ -0,0 +1,169 @@
+package domain.search;
+
+import java.util.Arrays;
+
+/**
+ * A hash table of search results keyed by Zobrist key, so that positions reached again through a different move
+ * order, or again at the next iteration, don't have to be searched from scratch. Entries are pairs of longs in a
+ * single array, so that the table is one allocation however large it is and storing never allocates.
+ *
+ * Entries are grouped into buckets of four, filling a 64 byte cache line. A key can be stored in any entry of its
+ * bucket, replacing either the same key or the entry with the least value, where shallower entries and entries
+ * from earlier searches are worth less.
+ *
+ * The table is shared between search threads without locking. Each entry stores the key XORed with the data, so
+ * an entry torn by two threads writing at once doesn't match its key and is ignored.
+ */
+public class TranspositionTable {
+	public static final int EXACT = 1;
+	public static final int LOWER_BOUND = 2;
+	public static final int UPPER_BOUND = 3;
+	
+	private static final int ENTRY_BYTES = 16;
+	private static final int BUCKET_ENTRIES = 4;
+	
+	// Data is packed as: move in bits 0-16, flag in bits 17-18, depth in bits 19-26, age in bits 27-31, and score
+	// in bits 32-63.
+	private static final int MOVE_MASK = 0x1ffff;
+	private static final int FLAG_SHIFT = 17;
+	private static final int DEPTH_SHIFT = 19;
+	private static final int AGE_SHIFT = 27;
+	private static final int AGE_MASK = 0x1f;
+	private static final int SCORE_SHIFT = 32;
+	
+	// How many depths an entry is worth less for each search since it was stored.
+	private static final int AGE_WEIGHT = 8;
+	
+	private final long[] table;
+	private final long buckets;
+	private int age = 0;
+	
+	/**
+	 * Create a table taking a number of megabytes.
+	 */
+	public TranspositionTable(int megabytes) {
+		long entries = megabytes * 1024L * 1024L / ENTRY_BYTES;
+		this.buckets = Math.max(1, Math.min(entries / BUCKET_ENTRIES, (Integer.MAX_VALUE - 8) / (BUCKET_ENTRIES * 2)));
+		this.table = new long[(int)(buckets * BUCKET_ENTRIES * 2)];
+	}
+	
+	/**
+	 * Returns the index in the table of the first entry of the bucket for a key. The top 32 bits of the key are
+	 * scaled to the number of buckets, so that the table doesn't need to be a power of two in size.
+	 */
+	private int getBucket(long key) {
+		return (int)(((key >>> 32) * buckets) >>> 32) * BUCKET_ENTRIES * 2;
+	}
+	
+	/**
+	 * Returns the packed data stored for a key, or 0 if there isn't any.
+	 */
+	public long probe(long key) {
+		int bucket = getBucket(key);
+		for(int i = bucket; i < bucket + BUCKET_ENTRIES * 2; i += 2) {
+			long data = table[i + 1];
+			if(data != 0 && (table[i] ^ data) == key) {
+				return data;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Stores a result for a key. The flag is EXACT, LOWER_BOUND or UPPER_BOUND. If the key is already stored and
+	 * the new result has no move, the old move is kept.
+	 */
+	public void store(long key, int move, int score, int depth, int flag) {
+		long data = (move & MOVE_MASK) | ((long)flag << FLAG_SHIFT) | ((long)depth << DEPTH_SHIFT) | ((long)age << AGE_SHIFT) | ((long)score << SCORE_SHIFT);
+		
+		int bucket = getBucket(key);
+		int replace = bucket;
+		int replaceValue = Integer.MAX_VALUE;
+		for(int i = bucket; i < bucket + BUCKET_ENTRIES * 2; i += 2) {
+			long oldData = table[i + 1];
+			
+			if(oldData == 0) {
+				replace = i;
+				break;
+			}
+			
+			if((table[i] ^ oldData) == key) {
+				if(move == 0) {
+					data |= oldData & MOVE_MASK;
+				}
+				replace = i;
+				break;
+			}
+			
+			int value = getDepth(oldData) - AGE_WEIGHT * ((age - getAge(oldData)) & AGE_MASK);
+			if(value < replaceValue) {
+				replace = i;
+				replaceValue = value;
+			}
+		}
+		
+		table[replace] = key ^ data;
+		table[replace + 1] = data;
+	}
+	
+	/**
+	 * Starts a new search, so that entries from earlier searches are replaced first.
+	 */
+	public void newSearch() {
+		age = (age + 1) & AGE_MASK;
+	}
+	
+	/**
+	 * Removes every entry. This shouldn't be called while the table is being searched.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		age = 0;
+	}
+	
+	/**
+	 * Returns the size of the table in megabytes.
+	 */
+	public int getSize() {
+		return (int)((long)table.length * 8 / (1024 * 1024));
+	}
+	
+	/**
+	 * Returns how full the table is with entries from the current search, in parts per thousand, sampled from the
+	 * first thousand entries as in the UCI "hashfull" value.
+	 */
+	public int getHashfull() {
+		int samples = Math.min(1000, table.length / 2);
+		int used = 0;
+		for(int i = 0; i < samples * 2; i += 2) {
+			long data = table[i + 1];
+			if(data != 0 && getAge(data) == age) {
+				used++;
+			}
+		}
+		return used * 1000 / samples;
+	}
+	
+	public static int getMove(long data) {
+		return (int)data & MOVE_MASK;
+	}
+	
+	/**
+	 * Returns the flag for some data, or 0 if there was no entry.
+	 */
+	public static int getFlag(long data) {
+		return (int)(data >>> FLAG_SHIFT) & 3;
+	}
+	
+	public static int getDepth(long data) {
+		return (int)(data >>> DEPTH_SHIFT) & 0xff;
+	}
+	
+	private static int getAge(long data) {
+		return (int)(data >>> AGE_SHIFT) & AGE_MASK;
+	}
+	
+	public static int getScore(long data) {
+		return (int)(data >> SCORE_SHIFT);
+	}
+}
@@ -0,0 +1,222 @@
+package pgn;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A PGN file mapped into memory, so that the games in it can be found by scanning its bytes without decoding the
+ * file to text, and read by several threads from independent positions. Files larger than a mapped buffer can
+ * hold are mapped as several windows.
+ *
+ * A game starts at a '[' at the start of a line after a blank line, or at the start of the file. This finds the
+ * "[Event" tag that usually starts each game, and also the first tag of games without one. Ranges between game
+ * starts can be read as text with readText() or openReader(), and a whole file can be divided between threads
+ * with getSplitPoints().
+ *
+ * The file is UTF-8. Reading from a file can be done from several threads at once.
+ */
+public class MappedPgnFile implements Closeable {
+	private static final int DEFAULT_WINDOW_BITS = 30;
+	
+	private final FileChannel channel;
+	private final MappedByteBuffer[] windows;
+	private final int windowBits;
+	private final long size;
+	
+	/**
+	 * Maps a file in windows of 1GB.
+	 */
+	public MappedPgnFile(File file) throws IOException {
+		this(file, DEFAULT_WINDOW_BITS);
+	}
+	
+	/**
+	 * Maps a file in windows of 2^windowBits bytes.
+	 */
+	MappedPgnFile(File file, int windowBits) throws IOException {
+		this.windowBits = windowBits;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			this.size = channel.size();
+			
+			long windowSize = 1L << windowBits;
+			this.windows = new MappedByteBuffer[(int)((size + windowSize - 1) >>> windowBits)];
+			for(int i = 0; i < windows.length; i++) {
+				long position = (long)i << windowBits;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+			}
+		} catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the size of the file in bytes.
+	 */
+	public long size() {
+		return size;
+	}
+	
+	private int get(long position) {
+		return windows[(int)(position >>> windowBits)].get((int)(position & ((1L << windowBits) - 1)));
+	}
+	
+	/**
+	 * Returns the position of the first game that starts at or after a position, or size() if there isn't one.
+	 */
+	public long nextGameStart(long position) {
+		if(position <= 0) {
+			long first = skipByteOrderMark(0, size);
+			if(first < size && get(first) == '[') return first;
+			position = first + 1;
+		}
+		if(position >= size) return size;
+		
+		int previous = get(position - 1);
+		int window = (int)(position >>> windowBits);
+		int offset = (int)(position & ((1L << windowBits) - 1));
+		for(; window < windows.length; window++, offset = 0) {
+			MappedByteBuffer buffer = windows[window];
+			int limit = buffer.limit();
+			for(; offset < limit; offset++) {
+				int b = buffer.get(offset);
+				if(b == '[' && previous == '\n') {
+					long start = ((long)window << windowBits) + offset;
+					if(isBlankLineBefore(start - 1)) return start;
+				}
+				previous = b;
+			}
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Returns whether the line ending with the newline at a position is blank, or is the first line of the file.
+	 */
+	private boolean isBlankLineBefore(long newline) {
+		for(long position = newline - 1; position >= 0; position--) {
+			int b = get(position);
+			if(b == '\n') return true;
+			if(b != '\r' && b != ' ' && b != '\t') return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the position of every game in the file, in order.
+	 */
+	public long[] getGameStarts() {
+		long[] starts = new long[1024];
+		int count = 0;
+		for(long position = nextGameStart(0); position < size; position = nextGameStart(position + 1)) {
+			if(count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+			}
+			starts[count++] = position;
+		}
+		return Arrays.copyOf(starts, count);
+	}
+	
+	/**
+	 * Returns the positions dividing the file into about equal parts that each start at a game, from 0 to size().
+	 * Positions are repeated where a part has no game starting in it.
+	 */
+	public long[] getSplitPoints(int parts) {
+		long[] points = new long[parts + 1];
+		for(int i = 1; i < parts; i++) {
+			points[i] = Math.max(points[i - 1], nextGameStart(size / parts * i));
+		}
+		points[parts] = size;
+		return points;
+	}
+	
+	/**
+	 * Returns the text between two positions, which should be at the start of a game or the end of the file. A
+	 * byte order mark at the start of the file is skipped.
+	 */
+	public String readText(long start, long end) {
+		start = skipByteOrderMark(start, end);
+		if(end - start > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Range too large: " + start + " - " + end);
+		
+		byte[] bytes = new byte[(int)(end - start)];
+		copy(start, bytes, 0, bytes.length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Returns a reader for the text between two positions, as in readText() but without reading it all at once.
+	 */
+	public Reader openReader(long start, long end) {
+		return new InputStreamReader(openStream(skipByteOrderMark(start, end), end), StandardCharsets.UTF_8);
+	}
+	
+	private long skipByteOrderMark(long start, long end) {
+		if(start == 0 && end >= 3 && get(0) == (byte)0xef && get(1) == (byte)0xbb && get(2) == (byte)0xbf) {
+			return 3;
+		}
+		return start;
+	}
+	
+	/**
+	 * Copies bytes from a position into an array.
+	 */
+	private void copy(long position, byte[] bytes, int offset, int length) {
+		while(length > 0) {
+			int window = (int)(position >>> windowBits);
+			int windowOffset = (int)(position & ((1L << windowBits) - 1));
+			
+			// Use a duplicate to read without moving the position of the shared buffer.
+			ByteBuffer buffer = windows[window].duplicate();
+			buffer.position(windowOffset);
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			
+			position += count;
+			offset += count;
+			length -= count;
+		}
+	}
+	
+	private InputStream openStream(final long start, final long end) {
+		return new InputStream() {
+			private long position = start;
+			
+			public int read() {
+				return (position < end) ? get(position++) & 0xff : -1;
+			}
+			
+			public int read(byte[] bytes, int offset, int length) {
+				if(length == 0) return 0;
+				if(position >= end) return -1;
+				
+				int count = (int)Math.min(length, end - position);
+				copy(position, bytes, offset, count);
+				position += count;
+				return count;
+			}
+			
+			public int available() {
+				return (int)Math.min(end - position, Integer.MAX_VALUE);
+			}
+		};
+	}
+	
+	/**
+	 * Closes the file. The mapped memory is released when the buffers are garbage collected.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -3,6 +3,7 @@ package pgn;
 import java.util.List;
 
 import domain.*;
+import domain.bitboard.PackedMove;
 
 /**
  * Takes a MoveHistory and produces a list of tokens describing the game.
@@ -22,11 +23,11 @@ public class MoveHistoryFlattener {
 	}
 	
 	public void getMoveTokens(MoveHistoryVisitor visitor) {
-		addMoveTokens(moveHistory.getInitialPosition(), true, visitor, moveHistory.getRootNode());
+		addMoveTokens(new SearchBoard(moveHistory.getInitialPosition()), true, visitor, moveHistory.getRootNode());
 		visitor.end();
 	}
 
-	private void addMoveTokens(Board board, boolean firstMove, MoveHistoryVisitor visitor, MoveHistoryNode node) {
+	private void addMoveTokens(SearchBoard board, boolean firstMove, MoveHistoryVisitor visitor, MoveHistoryNode node) {
 		List<? extends MoveHistoryNode> nextNodes = node.getNextNodes();
 		
 		if(nextNodes.size() == 0) {
@@ -54,12 +55,12 @@ public class MoveHistoryFlattener {
 			}
 			
 			try {
-				Move move = next.getMove();
+				int move = board.getPackedMove(next.getMove());
 				String pgn = board.getMoveAsPgn(move);
 				visitor.move(moveNumberText + pgn, next, moveHistory.isCurrentPosition(next));
 				
 				if(!(nextNodes.size() > 1 && firstNode)) {
-					addMoveTokens(board.makeMove(move), false, visitor, next);
+					addMoveTokens(board, move, visitor, next);
 				}
 			} catch(IllegalMoveException e) {
 				throw new IllegalStateException("Invalid Move", e);
@@ -74,12 +75,21 @@ public class MoveHistoryFlattener {
 		}
 		
 		if(nextNodes.size() > 1) {
-			try {
-				MoveHistoryNode next = nextNodes.get(0);
-				addMoveTokens(board.makeMove(next.getMove()), false, visitor, next);
-			} catch(IllegalMoveException e) {
-				throw new IllegalStateException("Invalid Move", e);
-			}
+			MoveHistoryNode next = nextNodes.get(0);
+			addMoveTokens(board, board.getPackedMove(next.getMove()), visitor, next);
+		}
+	}
+	
+	/**
+	 * Adds the tokens following a move, making the move on the board and taking it back afterwards.
+	 */
+	private void addMoveTokens(SearchBoard board, int move, MoveHistoryVisitor visitor, MoveHistoryNode node) {
+		if(move == PackedMove.NONE) {
+			board.doNullMove();
+		} else {
+			board.doMove(move);
 		}
+		addMoveTokens(board, false, visitor, node);
+		board.undoMove();
 	}
 }
\ No newline at end of file
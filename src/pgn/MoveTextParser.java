@@ -1,7 +1,6 @@
 package pgn;
 
 import org.parboiled.*;
-import org.parboiled.annotations.BuildParseTree;
 import org.parboiled.errors.ParseError;
 import org.parboiled.parserunners.ParseRunner;
 import org.parboiled.parserunners.ReportingParseRunner;
@@ -9,103 +8,11 @@ import org.parboiled.support.ParsingResult;
 
 import domain.*;
 
-class TreeNode {
-	private String pgnMove;
-	private String comment;
-	private String annotation;
-	private TreeNode mainVariation;
-	private TreeNode nextSibling;
-	
-	public TreeNode(String pgnMove) {
-		this.pgnMove = pgnMove;
-	}
-	
-	public void printTree() {
-		printTree(0);
-	}
-	
-	public void printTree(int indent) {
-		for(int x = 0; x < indent; x++) {
-			System.out.print(" ");
-		}
-		System.out.println(pgnMove + (comment == null ? "" : " " + comment));
-		if(mainVariation != null) {
-			mainVariation.printTree(indent+1);
-		}
-		if(nextSibling != null) {
-			nextSibling.printTree(indent);
-		}
-	}
-	
-	public MutableMoveHistoryNode toMoveTreeNode(Board board, MutableMoveHistoryNode parent) throws IllegalMoveException {
-		Move move = board.getPgnMove(pgnMove);
-		Board nextBoard = board.makeMove(move);
-		
-		MutableMoveHistoryNode node = new MutableMoveHistoryNode(move, parent);
-		node.setComment(comment);
-		node.setAnnotation(annotation);
-		
-		if(mainVariation != null) {
-			for(TreeNode current = mainVariation; current != null; current = current.nextSibling) {
-				node.addNextNode(current.toMoveTreeNode(nextBoard, node));
-			}
-		}
-		
-		return node;
-	}
-
-	public TreeNode addChild(TreeNode child) {
-		if(mainVariation == null) {
-			mainVariation = child;
-		} else {
-			mainVariation.addSibling(child);
-		}
-		return this;
-	}
-	
-	public TreeNode addSibling(TreeNode sibling) {
-		TreeNode node = this;
-		while(node.nextSibling != null) {
-			node = node.nextSibling;
-		}
-		node.nextSibling = sibling;
-		return this;
-	}
-
-	public String getComment() {
-		return comment;
-	}
-	
-	public TreeNode setComment(String comment) {
-		this.comment = comment;
-		return this;
-	}
-	
-	public String getAnnotation() {
-		return annotation;
-	}
-	
-	public TreeNode setAnnotation(String annotation) {
-		this.annotation = annotation;
-		return this;
-	}
-	
-	public TreeNode setNag(String nag) {
-		if(nag.equals("$1")) annotation = "!";
-		if(nag.equals("$2")) annotation = "?";
-		if(nag.equals("$3")) annotation = "!!";
-		if(nag.equals("$4")) annotation = "??";
-		if(nag.equals("$5")) annotation = "!?";
-		if(nag.equals("$6")) annotation = "?!";
-		if(nag.equals("$10")) annotation = " (=)";
-		if(nag.equals("$18")) annotation = " (+-)";
-		if(nag.equals("$19")) annotation = " (-+)";
-		return this;
-	}
-}
-
-@BuildParseTree
-class PgnParser extends BaseParser<TreeNode> {
+/**
+ * The grammar for movetext. This is only used to find where movetext that MoveTextParser can't parse goes wrong,
+ * so it recognises the same text as MoveTextParser without building anything.
+ */
+class PgnParser extends BaseParser<Object> {
 	Rule MoveText() {
 		return Sequence(
 			WhiteSpace(),
@@ -119,7 +26,7 @@ class PgnParser extends BaseParser<TreeNode> {
 	Rule MoveAndVariations() {
 		return Sequence(
 			Move(),
-			Optional(Variations(), push(pop(1).addSibling(pop())))
+			Optional(Variations())
 		);
 	}
 	
@@ -130,14 +37,14 @@ class PgnParser extends BaseParser<TreeNode> {
 			Line(),
 			")",
 			WhiteSpace(),
-			Optional(Variations(), push(pop(1).addSibling(pop())))
+			Optional(Variations())
 		);
 	}
 	
 	Rule Line() {
 		return Sequence(
 			MoveAndVariations(),
-			Optional(Line(), push(pop(1).addChild(pop())))
+			Optional(Line())
 		);
 	}
 	
@@ -146,13 +53,12 @@ class PgnParser extends BaseParser<TreeNode> {
 			Optional(Sequence(OneOrMore(AnyOf("1234567890")), OneOrMore("."))),
 			WhiteSpace(),
 			AlgebraicMove(),
-			push(new TreeNode(match())),
 			ZeroOrMore(AnyOf("+#")),
-			ZeroOrMore(AnyOf("!?"), push(pop().setAnnotation(match()))),
+			ZeroOrMore(AnyOf("!?")),
 			WhiteSpace(),
-			Optional(Sequence("$", OneOrMore(AnyOf("1234567890"))), push(pop().setNag(match()))),
+			Optional(Sequence("$", OneOrMore(AnyOf("1234567890")))),
 			WhiteSpace(),
-			Optional(Comment(), push(pop(1).setComment(pop().getComment())))
+			Optional(Comment())
 		);
 	}
 	
@@ -160,7 +66,7 @@ class PgnParser extends BaseParser<TreeNode> {
 		return Sequence(
 			TestNot(FirstOf("1-0", "0-1", "1/2-1/2")),
 			FirstOf(
-				OneOrMore(AnyOf("KQBNRabcdefgh12345678xabcdefgh12345678=")),
+				OneOrMore(AnyOf("KQBNRabcdefgh12345678x=")),
 				"O-O-O",
 				"O-O"
 			)
@@ -171,7 +77,6 @@ class PgnParser extends BaseParser<TreeNode> {
 		return Sequence(
 			"{",
 			OneOrMore(NoneOf("}")),
-			push(new TreeNode(null).setComment(match().trim())),
 			"}",
 			WhiteSpace()
 		);
@@ -182,37 +87,235 @@ class PgnParser extends BaseParser<TreeNode> {
 	}
 }
 
+/**
+ * Parses movetext into a tree of moves in a single pass, playing each move as it's read. Variations after a move
+ * are added as alternatives to that move, and a comment, annotation, or NAG after a move is set on it.
+ *
+ * When the movetext can't be parsed, it's parsed again with the PgnParser grammar to report where it fails.
+ */
 public class MoveTextParser {
-	public MoveHistoryNode parseMoveText(Board initialPosition, String moveText) throws ParseException {
-		PgnParser parser = Parboiled.createParser(PgnParser.class);
+	private static final String MOVE_CHARS = "KQBNRabcdefgh12345678x=";
+	
+	/**
+	 * The position reached in the movetext being parsed. Each method either reads what it's looking for and moves
+	 * past it, or leaves the position where it was.
+	 */
+	private static final class Cursor {
+		private final String text;
+		private final int length;
+		private int position = 0;
 		
-		ParseRunner<TreeNode> parseRunner = new ReportingParseRunner<TreeNode>(parser.MoveText());
+		public Cursor(String text) {
+			this.text = text;
+			this.length = text.length();
+		}
 		
-		ParsingResult<TreeNode> result = parseRunner.run(moveText);
+		/**
+		 * Reads a line of moves, adding the first move to a parent node with each move after it added to the one
+		 * before. Returns false if there isn't a move at the current position.
+		 */
+		public boolean readLine(Board board, MutableMoveHistoryNode parent) throws IllegalMoveException {
+			MutableMoveHistoryNode node = readMove(board, parent);
+			if(node == null) return false;
+			
+			while(true) {
+				while(position < length && text.charAt(position) == '(') {
+					int start = position;
+					position++;
+					skipWhiteSpace();
+					if(!readLine(board, parent) || position >= length || text.charAt(position) != ')') {
+						position = start;
+						return true;
+					}
+					position++;
+					skipWhiteSpace();
+				}
+				
+				board = board.makeMove(node.getMove());
+				parent = node;
+				node = readMove(board, parent);
+				if(node == null) return true;
+			}
+		}
 		
-		//System.out.println(moveText);
+		/**
+		 * Reads a move with its move number, check marks, annotation, NAG, and comment, and adds it to a parent node.
+		 * Returns the node added, or null if there isn't a move at the current position.
+		 */
+		private MutableMoveHistoryNode readMove(Board board, MutableMoveHistoryNode parent) throws IllegalMoveException {
+			int start = position;
+			
+			int numberEnd = skip(position, "1234567890");
+			if(numberEnd > position) {
+				int dotsEnd = skip(numberEnd, ".");
+				if(dotsEnd > numberEnd) {
+					position = dotsEnd;
+				}
+			}
+			skipWhiteSpace();
+			
+			int moveStart = position;
+			int moveEnd = readAlgebraicMove(moveStart);
+			if(moveEnd == moveStart) {
+				position = start;
+				return null;
+			}
+			
+			Move move = board.getPgnMove(text.substring(moveStart, moveEnd));
+			MutableMoveHistoryNode node = new MutableMoveHistoryNode(move, parent);
+			parent.addNextNode(node);
+			
+			position = skip(moveEnd, "+#");
+			int annotationEnd = skip(position, "!?");
+			if(annotationEnd > position) {
+				node.setAnnotation(text.substring(position, annotationEnd));
+				position = annotationEnd;
+			}
+			skipWhiteSpace();
+			
+			if(position < length && text.charAt(position) == '$') {
+				int nagEnd = skip(position + 1, "1234567890");
+				if(nagEnd > position + 1) {
+					String annotation = getNagAnnotation(text.substring(position, nagEnd));
+					if(annotation != null) {
+						node.setAnnotation(annotation);
+					}
+					position = nagEnd;
+				}
+			}
+			skipWhiteSpace();
+			
+			if(position < length && text.charAt(position) == '{') {
+				int commentEnd = text.indexOf('}', position + 1);
+				if(commentEnd > position + 1) {
+					node.setComment(text.substring(position + 1, commentEnd).trim());
+					position = commentEnd + 1;
+					skipWhiteSpace();
+				}
+			}
+			
+			return node;
+		}
 		
-		if(!result.matched) {
-			for(ParseError error:result.parseErrors) {
-				throw new ParseException(
-					"ERROR: Parsed up to: "
-					+ moveText.substring(0, error.getStartIndex())
-					+ " Remaining: "
-					+ moveText.substring(error.getStartIndex())
-				);
+		/**
+		 * Returns the end of the move at a position, or the position itself if there isn't one there.
+		 */
+		private int readAlgebraicMove(int start) {
+			if(text.startsWith("1-0", start) || text.startsWith("0-1", start) || text.startsWith("1/2-1/2", start)) {
+				return start;
+			}
+			
+			int end = skip(start, MOVE_CHARS);
+			if(end > start) return end;
+			
+			if(text.startsWith("O-O-O", start)) return start + 5;
+			if(text.startsWith("O-O", start)) return start + 3;
+			
+			return start;
+		}
+		
+		/**
+		 * Reads a result if there is one.
+		 */
+		public void readResult() {
+			for(String result:new String[] { "0-1", "1-0", "1/2-1/2", "*" }) {
+				if(text.startsWith(result, position)) {
+					position += result.length();
+					return;
+				}
 			}
 		}
 		
-		TreeNode treeNode = result.valueStack.pop();
-		//treeNode.printTree();
+		public void skipWhiteSpace() {
+			position = skip(position, " \t\f\r\n");
+		}
+		
+		/**
+		 * Returns the position after any characters from a set starting at a position.
+		 */
+		private int skip(int position, String chars) {
+			while(position < length && chars.indexOf(text.charAt(position)) >= 0) {
+				position++;
+			}
+			return position;
+		}
+		
+		public boolean atEnd() {
+			return position == length;
+		}
+		
+		public int getPosition() {
+			return position;
+		}
+	}
+	
+	public MoveHistoryNode parseMoveText(Board initialPosition, String moveText) throws ParseException {
+		Cursor cursor = new Cursor(moveText);
+		MutableMoveHistoryNode root = new MutableMoveHistoryNode(null, null);
 		
 		try {
-			MutableMoveHistoryNode root = new MutableMoveHistoryNode(null, null);
-			MutableMoveHistoryNode child = treeNode.toMoveTreeNode(initialPosition, root);
-			root.addNextNode(child);
-			return root;
+			cursor.skipWhiteSpace();
+			if(cursor.readLine(initialPosition, root)) {
+				cursor.readResult();
+				cursor.skipWhiteSpace();
+				if(cursor.atEnd()) {
+					return root;
+				}
+			}
 		} catch(IllegalMoveException e) {
-			throw new ParseException(e);
+			// Moves are played as they're read, so check the rest of the movetext first to report a syntax error
+			// ahead of an illegal move.
+			ParseException syntaxError = getSyntaxError(moveText);
+			throw (syntaxError != null) ? syntaxError : new ParseException(e);
+		}
+		
+		ParseException syntaxError = getSyntaxError(moveText);
+		throw (syntaxError != null) ? syntaxError : createParseException(moveText, cursor.getPosition());
+	}
+	
+	/**
+	 * Returns an exception showing where the grammar fails to match some movetext, or null if it matches.
+	 */
+	private static ParseException getSyntaxError(String moveText) {
+		PgnParser parser = Parboiled.createParser(PgnParser.class);
+		
+		ParseRunner<Object> parseRunner = new ReportingParseRunner<Object>(parser.MoveText());
+		
+		ParsingResult<Object> result = parseRunner.run(moveText);
+		
+		if(!result.matched) {
+			for(ParseError error:result.parseErrors) {
+				return createParseException(moveText, error.getStartIndex());
+			}
+		}
+		
+		return null;
+	}
+	
+	private static ParseException createParseException(String moveText, int position) {
+		return new ParseException(
+			"ERROR: Parsed up to: "
+			+ moveText.substring(0, position)
+			+ " Remaining: "
+			+ moveText.substring(position)
+		);
+	}
+	
+	/**
+	 * Returns the annotation for a numeric annotation glyph, or null if it isn't one that's shown.
+	 */
+	private static String getNagAnnotation(String nag) {
+		switch(nag) {
+			case "$1": return "!";
+			case "$2": return "?";
+			case "$3": return "!!";
+			case "$4": return "??";
+			case "$5": return "!?";
+			case "$6": return "?!";
+			case "$10": return " (=)";
+			case "$18": return " (+-)";
+			case "$19": return " (-+)";
+			default: return null;
 		}
 	}
 }
@@ -1,5 +1,8 @@
 package pgn;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
@@ -28,54 +31,52 @@ public class PgnImporter {
 		throw new ParseException("Can't find movetext");
 	}
 	
+	/**
+	 * Returns the tags of a game without parsing its movetext, so that games can be skipped by their tags even if
+	 * their movetext can't be parsed. Returns no tags if the game has none.
+	 */
+	public Map<String, String> importTags(String pgn) throws ParseException {
+		for(String section:pgn.split("(\r?\n|\n){2}")) {
+			section = section.trim();
+			
+			if(section.startsWith("[")) {
+				return parseTags(section);
+			} else if(section.startsWith("1")) {
+				break;
+			}
+		}
+		
+		return new HashMap<String, String>();
+	}
+	
+	/**
+	 * Returns the game between two positions in a mapped file, such as those from MappedPgnFile.getGameStarts().
+	 */
+	public PgnGame importPgn(MappedPgnFile file, long start, long end) throws ParseException {
+		return importPgn(file.readText(start, end));
+	}
+	
+	/**
+	 * Returns every game in a collection. Use a PgnReader to read large collections a game at a time instead.
+	 */
 	public List<PgnGame> importCollection(String pgn) throws ParseException {
 		List<PgnGame> games = new ArrayList<PgnGame>();
 		
-		Map<String, String> tags = new HashMap<String, String>();
-		for(String section:pgn.split("(\r?\n|\n){2}")) {
-			try {
-				section = section.trim();
+		try(PgnReader reader = new PgnReader(new StringReader(pgn))) {
+			PgnGame game;
+			while((game = reader.readGame()) != null) {
+				games.add(game);
 				
-				if(section.startsWith("[")) {
-					tags = parseTags(section);
-				} else if(section.startsWith("1")) {
-					if(tags.containsKey("Variant") && !tags.get("Variant").equals("Standard")) {
-						System.out.println("Skipping variant: " + tags.get("Variant"));
-						continue;
-					}
-					
-					Board initialPosition = getInitialPosition(tags);
-					
-					MoveHistoryNode moves = new MoveTextParser().parseMoveText(initialPosition, section);
-					GameResult result = getResult(section);
-					
-					games.add(new PgnGame(createPgn(tags, section), tags, moves, result, initialPosition));
-					
-					if(games.size() % 100 == 0) {
-						System.out.println("Loaded: " + games.size() + " games.");
-					}
-					
-					tags = new HashMap<String, String>();
+				if(games.size() % 100 == 0) {
+					System.out.println("Loaded: " + games.size() + " games.");
 				}
-			} catch(ParseException e) {
-				throw new ParseException("Error reading game: " + section, e);
 			}
+		} catch(IOException e) {
+			throw new UncheckedIOException("Error reading string", e);
 		}
 		
 		return games;
 	}
-	
-	private static String createPgn(Map<String, String> tags, String section) {
-		StringBuilder pgn = new StringBuilder();
-		
-		tags.forEach((k, v) -> {
-			pgn.append("[" + k + " \"" + v + "\"]\n");
-		});
-		pgn.append("\n");
-		pgn.append(section);
-		
-		return pgn.toString();
-	}
 
 	/**
 	 * Returns the initial position if it is specified in the tags, or the default position if not.
@@ -0,0 +1,110 @@
+package pgn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the games in a PGN collection one at a time, so that only the game being read is held in memory however
+ * large the collection is. Variants other than standard chess are skipped, as in PgnImporter.importCollection().
+ *
+ * The games can also be read with iterator() or stream(), which throw an UncheckedIOException or a
+ * PgnReader.GameException instead of the checked exceptions from readGame().
+ */
+public class PgnReader implements Iterable<PgnGame>, Closeable {
+	/**
+	 * Thrown from the iterator and stream when a game can't be parsed.
+	 */
+	public static class GameException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		public GameException(ParseException cause) {
+			super(cause.getMessage(), cause);
+		}
+	}
+	
+	private final PgnSplitter splitter;
+	private final PgnImporter importer = new PgnImporter();
+	
+	public PgnReader(Reader reader) {
+		this.splitter = new PgnSplitter(reader);
+	}
+	
+	/**
+	 * Returns the next game, or null at the end of the collection.
+	 */
+	public PgnGame readGame() throws IOException, ParseException {
+		String text;
+		while((text = splitter.nextGame()) != null) {
+			try {
+				// Variants are skipped by their tags, as their movetext may not parse as standard chess.
+				String variant = importer.importTags(text).get("Variant");
+				if(variant != null && !variant.equals("Standard")) {
+					System.out.println("Skipping variant: " + variant);
+					continue;
+				}
+				
+				return importer.importPgn(text);
+			} catch(ParseException e) {
+				throw new ParseException("Error reading game: " + text, e);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns an iterator over the games not read yet. The games are read as the iterator is used, so only one
+	 * iterator should be used.
+	 */
+	public Iterator<PgnGame> iterator() {
+		return new Iterator<PgnGame>() {
+			private PgnGame next;
+			
+			public boolean hasNext() {
+				if(next == null) {
+					try {
+						next = readGame();
+					} catch(IOException e) {
+						throw new UncheckedIOException(e);
+					} catch(ParseException e) {
+						throw new GameException(e);
+					}
+				}
+				return next != null;
+			}
+			
+			public PgnGame next() {
+				if(!hasNext()) throw new NoSuchElementException();
+				
+				PgnGame game = next;
+				next = null;
+				return game;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a sequential stream of the games not read yet, which closes this reader when it's closed.
+	 */
+	public Stream<PgnGame> stream() {
+		Spliterator<PgnGame> spliterator = Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				close();
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+	
+	public void close() throws IOException {
+		splitter.close();
+	}
+}
@@ -0,0 +1,59 @@
+package pgn;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a PGN collection into the text of each game, reading a line at a time so that the whole collection is
+ * never in memory at once. Sections are separated by blank lines as in PgnImporter.importCollection(): a section
+ * starting with '[' holds the tags for the next game, and a section starting with '1' is its movetext.
+ */
+public class PgnSplitter implements Closeable {
+	private final BufferedReader reader;
+	
+	public PgnSplitter(Reader reader) {
+		this.reader = (reader instanceof BufferedReader) ? (BufferedReader)reader : new BufferedReader(reader);
+	}
+	
+	/**
+	 * Returns the text of the next game, with its tags if it has any, or null at the end of the collection.
+	 */
+	public String nextGame() throws IOException {
+		String tags = null;
+		String section;
+		while((section = nextSection()) != null) {
+			if(section.startsWith("[")) {
+				tags = section;
+			} else if(section.startsWith("1")) {
+				return (tags == null) ? section : tags + "\n\n" + section;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the next section of non-blank lines, trimmed, or null at the end of the collection.
+	 */
+	private String nextSection() throws IOException {
+		StringBuilder section = new StringBuilder();
+		String line;
+		while((line = reader.readLine()) != null) {
+			if(line.trim().isEmpty()) {
+				if(section.length() > 0) break;
+			} else {
+				if(section.length() > 0) {
+					section.append('\n');
+				}
+				section.append(line);
+			}
+		}
+		
+		return (section.length() > 0) ? section.toString().trim() : null;
+	}
+	
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,131 @@
+package ui;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.VerifyEvent;
+import org.eclipse.swt.events.VerifyListener;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.*;
+
+import domain.PolyglotBook;
+
+/**
+ * A dialog to choose the number of plies and the weighting of moves for a book to export, with OK/Cancel buttons.
+ */
+class BookExportDialog extends Dialog {
+	private static final PolyglotBook.Weighting[] WEIGHTINGS = PolyglotBook.Weighting.values();
+	private static final String[] WEIGHTING_NAMES = { "Games", "Score", "Wins" };
+	
+	private int plies;
+	private PolyglotBook.Weighting weighting;
+	private boolean result = false;
+	
+	public BookExportDialog(Shell parent, int plies, PolyglotBook.Weighting weighting) {
+		super(parent, 0);
+		this.plies = plies;
+		this.weighting = weighting;
+	}
+	
+	/**
+	 * Opens the dialog and waits for it to close, returning whether OK was pressed.
+	 */
+	public boolean open() {
+		Shell parent = getParent();
+		final Shell shell = new Shell(parent, SWT.DIALOG_TRIM | SWT.APPLICATION_MODAL | SWT.SHEET);
+		shell.setText(getText());
+		shell.setLayout(new GridLayout());
+		
+		// Form Controls
+		
+		Composite formComposite = new Composite(shell, SWT.NONE);
+		formComposite.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+		
+		GridLayout formLayout = new GridLayout(2, false);
+		formComposite.setLayout(formLayout);
+		
+		Label pliesLabel = new Label(formComposite, SWT.NONE);
+		pliesLabel.setText("Plies:");
+		
+		final Text pliesText = new Text(formComposite, SWT.BORDER);
+		pliesText.addVerifyListener(new VerifyListener() {
+			public void verifyText(VerifyEvent event) {
+				event.text = event.text.replaceAll("[^0-9]", "");
+			}
+		});
+		pliesText.setText(String.valueOf(plies));
+		pliesText.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+		
+		Label weightingLabel = new Label(formComposite, SWT.NONE);
+		weightingLabel.setText("Weighting:");
+		
+		final Combo weightingCombo = new Combo(formComposite, SWT.READ_ONLY);
+		for(int i = 0; i < WEIGHTINGS.length; i++) {
+			weightingCombo.add(WEIGHTING_NAMES[i]);
+			if(WEIGHTINGS[i] == weighting) {
+				weightingCombo.select(i);
+			}
+		}
+		weightingCombo.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+		
+		// Button Composite
+		
+		Composite buttonComposite = new Composite(shell, SWT.NONE);
+		buttonComposite.setLayoutData(new GridData(SWT.RIGHT, SWT.NONE, false, false));
+		
+		GridLayout buttonLayout = new GridLayout(2, true);
+		buttonLayout.marginHeight = 0;
+		buttonComposite.setLayout(buttonLayout);
+		
+		Button okButton = new Button(buttonComposite, SWT.NONE);
+		okButton.setText("OK");
+		okButton.setLayoutData(new GridData(SWT.FILL, SWT.NONE, false, false));
+		
+		Button cancelButton = new Button(buttonComposite, SWT.NONE);
+		cancelButton.setText("Cancel");
+		cancelButton.setLayoutData(new GridData(SWT.FILL, SWT.NONE, false, false));
+		
+		shell.setDefaultButton(okButton);
+		
+		okButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent event) {
+				try {
+					plies = Integer.parseInt(pliesText.getText().trim());
+				} catch(NumberFormatException e) {
+					// Leave the plies as they were.
+				}
+				weighting = WEIGHTINGS[Math.max(0, weightingCombo.getSelectionIndex())];
+				result = true;
+				shell.dispose();
+			}
+		});
+		
+		cancelButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent event) {
+				shell.dispose();
+			}
+		});
+		
+		// Open and wait for result.
+		shell.pack();
+		shell.setSize(Math.max(300, shell.getSize().x), shell.getSize().y);
+		
+		shell.open();
+		Display display = parent.getDisplay();
+		while (!shell.isDisposed()) {
+			if (!display.readAndDispatch()) {
+				display.sleep();
+			}
+		}
+		return result;
+	}
+	
+	public int getPlies() {
+		return plies;
+	}
+	
+	public PolyglotBook.Weighting getWeighting() {
+		return weighting;
+	}
+}
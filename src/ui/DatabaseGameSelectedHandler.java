@@ -1,5 +1,5 @@
 package ui;
 
 public interface DatabaseGameSelectedHandler {
-	void onDatabaseGameSelected(String pgn);
+	void onDatabaseGameSelected(int gameId);
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package ui;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.SashForm;
@@ -23,19 +25,32 @@ import org.eclipse.swt.widgets.Widget;
 
 import domain.Board;
 import domain.DatabaseMove;
+import domain.GameHeader;
+import domain.GameList;
 import domain.IllegalMoveException;
 import domain.Move;
-import pgn.ParseException;
-import pgn.PgnGame;
-import pgn.PgnImporter;
 
 public class DatabaseView {
+	// The number of games read at a time as the game table is scrolled.
+	private static final int PAGE_SIZE = 50;
+	
+	// The most pages of games to keep, after which they are read again when needed.
+	private static final int MAX_PAGES = 20;
+	
+	// The column that each column of the game table is sorted by.
+	private static final GameList.Sort[] COLUMN_SORTS = {
+		GameList.Sort.DATE, GameList.Sort.WHITE, GameList.Sort.BLACK, GameList.Sort.RESULT, GameList.Sort.TIME_CONTROL
+	};
+	
 	private SashForm sashForm;
 	private Composite composite;
 	private Table moveTable;
 	private Table gameTable;
 	private Label openingLabel;
 	
+	private GameList games;
+	private Map<Integer, List<GameHeader>> gamePages = new HashMap<>();
+	
 	private ColorManager colorManager = new ColorManager(Display.getCurrent());
 	private List<DatabaseMoveSelectedHandler> moveSelectedHandlers = new ArrayList<>();
 	private List<DatabaseGameSelectedHandler> gameSelectedHandlers = new ArrayList<>();
@@ -53,7 +68,8 @@ public class DatabaseView {
 		this.moveTable = new Table(sashForm, SWT.NONE);
 		moveTable.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
 		
-		this.gameTable = new Table(sashForm, SWT.NONE);
+		// The game table is virtual, so that games are only read when their rows are shown.
+		this.gameTable = new Table(sashForm, SWT.VIRTUAL);
 		
 		gameTable.setHeaderVisible(true);
 		new TableColumn(gameTable, SWT.NONE).setText("Date");
@@ -62,10 +78,32 @@ public class DatabaseView {
 		new TableColumn(gameTable, SWT.NONE).setText("Result");
 		new TableColumn(gameTable, SWT.NONE).setText("Time-Control");
 		
-		for(TableColumn column:gameTable.getColumns()) {
+		for(int i = 0; i < gameTable.getColumnCount(); i++) {
+			final TableColumn column = gameTable.getColumn(i);
+			final GameList.Sort sort = COLUMN_SORTS[i];
 			column.pack();
+			column.addSelectionListener(new SelectionAdapter() {
+				public void widgetSelected(SelectionEvent event) {
+					sortGames(column, sort);
+				}
+			});
 		}
 		
+		gameTable.addListener(SWT.SetData, new Listener() {
+			public void handleEvent(Event event) {
+				TableItem item = (TableItem)event.item;
+				GameHeader header = getGameHeader(gameTable.indexOf(item));
+				if(header == null) return;
+				
+				item.setText(0, header.getDate());
+				item.setText(1, header.getWhite());
+				item.setText(2, header.getBlack());
+				item.setText(3, header.getResult());
+				item.setText(4, header.getTimeControl());
+				item.setData(header);
+			}
+		});
+		
 		final TableColumn column1 = new TableColumn(moveTable, SWT.NONE);
 		final TableColumn column2 = new TableColumn(moveTable, SWT.NONE);
 		
@@ -122,10 +160,11 @@ public class DatabaseView {
 		gameTable.addSelectionListener(new SelectionAdapter() {
 			public void widgetDefaultSelected(SelectionEvent event) {
 				TableItem item = (TableItem)event.item;
-				String game = (String) item.getData();
+				GameHeader header = (GameHeader)item.getData();
+				if(header == null) return;
 				
 				for(DatabaseGameSelectedHandler handler:gameSelectedHandlers) {
-					handler.onDatabaseGameSelected(game);
+					handler.onDatabaseGameSelected(header.getId());
 				}
 			}
 		});
@@ -157,30 +196,52 @@ public class DatabaseView {
 		}
 	}
 	
-	public void setGames(List<String> pgnGames) {
+	/**
+	 * Shows a list of games, which is read a page at a time as the rows are shown.
+	 */
+	public void setGames(GameList games) {
+		gameTable.setSortColumn(null);
+		showGames(games);
+	}
+	
+	private void showGames(GameList games) {
+		this.games = games;
+		gamePages.clear();
+		
 		gameTable.removeAll();
+		gameTable.setItemCount(games.size());
+	}
+	
+	/**
+	 * Sorts the games by a column, or reverses the order if they are already sorted by it.
+	 */
+	private void sortGames(TableColumn column, GameList.Sort sort) {
+		if(games == null) return;
 		
-		if(pgnGames.size() > 100) {
-			pgnGames = pgnGames.subList(0, 100);
-		}
+		boolean descending = (gameTable.getSortColumn() == column && gameTable.getSortDirection() == SWT.UP);
+		showGames(games.sortedBy(sort, descending));
+		gameTable.setSortColumn(column);
+		gameTable.setSortDirection(descending ? SWT.DOWN : SWT.UP);
+	}
+	
+	/**
+	 * Returns the header of the game at an index in the list, reading the page it is on if it hasn't been read.
+	 */
+	private GameHeader getGameHeader(int index) {
+		if(games == null) return null;
 		
-		for(String pgn:pgnGames) {
-			TableItem item = new TableItem(gameTable, SWT.NONE);
-			
-			try {
-				PgnGame pgnGame = new PgnImporter().importPgn(pgn);
-				
-				item.setText(0, pgnGame.getDate());
-				item.setText(1, pgnGame.getWhite());
-				item.setText(2, pgnGame.getBlack());
-				item.setText(3, pgnGame.getResult().toString());
-				item.setText(4, pgnGame.getTags().get("TimeControl"));
-				
-				item.setData(pgn);
-			} catch (ParseException e) {
-				throw new RuntimeException("Error paring game", e);
+		int page = index / PAGE_SIZE;
+		List<GameHeader> headers = gamePages.get(page);
+		if(headers == null) {
+			if(gamePages.size() >= MAX_PAGES) {
+				gamePages.clear();
 			}
+			headers = games.getHeaders(page * PAGE_SIZE, PAGE_SIZE);
+			gamePages.put(page, headers);
 		}
+		
+		int offset = index - page * PAGE_SIZE;
+		return (offset < headers.size()) ? headers.get(offset) : null;
 	}
 
 	public Composite getWidget() {
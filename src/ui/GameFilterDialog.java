@@ -0,0 +1,153 @@
+package ui;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.VerifyEvent;
+import org.eclipse.swt.events.VerifyListener;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.*;
+
+import domain.GameFilter;
+import domain.GameResult;
+
+/**
+ * A dialog to edit the filter for the games in the database, with OK/Cancel buttons. Fields left empty aren't
+ * part of the filter.
+ */
+class GameFilterDialog extends Dialog {
+	private static final GameResult[] RESULTS = { null, GameResult.WHITE_WIN, GameResult.BLACK_WIN, GameResult.DRAW };
+	
+	private GameFilter filter;
+	private GameFilter result;
+	
+	public GameFilterDialog(Shell parent, GameFilter filter) {
+		super(parent, 0);
+		this.filter = filter;
+	}
+	
+	public GameFilter open() {
+		Shell parent = getParent();
+		final Shell shell = new Shell(parent, SWT.DIALOG_TRIM | SWT.APPLICATION_MODAL | SWT.SHEET);
+		shell.setText(getText());
+		shell.setLayout(new GridLayout());
+		
+		// Form Controls
+		
+		Composite formComposite = new Composite(shell, SWT.NONE);
+		formComposite.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+		
+		GridLayout formLayout = new GridLayout(2, false);
+		formComposite.setLayout(formLayout);
+		
+		final Text playerText = addText(formComposite, "Player", null);
+		playerText.setText((filter.getPlayer() == null) ? "" : filter.getPlayer());
+		
+		final Text minRatingText = addText(formComposite, "Min Rating", "[^0-9]");
+		minRatingText.setText((filter.getMinRating() > 0) ? String.valueOf(filter.getMinRating()) : "");
+		
+		final Text maxRatingText = addText(formComposite, "Max Rating", "[^0-9]");
+		maxRatingText.setText((filter.getMaxRating() < Integer.MAX_VALUE) ? String.valueOf(filter.getMaxRating()) : "");
+		
+		final Text fromDateText = addText(formComposite, "From Date", "[^0-9.?]");
+		fromDateText.setText((filter.getFromDate() == null) ? "" : filter.getFromDate());
+		
+		final Text toDateText = addText(formComposite, "To Date", "[^0-9.?]");
+		toDateText.setText((filter.getToDate() == null) ? "" : filter.getToDate());
+		
+		Label resultLabel = new Label(formComposite, SWT.NONE);
+		resultLabel.setText("Result:");
+		
+		final Combo resultCombo = new Combo(formComposite, SWT.READ_ONLY);
+		for(GameResult gameResult:RESULTS) {
+			resultCombo.add((gameResult == null) ? "Any" : gameResult.toString());
+			if(gameResult == filter.getResult()) {
+				resultCombo.select(resultCombo.getItemCount() - 1);
+			}
+		}
+		resultCombo.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+		
+		// Button Composite
+		
+		Composite buttonComposite = new Composite(shell, SWT.NONE);
+		buttonComposite.setLayoutData(new GridData(SWT.RIGHT, SWT.NONE, false, false));
+		
+		GridLayout buttonLayout = new GridLayout(2, true);
+		buttonLayout.marginHeight = 0;
+		buttonComposite.setLayout(buttonLayout);
+		
+		Button okButton = new Button(buttonComposite, SWT.NONE);
+		okButton.setText("OK");
+		okButton.setLayoutData(new GridData(SWT.FILL, SWT.NONE, false, false));
+		
+		Button cancelButton = new Button(buttonComposite, SWT.NONE);
+		cancelButton.setText("Cancel");
+		cancelButton.setLayoutData(new GridData(SWT.FILL, SWT.NONE, false, false));
+		
+		shell.setDefaultButton(okButton);
+		
+		okButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent event) {
+				result = GameFilter.ALL
+					.withPlayer(getText(playerText))
+					.withRatings(getNumber(minRatingText, 0), getNumber(maxRatingText, Integer.MAX_VALUE))
+					.withDates(getText(fromDateText), getText(toDateText))
+					.withResult(RESULTS[Math.max(0, resultCombo.getSelectionIndex())]);
+				shell.dispose();
+			}
+		});
+		
+		cancelButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent event) {
+				shell.dispose();
+			}
+		});
+		
+		// Open and wait for result.
+		shell.pack();
+		shell.setSize(Math.max(300, shell.getSize().x), shell.getSize().y);
+		
+		shell.open();
+		Display display = parent.getDisplay();
+		while (!shell.isDisposed()) {
+			if (!display.readAndDispatch()) {
+				display.sleep();
+			}
+		}
+		return result;
+	}
+	
+	private static Text addText(Composite composite, String labelText, final String disallowedCharactersRegex) {
+		Label label = new Label(composite, SWT.NONE);
+		label.setText(labelText + ":");
+		
+		Text text = new Text(composite, SWT.BORDER);
+		if(disallowedCharactersRegex != null) {
+			text.addVerifyListener(new VerifyListener() {
+				public void verifyText(VerifyEvent event) {
+					event.text = event.text.replaceAll(disallowedCharactersRegex, "");
+				}
+			});
+		}
+		text.setLayoutData(new GridData(SWT.FILL, SWT.NONE, true, false));
+		return text;
+	}
+	
+	/**
+	 * Returns the trimmed text of a field, or null if it is empty.
+	 */
+	private static String getText(Text text) {
+		String value = text.getText().trim();
+		return value.isEmpty() ? null : value;
+	}
+	
+	private static int getNumber(Text text, int defaultValue) {
+		String value = getText(text);
+		try {
+			return (value == null) ? defaultValue : Integer.parseInt(value);
+		} catch(NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
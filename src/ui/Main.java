@@ -26,6 +26,7 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Widget;
 
 import controller.MainController;
+import domain.GameFilter;
 import domain.Side;
 
 public class Main {
@@ -135,8 +136,22 @@ public class Main {
 				}
 			})
 			.addSeparator()
+			.addItem("Open Database...").addSelectionListener(() -> {
+				String selected = selectSaveLocationWithDialog("movedb", "*.properties", "*.*");
+				if(selected != null) {
+					try {
+						mainController.openDatabase(selected);
+					} catch(Exception e) {
+						displayException(e);
+					}
+				}
+			})
 			.addItem("Import Database...").addSelectionListener(() -> {
-				String selected = selectOpenLocationWithDialog("*.pgn", "*.db", "*.*");
+				if(mainController.isDatabasePersistent() && !confirmWithDialog("Import Database", "Importing replaces everything in the open database on disk. Continue?")) {
+					return;
+				}
+				
+				String selected = selectOpenLocationWithDialog("*.pgn;*.pgn.gz", "*.db", "*.*");
 				if(selected != null) {
 					try {
 						mainController.importDatabase(selected);
@@ -145,6 +160,16 @@ public class Main {
 					}
 				}
 			})
+			.addItem("Append to Database...").addSelectionListener(() -> {
+				String selected = selectOpenLocationWithDialog("*.pgn;*.pgn.gz", "*.*");
+				if(selected != null) {
+					try {
+						mainController.appendDatabase(selected);
+					} catch(Exception e) {
+						displayException(e);
+					}
+				}
+			})
 			.addItem("Export Database...").addSelectionListener(() -> {
 				String selected = selectSaveLocationWithDialog("game", "*.db");
 				if(selected != null) {
@@ -155,6 +180,40 @@ public class Main {
 					}
 				}
 			}).setEnabled(mainController.moveDatabaseLoaded())
+			.addItem("Open Book...").addSelectionListener(() -> {
+				String selected = selectOpenLocationWithDialog("*.bin", "*.*");
+				if(selected != null) {
+					try {
+						mainController.openBook(selected);
+					} catch(Exception e) {
+						displayException(e);
+					}
+				}
+			})
+			.addItem("Export Book...").addSelectionListener(() -> {
+				BookExportDialog dialog = new BookExportDialog(shell, mainController.getBookPlies(), mainController.getBookWeighting());
+				dialog.setText("Export Book");
+				if(!dialog.open()) return;
+				
+				String selected = selectSaveLocationWithDialog("book", "*.bin");
+				if(selected != null) {
+					try {
+						mainController.exportBook(selected, dialog.getPlies(), dialog.getWeighting());
+					} catch(Exception e) {
+						displayException(e);
+					}
+				}
+			}).setEnabled(mainController.moveDatabaseLoaded())
+			.addItem("Filter Games...").addSelectionListener(() -> {
+				GameFilter filter = selectGameFilterWithDialog();
+				if(filter != null) {
+					try {
+						mainController.setGameFilter(filter);
+					} catch(Exception e) {
+						displayException(e);
+					}
+				}
+			}).setEnabled(mainController.moveDatabaseLoaded())
 			.addSeparator()
 			.addItem("Enter FEN...").addSelectionListener(() -> {
 				String fen = selectFenWithDialog();
@@ -296,7 +355,18 @@ public class Main {
 			.addItem("Stop Engine").addSelectionListener(() -> {
 				mainController.enginePlayNone();
 				createMenuBar(shell);
-			}).setEnabled(mainController.isEnginePlaying());
+			}).setEnabled(mainController.isEnginePlaying())
+			.addSeparator()
+			.addItem("Hash Size...").addSelectionListener(() -> {
+				String hashSize = selectHashSizeWithDialog();
+				if(hashSize != null && !hashSize.isEmpty()) {
+					try {
+						mainController.setEngineHashSize(Integer.parseInt(hashSize));
+					} catch(Exception e) {
+						displayException(e);
+					}
+				}
+			});
 		
 		menuBuilder.build();
 	}
@@ -333,6 +403,29 @@ public class Main {
 		return dialog.open();
 	}
 	
+	private GameFilter selectGameFilterWithDialog() {
+		GameFilterDialog dialog = new GameFilterDialog(shell, mainController.getGameFilter());
+		dialog.setText("Filter Games");
+		return dialog.open();
+	}
+	
+	private String selectHashSizeWithDialog() {
+		InputDialog dialog = new InputDialog(shell, "Hash Size (MB)", "[^0-9]");
+		dialog.setText("Engine Hash Size: " + mainController.getEngineHashSize() + " MB");
+		return dialog.open();
+	}
+	
+	/**
+	 * Asks the user a yes/no question, returning whether they answered yes.
+	 */
+	private boolean confirmWithDialog(String title, String message) {
+		MessageBox messageBox = new MessageBox(shell, SWT.ICON_QUESTION | SWT.YES | SWT.NO);
+		messageBox.setText(title);
+		messageBox.setMessage(message);
+		
+		return messageBox.open() == SWT.YES;
+	}
+	
 	private void displayFenDialog(String fen) {
 		MessageBox messageBox = new MessageBox(shell);
 		messageBox.setText("FEN");
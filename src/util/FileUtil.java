@@ -1,6 +1,8 @@
 package util;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 public class FileUtil {
 	public static String readFile(Reader reader) throws IOException {
@@ -31,6 +33,33 @@ public class FileUtil {
 		return readFile(new FileReader(new File(path)));
 	}
 	
+	/**
+	 * Opens a UTF-8 text file for reading, decompressing it if it's gzip compressed. The compression is found from
+	 * the start of the file rather than its name. Bzip2 compressed files can't be read, as there's no bzip2 decoder
+	 * in the JDK, and fail with an IOException rather than being read as text.
+	 */
+	public static Reader openReader(File file) throws IOException {
+		InputStream inputStream = new BufferedInputStream(new FileInputStream(file), 65536);
+		try {
+			inputStream.mark(3);
+			int b0 = inputStream.read();
+			int b1 = inputStream.read();
+			int b2 = inputStream.read();
+			inputStream.reset();
+			
+			if(b0 == 0x1f && b1 == 0x8b) {
+				inputStream = new GZIPInputStream(inputStream, 65536);
+			} else if(b0 == 'B' && b1 == 'Z' && b2 == 'h') {
+				throw new IOException("Bzip2 compressed files aren't supported: " + file);
+			}
+		} catch(IOException e) {
+			close(inputStream);
+			throw e;
+		}
+		
+		return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 65536);
+	}
+	
 	public static String readResource(String path) throws IOException {
 		return readFile(new InputStreamReader(FileUtil.class.getResourceAsStream(path)));
 	}
@@ -6,6 +6,8 @@ import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import domain.pieces.PieceType;
+
 public class BoardTest {
 	@Test
 	public void initialPosition() {
@@ -147,6 +149,12 @@ public class BoardTest {
 		board = board.makePgnMove("0-0");
 	}
 
+	@Test(expected=IllegalMoveException.class)
+	public void castle_throughPawnAttack() throws IllegalMoveException {
+		Board board = new Board("1k6/8/8/8/8/8/6p1/R3K2R w K - 0 1");
+		board = board.makePgnMove("0-0");
+	}
+
 	@Test(expected=IllegalMoveException.class)
 	public void castle_toOccupied() throws IllegalMoveException {
 		Board board = new Board("1k6/8/8/8/8/8/8/3RK1NR w K - 0 1");
@@ -159,6 +167,12 @@ public class BoardTest {
 		board = board.makePgnMove("0-0");
 	}
 	
+	@Test(expected=IllegalMoveException.class)
+	public void castle_queensideThroughOccupied() throws IllegalMoveException {
+		Board board = new Board("1k6/8/8/8/8/8/8/RN2K3 w Q - 0 1");
+		board = board.makePgnMove("0-0-0");
+	}
+	
 	@Test
 	public void promote() throws IllegalMoveException {
 		Board board = new Board("8/7P/8/8/8/8/8/k1K5 w - - 0 1");
@@ -209,6 +223,13 @@ public class BoardTest {
 		assertEquals("Rf1g1", pgn);
 	}
 	
+	@Test
+	public void getMoveAsPgn_ambiguousPinned() throws IllegalMoveException {
+		Board board = new Board("rnbqk1nr/ppp2ppp/4p3/3p4/1b1PP3/2N5/PPP2PPP/R1BQKBNR w KQkq - 2 4");
+		String pgn = board.getMoveAsPgn(new Move(new Square("g1"), new Square("e2")));
+		assertEquals("Ne2", pgn);
+	}
+	
 	@Test
 	public void getMoveAsPgn_ambiguousDifferentPiece() throws IllegalMoveException {
 		Board board = new Board("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq e6 0 2");
@@ -432,6 +453,13 @@ public class BoardTest {
 		assertEquals("k7/8/8/8/8/8/8/5RKR b - - 1 0", board.getFen());
 	}
 	
+	@Test
+	public void ambiguousCastling960_castleInnerRookBlack() throws IllegalMoveException {
+		Board board = new Board("4k1rr/8/8/8/8/8/8/K7 b g - 0 1");
+		board = board.makePgnMove("O-O");
+		assertEquals("5rkr/8/8/8/8/8/8/K7 w - - 1 2", board.getFen());
+	}
+	
 	@Test
 	public void ambiguousCastling960_moveInnerRook() throws IllegalMoveException {
 		Board board = new Board("k7/8/8/8/8/8/8/4K1RR w K - 0 0");
@@ -466,4 +494,36 @@ public class BoardTest {
 		board = board.makeMove(Move.nullMove());
 		assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR b KQkq - 0 1", board.getFen());
 	}
-}
\ No newline at end of file
+	
+	@Test
+	public void equals_differentMoveCounters() {
+		Board board1 = new Board("4k3/8/8/8/8/8/8/4K3 w - - 0 1");
+		Board board2 = new Board("4k3/8/8/8/8/8/8/4K3 w - - 3 20");
+		
+		assertFalse(board1.equals(board2));
+		assertEquals(board1.getPositionKey(), board2.getPositionKey());
+	}
+	
+	@Test
+	public void equals_hashCode() throws IllegalMoveException {
+		Board board1 = new Board().makePgnMove("e4");
+		Board board2 = new Board("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+		
+		assertTrue(board1.equals(board2));
+		assertEquals(board1.hashCode(), board2.hashCode());
+	}
+	
+	@Test
+	public void positionKey_updatedByMoves() throws IllegalMoveException {
+		// Play through a game with castling, captures, en-passant and promotion, checking the incrementally
+		// updated key against a board created from the FEN.
+		Board board = new Board();
+		for(String move:"e4 d5 exd5 c5 dxc6 Nf6 cxb7 e6 bxa8=Q Bc5 Nf3 O-O Qxa7 Qd5 Be2 Nc6 O-O".split(" ")) {
+			board = board.makePgnMove(move);
+			assertEquals(board.getFen(), new Board(board.getFen()).getPositionKey(), board.getPositionKey());
+		}
+		
+		board = board.placePiece(new Square("a4"), PieceType.KNIGHT, Side.BLACK).clearPiece(new Square("b1")).setSideToPlay(Side.WHITE).setCastling("-");
+		assertEquals(new Board(board.getFen()).getPositionKey(), board.getPositionKey());
+	}
+}
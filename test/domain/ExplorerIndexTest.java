@@ -0,0 +1,60 @@
+package domain;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ExplorerIndexTest {
+	@Test
+	public void getMoves() {
+		ExplorerIndex.Builder builder = new ExplorerIndex.Builder();
+		builder.add(-5, MoveDatabaseFile.encodeMove(new Move("e2", "e4")), 1, 0, 0);
+		builder.add(-5, MoveDatabaseFile.encodeMove(new Move("d2", "d4")), 2, 1, 0);
+		builder.add(-5, MoveDatabaseFile.encodeMove(new Move("c2", "c4")), 1, 0, 0);
+		builder.add(7, MoveDatabaseFile.encodeMove(new Move("e7", "e5")), 0, 0, 4);
+		ExplorerIndex index = builder.build();
+		
+		assertEquals(2, index.getPositionCount());
+		
+		// Moves are ordered by total, then in the order they were added.
+		List<DatabaseMove> moves = index.getMoves(-5);
+		assertEquals(3, moves.size());
+		assertEquals(new Move("d2", "d4"), moves.get(0).getMove());
+		assertEquals("2/1/0", moves.get(0).toString());
+		assertEquals(new Move("e2", "e4"), moves.get(1).getMove());
+		assertEquals(new Move("c2", "c4"), moves.get(2).getMove());
+		
+		assertEquals("0/0/4", index.getMoves(7).get(0).toString());
+		assertEquals(0, index.getMoves(0).size());
+	}
+	
+	@Test
+	public void getMoves_empty() {
+		ExplorerIndex index = new ExplorerIndex.Builder().build();
+		assertEquals(0, index.getPositionCount());
+		assertEquals(0, index.getMoves(0).size());
+	}
+	
+	@Test
+	public void getMoves_collidingKeys() {
+		// Keys with the same high and low halves all hash to the same slot.
+		ExplorerIndex.Builder builder = new ExplorerIndex.Builder();
+		for(int i = 0; i < 5000; i++) {
+			long positionKey = ((long)i << 32) | i;
+			for(int j = 0; j <= i % 3; j++) {
+				builder.add(positionKey, MoveDatabaseFile.encodeMove(new Move(Square.fromIndex(j), Square.fromIndex(j + 8))), i, j, 0);
+			}
+		}
+		ExplorerIndex index = builder.build();
+		
+		assertEquals(5000, index.getPositionCount());
+		for(int i = 0; i < 5000; i++) {
+			List<DatabaseMove> moves = index.getMoves(((long)i << 32) | i);
+			assertEquals(i % 3 + 1, moves.size());
+			assertEquals(i + "/" + (i % 3) + "/0", moves.get(0).toString());
+		}
+		assertEquals(0, index.getMoves(1L << 32).size());
+	}
+}
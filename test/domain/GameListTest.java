@@ -0,0 +1,141 @@
+package domain;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pgn.ParseException;
+import pgn.PgnGame;
+import pgn.PgnImporter;
+
+public class GameListTest {
+	@Test
+	public void getHeaders() throws ParseException {
+		MoveDatabase database = database(120);
+		GameList games = database.getGameList(new Board());
+		assertEquals(120, games.size());
+		
+		List<GameHeader> headers = games.getHeaders(0, 50);
+		assertEquals(50, headers.size());
+		assertEquals("White 0", headers.get(0).getWhite());
+		assertEquals("Black 0", headers.get(0).getBlack());
+		assertEquals("2000.01.01", headers.get(0).getDate());
+		assertEquals("1-0", headers.get(0).getResult());
+		assertEquals("", headers.get(0).getTimeControl());
+		
+		headers = games.getHeaders(100, 50);
+		assertEquals(20, headers.size());
+		assertEquals(100, headers.get(0).getId());
+		assertEquals(0, games.getHeaders(120, 50).size());
+	}
+	
+	@Test
+	public void sortedBy() throws ParseException, IllegalMoveException {
+		MoveDatabase database = database(12);
+		GameList games = database.getGameList(new Board().makePgnMove("e4"));
+		assertEquals(6, games.size());
+		
+		// Games 0, 2, ..., 10 have white players "White 0", "White 2", ..., "White 10" and results alternating from 1-0.
+		assertEquals(ids(0, 10, 2, 4, 6, 8), ids(games.sortedBy(GameList.Sort.WHITE, false)));
+		assertEquals(ids(8, 6, 4, 2, 10, 0), ids(games.sortedBy(GameList.Sort.WHITE, true)));
+		assertEquals(ids(4, 10, 0, 6, 2, 8), ids(games.sortedBy(GameList.Sort.RESULT, false)));
+		assertEquals(ids(0, 2, 4, 6, 8, 10), ids(games.sortedBy(GameList.Sort.ID, false)));
+		
+		// Each page of a sorted list is read separately.
+		GameList sorted = games.sortedBy(GameList.Sort.WHITE, true);
+		assertEquals(6, sorted.size());
+		assertEquals(8, sorted.getHeaders(0, 2).get(0).getId());
+		assertEquals(2, sorted.getHeaders(3, 2).get(0).getId());
+		assertEquals(0, sorted.getHeaders(5, 2).get(0).getId());
+		assertEquals(1, sorted.getHeaders(5, 2).size());
+	}
+	
+	@Test
+	public void sortedBy_savedGames() throws ParseException, IOException {
+		MoveDatabase database = database(2000);
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		database.saveDatabase(file);
+		
+		MoveDatabase imported = new MoveDatabase();
+		imported.importDatabase(file);
+		imported.addGame("[White \"Aaron\"]\n[Black \"Black\"]\n\n1.e4 *");
+		imported.addMove(2000, new Board(), new DatabaseMove(new Move("e2", "e4"), 0, 0, 1));
+		
+		// Enough games that every game in the tables is read at once.
+		GameList games = imported.getGameList(new Board()).sortedBy(GameList.Sort.WHITE, false);
+		assertEquals(2001, games.size());
+		
+		List<GameHeader> headers = games.getHeaders(0, 3);
+		assertEquals("Aaron", headers.get(0).getWhite());
+		assertEquals(2000, headers.get(0).getId());
+		assertEquals("White 0", headers.get(1).getWhite());
+		assertEquals("White 1", headers.get(2).getWhite());
+		assertEquals("0-1", imported.getGameList(new Board()).getHeaders(1, 1).get(0).getResult());
+	}
+	
+	@Test
+	public void sortedBy_missingGame() throws ParseException, IOException {
+		MoveDatabase database = database(4);
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		database.saveDatabase(file);
+		
+		MoveDatabase imported = new MoveDatabase();
+		imported.importDatabase(file);
+		imported.addMove(10, new Board(), new DatabaseMove(new Move("e2", "e4"), 0, 0, 1));
+		
+		// Game 10 reached the position but isn't in the database, so it is left out of the sorted list.
+		GameList games = imported.getGameList(new Board());
+		assertEquals(5, games.size());
+		assertEquals(ids(0, 1, 2, 3), ids(games.sortedBy(GameList.Sort.BLACK, false)));
+	}
+	
+	@Test
+	public void fromPgn() {
+		GameHeader header = GameHeader.fromPgn(5, "[White \"a b\"]\r\n[black \"c\"]\r\n\r\n[Date \"x\"]\r\n1.e4 1-0");
+		assertEquals(5, header.getId());
+		assertEquals("a b", header.getWhite());
+		assertEquals("c", header.getBlack());
+		assertEquals("", header.getDate());
+	}
+	
+	/**
+	 * Returns a database of games where game i is between "White i" and "Black i", with a result alternating
+	 * between 1-0, 0-1, and 1/2-1/2, and even games opening with 1.e4 e5 and odd games with 1.d4 d5.
+	 */
+	private static MoveDatabase database(int count) throws ParseException {
+		String[] results = { "1-0", "0-1", "1/2-1/2" };
+		List<PgnGame> games = new ArrayList<>();
+		for(int i = 0; i < count; i++) {
+			String result = results[i % 3];
+			games.add(new PgnImporter().importPgn("[White \"White " + i + "\"]\n[Black \"Black " + i + "\"]\n[Date \"2000.01.01\"]\n" +
+				"[Result \"" + result + "\"]\n\n1." + ((i % 2 == 0) ? "e4 e5" : "d4 d5") + " " + result));
+		}
+		
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games);
+		return database;
+	}
+	
+	private static List<Integer> ids(int... gameIds) {
+		List<Integer> ids = new ArrayList<>();
+		for(int gameId:gameIds) {
+			ids.add(gameId);
+		}
+		return ids;
+	}
+	
+	private static List<Integer> ids(GameList games) {
+		List<Integer> ids = new ArrayList<>();
+		for(GameHeader header:games.getHeaders(0, games.size())) {
+			ids.add(header.getId());
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,168 @@
+package domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MoveDatabaseFileTest {
+	@Test
+	public void encodeMove() {
+		Move[] moves = {
+			new Move("e2", "e4"),
+			new Move(new Square("e1"), new Square("g1"), true, null),
+			new Move("a7", "b8", PromotionChoice.KNIGHT),
+			new Move("h2", "h1", PromotionChoice.QUEEN)
+		};
+		for(Move move:moves) {
+			assertEquals(move, MoveDatabaseFile.decodeMove(MoveDatabaseFile.encodeMove(move)));
+		}
+	}
+	
+	@Test
+	public void getMoves() throws IOException {
+		File file = writeFile(1000);
+		try(MoveDatabaseFile databaseFile = new MoveDatabaseFile(file)) {
+			checkFile(databaseFile, 1000);
+		}
+	}
+	
+	@Test
+	public void getMoves_smallWindows() throws IOException {
+		// Windows of 16 bytes, so that records and games cross windows.
+		File file = writeFile(300);
+		try(MoveDatabaseFile databaseFile = new MoveDatabaseFile(file, 4)) {
+			checkFile(databaseFile, 300);
+		}
+	}
+	
+	@Test
+	public void emptyFile() throws IOException {
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		try(MoveDatabaseFile.Writer writer = new MoveDatabaseFile.Writer(file)) {
+			writer.finish();
+		}
+		
+		try(MoveDatabaseFile databaseFile = new MoveDatabaseFile(file)) {
+			assertEquals(0, databaseFile.getMoves(0).size());
+			assertEquals(0, databaseFile.getGameIds(0).length);
+			assertNull(databaseFile.getGame(0));
+			assertEquals(0, databaseFile.getNextGameId());
+		}
+	}
+	
+	@Test
+	public void getGameTags() throws IOException {
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		try(MoveDatabaseFile.Writer writer = new MoveDatabaseFile.Writer(file)) {
+			writer.addGame(0, "[White \"a\"]\r\n[Black \"b\"]\r\n\r\n1.e4 1-0");
+			writer.addGame(1, "[White \"a\"]\n\n1.e4 1-0");
+			writer.addGame(2, "1.e4 1-0");
+			writer.finish();
+		}
+		
+		try(MoveDatabaseFile databaseFile = new MoveDatabaseFile(file)) {
+			assertEquals("[White \"a\"]\r\n[Black \"b\"]\r\n\r\n", databaseFile.getGameTags(0));
+			assertEquals("[White \"a\"]\n\n", databaseFile.getGameTags(1));
+			assertEquals("1.e4 1-0", databaseFile.getGameTags(2));
+			assertNull(databaseFile.getGameTags(3));
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void addMove_notInOrder() throws IOException {
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		try(MoveDatabaseFile.Writer writer = new MoveDatabaseFile.Writer(file)) {
+			writer.addMove(2, new Move("e2", "e4"), 1, 0, 0);
+			writer.addMove(1, new Move("e2", "e4"), 1, 0, 0);
+		}
+	}
+	
+	@Test(expected=IOException.class)
+	public void unsupportedVersion() throws IOException {
+		File file = writeFile(1);
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.seek(8);
+			randomAccessFile.writeInt(MoveDatabaseFile.VERSION + 1);
+		}
+		
+		assertTrue(MoveDatabaseFile.isMoveDatabaseFile(file));
+		new MoveDatabaseFile(file).close();
+	}
+	
+	@Test
+	public void isMoveDatabaseFile() throws IOException {
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		assertFalse(MoveDatabaseFile.isMoveDatabaseFile(file));
+		assertTrue(MoveDatabaseFile.isMoveDatabaseFile(writeFile(1)));
+	}
+	
+	/**
+	 * Writes a file with positions keyed by negative and positive numbers, where position i has i % 3 + 1 moves and
+	 * is reached by games i and i + 1, where game i played move i % 3 and the move of game i + 1 isn't known, and game
+	 * i has the pgn "game i".
+	 */
+	private static File writeFile(int positions) throws IOException {
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		try(MoveDatabaseFile.Writer writer = new MoveDatabaseFile.Writer(file)) {
+			for(int i = 0; i < positions; i++) {
+				for(int j = 0; j <= i % 3; j++) {
+					writer.addMove(positionKey(i), new Move(Square.fromIndex(j), Square.fromIndex(j + 8)), i, j, 1);
+				}
+			}
+			for(int i = 0; i < positions; i++) {
+				writer.addPositionGame(positionKey(i), i, i % 3);
+				writer.addPositionGame(positionKey(i), i + 1, -1);
+			}
+			for(int i = 0; i <= positions; i++) {
+				writer.addGame(i, "game " + i);
+			}
+			writer.finish();
+		}
+		return file;
+	}
+	
+	private static long positionKey(int i) {
+		return i * 1000003L - 100000000L;
+	}
+	
+	private static void checkFile(MoveDatabaseFile databaseFile, int positions) {
+		for(int i = 0; i < positions; i++) {
+			List<DatabaseMove> moves = databaseFile.getMoves(positionKey(i));
+			assertEquals(i % 3 + 1, moves.size());
+			for(int j = 0; j < moves.size(); j++) {
+				assertEquals(new Move(Square.fromIndex(j), Square.fromIndex(j + 8)), moves.get(j).getMove());
+				assertEquals(i + "/" + j + "/1", moves.get(j).toString());
+			}
+			
+			assertArrayEquals(new int[] { i, i + 1 }, databaseFile.getGameIds(positionKey(i)));
+			long record = databaseFile.findPositionGames(positionKey(i));
+			assertEquals(i % 3, databaseFile.getPositionGameMove(record));
+			assertEquals(-1, databaseFile.getPositionGameMove(record + 1));
+			assertEquals(0, databaseFile.getMoves(positionKey(i) + 1).size());
+		}
+		
+		assertEquals(0, databaseFile.getMoves(Long.MIN_VALUE).size());
+		assertEquals(0, databaseFile.getMoves(Long.MAX_VALUE).size());
+		assertEquals(0, databaseFile.getGameIds(Long.MAX_VALUE).length);
+		
+		assertEquals("game 0", databaseFile.getGame(0));
+		assertEquals("game " + positions, databaseFile.getGame(positions));
+		assertNull(databaseFile.getGame(positions + 1));
+		assertNull(databaseFile.getGame(-1));
+		assertEquals(positions + 1, databaseFile.getNextGameId());
+	}
+}
@@ -1,12 +1,28 @@
 package domain;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Test;
 
+import pgn.ParseException;
+import pgn.PgnGame;
+import pgn.PgnImporter;
+
 public class MoveDatabaseTest {
 	@Test
 	public void addMove() {
@@ -94,4 +110,356 @@ public class MoveDatabaseTest {
 		assertEquals(Arrays.asList("abc", "def"), database.getGames(new Board()));
 		
 	}
+	
+	@Test
+	public void getMoves_transposition() throws IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		
+		Board board1 = new Board().makePgnMove("Nf3").makePgnMove("Nf6").makePgnMove("Nc3");
+		Board board2 = new Board().makePgnMove("Nc3").makePgnMove("Nf6").makePgnMove("Nf3");
+		
+		database.addMove(0, board1, new DatabaseMove(new Move("e7", "e5"), 1, 0, 0));
+		
+		assertEquals(1, database.getMoves(board2).size());
+	}
+	
+	@Test
+	public void saveAndImportDatabase() throws IOException {
+		MoveDatabase database = new MoveDatabase();
+		database.addGame("abc");
+		database.addMove(0, new Board(), new DatabaseMove(new Move("e2", "e4"), 1, 0, 0));
+		
+		File file = File.createTempFile("movedb", ".gz");
+		file.deleteOnExit();
+		database.saveDatabase(file);
+		
+		MoveDatabase imported = new MoveDatabase();
+		imported.importDatabase(file);
+		
+		assertEquals(1, imported.getMoves(new Board()).get(0).getWin());
+		assertEquals(Arrays.asList("abc"), imported.getGames(new Board()));
+		assertEquals("abc", imported.getGame(0));
+		assertTrue(MoveDatabaseFile.isMoveDatabaseFile(file));
+	}
+	
+	@Test
+	public void importDatabase_addGamesAfterImport() throws IOException, ParseException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games("[Result \"1-0\"]\n\n1.e4 e5 1-0", "[Result \"0-1\"]\n\n1.d4 0-1"));
+		
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		database.saveDatabase(file);
+		
+		MoveDatabase imported = new MoveDatabase();
+		imported.importDatabase(file);
+		imported.importPgnGames(games("[Result \"1/2-1/2\"]\n\n1.e4 c5 1/2-1/2", "[Result \"1-0\"]\n\n1.e4 e5 1-0"));
+		
+		List<DatabaseMove> moves = imported.getMoves(new Board());
+		assertEquals(2, moves.size());
+		assertEquals(new Move("e2", "e4"), moves.get(0).getMove());
+		assertEquals("2/1/0", moves.get(0).toString());
+		assertEquals("0/0/1", moves.get(1).toString());
+		assertEquals(3, imported.getGames(new Board().makePgnMove("e4")).size());
+		assertEquals("[Result \"1/2-1/2\"]\n\n1.e4 c5 1/2-1/2", imported.getGame(2));
+		
+		// Saving again over the mapped file merges the file with the new games.
+		imported.saveDatabase(file);
+		MoveDatabase reimported = new MoveDatabase();
+		reimported.importDatabase(file);
+		
+		assertEquals("2/1/0", reimported.getMoves(new Board()).get(0).toString());
+		assertEquals(2, reimported.getMoves(new Board().makePgnMove("e4")).size());
+		assertEquals(4, reimported.getGames(new Board()).size());
+		assertEquals("[Result \"0-1\"]\n\n1.d4 0-1", reimported.getGame(1));
+		assertEquals(4, reimported.addGame("abc"));
+	}
+	
+	@Test
+	public void importDatabase_legacyPositionText() throws IOException {
+		File file = File.createTempFile("movedb", ".gz");
+		file.deleteOnExit();
+		try(Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
+			writer.append("insert into Game values ( 0, 'abc' );\n");
+			writer.append("insert into PositionGame values ( 0, 'rnbqkbnr/pppppppp/11111111/11111111/11111111/11111111/PPPPPPPP/RNBQKBNR w KQkq - 0 1', 0 );\n");
+			writer.append("insert into PositionMove values ( 0, 'rnbqkbnr/pppppppp/11111111/11111111/11111111/11111111/PPPPPPPP/RNBQKBNR w KQkq - 0 1', 'e2', 'e4', FALSE, '', 3, 0, 0 );\n");
+		}
+		
+		MoveDatabase database = new MoveDatabase();
+		database.importDatabase(file);
+		
+		assertEquals(3, database.getMoves(new Board()).get(0).getWin());
+		assertEquals(Arrays.asList("abc"), database.getGames(new Board()));
+	}
+	
+	@Test
+	public void importPgnGames() throws ParseException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games(
+			"[Result \"1-0\"]\n\n1.e4 e5 1-0",
+			"[Result \"0-1\"]\n\n1.e4 c5 0-1",
+			"[Result \"1/2-1/2\"]\n\n1.d4 1/2-1/2"
+		));
+		
+		List<DatabaseMove> moves = database.getMoves(new Board());
+		assertEquals(2, moves.size());
+		assertEquals(new Move("e2", "e4"), moves.get(0).getMove());
+		assertEquals("1/0/1", moves.get(0).toString());
+		assertEquals("0/1/0", moves.get(1).toString());
+		
+		assertEquals(2, database.getMoves(new Board().makePgnMove("e4")).size());
+		assertEquals(3, database.getGames(new Board()).size());
+		assertEquals(2, database.getGames(new Board().makePgnMove("e4")).size());
+	}
+	
+	@Test
+	public void getGameIds() throws ParseException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games(
+			"[Result \"1-0\"]\n\n1.e4 e5 2.Nf3 1-0",
+			"[Result \"0-1\"]\n\n1.Nf3 e5 2.e4 0-1",
+			"[Result \"1/2-1/2\"]\n\n1.e4 c5 2.Nf3 1/2-1/2",
+			"[Result \"1-0\"]\n\n1.Nf3 Nf6 2.Ng1 Ng8 3.Nf3 1-0"
+		));
+		checkGameIds(database);
+		
+		// Without the index, the same games are found from the tables.
+		database.addMove(database.addGame("abc"), new Board().makePgnMove("d4"), new DatabaseMove(new Move("d7", "d5"), 1, 0, 0));
+		checkGameIds(database);
+	}
+	
+	private static void checkGameIds(MoveDatabase database) throws IllegalMoveException {
+		Board e4 = new Board().makePgnMove("e4");
+		Board e4e5 = e4.makePgnMove("e5");
+		Board nf3 = new Board().makePgnMove("Nf3");
+		
+		assertEquals(2, database.getGameCount(e4));
+		
+		// The last game repeats the position after 1.Nf3, but is only counted once.
+		assertEquals(2, database.getGameCount(nf3));
+		assertArrayEquals(new int[] { 1, 3 }, database.getGameIds(10, nf3));
+		
+		assertArrayEquals(new int[] { 0, 2 }, database.getGameIds(10, new Board(), e4));
+		assertArrayEquals(new int[] { 0 }, database.getGameIds(10, e4, e4e5));
+		assertArrayEquals(new int[] { 0 }, database.getGameIds(1, new Board()));
+		assertEquals(0, database.getGameIds(10, e4, nf3).length);
+		assertEquals(2, database.getGames(new Board(), 2).size());
+	}
+	
+	@Test
+	public void getMoves_filter() throws IOException, ParseException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(filterGames());
+		checkFilter(database);
+		
+		// Without the index, the same moves are counted from the tables.
+		database.addMove(database.addGame("abc"), new Board().makePgnMove("c4"), new DatabaseMove(new Move("e7", "e5"), 1, 0, 0));
+		checkFilter(database);
+		
+		// Games in a saved file are filtered from their tags.
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		database.saveDatabase(file);
+		MoveDatabase imported = new MoveDatabase();
+		imported.importDatabase(file);
+		checkFilter(imported);
+	}
+	
+	private static List<PgnGame> filterGames() throws ParseException {
+		return games(
+			"[White \"a\"]\n[Black \"b\"]\n[WhiteElo \"2500\"]\n[BlackElo \"2400\"]\n[Date \"2001.05.01\"]\n[Result \"1-0\"]\n\n1.e4 e5 2.Nf3 1-0",
+			"[White \"b\"]\n[Black \"c\"]\n[WhiteElo \"2200\"]\n[BlackElo \"2600\"]\n[Date \"2010.??.??\"]\n[Result \"0-1\"]\n\n1.e4 c5 2.Nf3 0-1",
+			"[White \"c\"]\n[Black \"a\"]\n[Date \"1995.01.01\"]\n[Result \"1/2-1/2\"]\n\n1.d4 d5 1/2-1/2",
+			"[White \"a\"]\n[Black \"c\"]\n[WhiteElo \"2550\"]\n[BlackElo \"2450\"]\n[Date \"2005.03.02\"]\n[Result \"1-0\"]\n\n1.e4 e5 2.Bc4 1-0"
+		);
+	}
+	
+	private static void checkFilter(MoveDatabase database) throws IllegalMoveException {
+		Board e4 = new Board().makePgnMove("e4");
+		Board e4e5 = e4.makePgnMove("e5");
+		
+		List<DatabaseMove> moves = database.getMoves(new Board(), GameFilter.ALL.withPlayer("a"));
+		assertEquals(2, moves.size());
+		assertEquals(new Move("e2", "e4"), moves.get(0).getMove());
+		assertEquals("2/0/0", moves.get(0).toString());
+		assertEquals("0/1/0", moves.get(1).toString());
+		
+		moves = database.getMoves(e4, GameFilter.ALL.withRatings(2400, 2600));
+		assertEquals(1, moves.size());
+		assertEquals(new Move("e7", "e5"), moves.get(0).getMove());
+		assertEquals("2/0/0", moves.get(0).toString());
+		
+		moves = database.getMoves(e4e5, GameFilter.ALL.withDates("2002.01.01", null));
+		assertEquals(1, moves.size());
+		assertEquals(new Move("f1", "c4"), moves.get(0).getMove());
+		
+		moves = database.getMoves(e4, GameFilter.ALL.withResult(GameResult.BLACK_WIN).withDates("2010", "2011"));
+		assertEquals(1, moves.size());
+		assertEquals("0/0/1", moves.get(0).toString());
+		
+		assertEquals(0, database.getMoves(e4, GameFilter.ALL.withPlayer("d")).size());
+		
+		GameList games = database.getGameList(new Board(), GameFilter.ALL.withPlayer("c"));
+		assertEquals(3, games.size());
+		List<GameHeader> headers = games.sortedBy(GameList.Sort.DATE, false).getHeaders(0, 10);
+		assertEquals(2, headers.get(0).getId());
+		assertEquals(3, headers.get(1).getId());
+		assertEquals(1, headers.get(2).getId());
+		assertEquals(2600, headers.get(2).getBlackElo());
+		
+		assertEquals(2, database.getGameList(e4e5, GameFilter.ALL.withRatings(2400, 3000)).size());
+		assertEquals(1, database.getGameList(e4e5, GameFilter.ALL.withRatings(2400, 3000).withPlayer("b")).size());
+	}
+	
+	@Test
+	public void importPgnGames_existingMoves() throws ParseException {
+		MoveDatabase database = new MoveDatabase();
+		database.addGame("abc");
+		database.addMove(0, new Board(), new DatabaseMove(new Move("e2", "e4"), 1, 0, 0));
+		
+		database.importPgnGames(games("[Result \"1-0\"]\n\n1.e4 1-0", "[Result \"1-0\"]\n\n1.d4 1-0"));
+		
+		List<DatabaseMove> moves = database.getMoves(new Board());
+		assertEquals(2, moves.size());
+		assertEquals("2/0/0", moves.get(0).toString());
+		assertEquals("1/0/0", moves.get(1).toString());
+		assertEquals(3, database.getGames(new Board()).size());
+		assertEquals(3, database.addGame("def"));
+	}
+	
+	@Test
+	public void importPgnGames_append() throws IOException, ParseException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games("[Result \"1-0\"]\n\n1.e4 e5 1-0", "[Result \"0-1\"]\n\n1.d4 0-1"));
+		
+		// The first game is already in the database with different line breaks, and the last is appended twice.
+		database.importPgnGames(games(
+			"[Result \"1-0\"]\r\n\r\n1.e4\r\ne5 1-0\r\n",
+			"[Result \"1/2-1/2\"]\n\n1.e4 c5 1/2-1/2",
+			"[Result \"1/2-1/2\"]\n\n1.e4 c5 1/2-1/2"
+		), true);
+		
+		List<DatabaseMove> moves = database.getMoves(new Board());
+		assertEquals("1/1/0", moves.get(0).toString());
+		assertEquals("0/0/1", moves.get(1).toString());
+		assertEquals(2, database.getMoves(new Board().makePgnMove("e4")).size());
+		assertEquals(3, database.getGames(new Board()).size());
+		assertEquals("[Result \"1/2-1/2\"]\n\n1.e4 c5 1/2-1/2", database.getGame(2));
+		
+		// Games in a saved file are found too.
+		File file = File.createTempFile("movedb", ".db");
+		file.deleteOnExit();
+		database.saveDatabase(file);
+		MoveDatabase imported = new MoveDatabase();
+		imported.importDatabase(file);
+		imported.importPgnGames(games("[Result \"0-1\"]\n\n1.d4 0-1", "[Result \"1-0\"]\n\n1.d4 d5 1-0"), true);
+		
+		for(DatabaseMove move:imported.getMoves(new Board())) {
+			assertEquals(move.getMove().equals(new Move("d2", "d4")) ? "1/0/1" : "1/1/0", move.toString());
+		}
+		assertEquals(4, imported.getGames(new Board()).size());
+	}
+	
+	@Test
+	public void getGameHash() {
+		assertEquals(MoveDatabase.getGameHash("[Result \"1-0\"]\n\n1.e4 1-0"), MoveDatabase.getGameHash(" [Result \"1-0\"]\r\n\r\n1.e4  1-0\n"));
+		assertNotEquals(MoveDatabase.getGameHash("[Result \"1-0\"]\n\n1.e4 1-0"), MoveDatabase.getGameHash("[Result \"1-0\"]\n\n1.e3 1-0"));
+		assertNotEquals(MoveDatabase.getGameHash("1.e4 1-0"), MoveDatabase.getGameHash("1.e41-0"));
+	}
+	
+	@Test
+	public void addMove_afterImport() throws ParseException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games("[Result \"1-0\"]\n\n1.e4 1-0"));
+		database.addMove(1, new Board(), new DatabaseMove(new Move("d2", "d4"), 0, 0, 2));
+		
+		List<DatabaseMove> moves = database.getMoves(new Board());
+		assertEquals(2, moves.size());
+		assertEquals("0/0/2", moves.get(0).toString());
+		assertEquals("1/0/0", moves.get(1).toString());
+	}
+	
+	@Test
+	public void importPgnGames_unknownResult() throws ParseException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games("[Result \"*\"]\n\n1.e4 *"));
+		
+		assertEquals(0, database.getMoves(new Board()).size());
+		assertEquals(0, database.getGames(new Board()).size());
+	}
+	
+	@Test
+	public void persistentDatabase() throws IOException, ParseException {
+		File directory = Files.createTempDirectory("movedb").toFile();
+		File file = new File(directory, "movedb");
+		try {
+			MoveDatabase database = new MoveDatabase(file, 1024);
+			assertTrue(database.isPersistent());
+			database.importPgnGames(games("[Result \"1-0\"]\n\n1.e4 e5 1-0", "[Result \"0-1\"]\n\n1.d4 0-1"));
+			database.addMove(database.addGame("abc"), new Board(), new DatabaseMove(new Move("e2", "e4"), 0, 1, 0));
+			database.close();
+			
+			// Opening the database again keeps what was added.
+			MoveDatabase reopened = new MoveDatabase(file, 1024);
+			List<DatabaseMove> moves = reopened.getMoves(new Board());
+			assertEquals(2, moves.size());
+			assertEquals("1/1/0", moves.get(0).toString());
+			assertEquals("abc", reopened.getGame(2));
+			assertEquals(3, reopened.getGames(new Board()).size());
+			
+			reopened.clear();
+			assertEquals(0, reopened.getMoves(new Board()).size());
+			reopened.close();
+		} finally {
+			for(File databaseFile:directory.listFiles()) {
+				databaseFile.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	@Test
+	public void persistentDatabase_importDatabase() throws IOException, ParseException, IllegalMoveException {
+		MoveDatabase saved = new MoveDatabase();
+		saved.importPgnGames(games("[Result \"1-0\"]\n\n1.e4 e5 1-0", "[Result \"0-1\"]\n\n1.d4 0-1"));
+		File savedFile = File.createTempFile("movedb", ".db");
+		savedFile.deleteOnExit();
+		saved.saveDatabase(savedFile);
+		
+		File directory = Files.createTempDirectory("movedb").toFile();
+		File file = new File(directory, "movedb");
+		try {
+			MoveDatabase database = new MoveDatabase(file, 1024);
+			database.importDatabase(savedFile);
+			assertEquals(2, database.addGame("abc"));
+			database.close();
+			
+			// The imported games are still there once the saved file is gone.
+			assertTrue(savedFile.delete());
+			MoveDatabase reopened = new MoveDatabase(file, 1024);
+			List<DatabaseMove> moves = reopened.getMoves(new Board());
+			assertEquals(2, moves.size());
+			for(DatabaseMove move:moves) {
+				assertEquals(move.getMove().equals(new Move("d2", "d4")) ? "0/0/1" : "1/0/0", move.toString());
+			}
+			assertEquals(1, reopened.getMoves(new Board().makePgnMove("e4")).size());
+			assertEquals(2, reopened.getGames(new Board()).size());
+			assertEquals("[Result \"0-1\"]\n\n1.d4 0-1", reopened.getGame(1));
+			assertEquals("abc", reopened.getGame(2));
+			reopened.close();
+		} finally {
+			for(File databaseFile:directory.listFiles()) {
+				databaseFile.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	private static List<PgnGame> games(String... pgns) throws ParseException {
+		List<PgnGame> games = new ArrayList<>();
+		for(String pgn:pgns) {
+			games.add(new PgnImporter().importPgn(pgn));
+		}
+		return games;
+	}
 }
@@ -0,0 +1,56 @@
+package domain;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import domain.Perft.ReferencePosition;
+import domain.search.TranspositionTable;
+
+public class PerftTest {
+	// Only check depths up to this many nodes, to keep the tests quick. Run Perft for the full depths.
+	private static final long MAX_NODES = 200000;
+	
+	@Test
+	public void referencePositions() {
+		for(ReferencePosition position:Perft.REFERENCE_POSITIONS) {
+			Board board = new Board(position.getFen());
+			for(int depth = 1; depth <= position.getMaxDepth() && position.getCount(depth) <= MAX_NODES; depth++) {
+				assertEquals(position.getName() + " depth " + depth, position.getCount(depth), Perft.perft(board, depth));
+			}
+		}
+	}
+	
+	@Test
+	public void referencePositions_hashed() {
+		// A small table, so that entries are replaced as well.
+		TranspositionTable transpositionTable = new TranspositionTable(1);
+		for(ReferencePosition position:Perft.REFERENCE_POSITIONS) {
+			Board board = new Board(position.getFen());
+			for(int depth = 1; depth <= position.getMaxDepth() && position.getCount(depth) <= MAX_NODES * 5; depth++) {
+				assertEquals(position.getName() + " depth " + depth, position.getCount(depth), Perft.perft(board, depth, transpositionTable));
+			}
+		}
+	}
+	
+	@Test
+	public void depthZero() {
+		assertEquals(1, Perft.perft(new Board(), 0));
+	}
+	
+	@Test
+	public void divide() {
+		Map<String, Long> counts = Perft.divide(new Board(), 3);
+		
+		assertEquals(20, counts.size());
+		assertEquals(Long.valueOf(600), counts.get("e2e4"));
+		
+		long total = 0;
+		for(long count:counts.values()) {
+			total += count;
+		}
+		assertEquals(8902, total);
+	}
+}
@@ -0,0 +1,102 @@
+package domain;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import pgn.MappedPgnFile;
+import util.FileUtil;
+
+public class PgnImportPipelineTest {
+	@Test
+	public void importPgn() throws IOException, IllegalMoveException {
+		String pgn = "[Result \"1-0\"]\n\n1.e4 e5 1-0\n\n"
+			+ "[Result \"0-1\"]\n\n1.e4 c5 0-1\n\n"
+			+ "[Result \"1/2-1/2\"]\n\n1.d4 1/2-1/2\n\n"
+			+ "[Result \"*\"]\n\n1.d4 *\n\n"
+			+ "[Result \"1-0\"]\n\n1.e5 1-0\n\n"
+			+ "[Variant \"Chess960\"]\n[Result \"1-0\"]\n\n1.e4 1-0\n\n"
+			+ "[Variant \"Crazyhouse\"]\n[Result \"1-0\"]\n\n1.e4 d5 2.exd5 Qxd5 3.P@e4 1-0";
+		
+		MoveDatabase database = new MoveDatabase();
+		new PgnImportPipeline(database, 2).importPgn(new StringReader(pgn));
+		
+		List<DatabaseMove> moves = database.getMoves(new Board());
+		assertEquals(2, moves.size());
+		assertEquals("1/0/1", moves.get(0).toString());
+		assertEquals("0/1/0", moves.get(1).toString());
+		assertEquals(2, database.getMoves(new Board().makePgnMove("e4")).size());
+		assertEquals(3, database.getGames(new Board()).size());
+	}
+	
+	@Test(expected=StackOverflowError.class, timeout=60000)
+	public void importPgn_workerError() throws IOException {
+		// Variations nested deeply enough to overflow the stack of the movetext parser.
+		StringBuilder pgn = new StringBuilder("[Result \"1-0\"]\n\n1.e4 ");
+		for(int i = 0; i < 1000000; i++) {
+			pgn.append("(1.d4 ");
+		}
+		pgn.append("1-0");
+		
+		new PgnImportPipeline(new MoveDatabase(), 2).importPgn(new StringReader(pgn.toString()));
+	}
+	
+	@Test
+	public void importPgn_append() throws IOException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		new PgnImportPipeline(database, 2).importPgn(new StringReader("[Result \"1-0\"]\n\n1.e4 e5 1-0\n\n[Result \"0-1\"]\n\n1.d4 0-1"));
+		new PgnImportPipeline(database, 2, true).importPgn(new StringReader("[Result \"1-0\"]\n\n1.e4 e5 1-0\n\n[Result \"1-0\"]\n\n1.e4 c5 1-0"));
+		
+		List<DatabaseMove> moves = database.getMoves(new Board());
+		assertEquals(2, moves.size());
+		assertEquals("2/0/0", moves.get(0).toString());
+		assertEquals(3, database.getGames(new Board()).size());
+		assertEquals(2, database.getMoves(new Board().makePgnMove("e4")).size());
+	}
+	
+	@Test
+	public void importPgn_sameAsImportPgnGames() throws Exception {
+		String pgn = FileUtil.readResource("/resource/games.pgn");
+		
+		MoveDatabase expected = new MoveDatabase();
+		expected.importPgnGames(new pgn.PgnImporter().importCollection(pgn));
+		
+		MoveDatabase database = new MoveDatabase();
+		new PgnImportPipeline(database, 3).importPgn(new StringReader(pgn));
+		
+		Board board = new Board();
+		for(String move:new String[] { "e4", "e5", "Nf3" }) {
+			assertEquals(expected.getMoves(board).toString(), database.getMoves(board).toString());
+			assertEquals(expected.getGames(board).size(), database.getGames(board).size());
+			board = board.makePgnMove(move);
+		}
+	}
+	
+	@Test
+	public void importPgn_mappedFile() throws Exception {
+		String pgn = FileUtil.readResource("/resource/games.pgn");
+		File file = File.createTempFile("games", ".pgn");
+		file.deleteOnExit();
+		FileUtil.writeFile(file.getPath(), pgn);
+		
+		MoveDatabase expected = new MoveDatabase();
+		new PgnImportPipeline(expected, 1).importPgn(new StringReader(pgn));
+		
+		MoveDatabase database = new MoveDatabase();
+		try(MappedPgnFile mappedFile = new MappedPgnFile(file)) {
+			new PgnImportPipeline(database, 3).importPgn(mappedFile);
+		}
+		
+		Board board = new Board();
+		for(String move:new String[] { "e4", "e5", "Nf3" }) {
+			assertEquals(expected.getMoves(board).toString(), database.getMoves(board).toString());
+			assertEquals(expected.getGames(board).size(), database.getGames(board).size());
+			board = board.makePgnMove(move);
+		}
+	}
+}
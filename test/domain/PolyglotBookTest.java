@@ -0,0 +1,182 @@
+package domain;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pgn.ParseException;
+import pgn.PgnGame;
+import pgn.PgnImporter;
+
+public class PolyglotBookTest {
+	@Test
+	public void encodeMove() {
+		assertEquals(0x031c, PolyglotBook.encodeMove(new Move("e2", "e4")));
+		assertEquals(0x0107, PolyglotBook.encodeMove(new Move(new Square("e1"), new Square("g1"), true, null)));
+		assertEquals(0x0f38, PolyglotBook.encodeMove(new Move(new Square("e8"), new Square("c8"), true, null)));
+		assertEquals(0x4c7b, PolyglotBook.encodeMove(new Move("b7", "d8", PromotionChoice.QUEEN)));
+		assertEquals(0x1c7b, PolyglotBook.encodeMove(new Move("b7", "d8", PromotionChoice.KNIGHT)));
+	}
+	
+	@Test
+	public void decodeMove() {
+		Board board = new Board("r3k2r/1P6/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		Move[] moves = {
+			new Move("e1", "e2"),
+			new Move(new Square("e1"), new Square("g1"), true, null),
+			new Move(new Square("e1"), new Square("c1"), true, null),
+			new Move("b7", "a8", PromotionChoice.ROOK),
+			new Move("a1", "a8")
+		};
+		for(Move move:moves) {
+			assertEquals(move, PolyglotBook.decodeMove(board, PolyglotBook.encodeMove(move)));
+		}
+		
+		// A king that doesn't start on the e-file castles onto its rook too, but doesn't when taking a rook.
+		board = new Board("1r3k1r/8/8/8/8/8/8/1R3K1R w BHbh - 0 1");
+		Move castling = new Move(new Square("f1"), new Square("g1"), true, null);
+		assertEquals(castling, PolyglotBook.decodeMove(board, PolyglotBook.encodeMove(castling)));
+		board = new Board("4k3/8/8/8/8/8/8/4Kr2 w - - 0 1");
+		assertEquals(new Move("e1", "f1"), PolyglotBook.decodeMove(board, PolyglotBook.encodeMove(new Move("e1", "f1"))));
+	}
+	
+	@Test
+	public void getKey() throws IllegalMoveException {
+		// The keys given with the description of the Polyglot book format.
+		String[] moves = { "e4", "d5", "e5", "f5", "Ke2", "Kf7" };
+		long[] keys = {
+			0x463b96181691fc9cL, 0x823c9b50fd114196L, 0x0756b94461c50fb0L, 0x662fafb965db29d4L,
+			0x22a48b5a8e47ff78L, 0x652a607ca3f242c1L, 0x00fdd303c946bdd9L
+		};
+		Board board = new Board();
+		assertEquals(keys[0], PolyglotBook.getKey(board));
+		for(int i = 0; i < moves.length; i++) {
+			board = board.makePgnMove(moves[i]);
+			assertEquals(keys[i + 1], PolyglotBook.getKey(board));
+		}
+		
+		board = new Board().makePgnMove("a4").makePgnMove("b5").makePgnMove("h4").makePgnMove("b4").makePgnMove("c4");
+		assertEquals(0x3c8123ea7b067637L, PolyglotBook.getKey(board));
+		board = board.makePgnMove("bxc3").makePgnMove("Ra3");
+		assertEquals(0x5c3f9b829b279560L, PolyglotBook.getKey(board));
+	}
+	
+	@Test
+	public void writeAndGetMoves() throws IOException, ParseException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games(
+			"[Result \"1-0\"]\n\n1.e4 e5 2.Nf3 1-0",
+			"[Result \"1-0\"]\n\n1.e4 c5 1-0",
+			"[Result \"0-1\"]\n\n1.d4 d5 0-1",
+			"[Result \"1/2-1/2\"]\n\n1.d4 Nf6 1/2-1/2",
+			"[Result \"0-1\"]\n\n1.c4 0-1"
+		));
+		
+		File file = File.createTempFile("book", ".bin");
+		file.deleteOnExit();
+		PolyglotBook.write(file, database, PolyglotBook.Weighting.SCORE, 2);
+		
+		try(PolyglotBook book = new PolyglotBook(file)) {
+			// 1.c4 and the replies to 1.e4 scored nothing for the side playing them, so they are left out.
+			List<BookMove> moves = book.getMoves(new Board());
+			assertEquals(2, moves.size());
+			assertEquals(new Move("e2", "e4"), moves.get(0).getMove());
+			assertEquals(4, moves.get(0).getWeight());
+			assertEquals(new Move("d2", "d4"), moves.get(1).getMove());
+			assertEquals(1, moves.get(1).getWeight());
+			
+			moves = book.getMoves(new Board().makePgnMove("d4"));
+			assertEquals(2, moves.size());
+			assertEquals(new Move("d7", "d5"), moves.get(0).getMove());
+			assertEquals(2, moves.get(0).getWeight());
+			
+			// Only two plies were written.
+			assertEquals(0, book.getMoves(new Board().makePgnMove("e4").makePgnMove("e5")).size());
+			assertEquals(4, book.getEntryCount());
+			
+			for(long entry = 1; entry < book.getEntryCount(); entry++) {
+				assertEquals(true, Long.compareUnsigned(book.getKey(entry - 1), book.getKey(entry)) <= 0);
+			}
+		}
+	}
+	
+	@Test
+	public void write_transposition() throws IOException, ParseException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		database.importPgnGames(games(
+			"[Result \"1-0\"]\n\n1.Nf3 Nf6 2.e4 Ng8 3.Ng1 e5 1-0",
+			"[Result \"1-0\"]\n\n1.Nf3 Nf6 2.e4 Ng8 3.Ng1 e5 1-0",
+			"[Result \"1-0\"]\n\n1.e4 e5 2.Bc4 Bc5 1-0"
+		));
+		
+		File file = File.createTempFile("book", ".bin");
+		file.deleteOnExit();
+		PolyglotBook.write(file, database, PolyglotBook.Weighting.GAMES, 7);
+		
+		try(PolyglotBook book = new PolyglotBook(file)) {
+			// 1.e4 e5 is first reached by the longer move order with one ply left, then by 1.e4 e5 with five.
+			Board board = new Board().makePgnMove("e4").makePgnMove("e5");
+			assertEquals(1, book.getMoves(board).size());
+			
+			List<BookMove> moves = book.getMoves(board.makePgnMove("Bc4"));
+			assertEquals(1, moves.size());
+			assertEquals(new Move("f8", "c5"), moves.get(0).getMove());
+		}
+	}
+	
+	@Test
+	public void write_scaleWeights() throws IOException, IllegalMoveException {
+		MoveDatabase database = new MoveDatabase();
+		database.addMove(0, new Board(), new DatabaseMove(new Move("e2", "e4"), 200000, 0, 0));
+		database.addMove(0, new Board(), new DatabaseMove(new Move("d2", "d4"), 1, 0, 0));
+		
+		File file = File.createTempFile("book", ".bin");
+		file.deleteOnExit();
+		PolyglotBook.write(file, database, PolyglotBook.Weighting.GAMES, 1);
+		
+		try(PolyglotBook book = new PolyglotBook(file)) {
+			List<BookMove> moves = book.getMoves(new Board());
+			assertEquals(65535, moves.get(0).getWeight());
+			assertEquals(1, moves.get(1).getWeight());
+		}
+	}
+	
+	@Test
+	public void findFirst_unsignedKeys() throws IOException {
+		File file = File.createTempFile("book", ".bin");
+		file.deleteOnExit();
+		long[] keys = { 1, 5, 5, Long.MAX_VALUE, Long.MIN_VALUE, -1 };
+		try(DataOutputStream output = new DataOutputStream(new FileOutputStream(file))) {
+			for(long key:keys) {
+				output.writeLong(key);
+				output.writeShort(0);
+				output.writeShort(1);
+				output.writeInt(0);
+			}
+		}
+		
+		try(PolyglotBook book = new PolyglotBook(file)) {
+			assertEquals(0, book.findFirst(0));
+			assertEquals(1, book.findFirst(5));
+			assertEquals(3, book.findFirst(6));
+			assertEquals(4, book.findFirst(Long.MIN_VALUE));
+			assertEquals(5, book.findFirst(-1));
+			assertEquals(5, book.findFirst(-2));
+		}
+	}
+	
+	private static List<PgnGame> games(String... pgns) throws ParseException {
+		List<PgnGame> games = new ArrayList<>();
+		for(String pgn:pgns) {
+			games.add(new PgnImporter().importPgn(pgn));
+		}
+		return games;
+	}
+}
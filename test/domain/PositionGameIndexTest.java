@@ -0,0 +1,119 @@
+package domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class PositionGameIndexTest {
+	@Test
+	public void getGameIds() {
+		PositionGameIndex.Builder builder = new PositionGameIndex.Builder();
+		builder.add(-5, 0, -1);
+		builder.add(-5, 3, 1);
+		builder.add(-5, 3, 1);
+		builder.add(-5, 3, 2);
+		builder.add(-5, 200, 1);
+		builder.add(-5, 100000000, 1);
+		builder.add(7, 3, 1);
+		PositionGameIndex index = builder.build();
+		
+		// A game repeating a position is only counted once, even if it played a different move.
+		assertEquals(4, index.getGameCount(-5));
+		assertArrayEquals(new int[] { 0, 3, 200, 100000000 }, index.getGameIds(-5, 10));
+		assertArrayEquals(new int[] { 0, 3 }, index.getGameIds(-5, 2));
+		assertArrayEquals(new int[] { 3 }, index.getGameIds(7, 10));
+		
+		assertEquals(0, index.getGameCount(0));
+		assertEquals(0, index.getGameIds(0, 10).length);
+	}
+	
+	@Test
+	public void getCommonGameIds() {
+		PositionGameIndex.Builder builder = new PositionGameIndex.Builder();
+		for(int i = 0; i < 1000; i++) {
+			if(i % 2 == 0) builder.add(1, i, 0);
+		}
+		for(int i = 0; i < 1000; i++) {
+			if(i % 3 == 0) builder.add(2, i, 0);
+		}
+		builder.add(3, 6, 0);
+		builder.add(3, 7, 0);
+		builder.add(3, 996, 0);
+		PositionGameIndex index = builder.build();
+		
+		int[] gameIds = index.getCommonGameIds(new long[] { 1, 2 }, 1000);
+		assertEquals(167, gameIds.length);
+		for(int i = 0; i < gameIds.length; i++) {
+			assertEquals(i * 6, gameIds[i]);
+		}
+		
+		assertArrayEquals(new int[] { 0, 6, 12 }, index.getCommonGameIds(new long[] { 1, 2 }, 3));
+		assertArrayEquals(new int[] { 6, 996 }, index.getCommonGameIds(new long[] { 1, 3, 2 }, 10));
+		assertArrayEquals(new int[] { 6, 7, 996 }, index.getCommonGameIds(new long[] { 3 }, 10));
+		assertEquals(0, index.getCommonGameIds(new long[] { 1, 4 }, 10).length);
+		assertEquals(0, index.getCommonGameIds(new long[0], 10).length);
+	}
+	
+	@Test
+	public void getMoves() {
+		int e4 = MoveDatabaseFile.encodeMove(new Move("e2", "e4"));
+		int d4 = MoveDatabaseFile.encodeMove(new Move("d2", "d4"));
+		
+		PositionGameIndex.Builder builder = new PositionGameIndex.Builder();
+		builder.add(1, 0, e4);
+		builder.add(1, 1, e4);
+		builder.add(1, 1, d4);
+		builder.add(1, 2, d4);
+		builder.add(1, 3, -1);
+		builder.add(1, 4, e4);
+		PositionGameIndex index = builder.build();
+		
+		// Game 1 played both moves from the position, and game 4 doesn't match.
+		FilteredGames games = new FilteredGames();
+		games.add(0, "1-0");
+		games.add(1, "0-1");
+		games.add(2, "1/2-1/2");
+		games.add(3, "1-0");
+		
+		List<DatabaseMove> moves = index.getMoves(1, games);
+		assertEquals(2, moves.size());
+		assertEquals(new Move("e2", "e4"), moves.get(0).getMove());
+		assertEquals("1/0/1", moves.get(0).toString());
+		assertEquals(new Move("d2", "d4"), moves.get(1).getMove());
+		assertEquals("0/1/1", moves.get(1).toString());
+		
+		assertEquals(0, index.getMoves(2, games).size());
+	}
+	
+	@Test
+	public void getGameIds_listLargerThanPage() {
+		PositionGameIndex.Builder builder = new PositionGameIndex.Builder();
+		builder.add(1, 5, 0);
+		for(int i = 0; i < 1500000; i++) {
+			builder.add(2, i, 0);
+		}
+		builder.add(3, 5, 0);
+		PositionGameIndex index = builder.build();
+		
+		assertEquals(1500000, index.getGameCount(2));
+		int[] gameIds = index.getGameIds(2, Integer.MAX_VALUE);
+		for(int i = 0; i < gameIds.length; i++) {
+			assertEquals(i, gameIds[i]);
+		}
+		assertArrayEquals(new int[] { 5 }, index.getGameIds(1, 10));
+		assertArrayEquals(new int[] { 5 }, index.getGameIds(3, 10));
+		
+		// Consecutive ids and their moves take a byte each.
+		assertEquals(3000004, index.getListSize());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void add_notInOrder() {
+		PositionGameIndex.Builder builder = new PositionGameIndex.Builder();
+		builder.add(1, 5, 0);
+		builder.add(1, 4, 0);
+	}
+}
@@ -0,0 +1,111 @@
+package domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import domain.Perft.ReferencePosition;
+import domain.bitboard.MoveGenerator;
+import domain.bitboard.PackedMove;
+import domain.bitboard.Zobrist;
+
+public class SearchBoardTest {
+	@Test
+	public void doMove_matchesMakeMove() throws IllegalMoveException {
+		for(ReferencePosition position:Perft.REFERENCE_POSITIONS) {
+			checkMakeMove(new Board(position.getFen()), 2);
+		}
+	}
+	
+	@Test
+	public void undoMove_restoresPosition() {
+		for(ReferencePosition position:Perft.REFERENCE_POSITIONS) {
+			Board board = new Board(position.getFen());
+			SearchBoard searchBoard = new SearchBoard(board);
+			checkUndoMove(searchBoard, 3, new int[4][MoveGenerator.MAX_MOVES]);
+			assertEquals(board.getFen(), searchBoard.toBoard().getFen());
+			assertEquals(0, searchBoard.getPly());
+		}
+	}
+	
+	@Test
+	public void doNullMove() {
+		Board board = new Board("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 2");
+		SearchBoard searchBoard = new SearchBoard(board);
+		
+		searchBoard.doNullMove();
+		assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 1 3", searchBoard.toBoard().getFen());
+		
+		searchBoard.undoMove();
+		assertEquals(board.getFen(), searchBoard.toBoard().getFen());
+		assertEquals(board.getPositionKey(), searchBoard.getKey());
+	}
+	
+	@Test
+	public void isRepetition() {
+		SearchBoard board = new SearchBoard(new Board());
+		int[] moves = {
+			PackedMove.create(62, 45), PackedMove.create(6, 21),
+			PackedMove.create(45, 62), PackedMove.create(21, 6)
+		};
+		
+		for(int move:moves) {
+			assertFalse(board.isRepetition());
+			board.doMove(move);
+		}
+		assertTrue(board.isRepetition());
+	}
+	
+	@Test
+	public void getMoveAsPgn_undoesMove() throws IllegalMoveException {
+		Board board = new Board("6k1/8/8/8/8/8/8/R3K3 w Q - 0 1");
+		SearchBoard searchBoard = new SearchBoard(board);
+		
+		assertEquals("O-O-O", searchBoard.getMoveAsPgn(searchBoard.getPackedMove(new Move(new Square("e1"), new Square("c1"), true))));
+		assertEquals(board.getFen(), searchBoard.toBoard().getFen());
+	}
+	
+	@Test(expected=IllegalMoveException.class)
+	public void getMoveAsPgn_illegal() throws IllegalMoveException {
+		SearchBoard board = new SearchBoard(new Board());
+		board.getMoveAsPgn(PackedMove.create(52, 28));
+	}
+	
+	private static void checkMakeMove(Board board, int depth) throws IllegalMoveException {
+		if(depth == 0) return;
+		
+		SearchBoard searchBoard = new SearchBoard(board);
+		for(Move move:board.getLegalMoves()) {
+			Board next = board.makeMove(move);
+			
+			searchBoard.doMove(searchBoard.getPackedMove(move));
+			assertEquals(next.getFen(), searchBoard.toBoard().getFen());
+			assertEquals(next.getPositionKey(), searchBoard.getKey());
+			searchBoard.undoMove();
+			
+			checkMakeMove(next, depth - 1);
+		}
+	}
+	
+	private static void checkUndoMove(SearchBoard board, int depth, int[][] buffers) {
+		if(depth == 0) return;
+		
+		String fen = board.toBoard().getFen();
+		long key = board.getKey();
+		
+		int[] moves = buffers[depth];
+		int count = board.getLegalMoves(moves, 0);
+		for(int i = 0; i < count; i++) {
+			board.doMove(moves[i]);
+			assertEquals(Zobrist.getKey(board.getPosition()), board.getKey());
+			checkUndoMove(board, depth - 1, buffers);
+			board.undoMove();
+			
+			assertEquals(key, board.getKey());
+		}
+		
+		assertEquals(fen, board.toBoard().getFen());
+	}
+}
@@ -0,0 +1,62 @@
+package domain.attacks;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import domain.Side;
+import domain.Square;
+
+public class AttacksTest {
+	@Test
+	public void rookMatchesRayWalk() {
+		Random random = new Random(1);
+		int[] dx = {-1, 1, 0, 0};
+		int[] dy = {0, 0, -1, 1};
+		for(int i = 0; i < 10000; i++) {
+			int square = random.nextInt(64);
+			long occupied = random.nextLong() & random.nextLong();
+			assertEquals(MagicTable.getSlowAttacks(square, occupied, dx, dy), Attacks.rook(square, occupied));
+		}
+	}
+	
+	@Test
+	public void bishopMatchesRayWalk() {
+		Random random = new Random(2);
+		int[] dx = {-1, 1, 1, -1};
+		int[] dy = {-1, 1, -1, 1};
+		for(int i = 0; i < 10000; i++) {
+			int square = random.nextInt(64);
+			long occupied = random.nextLong() & random.nextLong();
+			assertEquals(MagicTable.getSlowAttacks(square, occupied, dx, dy), Attacks.bishop(square, occupied));
+		}
+	}
+	
+	@Test
+	public void rookOnEmptyBoard() {
+		assertEquals(14, Long.bitCount(Attacks.rook(new Square("d4").getIndex(), 0)));
+	}
+	
+	@Test
+	public void knightInCorner() {
+		long attacks = Attacks.knight(new Square("a1").getIndex());
+		assertEquals(bits("b3", "c2"), attacks);
+	}
+	
+	@Test
+	public void pawnAttacks() {
+		assertEquals(bits("d5", "f5"), Attacks.pawn(Side.WHITE, new Square("e4").getIndex()));
+		assertEquals(bits("d3", "f3"), Attacks.pawn(Side.BLACK, new Square("e4").getIndex()));
+		assertEquals(bits("b3"), Attacks.pawn(Side.WHITE, new Square("a2").getIndex()));
+	}
+	
+	private static long bits(String... squares) {
+		long bits = 0;
+		for(String square:squares) {
+			bits |= 1L << new Square(square).getIndex();
+		}
+		return bits;
+	}
+}
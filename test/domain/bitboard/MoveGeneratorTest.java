@@ -0,0 +1,258 @@
+package domain.bitboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import domain.Board;
+import domain.IllegalMoveException;
+import domain.Move;
+import domain.SearchBoard;
+import domain.Side;
+import domain.Square;
+import domain.pieces.PieceType;
+
+public class MoveGeneratorTest {
+	@Test
+	public void initialPosition() {
+		assertEquals(20, new Board().getLegalMoves().size());
+	}
+	
+	@Test
+	public void writesAtOffset() {
+		int[] moves = new int[MoveGenerator.MAX_MOVES + 10];
+		assertEquals(20, new Board().getLegalMoves(new int[MoveGenerator.MAX_MOVES]));
+		
+		BitboardPosition position = new BitboardPosition();
+		position.setPiece(new Square("a1").getIndex(), PieceType.KING, Side.WHITE);
+		assertEquals(3, MoveGenerator.generateLegalMoves(position, moves, 10));
+		assertEquals(0, moves[0]);
+		assertTrue(moves[10] != 0);
+	}
+	
+	@Test
+	public void pinnedPieceMovesAlongPin() {
+		Board board = new Board("4r2k/8/8/8/8/8/4R3/4K3 w - - 0 1");
+		List<String> moves = getMoves(board);
+		assertTrue(moves.contains("e2-e8"));
+		assertTrue(moves.contains("e2-e5"));
+		assertFalse(moves.contains("e2-d2"));
+	}
+	
+	@Test
+	public void pinnedKnightCantMove() {
+		Board board = new Board("7k/8/8/b7/8/8/3N4/4K3 w - - 0 1");
+		for(String move:getMoves(board)) {
+			assertFalse(move.startsWith("d2"));
+		}
+	}
+	
+	@Test
+	public void checkMustBeBlockedOrCaptured() {
+		Board board = new Board("4r1k1/8/8/8/8/R7/1B6/4K3 w - - 0 1");
+		List<String> moves = getMoves(board);
+		assertEquals(Collections.singletonList("a3-e3"), filter(moves, "a3"));
+		assertEquals(Collections.singletonList("b2-e5"), filter(moves, "b2"));
+	}
+	
+	@Test
+	public void doubleCheckOnlyKingMoves() {
+		Board board = new Board("4r2k/8/8/8/8/5n2/3R4/4K3 w - - 0 1");
+		for(String move:getMoves(board)) {
+			assertTrue(move.startsWith("e1"));
+		}
+	}
+	
+	@Test
+	public void kingCantMoveAlongCheckingLine() {
+		Board board = new Board("4r2k/8/8/8/8/8/8/4K3 w - - 0 1");
+		assertFalse(getMoves(board).contains("e1-e2"));
+	}
+	
+	@Test
+	public void enPassant() {
+		Board board = new Board("4k3/8/8/3Pp3/8/8/8/4K3 w - e6 0 1");
+		assertTrue(getMoves(board).contains("d5-e6"));
+	}
+	
+	@Test
+	public void enPassantUncoveringCheck() {
+		Board board = new Board("8/8/8/KPp4r/8/8/8/7k w - c6 0 1");
+		assertFalse(getMoves(board).contains("b5-c6"));
+	}
+	
+	@Test
+	public void enPassantCapturingCheckingPawn() {
+		Board board = new Board("8/8/8/2k5/3Pp3/8/8/4K3 b - d3 0 1");
+		assertTrue(getMoves(board).contains("e4-d3"));
+	}
+	
+	@Test
+	public void promotions() {
+		Board board = new Board("1n5k/P7/8/8/8/8/8/4K3 w - - 0 1");
+		List<Move> promotions = new ArrayList<Move>();
+		for(Move move:board.getLegalMoves()) {
+			if(move.getPromote() != null) promotions.add(move);
+		}
+		assertEquals(8, promotions.size());
+	}
+	
+	@Test
+	public void castling() {
+		Board board = new Board("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		List<String> moves = getMoves(board);
+		assertTrue(moves.contains("e1-g1 castling"));
+		assertTrue(moves.contains("e1-c1 castling"));
+	}
+	
+	@Test
+	public void castlingBlockedNextToRook() {
+		Board board = new Board("r3k2r/8/8/8/8/8/8/RN2K2R w KQkq - 0 1");
+		assertFalse(getMoves(board).contains("e1-c1 castling"));
+	}
+	
+	@Test
+	public void castlingThroughAttackedSquare() {
+		Board board = new Board("r3k2r/8/8/8/8/8/5r2/R3K2R w KQkq - 0 1");
+		List<String> moves = getMoves(board);
+		assertFalse(moves.contains("e1-g1 castling"));
+		assertTrue(moves.contains("e1-c1 castling"));
+	}
+	
+	@Test
+	public void castling960RookShieldingKing() {
+		Board board = new Board("7k/8/8/8/8/8/8/rRK5 w Q - 0 1");
+		assertFalse(getMoves(board).contains("c1-c1 castling"));
+	}
+	
+	@Test
+	public void matchesPossibleMoves() throws IllegalMoveException {
+		String[] fens = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+			"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+			"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10"
+		};
+		
+		for(String fen:fens) {
+			Board board = new Board(fen);
+			
+			// Follow the moves one ply deep so both sides are compared.
+			assertMatchesPossibleMoves(board);
+			for(Move move:board.getLegalMoves()) {
+				assertMatchesPossibleMoves(board.makeMove(move));
+			}
+		}
+	}
+	
+	@Test
+	public void legalMovesToMatchGeneratedMoves() throws IllegalMoveException {
+		String[] fens = {
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+			"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+			"6k1/8/8/4PpP1/8/8/8/7K w - f6 0 0"
+		};
+		
+		for(String fen:fens) {
+			Board board = new Board(fen);
+			assertLegalMovesToMatch(board);
+			for(Move move:board.getLegalMoves()) {
+				assertLegalMovesToMatch(board.makeMove(move));
+			}
+		}
+	}
+	
+	private static void assertLegalMovesToMatch(Board board) {
+		BitboardPosition position = new SearchBoard(board).getPosition();
+		int[] moves = new int[MoveGenerator.MAX_MOVES];
+		int count = MoveGenerator.generateLegalMoves(position, moves);
+		
+		long[][] expected = new long[PieceType.values().length][64];
+		for(int i = 0; i < count; i++) {
+			int move = moves[i];
+			assertTrue(MoveGenerator.isLegal(position, move));
+			if(PackedMove.isCastling(move)) continue;
+			
+			int from = PackedMove.getFrom(move);
+			expected[position.getPieceType(from).ordinal()][PackedMove.getTo(move)] |= Bitboard.bit(from);
+		}
+		
+		for(PieceType type:PieceType.values()) {
+			for(int to = 0; to < 64; to++) {
+				assertEquals(board.getFen(), expected[type.ordinal()][to], MoveGenerator.getLegalMovesTo(position, type, to));
+			}
+		}
+		
+		assertEquals(count > 0, MoveGenerator.hasLegalMove(position));
+	}
+	
+	@Test
+	public void hasLegalMove() {
+		assertTrue(MoveGenerator.hasLegalMove(new SearchBoard(new Board()).getPosition()));
+		
+		// Checkmate, stalemate, and a check that can only be answered by an en-passant capture.
+		assertFalse(MoveGenerator.hasLegalMove(new SearchBoard(new Board("R5k1/5ppp/8/8/8/8/8/6K1 b - - 0 1")).getPosition()));
+		assertFalse(MoveGenerator.hasLegalMove(new SearchBoard(new Board("7k/5Q2/8/8/8/8/8/6K1 b - - 0 1")).getPosition()));
+		assertTrue(MoveGenerator.hasLegalMove(new SearchBoard(new Board("8/8/8/2k5/3Pp3/8/8/3KQ3 b - d3 0 1")).getPosition()));
+	}
+	
+	@Test
+	public void isLegal() {
+		BitboardPosition position = new SearchBoard(new Board("4k3/1P6/8/8/8/8/8/4K3 w - - 0 1")).getPosition();
+		
+		assertTrue(MoveGenerator.isLegal(position, PackedMove.createPromotion(new Square("b7").getIndex(), new Square("b8").getIndex(), PieceType.KNIGHT)));
+		assertFalse(MoveGenerator.isLegal(position, PackedMove.create(new Square("b7").getIndex(), new Square("b8").getIndex())));
+		assertFalse(MoveGenerator.isLegal(position, PackedMove.create(new Square("e8").getIndex(), new Square("e7").getIndex())));
+		assertFalse(MoveGenerator.isLegal(position, PackedMove.NONE));
+	}
+	
+	private static void assertMatchesPossibleMoves(Board board) {
+		List<String> possible = new ArrayList<String>();
+		for(Move move:board.getPossibleMoves()) {
+			try {
+				board.makeMove(move);
+				possible.add(toString(move));
+			} catch(IllegalMoveException e) {
+				// Not legal.
+			}
+		}
+		
+		List<String> legal = getMoves(board);
+		Collections.sort(possible);
+		Collections.sort(legal);
+		assertEquals(board.getFen(), possible.toString(), legal.toString());
+	}
+	
+	private static List<String> getMoves(Board board) {
+		List<String> moves = new ArrayList<String>();
+		for(Move move:board.getLegalMoves()) {
+			moves.add(toString(move));
+		}
+		return moves;
+	}
+	
+	private static List<String> filter(List<String> moves, String from) {
+		List<String> filtered = new ArrayList<String>();
+		for(String move:moves) {
+			if(move.startsWith(from)) filtered.add(move);
+		}
+		return filtered;
+	}
+	
+	private static String toString(Move move) {
+		String s = move.toString();
+		if(move.getPromote() != null) s += move.getPromote().getAlgebraic();
+		if(move.getCastling()) s += " castling";
+		return s;
+	}
+}
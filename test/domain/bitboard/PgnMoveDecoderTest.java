@@ -0,0 +1,71 @@
+package domain.bitboard;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import domain.Board;
+import domain.IllegalMoveException;
+import domain.SearchBoard;
+
+public class PgnMoveDecoderTest {
+	private static String decode(String fen, String pgnMove) throws IllegalMoveException {
+		BitboardPosition position = new SearchBoard(new Board(fen)).getPosition();
+		return PackedMove.toString(PgnMoveDecoder.decode(position, pgnMove));
+	}
+	
+	@Test
+	public void pawnMoves() throws IllegalMoveException {
+		Board board = new Board();
+		assertEquals("e2e4", decode(board.getFen(), "e4"));
+		assertEquals("e2e3", decode(board.getFen(), "e3"));
+		assertEquals("d4e5", decode("4k3/8/8/4p3/3P4/8/8/4K3 w - - 0 1", "dxe5"));
+		assertEquals("e5f6", decode("4k3/8/8/4Pp2/8/8/8/4K3 w - f6 0 1", "exf6"));
+	}
+	
+	@Test
+	public void promotions() throws IllegalMoveException {
+		assertEquals("g7g8n", decode("k7/6P1/8/8/8/8/8/K7 w - - 0 1", "g8=N"));
+		assertEquals("g7h8q", decode("6rr/6P1/8/8/8/8/8/K6k w - - 0 1", "gxh8=q"));
+	}
+	
+	@Test
+	public void disambiguation() throws IllegalMoveException {
+		String fen = "4k3/8/8/8/8/8/8/Q3K2Q w - - 0 1";
+		assertEquals("a1e5", decode(fen, "Qae5"));
+		assertEquals("h1e4", decode(fen, "Qhe4"));
+		
+		fen = "4k3/8/8/8/8/Q7/8/Q3K3 w - - 0 1";
+		assertEquals("a3c1", decode(fen, "Q3c1"));
+		assertEquals("a1c3", decode(fen, "Q1xc3"));
+		assertEquals("a1b2", decode(fen, "Qa1b2"));
+	}
+	
+	@Test
+	public void pinnedPieceNotAmbiguous() throws IllegalMoveException {
+		assertEquals("g1e2", decode("k7/8/8/8/1b6/2N5/8/4K1N1 w - - 0 0", "Ne2"));
+	}
+	
+	@Test
+	public void castling() throws IllegalMoveException {
+		String fen = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+		assertEquals("e1g1", decode(fen, "O-O"));
+		assertEquals("e1c1", decode(fen, "0-0-0+"));
+		assertEquals("e1f1", decode(fen, "Kf1"));
+	}
+	
+	@Test(expected=IllegalMoveException.class)
+	public void ambiguous() throws IllegalMoveException {
+		decode("4k3/8/8/8/8/8/4K3/Q6Q w - - 0 1", "Qd1");
+	}
+	
+	@Test(expected=IllegalMoveException.class)
+	public void leavesKingInCheck() throws IllegalMoveException {
+		decode("4k3/4r3/8/8/8/8/4B3/4K3 w - - 0 1", "Bd3");
+	}
+	
+	@Test(expected=IllegalMoveException.class)
+	public void invalidText() throws IllegalMoveException {
+		decode(new Board().getFen(), "Ne4x");
+	}
+}
@@ -0,0 +1,40 @@
+package domain.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import domain.Board;
+import domain.bitboard.PackedMove;
+
+public class ParallelSearchTest {
+	@Test
+	public void mateInTwo() {
+		ParallelSearch search = new ParallelSearch(new TranspositionTable(1), 4);
+		List<SearchLine> lines = search.search(new Board("7k/8/8/8/8/8/8/RR4K1 w - - 0 1"), 5, 60000, 1, null);
+		
+		assertTrue(lines.get(0).isMate());
+		assertEquals(2, lines.get(0).getMateMoves());
+	}
+	
+	@Test
+	public void capturesHangingQueen() {
+		ParallelSearch search = new ParallelSearch(new TranspositionTable(1), 3);
+		List<SearchLine> lines = search.search(new Board("3q2k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1"), 6, 60000, 3, null);
+		
+		assertEquals(3, lines.size());
+		assertEquals("d1d8", PackedMove.toString(lines.get(0).getMove()));
+	}
+	
+	@Test
+	public void stop() {
+		ParallelSearch search = new ParallelSearch(new TranspositionTable(1), 4);
+		search.stop();
+		List<SearchLine> lines = search.search(new Board(), Search.MAX_PLY, 60000, 1, null);
+		
+		assertEquals(1, lines.get(0).getDepth());
+	}
+}
@@ -0,0 +1,108 @@
+package domain.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import domain.Board;
+import domain.SearchBoard;
+import domain.bitboard.PackedMove;
+
+public class SearchTest {
+	private static List<SearchLine> search(String fen, int depth, int multiPv) {
+		return new Search(new TranspositionTable(1)).search(new Board(fen), depth, 60000, multiPv, null);
+	}
+	
+	private static String bestMove(String fen, int depth) {
+		return PackedMove.toString(search(fen, depth, 1).get(0).getMove());
+	}
+	
+	@Test
+	public void mateInOne() {
+		List<SearchLine> lines = search("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1", 3, 1);
+		assertEquals("a1a8", PackedMove.toString(lines.get(0).getMove()));
+		assertTrue(lines.get(0).isMate());
+		assertEquals(1, lines.get(0).getMateMoves());
+	}
+	
+	@Test
+	public void mateInTwo() {
+		List<SearchLine> lines = search("7k/8/8/8/8/8/8/RR4K1 w - - 0 1", 5, 1);
+		assertTrue(lines.get(0).isMate());
+		assertEquals(2, lines.get(0).getMateMoves());
+	}
+	
+	@Test
+	public void mated() {
+		List<SearchLine> lines = search("R5k1/5ppp/8/8/8/8/8/6K1 b - - 0 1", 3, 1);
+		assertEquals(0, lines.size());
+	}
+	
+	@Test
+	public void capturesHangingQueen() {
+		assertEquals("d1d8", bestMove("3q2k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1", 4));
+	}
+	
+	@Test
+	public void avoidsLosingQueen() {
+		// Taking the pawn on b7 loses the queen to the rook on b8.
+		assertFalse("f3b7".equals(bestMove("1r4k1/1p3ppp/8/8/8/5Q2/5PPP/6K1 w - - 0 1", 4)));
+	}
+	
+	@Test
+	public void multiPv() {
+		List<SearchLine> lines = search("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 3, 5);
+		assertEquals(5, lines.size());
+		
+		Set<Integer> moves = new HashSet<Integer>();
+		for(int i = 0; i < lines.size(); i++) {
+			moves.add(lines.get(i).getMove());
+			if(i > 0) {
+				assertTrue(lines.get(i).getScore() <= lines.get(i - 1).getScore());
+			}
+		}
+		assertEquals(5, moves.size());
+	}
+	
+	@Test
+	public void multiPv_fewerMoves() {
+		List<SearchLine> lines = search("k7/8/8/8/8/8/2r5/K7 w - - 0 1", 3, 10);
+		assertEquals(1, lines.size());
+		assertEquals("a1b1", PackedMove.toString(lines.get(0).getMove()));
+	}
+	
+	@Test
+	public void stop() {
+		Search search = new Search(new TranspositionTable(1));
+		search.stop();
+		List<SearchLine> lines = search.search(new Board(), Search.MAX_PLY, 60000, 1, null);
+		assertEquals(1, lines.get(0).getDepth());
+	}
+	
+	@Test
+	public void evaluation_symmetric() {
+		assertEquals(0, evaluate("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"));
+		
+		// The same position with colours reversed scores the same for the side to play.
+		int white = evaluate("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3");
+		int black = evaluate("rnbqkb1r/pppp1ppp/5n2/4p3/4P3/2N5/PPPP1PPP/R1BQKBNR b KQkq - 2 3");
+		assertEquals(white, black);
+		assertEquals(-white, evaluate("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 2 3"));
+	}
+	
+	@Test
+	public void evaluation_material() {
+		assertTrue(evaluate("4k3/8/8/8/8/8/8/3QK3 w - - 0 1") > 800);
+		assertTrue(evaluate("4k3/8/8/8/8/8/8/3QK3 b - - 0 1") < -800);
+	}
+	
+	private static int evaluate(String fen) {
+		return Evaluation.evaluate(new SearchBoard(new Board(fen)).getPosition());
+	}
+}
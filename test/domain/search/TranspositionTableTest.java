@@ -0,0 +1,88 @@
+package domain.search;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TranspositionTableTest {
+	@Test
+	public void storeAndProbe() {
+		TranspositionTable table = new TranspositionTable(1);
+		table.store(0x123456789abcdefL, 1234, -567, 12, TranspositionTable.LOWER_BOUND);
+		
+		long data = table.probe(0x123456789abcdefL);
+		assertEquals(1234, TranspositionTable.getMove(data));
+		assertEquals(-567, TranspositionTable.getScore(data));
+		assertEquals(12, TranspositionTable.getDepth(data));
+		assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.getFlag(data));
+		
+		assertEquals(0, table.probe(0x123456789abcdeeL));
+	}
+	
+	@Test
+	public void store_keepsMove() {
+		TranspositionTable table = new TranspositionTable(1);
+		table.store(1, 1234, 10, 5, TranspositionTable.EXACT);
+		table.store(1, 0, 20, 6, TranspositionTable.UPPER_BOUND);
+		
+		long data = table.probe(1);
+		assertEquals(1234, TranspositionTable.getMove(data));
+		assertEquals(20, TranspositionTable.getScore(data));
+		assertEquals(6, TranspositionTable.getDepth(data));
+	}
+	
+	@Test
+	public void store_replacesShallowest() {
+		// Keys with the same top 32 bits share a bucket of four entries.
+		TranspositionTable table = new TranspositionTable(1);
+		for(int i = 1; i <= 4; i++) {
+			table.store(i, i, 0, 10 - i, TranspositionTable.EXACT);
+		}
+		table.store(5, 5, 0, 1, TranspositionTable.EXACT);
+		
+		assertEquals(0, table.probe(4));
+		for(int i = 1; i <= 3; i++) {
+			assertEquals(i, TranspositionTable.getMove(table.probe(i)));
+		}
+		assertEquals(5, TranspositionTable.getMove(table.probe(5)));
+	}
+	
+	@Test
+	public void store_replacesOld() {
+		TranspositionTable table = new TranspositionTable(1);
+		table.store(1, 1, 0, 10, TranspositionTable.EXACT);
+		table.newSearch();
+		for(int i = 2; i <= 4; i++) {
+			table.store(i, i, 0, 5, TranspositionTable.EXACT);
+		}
+		table.store(5, 5, 0, 5, TranspositionTable.EXACT);
+		
+		assertEquals(0, table.probe(1));
+		assertEquals(5, TranspositionTable.getMove(table.probe(5)));
+	}
+	
+	@Test
+	public void clear() {
+		TranspositionTable table = new TranspositionTable(1);
+		table.store(1, 1, 0, 10, TranspositionTable.EXACT);
+		table.clear();
+		
+		assertEquals(0, table.probe(1));
+	}
+	
+	@Test
+	public void hashfull() {
+		TranspositionTable table = new TranspositionTable(1);
+		assertEquals(1, table.getSize());
+		assertEquals(0, table.getHashfull());
+		
+		// Fill the first 100 buckets of four entries. A 1MB table has 2^14 buckets, indexed by the top 14 bits.
+		for(long i = 0; i < 400; i++) {
+			table.store(((i / 4) << 50) | i, 1, 0, 1, TranspositionTable.EXACT);
+		}
+		assertEquals(400, table.getHashfull());
+		
+		table.newSearch();
+		assertEquals(0, table.getHashfull());
+	}
+}
@@ -0,0 +1,96 @@
+package pgn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class MappedPgnFileTest {
+	private static final String GAME1 = "[Event \"a\"]\n[White \"\u00c4\"]\n\n1.e4 e5 { [%clk 0:01] } 1-0\n\n";
+	private static final String GAME2 = "[Event \"b\"]\r\n\r\n1.d4 *\r\n  \r\n";
+	private static final String GAME3 = "[Site \"c\"]\n\n1.c4 *\n";
+	
+	@Test
+	public void getGameStarts() throws IOException {
+		try(MappedPgnFile file = new MappedPgnFile(write(GAME1 + GAME2 + GAME3))) {
+			long game2 = bytes(GAME1);
+			long game3 = game2 + bytes(GAME2);
+			assertArrayEquals(new long[] { 0, game2, game3 }, file.getGameStarts());
+			
+			assertEquals(game2, file.nextGameStart(1));
+			assertEquals(game2, file.nextGameStart(game2));
+			assertEquals(file.size(), file.nextGameStart(game3 + 1));
+		}
+	}
+	
+	@Test
+	public void getGameStarts_smallWindows() throws IOException {
+		// Windows of 4 bytes, so that every game crosses windows.
+		try(MappedPgnFile file = new MappedPgnFile(write(GAME1 + GAME2 + GAME3), 2)) {
+			long game2 = bytes(GAME1);
+			assertArrayEquals(new long[] { 0, game2, game2 + bytes(GAME2) }, file.getGameStarts());
+			assertEquals(GAME2, file.readText(game2, game2 + bytes(GAME2)));
+		}
+	}
+	
+	@Test
+	public void getSplitPoints() throws IOException {
+		try(MappedPgnFile file = new MappedPgnFile(write(GAME1 + GAME2 + GAME3))) {
+			long game2 = bytes(GAME1);
+			long game3 = game2 + bytes(GAME2);
+			assertArrayEquals(new long[] { 0, game2, game3, file.size() }, file.getSplitPoints(3));
+			assertArrayEquals(new long[] { 0, file.size() }, file.getSplitPoints(1));
+			
+			long[] points = file.getSplitPoints(20);
+			assertEquals(0, points[0]);
+			assertEquals(file.size(), points[20]);
+			for(int i = 1; i < points.length; i++) {
+				assertEquals(true, points[i] >= points[i - 1]);
+			}
+		}
+	}
+	
+	@Test
+	public void openReader() throws IOException, ParseException {
+		try(MappedPgnFile file = new MappedPgnFile(write("\uFEFF" + GAME1 + GAME2 + GAME3), 3)) {
+			long[] starts = file.getGameStarts();
+			assertEquals(3, starts.length);
+			assertEquals(3, starts[0]);
+			
+			try(PgnReader reader = new PgnReader(file.openReader(0, starts[2]))) {
+				assertEquals("\u00c4", reader.readGame().getWhite());
+				assertEquals(1, reader.readGame().getMainLine().size());
+				assertNull(reader.readGame());
+			}
+			
+			assertEquals("c", new PgnImporter().importPgn(file, starts[2], file.size()).getSite());
+		}
+	}
+	
+	@Test
+	public void emptyFile() throws IOException {
+		try(MappedPgnFile file = new MappedPgnFile(write(""))) {
+			assertArrayEquals(new long[0], file.getGameStarts());
+			assertArrayEquals(new long[] { 0, 0 }, file.getSplitPoints(1));
+		}
+	}
+	
+	private static int bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8).length;
+	}
+	
+	private static File write(String text) throws IOException {
+		File file = File.createTempFile("games", ".pgn");
+		file.deleteOnExit();
+		try(FileOutputStream output = new FileOutputStream(file)) {
+			output.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+		return file;
+	}
+}
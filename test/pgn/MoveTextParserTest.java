@@ -0,0 +1,84 @@
+package pgn;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import domain.Board;
+import domain.MoveHistoryNode;
+
+public class MoveTextParserTest {
+	@Test
+	public void parseMoveText() throws ParseException {
+		MoveHistoryNode root = new MoveTextParser().parseMoveText(new Board(), "1.e4 e5 2. Nf3 Nc6 1-0");
+		
+		MoveHistoryNode move = root.getNextNodes().get(0);
+		assertEquals("e2-e4", move.getMove().toString());
+		move = move.getNextNodes().get(0);
+		assertEquals("e7-e5", move.getMove().toString());
+		move = move.getNextNodes().get(0);
+		assertEquals("g1-f3", move.getMove().toString());
+		move = move.getNextNodes().get(0);
+		assertEquals("b8-c6", move.getMove().toString());
+		assertTrue(move.getNextNodes().isEmpty());
+	}
+	
+	@Test
+	public void parseMoveText_commentsAndAnnotations() throws ParseException {
+		MoveHistoryNode root = new MoveTextParser().parseMoveText(new Board(), "1.e4!? { Best by test }\ne5 $2 2.Nf3+?! *");
+		
+		MoveHistoryNode e4 = root.getNextNodes().get(0);
+		assertEquals("!?", e4.getAnnotation());
+		assertEquals("Best by test", e4.getComment());
+		
+		MoveHistoryNode e5 = e4.getNextNodes().get(0);
+		assertEquals("?", e5.getAnnotation());
+		assertNull(e5.getComment());
+		
+		assertEquals("?!", e5.getNextNodes().get(0).getAnnotation());
+	}
+	
+	@Test
+	public void parseMoveText_nestedVariations() throws ParseException {
+		MoveHistoryNode root = new MoveTextParser().parseMoveText(new Board(), "1.e4 (1.d4 d5 (1...Nf6 2.c4) 2.c4) (1.c4) e5 *");
+		
+		assertEquals(3, root.getNextNodes().size());
+		assertEquals("e2-e4", root.getNextNodes().get(0).getMove().toString());
+		assertEquals("c2-c4", root.getNextNodes().get(2).getMove().toString());
+		
+		MoveHistoryNode d4 = root.getNextNodes().get(1);
+		assertEquals("d2-d4", d4.getMove().toString());
+		assertEquals(2, d4.getNextNodes().size());
+		assertEquals("d7-d5", d4.getNextNodes().get(0).getMove().toString());
+		assertEquals("g8-f6", d4.getNextNodes().get(1).getMove().toString());
+		assertEquals("c2-c4", d4.getNextNodes().get(1).getNextNodes().get(0).getMove().toString());
+		assertEquals("c2-c4", d4.getNextNodes().get(0).getNextNodes().get(0).getMove().toString());
+		
+		assertEquals("e7-e5", root.getNextNodes().get(0).getNextNodes().get(0).getMove().toString());
+	}
+	
+	@Test
+	public void parseMoveText_syntaxError() {
+		try {
+			new MoveTextParser().parseMoveText(new Board(), "1.e4 e5 (1...c5 2.Nf3");
+			fail();
+		} catch(ParseException e) {
+			assertEquals("ERROR: Parsed up to: 1.e4 e5 (1...c5 2.Nf3 Remaining: ", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void parseMoveText_syntaxErrorAfterIllegalMove() {
+		try {
+			new MoveTextParser().parseMoveText(new Board(), "1.e5 e5 {}");
+			fail();
+		} catch(ParseException e) {
+			assertEquals("ERROR: Parsed up to: 1.e5 e5 { Remaining: }", e.getMessage());
+		}
+	}
+	
+	@Test(expected=ParseException.class)
+	public void parseMoveText_illegalMove() throws ParseException {
+		new MoveTextParser().parseMoveText(new Board(), "1.e4 e4");
+	}
+}
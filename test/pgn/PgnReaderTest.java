@@ -0,0 +1,106 @@
+package pgn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import util.FileUtil;
+
+public class PgnReaderTest {
+	private static final String PGN = "[White \"a\"]\n[Result \"1-0\"]\n\n1.e4 e5 1-0\n\n"
+		+ "[Variant \"Chess960\"]\n\n1.e4 *\n\n"
+		+ "[Variant \"Crazyhouse\"]\n\n1.e4 d5 2.exd5 Qxd5 3.P@e4 *\n\n"
+		+ "[White \"b\"]\n\n1.d4 *\n";
+	
+	@Test
+	public void readGame() throws IOException, ParseException {
+		PgnReader reader = new PgnReader(new StringReader(PGN));
+		
+		PgnGame game = reader.readGame();
+		assertEquals("a", game.getWhite());
+		assertEquals("[White \"a\"]\n[Result \"1-0\"]\n\n1.e4 e5 1-0", game.getPgn());
+		assertEquals(2, game.getMainLine().size());
+		
+		assertEquals("b", reader.readGame().getWhite());
+		assertNull(reader.readGame());
+	}
+	
+	@Test(expected = ParseException.class)
+	public void readGame_parseError() throws IOException, ParseException {
+		new PgnReader(new StringReader("1.e4 e5 2.Ke3 *")).readGame();
+	}
+	
+	@Test
+	public void iterator() {
+		Iterator<PgnGame> games = new PgnReader(new StringReader(PGN)).iterator();
+		
+		assertTrue(games.hasNext());
+		assertTrue(games.hasNext());
+		assertEquals("a", games.next().getWhite());
+		assertEquals("b", games.next().getWhite());
+		assertFalse(games.hasNext());
+	}
+	
+	@Test(expected = PgnReader.GameException.class)
+	public void iterator_parseError() {
+		new PgnReader(new StringReader("1.e4 e5 2.Ke3 *")).iterator().hasNext();
+	}
+	
+	@Test
+	public void stream() {
+		assertEquals("a,b", new PgnReader(new StringReader(PGN)).stream().map(PgnGame::getWhite).collect(Collectors.joining(",")));
+	}
+	
+	@Test
+	public void openReader_gzip() throws IOException, ParseException {
+		File file = File.createTempFile("games", ".pgn.gz");
+		file.deleteOnExit();
+		try(Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
+			writer.append(PGN);
+		}
+		
+		try(PgnReader reader = new PgnReader(FileUtil.openReader(file))) {
+			assertEquals("a", reader.readGame().getWhite());
+			assertEquals("b", reader.readGame().getWhite());
+			assertNull(reader.readGame());
+		}
+	}
+	
+	@Test
+	public void openReader_uncompressed() throws IOException, ParseException {
+		File file = File.createTempFile("games", ".pgn");
+		file.deleteOnExit();
+		try(Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			writer.append(PGN);
+		}
+		
+		try(PgnReader reader = new PgnReader(FileUtil.openReader(file))) {
+			assertEquals("a", reader.readGame().getWhite());
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void openReader_bzip2Unsupported() throws IOException {
+		File file = File.createTempFile("games", ".pgn.bz2");
+		file.deleteOnExit();
+		try(FileOutputStream output = new FileOutputStream(file)) {
+			output.write("BZh9".getBytes(StandardCharsets.US_ASCII));
+		}
+		
+		FileUtil.openReader(file).close();
+	}
+}
@@ -0,0 +1,34 @@
+package pgn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class PgnSplitterTest {
+	@Test
+	public void nextGame() throws IOException {
+		String pgn = "[Event \"a\"]\n[Result \"1-0\"]\n\n1.e4 e5\n2.Nf3 1-0\n\n\n[Event \"b\"]\r\n\r\n1.d4 *\n";
+		
+		PgnSplitter splitter = new PgnSplitter(new StringReader(pgn));
+		assertEquals("[Event \"a\"]\n[Result \"1-0\"]\n\n1.e4 e5\n2.Nf3 1-0", splitter.nextGame());
+		assertEquals("[Event \"b\"]\n\n1.d4 *", splitter.nextGame());
+		assertNull(splitter.nextGame());
+	}
+	
+	@Test
+	public void nextGame_noTags() throws IOException {
+		PgnSplitter splitter = new PgnSplitter(new StringReader("1.e4 e5 *\n\n1.d4 d5 *"));
+		assertEquals("1.e4 e5 *", splitter.nextGame());
+		assertEquals("1.d4 d5 *", splitter.nextGame());
+		assertNull(splitter.nextGame());
+	}
+	
+	@Test
+	public void nextGame_empty() throws IOException {
+		assertNull(new PgnSplitter(new StringReader("\n\n")).nextGame());
+	}
+}